@@ -18,18 +18,27 @@
  */
 package org.structr.agent;
 
-import java.util.Queue;
-import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.concurrent.atomic.AtomicBoolean;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import static org.structr.agent.ReturnValue.Retry;
+import org.structr.api.config.Settings;
 import org.structr.core.Services;
 import org.structr.core.app.StructrApp;
+import org.structr.core.entity.Principal;
 import org.structr.core.graph.Tx;
 
 /**
  * Abstract base class for all agents.
+ *
+ * Agents fetch their tasks from the {@link AgentService}. Agents that
+ * return true in {@link #supportsBatching()} receive several tasks at once,
+ * tasks with the same type and user are merged into a single task (see
+ * {@link #mergeTasks}) and processed in a single transaction.
  */
 public abstract class Agent<T> extends Thread implements StatusInfo {
 
@@ -38,12 +47,11 @@ public abstract class Agent<T> extends Thread implements StatusInfo {
 	public static final String MAX_QUEUE_SIZE         = "max_queue_size";
 	private static final Logger logger                = LoggerFactory.getLogger(Agent.class.getName());
 
-	private final AtomicBoolean suspended      = new AtomicBoolean(false);
-	private final Queue<Task<T>> taskQueue     = new ConcurrentLinkedQueue<>();
+	private final Object suspendLock           = new Object();
 	private final AtomicBoolean acceptingTasks = new AtomicBoolean(true);
+	private volatile boolean suspended         = false;
 	private AgentService agentService          = null;
 	private long averageExecutionTime          = 0;
-	private int maxAgents                      = 10;
 	private int maxQueueSize                   = 200;
 
 	/**
@@ -58,102 +66,73 @@ public abstract class Agent<T> extends Thread implements StatusInfo {
 
 		agentService.notifyAgentStart(this);
 
-		do {
-
-			while (suspended.get()) {
-
-				Thread.yield();
+		try {
 
-			}
-
-			final Task<T> currentTask;
+			while (acceptingTasks.get()) {
 
-			synchronized (taskQueue) {
+				synchronized (suspendLock) {
 
-				currentTask = taskQueue.poll();
+					while (suspended) {
 
-			}
+						try { suspendLock.wait(); } catch (InterruptedException ex) { return; }
+					}
+				}
 
-			if (currentTask != null) {
+				final List<Task<T>> tasks = (List)agentService.getNextTasks(this, getBatchSize());
+				if (tasks == null) {
 
-				ReturnValue ret = null;
+					// no more tasks, quit.
+					break;
+				}
 
-				// only execute process if Service layer is ready
-				// (and not shutting down right now)
-				if (Services.getInstance().isInitialized()) {
+				for (final List<Task<T>> group : groupTasks(tasks).values()) {
 
-					if (createEnclosingTransaction()) {
+					if (group.size() > 1) {
 
-						try (final Tx tx = StructrApp.getInstance().tx()) {
+						final ReturnValue ret = process(mergeTasks(group), group.size());
+						if (Retry.equals(ret)) {
 
-							ret = processTask(currentTask);
-							tx.success();
+							// a single work object must not hold back the
+							// others, so we try again one by one
+							for (final Task<T> task : group) {
+								retry(task, process(task, 1));
+							}
 
-						} catch (Throwable t) {
+						} else {
 
-							// task processing failed..
-							logger.error("Processing task {} failed: {}", currentTask.getType(), t.getMessage());
+							for (final Task<T> task : group) {
+								agentService.notifyTaskFinished(task);
+							}
 						}
 
 					} else {
 
-						try {
+						final Task<T> task = group.get(0);
 
-							ret = processTask(currentTask);
-
-						} catch (Throwable t) {
-
-							// task processing failed..
-							logger.error("Processing task {} failed: {}", currentTask.getType(), t.getMessage());
-						}
+						retry(task, process(task, 1));
 					}
 				}
-
-				if (ret != null && Retry.equals(ret) && currentTask.getRetryCount() < 2) {
-
-					// wait some time
-					try { Thread.sleep(2000); } catch (InterruptedException ex) {}
-
-					synchronized (taskQueue) {
-
-						currentTask.incrementRetryCount();
-						taskQueue.add(currentTask);
-					}
-				}
-
-				long endTime = System.nanoTime();
-
-				// calc. average execution time
-				averageExecutionTime += endTime;
-				averageExecutionTime /= 2;
-
-			} else {
-
-				// queue is empty, quit.
-				acceptingTasks.set(false);
 			}
 
-		} while (acceptingTasks.get());
+		} finally {
 
-		// call beforeShutdown to allow agents to clean up
-		beforeShutdown();
-		agentService.notifyAgentStop(this);
+			// call beforeShutdown to allow agents to clean up
+			beforeShutdown();
+			agentService.notifyAgentStop(this);
+		}
 	}
 
+	/**
+	 * Submits the given task to the agent service.
+	 *
+	 * @param task
+	 * @return true
+	 */
 	public final boolean assignTask(final Task<T> task) {
 
-		// TODO: do type check here
-		if (canHandleMore() && acceptingTasks.get()) {
-
-			synchronized (taskQueue) {
-
-				taskQueue.add(task);
-			}
-
-			return (true);
-		}
+		agentService.processTask(task);
 
-		return (false);
+		return true;
 	}
 
 	public final void killAgent() {
@@ -161,9 +140,6 @@ public abstract class Agent<T> extends Thread implements StatusInfo {
 		// stop accepting tasks
 		acceptingTasks.set(false);
 
-		// clear queue
-		taskQueue.clear();
-
 		// interrupt running process..
 		// not sure if this works... see Thread.interrupt()'s description!
 		// may not work if the processTask method itself catches the interrupt..
@@ -172,14 +148,18 @@ public abstract class Agent<T> extends Thread implements StatusInfo {
 
 	public final void suspendAgent() {
 
-		acceptingTasks.set(false);
-		suspended.set(true);
+		synchronized (suspendLock) {
+			suspended = true;
+		}
 	}
 
 	public final void resumeAgent() {
 
-		acceptingTasks.set(true);
-		suspended.set(false);
+		synchronized (suspendLock) {
+
+			suspended = false;
+			suspendLock.notifyAll();
+		}
 	}
 
 	protected void beforeShutdown() {
@@ -187,24 +167,42 @@ public abstract class Agent<T> extends Thread implements StatusInfo {
 		// override me
 	}
 
-	private boolean canHandleMore() {
-
-		int size = 0;
+	/**
+	 * Override this method and return true if the agent can process tasks
+	 * with more than one work object, so that queued tasks of the same type
+	 * can be processed together.
+	 *
+	 * @return whether tasks can be merged
+	 */
+	protected boolean supportsBatching() {
+		return false;
+	}
 
-		synchronized (taskQueue) {
+	/**
+	 * Merges the given tasks, which have the same type and user, into a
+	 * single task that contains the work objects of all tasks.
+	 *
+	 * @param tasks
+	 * @return the merged task
+	 */
+	protected Task<T> mergeTasks(final List<Task<T>> tasks) {
 
-			// FIXME: size may not be a constant time operation! slow?
-			size = taskQueue.size();
-		}
+		final Task<T> first          = tasks.get(0);
+		final AbstractTask<T> merged  = new AbstractTask<>(first.getType(), first.getUser());
+		int priority                 = first.priority();
 
-		// queue is empty, assume new agent
-		if (size == 0) {
+		for (final Task<T> task : tasks) {
 
-			return true;
+			for (final T obj : task.getWorkObjects()) {
+				merged.addNode(obj);
+			}
 
+			priority = Math.max(priority, task.priority());
 		}
 
-		return size < maxQueueSize;
+		merged.setPriority(priority);
+
+		return merged;
 	}
 
 	public boolean createEnclosingTransaction() {
@@ -227,7 +225,7 @@ public abstract class Agent<T> extends Thread implements StatusInfo {
 	}
 
 	public int getMaxAgents() {
-		return maxAgents;
+		return AgentService.getMaxWorkers(getSupportedTaskType());
 	}
 
 	// ----- interface StatusInfo -----
@@ -255,10 +253,97 @@ public abstract class Agent<T> extends Thread implements StatusInfo {
 	}
 
 	public final boolean isSuspended() {
-		return suspended.get();
+		return suspended;
 	}
 
 	public final boolean isAcceptingTasks() {
 		return acceptingTasks.get();
 	}
+
+	// ----- private methods -----
+	private int getBatchSize() {
+
+		if (supportsBatching()) {
+			return Math.max(1, Settings.AgentBatchSize.getValue());
+		}
+
+		return 1;
+	}
+
+	private Map<String, List<Task<T>>> groupTasks(final List<Task<T>> tasks) {
+
+		final Map<String, List<Task<T>>> groups = new LinkedHashMap<>();
+
+		for (final Task<T> task : tasks) {
+
+			final Principal user = task.getUser();
+			final String key     = task.getType() + "/" + (user != null ? user.getUuid() : "");
+
+			groups.computeIfAbsent(key, k -> new ArrayList<>()).add(task);
+		}
+
+		return groups;
+	}
+
+	private ReturnValue process(final Task<T> task, final int count) {
+
+		final long startTime = System.currentTimeMillis();
+		ReturnValue ret      = null;
+
+		// only execute process if Service layer is ready
+		// (and not shutting down right now)
+		if (Services.getInstance().isInitialized()) {
+
+			if (createEnclosingTransaction()) {
+
+				try (final Tx tx = StructrApp.getInstance().tx()) {
+
+					ret = processTask(task);
+					tx.success();
+
+				} catch (Throwable t) {
+
+					// task processing failed..
+					logger.error("Processing task {} failed: {}", task.getType(), t.getMessage());
+				}
+
+			} else {
+
+				try {
+
+					ret = processTask(task);
+
+				} catch (Throwable t) {
+
+					// task processing failed..
+					logger.error("Processing task {} failed: {}", task.getType(), t.getMessage());
+				}
+			}
+		}
+
+		final long duration = System.currentTimeMillis() - startTime;
+
+		// calc. average execution time
+		averageExecutionTime = averageExecutionTime > 0 ? (averageExecutionTime + duration) / 2 : duration;
+
+		agentService.notifyTasksProcessed(this, count, duration, ret);
+
+		return ret;
+	}
+
+	private void retry(final Task<T> task, final ReturnValue ret) {
+
+		if (ret != null && Retry.equals(ret) && task.getRetryCount() < 2) {
+
+			// wait some time
+			try { Thread.sleep(2000); } catch (InterruptedException ex) {}
+
+			task.incrementRetryCount();
+			agentService.processTask(task);
+
+		} else {
+
+			agentService.notifyTaskFinished(task);
+		}
+	}
 }
@@ -18,19 +18,28 @@
  */
 package org.structr.agent;
 
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Constructor;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
-import java.util.Queue;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.structr.agent.TaskJournal.PersistentTask;
+import org.structr.api.config.Setting;
+import org.structr.api.config.Settings;
 import org.structr.api.service.Command;
 import org.structr.api.service.RunnableService;
 import org.structr.api.service.StructrServices;
@@ -40,18 +49,36 @@ import org.structr.schema.ConfigurationProvider;
 /**
  * The agent service main class.
  *
+ * Tasks are kept in a priority queue per task type, each queue is served
+ * by a pool of agents that block on the queue until a task is available.
+ * New agents are started when tasks are waiting and no idle agent is
+ * left, up to the configured number of workers per task type. Agents
+ * that did not receive a task for some time are stopped.
  *
+ * The number of workers can be configured for all task types with the
+ * setting <code>application.agents.workers</code> and for a single task
+ * type with <code>application.agents.&lt;TaskClass&gt;.workers</code>,
+ * e.g. <code>application.agents.FulltextIndexingTask.workers</code>.
+ *
+ * Tasks without a user whose work objects are strings (e.g. the UUIDs of
+ * files to index) are written to a journal on disk when they are enqueued
+ * and removed from it when they have been processed. Tasks that are still
+ * in the journal are submitted again after the next start.
  */
 public class AgentService extends Thread implements RunnableService {
 
-	private static final Logger logger = LoggerFactory.getLogger(AgentService.class.getName());
+	private static final Logger logger           = LoggerFactory.getLogger(AgentService.class.getName());
+	private static final String PERSISTENCE_FILE = "agent-tasks.journal";
+	private static final long IDLE_TIMEOUT       = 10000L;
 
-	private final int maxAgents                          = 10;    // TODO: make configurable
 	private final Map<String, List<Agent>> runningAgents = new ConcurrentHashMap<>(10, 0.9f, 8);
 	private final Map<String, Class> agentClassCache     = new ConcurrentHashMap<>(10, 0.9f, 8);
-	private final Queue<Task> taskQueue                  = new ConcurrentLinkedQueue<>();
+	private final Map<String, TaskPool> taskPools        = new ConcurrentHashMap<>(10, 0.9f, 8);
+	private final AtomicLong sequence                    = new AtomicLong();
+	private Map<Long, PersistentTask> restoredTasks      = null;
 	private Set<Class> supportedCommands                 = null;
-	private boolean run                                  = false;
+	private volatile TaskJournal journal                 = null;
+	private volatile boolean run                         = false;
 
 	public AgentService() {
 
@@ -64,11 +91,18 @@ public class AgentService extends Thread implements RunnableService {
 
 	public void processTask(Task task) {
 
-		synchronized (taskQueue) {
+		final TaskJournal _journal = journal;
+		if (_journal != null && isPersistable(task)) {
 
-			taskQueue.add(task);
-			logger.debug("Task {} added to task queue", task);
+			_journal.add(task);
 		}
+
+		final TaskPool pool = getTaskPool(task.getClass());
+
+		pool.add(new QueuedTask(task, sequence.incrementAndGet()));
+		logger.debug("Task {} added to task queue", task);
+
+		startAgentIfNeeded(pool, task);
 	}
 
 	@Override
@@ -76,35 +110,225 @@ public class AgentService extends Thread implements RunnableService {
 
 		logger.info("AgentService started");
 
-		while (run) {
+		if (restoredTasks != null && !restoredTasks.isEmpty()) {
+
+			// wait for the service layer to be ready before we submit the
+			// tasks that were pending when the service was stopped
+			try {
 
-			Task nextTask = taskQueue.poll();
-			if (nextTask != null) {
+				Services.getInstance().waitForInitialization();
 
-				assignNextAgentForTask(nextTask);
+			} catch (InterruptedException iex) {
+				return;
 			}
 
-			// let others act
-			try { Thread.sleep(10); } catch(Throwable ignore) {}
+			if (run) {
+				restoreTasks();
+			}
 		}
 	}
 
 	public void notifyAgentStart(Agent agent) {
 
-		List<Agent> agents = getRunningAgentsForTask(agent.getSupportedTaskType());
+		final TaskPool pool = getTaskPool(agent.getSupportedTaskType());
+
+		synchronized (pool) {
 
-		synchronized (agents) {
-			agents.add(agent);
+			if (!pool.agents.contains(agent)) {
+				pool.agents.add(agent);
+			}
 		}
 	}
 
 	public void notifyAgentStop(Agent agent) {
 
-		List<Agent> agents = getRunningAgentsForTask(agent.getSupportedTaskType());
+		final TaskPool pool = getTaskPool(agent.getSupportedTaskType());
+
+		synchronized (pool) {
+			pool.agents.remove(agent);
+		}
+
+		// an agent that was killed may leave tasks behind
+		final QueuedTask next = pool.queue.peek();
+		if (run && next != null) {
+
+			startAgentIfNeeded(pool, next.task);
+		}
+	}
+
+	/**
+	 * Waits for the next tasks for the given agent and returns up to
+	 * <code>maxCount</code> tasks, ordered by priority. Returns null if no
+	 * task arrived within the idle timeout or if the agent was interrupted,
+	 * in which case the agent is removed from its pool and must terminate.
+	 *
+	 * @param agent
+	 * @param maxCount
+	 *
+	 * @return the next tasks or null
+	 */
+	public List<Task> getNextTasks(final Agent agent, final int maxCount) {
+
+		final TaskPool pool                = getTaskPool(agent.getSupportedTaskType());
+		final List<QueuedTask> queuedTasks = new ArrayList<>(maxCount);
+		boolean interrupted                = false;
+		QueuedTask next                    = null;
+
+		synchronized (pool) {
+			pool.idle++;
+		}
+
+		try {
+
+			if (run) {
+				next = pool.queue.poll(IDLE_TIMEOUT, TimeUnit.MILLISECONDS);
+			}
+
+		} catch (InterruptedException iex) {
+
+			interrupted = true;
+		}
+
+		synchronized (pool) {
+
+			pool.idle--;
+
+			// check again while holding the lock so that a task that
+			// is added right now is not left without an agent
+			if (next == null && (interrupted || !run || (next = pool.queue.poll()) == null)) {
+
+				pool.agents.remove(agent);
+			}
+		}
+
+		if (next == null) {
+			return null;
+		}
+
+		queuedTasks.add(next);
+
+		if (maxCount > 1) {
+			pool.queue.drainTo(queuedTasks, maxCount - 1);
+		}
+
+		final List<Task> tasks = new ArrayList<>(queuedTasks.size());
+		final long now         = System.currentTimeMillis();
+
+		for (final QueuedTask queuedTask : queuedTasks) {
+
+			final long waitTime = now - queuedTask.enqueueTime;
+
+			pool.totalWaitTime.addAndGet(waitTime);
+			pool.maxWaitTime.accumulateAndGet(waitTime, Math::max);
+
+			tasks.add(queuedTask.task);
+		}
+
+		pool.dequeued.addAndGet(tasks.size());
+
+		return tasks;
+	}
+
+	/**
+	 * Records the result of the processing of the given number of tasks.
+	 *
+	 * @param agent
+	 * @param count
+	 * @param duration processing time in milliseconds
+	 * @param result
+	 */
+	/**
+	 * Removes the given task from the journal of pending tasks. Must be
+	 * called when the processing of the task has finished and the task
+	 * is not submitted again.
+	 *
+	 * @param task
+	 */
+	public void notifyTaskFinished(final Task task) {
+
+		final TaskJournal _journal = journal;
+		if (_journal != null) {
+
+			_journal.remove(task);
+		}
+	}
+
+	public void notifyTasksProcessed(final Agent agent, final int count, final long duration, final ReturnValue result) {
+
+		final TaskPool pool = getTaskPool(agent.getSupportedTaskType());
+
+		pool.processingTime.addAndGet(duration);
+		pool.batches.incrementAndGet();
+
+		if (result == null || ReturnValue.Abort.equals(result)) {
+
+			pool.failed.addAndGet(count);
+
+		} else if (ReturnValue.Retry.equals(result)) {
+
+			pool.retried.addAndGet(count);
+
+		} else {
+
+			pool.processed.addAndGet(count);
+		}
+	}
+
+	/**
+	 * Returns the number of agents that may process tasks of the given
+	 * type at the same time.
+	 *
+	 * @param taskClass
+	 *
+	 * @return the number of workers
+	 */
+	public static int getMaxWorkers(final Class taskClass) {
+
+		final Setting<Integer> setting = Settings.getIntegerSetting("application.agents", taskClass.getSimpleName(), "workers");
+		if (setting != null && setting.getValue() != null) {
+
+			return Math.max(1, setting.getValue());
+		}
+
+		return Math.max(1, Settings.AgentWorkers.getValue());
+	}
+
+	/**
+	 * Returns queue and processing statistics for each task type.
+	 *
+	 * @return statistics
+	 */
+	public Map<String, Map<String, Object>> getStatistics() {
+
+		final Map<String, Map<String, Object>> statistics = new LinkedHashMap<>();
+
+		for (final TaskPool pool : taskPools.values()) {
+
+			final Map<String, Object> data = new LinkedHashMap<>();
+			final long dequeued            = pool.dequeued.get();
+			final long batches             = pool.batches.get();
+
+			synchronized (pool) {
+
+				data.put("workers",               pool.agents.size());
+				data.put("idle",                  pool.idle);
+			}
 
-		synchronized (agents) {
-			agents.remove(agent);
+			data.put("maxWorkers",            getMaxWorkers(pool.taskClass));
+			data.put("queued",                pool.queue.size());
+			data.put("submitted",             pool.submitted.get());
+			data.put("processed",             pool.processed.get());
+			data.put("failed",                pool.failed.get());
+			data.put("retried",               pool.retried.get());
+			data.put("batches",               batches);
+			data.put("averageWaitTime",       dequeued > 0 ? pool.totalWaitTime.get() / dequeued : 0L);
+			data.put("maxWaitTime",           pool.maxWaitTime.get());
+			data.put("averageProcessingTime", batches > 0 ? pool.processingTime.get() / batches : 0L);
+
+			statistics.put(pool.taskClass.getName(), data);
 		}
+
+		return statistics;
 	}
 
 	public Map<String, Class<? extends Agent>> getAgents() {
@@ -137,13 +361,39 @@ public class AgentService extends Thread implements RunnableService {
 	@Override
 	public void startService() throws Exception {
 
+		if (Settings.AgentPersistTasks.getValue()) {
+
+			final TaskJournal _journal = new TaskJournal(new File(Settings.getBasePath() + PERSISTENCE_FILE).toPath());
+
+			try {
+
+				restoredTasks = _journal.open();
+				journal       = _journal;
+
+			} catch (IOException ioex) {
+
+				logger.warn("Unable to open agent task journal, pending tasks will not be stored: {}", ioex.getMessage());
+			}
+		}
+
 		run = true;
 		this.start();
 	}
 
 	@Override
 	public void stopService() {
+
 		run = false;
+
+		// stop waiting for the service layer
+		this.interrupt();
+
+		final TaskJournal _journal = journal;
+		if (_journal != null) {
+
+			journal = null;
+			_journal.close();
+		}
 	}
 
 	@Override
@@ -151,55 +401,42 @@ public class AgentService extends Thread implements RunnableService {
 		return true;
 	}
 
-	private void assignNextAgentForTask(Task nextTask) {
+	// ----- private methods -----
+	private void startAgentIfNeeded(final TaskPool pool, final Task task) {
 
-		Class taskClass    = nextTask.getClass();
-		List<Agent> agents = getRunningAgentsForTask(taskClass);
+		synchronized (pool) {
 
-		// need to synchronize on agents
-		synchronized (agents) {
+			// all agents are busy and there are still agents left
+			if (pool.queue.size() > pool.idle && pool.agents.size() < getMaxWorkers(pool.taskClass)) {
 
-			// find next free agent (agents should be sorted by load, so one
-			// of the first should do..
-			for (Agent agent : agents) {
+				final Agent agent = createAgent(task);
+				if (agent != null) {
 
-				if (agent.assignTask(nextTask)) {
+					pool.agents.add(agent);
+					agent.start();
 
-					// ok, task is assigned
-					logger.debug("Task assigned to agent {}", agent.getName());
+					logger.debug("Started agent {} for task type {}", agent.getName(), pool.taskClass.getSimpleName());
 
-					return;
-				}
-			}
-		}
+				} else if (pool.agents.isEmpty()) {
 
-		// FIXME: find better solution for hard limit here!
-		if (agents.size() < maxAgents) {
+					final List<QueuedTask> discarded = new ArrayList<>();
 
-			// if we get here, task was not assigned to any agent, need to
-			// create a new one.
-			Agent agent = createAgent(nextTask);
+					pool.queue.drainTo(discarded);
 
-			if ((agent != null) && agent.assignTask(nextTask)) {
-				agent.start();
-			} else {
+					logger.warn("No agent found for task type {}, discarding {} task(s)", pool.taskClass.getName(), discarded.size());
 
-				// re-add task..
-				synchronized (taskQueue) {
-					taskQueue.add(nextTask);
+					for (final QueuedTask queuedTask : discarded) {
+						notifyTaskFinished(queuedTask.task);
+					}
 				}
 			}
-		} else {
-
-			logger.debug("Overall agents limit reached, re-queueing task");
-
-			// re-add task..
-			synchronized (taskQueue) {
-				taskQueue.add(nextTask);
-			}
 		}
 	}
 
+	private TaskPool getTaskPool(final Class taskClass) {
+		return taskPools.computeIfAbsent(taskClass.getName(), k -> new TaskPool(taskClass, getRunningAgentsForTask(taskClass)));
+	}
+
 	/**
 	 * Creates a new agent for the given Task. Note that the agent must be
 	 * started manually after creation.
@@ -223,7 +460,7 @@ public class AgentService extends Thread implements RunnableService {
 
 		} catch (Exception ex) {
 
-			// TODO: handle exception etc..
+			logger.warn("Unable to create agent for task {}: {}", forTask.getType(), ex.getMessage());
 		}
 
 		return (agent);
@@ -279,7 +516,21 @@ public class AgentService extends Thread implements RunnableService {
 	 * @return tasks
 	 */
 	public Collection<Task> getTaskQueue() {
-		return (taskQueue);
+
+		final List<QueuedTask> queuedTasks = new ArrayList<>();
+		final List<Task> tasks             = new ArrayList<>();
+
+		for (final TaskPool pool : taskPools.values()) {
+			queuedTasks.addAll(pool.queue);
+		}
+
+		Collections.sort(queuedTasks);
+
+		for (final QueuedTask queuedTask : queuedTasks) {
+			tasks.add(queuedTask.task);
+		}
+
+		return tasks;
 	}
 
 	/**
@@ -291,18 +542,76 @@ public class AgentService extends Thread implements RunnableService {
 	}
 
 	private List<Agent> getRunningAgentsForTask(Class taskClass) {
+		return runningAgents.computeIfAbsent(taskClass.getName(), k -> Collections.synchronizedList(new LinkedList<>()));
+	}
+
+	private void restoreTasks() {
+
+		int count = 0;
+
+		for (final Map.Entry<Long, PersistentTask> entry : restoredTasks.entrySet()) {
+
+			final PersistentTask pendingTask = entry.getValue();
+
+			try {
 
-		List<Agent> agents = runningAgents.get(taskClass.getName());
+				final Constructor constructor = Class.forName(pendingTask.type).getConstructor(String.class);
 
-		if (agents == null) {
+				for (final String workObject : pendingTask.workObjects) {
 
-			agents = Collections.synchronizedList(new LinkedList<>());
+					final Task task = (Task)constructor.newInstance(workObject);
 
-			// Hashtable is synchronized
-			runningAgents.put(taskClass.getName(), agents);
+					if (task instanceof AbstractTask) {
+						((AbstractTask)task).setPriority(pendingTask.priority);
+					}
+
+					processTask(task);
+					count++;
+				}
+
+			} catch (Throwable t) {
+
+				logger.warn("Unable to restore agent task {}: {}", pendingTask.type, t.getMessage());
+			}
+
+			// the restored tasks are in the journal again
+			final TaskJournal _journal = journal;
+			if (_journal != null) {
+
+				_journal.remove(entry.getKey());
+			}
 		}
 
-		return (agents);
+		restoredTasks = null;
+
+		logger.info("Restored {} pending agent tasks", count);
+	}
+
+	/**
+	 * Only tasks that can be re-created from their work objects alone
+	 * can be persisted.
+	 */
+	private boolean isPersistable(final Task task) {
+
+		if (task.getUser() != null || task.getWorkObjects() == null || task.getWorkObjects().isEmpty()) {
+			return false;
+		}
+
+		for (final Object workObject : task.getWorkObjects()) {
+
+			if (!(workObject instanceof String)) {
+				return false;
+			}
+		}
+
+		try {
+
+			task.getClass().getConstructor(String.class);
+			return true;
+
+		} catch (NoSuchMethodException nsmex) {}
+
+		return false;
 	}
 
 	@Override
@@ -320,4 +629,60 @@ public class AgentService extends Thread implements RunnableService {
 	public String getModuleName() {
 		return "agents";
 	}
+
+	// ----- nested classes -----
+	private static class QueuedTask implements Comparable<QueuedTask> {
+
+		private final long enqueueTime = System.currentTimeMillis();
+		private Task task              = null;
+		private long sequence          = 0L;
+
+		public QueuedTask(final Task task, final long sequence) {
+
+			this.task     = task;
+			this.sequence = sequence;
+		}
+
+		@Override
+		public int compareTo(final QueuedTask other) {
+
+			// higher priority first, FIFO within the same priority
+			final int result = Integer.compare(other.task.priority(), task.priority());
+			if (result == 0) {
+
+				return Long.compare(sequence, other.sequence);
+			}
+
+			return result;
+		}
+	}
+
+	private static class TaskPool {
+
+		private final PriorityBlockingQueue<QueuedTask> queue = new PriorityBlockingQueue<>();
+		private final AtomicLong submitted                    = new AtomicLong();
+		private final AtomicLong dequeued                     = new AtomicLong();
+		private final AtomicLong processed                    = new AtomicLong();
+		private final AtomicLong failed                       = new AtomicLong();
+		private final AtomicLong retried                      = new AtomicLong();
+		private final AtomicLong batches                      = new AtomicLong();
+		private final AtomicLong totalWaitTime                = new AtomicLong();
+		private final AtomicLong maxWaitTime                  = new AtomicLong();
+		private final AtomicLong processingTime               = new AtomicLong();
+		private List<Agent> agents                            = null;
+		private Class taskClass                               = null;
+		private int idle                                      = 0;
+
+		public TaskPool(final Class taskClass, final List<Agent> agents) {
+
+			this.taskClass = taskClass;
+			this.agents    = agents;
+		}
+
+		public void add(final QueuedTask task) {
+
+			queue.add(task);
+			submitted.incrementAndGet();
+		}
+	}
 }
@@ -0,0 +1,252 @@
+/**
+ * Copyright (C) 2010-2018 Structr GmbH
+ *
+ * This file is part of Structr <http://structr.org>.
+ *
+ * Structr is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Structr is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.structr.agent;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Append-only journal of the pending tasks of the {@link AgentService}.
+ *
+ * A task is written to the journal when it is enqueued and marked as done
+ * when its processing has finished, so the tasks that were pending when
+ * Structr was stopped (or terminated) can be submitted again after the
+ * next start. Each line is either <code>+&lt;id&gt; &lt;task&gt;</code>
+ * or <code>-&lt;id&gt;</code>. The journal is rewritten with the pending
+ * tasks only when it is opened and when it contains more finished than
+ * pending tasks.
+ */
+class TaskJournal {
+
+	private static final Logger logger        = LoggerFactory.getLogger(TaskJournal.class.getName());
+	private static final int COMPACTION_LIMIT = 10000;
+
+	private final Map<Long, PersistentTask> entries = new LinkedHashMap<>();
+	private final Map<Task, Long> tasks             = new IdentityHashMap<>();
+	private final Gson gson                         = new GsonBuilder().create();
+	private Writer writer                           = null;
+	private Path file                               = null;
+	private long sequence                           = 0L;
+	private int finished                            = 0;
+
+	TaskJournal(final Path file) {
+		this.file = file;
+	}
+
+	/**
+	 * Reads the pending tasks from the journal and opens it for writing.
+	 * The returned tasks stay in the journal until they are removed with
+	 * {@link #remove(long)}.
+	 *
+	 * @return the pending tasks, by journal ID
+	 * @throws IOException
+	 */
+	synchronized Map<Long, PersistentTask> open() throws IOException {
+
+		if (Files.exists(file)) {
+
+			try (final BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+
+				String line = null;
+
+				while ((line = reader.readLine()) != null) {
+
+					try {
+
+						if (line.startsWith("+")) {
+
+							final int pos = line.indexOf(' ');
+							final long id = Long.parseLong(line.substring(1, pos));
+
+							entries.put(id, gson.fromJson(line.substring(pos + 1), PersistentTask.class));
+							sequence = Math.max(sequence, id);
+
+						} else if (line.startsWith("-")) {
+
+							entries.remove(Long.parseLong(line.substring(1)));
+						}
+
+					} catch (Throwable t) {
+
+						// the last line may be incomplete if Structr was terminated
+						logger.warn("Ignoring invalid entry in agent task journal {}", file);
+					}
+				}
+			}
+		}
+
+		compact();
+
+		return new LinkedHashMap<>(entries);
+	}
+
+	/**
+	 * Writes the given task to the journal. A task that is already in the
+	 * journal (e.g. a task that is retried) is not written again.
+	 *
+	 * @param task
+	 */
+	synchronized void add(final Task task) {
+
+		if (writer != null && !tasks.containsKey(task)) {
+
+			final PersistentTask entry = new PersistentTask(task);
+			final long id              = ++sequence;
+
+			entries.put(id, entry);
+			tasks.put(task, id);
+
+			write("+" + id + " " + gson.toJson(entry));
+		}
+	}
+
+	/**
+	 * Marks the given task as done.
+	 *
+	 * @param task
+	 */
+	synchronized void remove(final Task task) {
+
+		final Long id = tasks.remove(task);
+		if (id != null) {
+
+			remove(id);
+		}
+	}
+
+	/**
+	 * Marks the task with the given journal ID as done.
+	 *
+	 * @param id
+	 */
+	synchronized void remove(final long id) {
+
+		if (writer != null && entries.remove(id) != null) {
+
+			write("-" + id);
+
+			if (++finished > COMPACTION_LIMIT && finished > entries.size()) {
+
+				try {
+
+					compact();
+
+				} catch (IOException ioex) {
+
+					logger.warn("Unable to compact agent task journal {}: {}", file, ioex.getMessage());
+				}
+			}
+		}
+	}
+
+	synchronized void close() {
+
+		if (writer != null) {
+
+			try {
+
+				writer.close();
+
+				if (entries.isEmpty()) {
+					Files.deleteIfExists(file);
+				}
+
+			} catch (IOException ioex) {
+
+				logger.warn("Unable to close agent task journal {}: {}", file, ioex.getMessage());
+			}
+
+			writer = null;
+		}
+	}
+
+	// ----- private methods -----
+	private void write(final String line) {
+
+		try {
+
+			writer.write(line);
+			writer.write('\n');
+			writer.flush();
+
+		} catch (IOException ioex) {
+
+			logger.warn("Unable to write to agent task journal {}: {}", file, ioex.getMessage());
+		}
+	}
+
+	/**
+	 * Replaces the journal with a new file that contains only the pending
+	 * tasks, and opens the new file for writing.
+	 */
+	private void compact() throws IOException {
+
+		final Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+
+		if (writer != null) {
+
+			writer.close();
+			writer = null;
+		}
+
+		try (final Writer tmpWriter = Files.newBufferedWriter(tmp, StandardCharsets.UTF_8)) {
+
+			for (final Map.Entry<Long, PersistentTask> entry : entries.entrySet()) {
+
+				tmpWriter.write("+" + entry.getKey() + " " + gson.toJson(entry.getValue()));
+				tmpWriter.write('\n');
+			}
+		}
+
+		Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+		writer   = Files.newBufferedWriter(file, StandardCharsets.UTF_8, StandardOpenOption.APPEND);
+		finished = 0;
+	}
+
+	// ----- nested classes -----
+	static class PersistentTask {
+
+		List<String> workObjects = null;
+		String type              = null;
+		int priority             = 0;
+
+		PersistentTask(final Task task) {
+
+			this.type        = task.getClass().getName();
+			this.priority    = task.priority();
+			this.workObjects = new ArrayList<>(task.getWorkObjects());
+		}
+	}
+}
@@ -0,0 +1,361 @@
+/**
+ * Copyright (C) 2010-2018 Structr GmbH
+ *
+ * This file is part of Structr <http://structr.org>.
+ *
+ * Structr is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Structr is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.structr.common;
+
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import org.structr.api.config.Settings;
+import org.structr.api.util.Cachable;
+import org.structr.api.util.ConcurrentFixedSizeCache;
+import org.structr.core.entity.Principal;
+
+/**
+ * Bounded, thread-safe cache for the results of domain-based permission
+ * resolution (see AbstractNode#isGranted).
+ *
+ * Each cached result remembers the IDs of the nodes that were examined
+ * while it was computed (the nodes on the permission propagation paths,
+ * the accessing principal and its groups). A modification of one of
+ * those nodes removes only the results that depend on it.
+ */
+public class PermissionResolutionCache {
+
+	private static final ConcurrentFixedSizeCache<CacheKey, CacheEntry> cache = new ConcurrentFixedSizeCache<>(Settings.PermissionCacheSize.getValue());
+	private static final ConcurrentFixedSizeCache<Long, Modification> recent  = new ConcurrentFixedSizeCache<>(10000);
+	private static final Map<Long, Set<CacheKey>> dependents                  = new ConcurrentHashMap<>();
+	private static final AtomicLong sequence                                  = new AtomicLong();
+	private static final AtomicLong hits                                      = new AtomicLong();
+	private static final AtomicLong misses                                    = new AtomicLong();
+	private static final AtomicLong evictions                                 = new AtomicLong();
+	private static final AtomicLong invalidations                             = new AtomicLong();
+	private static volatile long forgottenSequence                            = 0L;
+
+	/**
+	 * Starts a new permission resolution for the given principal. The
+	 * principal and all of its groups are registered as dependencies
+	 * of all results stored during this resolution.
+	 *
+	 * @param principal the accessing principal
+	 * @return the resolution context
+	 */
+	public static Resolution begin(final Principal principal) {
+
+		final Resolution resolution = new Resolution(sequence.get());
+		final Queue<Principal> queue = new LinkedList<>();
+
+		queue.add(principal);
+
+		while (!queue.isEmpty()) {
+
+			final Principal current = queue.poll();
+
+			if (resolution.dependencies.add(current.getId())) {
+
+				queue.addAll(current.getParents());
+			}
+		}
+
+		return resolution;
+	}
+
+	public static Boolean get(final Resolution resolution, final long nodeId, final long principalId, final Permission permission) {
+
+		resolution.dependencies.add(nodeId);
+
+		final CacheEntry entry = cache.get(new CacheKey(nodeId, principalId));
+		if (entry != null) {
+
+			// results that are derived from this entry depend on the same nodes
+			resolution.dependencies.addAll(entry.dependencies);
+
+			hits.incrementAndGet();
+
+			return entry.get(permission);
+		}
+
+		misses.incrementAndGet();
+
+		return null;
+	}
+
+	public static void store(final Resolution resolution, final long nodeId, final long principalId, final Permission permission, final boolean value) {
+
+		resolution.dependencies.add(nodeId);
+
+		// do not store results if one of the examined nodes was modified
+		// while the permissions were being resolved
+		if (isOutdated(resolution)) {
+			return;
+		}
+
+		final CacheKey key = new CacheKey(nodeId, principalId);
+		CacheEntry entry   = cache.get(key);
+
+		if (entry == null) {
+
+			final CacheEntry newEntry = new CacheEntry(key);
+
+			entry = cache.putIfAbsent(key, newEntry);
+			if (entry == null) {
+
+				entry = newEntry;
+			}
+		}
+
+		entry.set(permission, value);
+
+		for (final Long dependency : resolution.dependencies) {
+
+			if (entry.dependencies.add(dependency)) {
+
+				dependents.compute(dependency, (k, v) -> {
+
+					final Set<CacheKey> set = v != null ? v : ConcurrentHashMap.newKeySet();
+					set.add(key);
+
+					return set;
+				});
+			}
+		}
+
+		// an invalidation that ran between the check above and the
+		// registration of the dependencies did not see this entry
+		if (isOutdated(resolution)) {
+
+			cache.remove(key);
+			unregister(entry);
+		}
+	}
+
+	/**
+	 * Removes all cached results that depend on the node with the given ID.
+	 *
+	 * @param nodeId the ID of the modified node
+	 */
+	public static void invalidateForId(final long nodeId) {
+
+		final long current = sequence.incrementAndGet();
+
+		recent.put(nodeId, new Modification(current));
+
+		final Set<CacheKey> keys = dependents.remove(nodeId);
+		if (keys != null) {
+
+			for (final CacheKey key : keys) {
+
+				final CacheEntry entry = cache.get(key);
+				if (entry != null) {
+
+					cache.remove(key);
+					unregister(entry);
+
+					invalidations.incrementAndGet();
+				}
+			}
+		}
+	}
+
+	public static void invalidate() {
+
+		forgottenSequence = sequence.incrementAndGet();
+
+		cache.clear();
+		recent.clear();
+		dependents.clear();
+	}
+
+	public static Map<String, Long> getStatistics() {
+
+		final Map<String, Long> statistics = new LinkedHashMap<>();
+
+		statistics.put("size",          Long.valueOf(cache.size()));
+		statistics.put("hits",          hits.get());
+		statistics.put("misses",        misses.get());
+		statistics.put("evictions",     evictions.get());
+		statistics.put("invalidations", invalidations.get());
+
+		return statistics;
+	}
+
+	// ----- private methods -----
+	private static boolean isOutdated(final Resolution resolution) {
+
+		if (resolution.startSequence < forgottenSequence) {
+
+			// modifications that happened during the resolution
+			// may have been evicted from the list of recent
+			// modifications already, so we cannot be sure
+			return true;
+		}
+
+		for (final Long dependency : resolution.dependencies) {
+
+			final Modification modification = recent.get(dependency);
+			if (modification != null && modification.sequence > resolution.startSequence) {
+
+				return true;
+			}
+		}
+
+		return false;
+	}
+
+	private static void unregister(final CacheEntry entry) {
+
+		for (final Long dependency : entry.dependencies) {
+
+			dependents.computeIfPresent(dependency, (k, v) -> {
+
+				v.remove(entry.key);
+
+				return v.isEmpty() ? null : v;
+			});
+		}
+	}
+
+	// ----- nested classes -----
+	public static class Resolution {
+
+		private final Set<Long> dependencies = new HashSet<>();
+		private long startSequence           = 0L;
+
+		private Resolution(final long startSequence) {
+			this.startSequence = startSequence;
+		}
+
+		public void addDependency(final long nodeId) {
+			dependencies.add(nodeId);
+		}
+	}
+
+	private static class CacheKey {
+
+		private long nodeId      = 0L;
+		private long principalId = 0L;
+
+		public CacheKey(final long nodeId, final long principalId) {
+
+			this.nodeId      = nodeId;
+			this.principalId = principalId;
+		}
+
+		@Override
+		public int hashCode() {
+			return Long.hashCode(nodeId) * 31 + Long.hashCode(principalId);
+		}
+
+		@Override
+		public boolean equals(final Object other) {
+
+			if (other instanceof CacheKey) {
+
+				final CacheKey key = (CacheKey)other;
+
+				return key.nodeId == nodeId && key.principalId == principalId;
+			}
+
+			return false;
+		}
+	}
+
+	private static class CacheEntry implements Cachable {
+
+		private final Set<Long> dependencies = ConcurrentHashMap.newKeySet();
+		private CacheKey key                 = null;
+		private volatile Boolean read          = false;
+		private volatile Boolean write         = false;
+		private volatile Boolean delete        = false;
+		private volatile Boolean accessControl = false;
+
+		public CacheEntry(final CacheKey key) {
+			this.key = key;
+		}
+
+		@Override
+		public void onRemoveFromCache() {
+
+			unregister(this);
+			evictions.incrementAndGet();
+		}
+
+		public Boolean get(final Permission permission) {
+
+			if (permission.equals(Permission.read)) {
+				return read;
+			}
+
+			if (permission.equals(Permission.write)) {
+				return write;
+			}
+
+			if (permission.equals(Permission.delete)) {
+				return delete;
+			}
+
+			if (permission.equals(Permission.accessControl)) {
+				return accessControl;
+			}
+
+			return null;
+		}
+
+		public void set(final Permission permission, final boolean value) {
+
+			if (permission.equals(Permission.read) && (read == null || read == false)) {
+				read = value;
+			}
+
+			if (permission.equals(Permission.write) && (write == null || write == false)) {
+				write = value;
+			}
+
+			if (permission.equals(Permission.delete) && (delete == null || delete == false)) {
+				delete = value;
+			}
+
+			if (permission.equals(Permission.accessControl) && (accessControl == null || accessControl == false)) {
+				accessControl = value;
+			}
+		}
+	}
+
+	private static class Modification implements Cachable {
+
+		private long sequence = 0L;
+
+		public Modification(final long sequence) {
+			this.sequence = sequence;
+		}
+
+		@Override
+		public void onRemoveFromCache() {
+
+			// remember that we lost track of this modification
+			if (sequence > forgottenSequence) {
+				forgottenSequence = sequence;
+			}
+		}
+	}
+}
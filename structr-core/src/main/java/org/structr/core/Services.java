@@ -77,9 +77,10 @@ public class Services implements StructrServices {
 	private final Map<Class, Service> serviceCache             = new ConcurrentHashMap<>(10, 0.9f, 8);
 	private final Set<Class> registeredServiceClasses          = new LinkedHashSet<>();
 	private final Set<String> configuredServiceClasses         = new LinkedHashSet<>();
+	private final Object initializationLock                    = new Object();
 	private LicenseManager licenseManager                      = null;
 	private ConfigurationProvider configuration                = null;
-	private boolean initializationDone                         = false;
+	private volatile boolean initializationDone                = false;
 	private boolean overridingSchemaTypesAllowed               = true;
 	private boolean shutdownDone                               = false;
 	private String configuredServiceNames                      = null;
@@ -298,7 +299,11 @@ public class Services implements StructrServices {
 
 		setOverridingSchemaTypesAllowed(false);
 
-		initializationDone = true;
+		synchronized (initializationLock) {
+
+			initializationDone = true;
+			initializationLock.notifyAll();
+		}
 	}
 
 	@Override
@@ -319,6 +324,21 @@ public class Services implements StructrServices {
 		return initializationDone;
 	}
 
+	/**
+	 * Blocks until the service layer is initialized.
+	 *
+	 * @throws InterruptedException
+	 */
+	public void waitForInitialization() throws InterruptedException {
+
+		synchronized (initializationLock) {
+
+			while (!initializationDone) {
+				initializationLock.wait();
+			}
+		}
+	}
+
 	public boolean isOverridingSchemaTypesAllowed() {
 		return overridingSchemaTypesAllowed;
 	}
@@ -37,6 +37,19 @@ public interface Query<T extends GraphObject> extends Iterable<T> {
 
 	public Result<T> getResult() throws FrameworkException;
 	public List<T> getAsList() throws FrameworkException;
+
+	/**
+	 * Returns the results of this query as an iterable that instantiates
+	 * the results while it is consumed, reading them from the database
+	 * page by page. Queries that need to be evaluated in memory (graph
+	 * sources, empty fields, spatial search or permissions that cannot
+	 * be resolved by the database) return the complete list instead.
+	 * Paging is ignored.
+	 *
+	 * @return the results
+	 * @throws FrameworkException
+	 */
+	public Iterable<T> getResultStream() throws FrameworkException;
 	public T getFirst() throws FrameworkException;
 
 	// ----- builder methods -----
@@ -0,0 +1,180 @@
+/**
+ * Copyright (C) 2010-2018 Structr GmbH
+ *
+ * This file is part of Structr <http://structr.org>.
+ *
+ * Structr is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Structr is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.structr.core.auth;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import org.apache.commons.lang3.ArrayUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.structr.common.error.FrameworkException;
+import org.structr.core.Services;
+import org.structr.core.app.StructrApp;
+import org.structr.core.entity.Principal;
+import org.structr.core.property.PropertyKey;
+
+/**
+ * In-memory index that maps session IDs to the UUIDs of the principals
+ * they belong to, so that the principal of an authenticated request can
+ * be found without a query on the sessionIds of all principals.
+ *
+ * The index is maintained when session IDs are added to or removed from
+ * a principal. A principal found in the index is only returned if its
+ * sessionIds still contain the session ID, so an outdated entry (e.g.
+ * after a rollback) is dropped and the caller falls back to the database.
+ * Entries expire when they were not accessed within the session timeout.
+ */
+public class SessionIndex {
+
+	private static final Logger logger                    = LoggerFactory.getLogger(SessionIndex.class.getName());
+	private static final Map<String, IndexEntry> index    = new ConcurrentHashMap<>();
+	private static final AtomicLong modificationCount     = new AtomicLong();
+	private static final AtomicLong hits                  = new AtomicLong();
+	private static final AtomicLong misses                = new AtomicLong();
+	private static final AtomicLong expirations           = new AtomicLong();
+	private static final AtomicLong invalidations         = new AtomicLong();
+	private static final int PURGE_INTERVAL               = 1000;
+
+	public static void add(final String sessionId, final String principalId) {
+
+		if (sessionId != null && principalId != null) {
+
+			index.put(sessionId, new IndexEntry(principalId));
+
+			// remove expired entries from time to time
+			if (modificationCount.incrementAndGet() % PURGE_INTERVAL == 0) {
+				purge();
+			}
+		}
+	}
+
+	public static void remove(final String sessionId) {
+
+		if (sessionId != null) {
+			index.remove(sessionId);
+		}
+	}
+
+	/**
+	 * Returns the principal for the given session ID, or null if the
+	 * session ID is not in the index.
+	 *
+	 * @param sessionId
+	 * @return the principal or null
+	 */
+	public static Principal getPrincipal(final String sessionId) {
+
+		if (sessionId == null) {
+			return null;
+		}
+
+		final IndexEntry entry = index.get(sessionId);
+		if (entry != null) {
+
+			if (entry.isExpired(System.currentTimeMillis())) {
+
+				index.remove(sessionId, entry);
+				expirations.incrementAndGet();
+
+			} else {
+
+				try {
+
+					final PropertyKey<String[]> key = StructrApp.key(Principal.class, "sessionIds");
+					final Principal principal       = StructrApp.getInstance().get(Principal.class, entry.principalId);
+
+					if (principal != null && ArrayUtils.contains(principal.getProperty(key), sessionId)) {
+
+						entry.lastAccess = System.currentTimeMillis();
+						hits.incrementAndGet();
+
+						return principal;
+					}
+
+				} catch (FrameworkException fex) {
+					logger.warn("Unable to fetch principal for session {}: {}", sessionId, fex.getMessage());
+				}
+
+				index.remove(sessionId, entry);
+				invalidations.incrementAndGet();
+			}
+		}
+
+		misses.incrementAndGet();
+
+		return null;
+	}
+
+	public static void clear() {
+		index.clear();
+	}
+
+	public static Map<String, Long> getStatistics() {
+
+		final Map<String, Long> statistics = new LinkedHashMap<>();
+		final long hitCount                = hits.get();
+		final long missCount               = misses.get();
+		final long total                   = hitCount + missCount;
+
+		statistics.put("size",          Long.valueOf(index.size()));
+		statistics.put("hits",          hitCount);
+		statistics.put("misses",        missCount);
+		statistics.put("hitRate",       total > 0 ? (hitCount * 100L) / total : 0L);
+		statistics.put("expirations",   expirations.get());
+		statistics.put("invalidations", invalidations.get());
+
+		return statistics;
+	}
+
+	// ----- private methods -----
+	private static void purge() {
+
+		final long now = System.currentTimeMillis();
+
+		for (final Iterator<IndexEntry> it = index.values().iterator(); it.hasNext();) {
+
+			if (it.next().isExpired(now)) {
+
+				it.remove();
+				expirations.incrementAndGet();
+			}
+		}
+	}
+
+	// ----- nested classes -----
+	private static class IndexEntry {
+
+		private volatile long lastAccess = System.currentTimeMillis();
+		private String principalId       = null;
+
+		public IndexEntry(final String principalId) {
+			this.principalId = principalId;
+		}
+
+		public boolean isExpired(final long now) {
+
+			final long timeout = Services.getGlobalSessionTimeout() * 1000L;
+
+			return timeout > 0 && now > lastAccess + timeout;
+		}
+	}
+}
@@ -25,7 +25,9 @@ import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import org.structr.api.Predicate;
+import org.structr.api.config.Settings;
 import org.structr.api.graph.Direction;
 import org.structr.api.graph.Node;
 import org.structr.api.graph.Relationship;
@@ -39,6 +41,7 @@ import org.structr.core.GraphObject;
 import org.structr.core.Services;
 import org.structr.core.property.PropertyKey;
 import org.structr.core.property.PropertyMap;
+import org.structr.core.property.TypeProperty;
 
 /**
  *
@@ -46,6 +49,8 @@ import org.structr.core.property.PropertyMap;
  */
 public abstract class AbstractEndpoint {
 
+	private static final Map<String, String> labelsByType = new ConcurrentHashMap<>();
+
 	public Relationship getSingle(final SecurityContext securityContext, final Node dbNode, final RelationshipType relationshipType, final Direction direction, final Class otherNodeType) {
 
 		final Iterable<Relationship> rels     = getMultiple(securityContext, dbNode, relationshipType, direction, otherNodeType, null);
@@ -60,7 +65,36 @@ public abstract class AbstractEndpoint {
 	}
 
 	public Iterable<Relationship> getMultiple(final SecurityContext securityContext, final Node dbNode, final RelationshipType relationshipType, final Direction direction, final Class otherNodeType, final Predicate<GraphObject> predicate) {
-		return Iterables.filter(new OtherNodeTypeFilter(securityContext, dbNode, otherNodeType, predicate), dbNode.getRelationships(direction, relationshipType));
+		return Iterables.filter(new OtherNodeTypeFilter(securityContext, dbNode, otherNodeType, predicate), dbNode.getRelationships(direction, relationshipType, getLabel(otherNodeType)));
+	}
+
+	/**
+	 * Returns the label that all nodes of the given type and its subtypes
+	 * carry, or null if there is no such label, i.e. for the base types.
+	 * Returns null as well if label filtering is disabled, e.g. because
+	 * the database contains nodes without type labels.
+	 *
+	 * @param type
+	 * @return the label or null
+	 */
+	public static String getLabel(final Class type) {
+
+		if (type == null || !Settings.LabelFiltering.getValue()) {
+			return null;
+		}
+
+		final String label = labelsByType.computeIfAbsent(type.getName(), k -> {
+
+			final String simpleName = type.getSimpleName();
+
+			if (TypeProperty.getLabelsForType(type).contains(simpleName)) {
+				return simpleName;
+			}
+
+			return "";
+		});
+
+		return label.isEmpty() ? null : label;
 	}
 
 	// ----- protected methods -----
@@ -28,6 +28,7 @@ import java.util.Set;
 import org.apache.chemistry.opencmis.commons.enums.PropertyType;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.structr.api.NotFoundException;
 import org.structr.api.Predicate;
 import org.structr.api.graph.Direction;
 import org.structr.api.graph.Node;
@@ -37,6 +38,7 @@ import org.structr.api.graph.RelationshipType;
 import org.structr.api.index.Index;
 import org.structr.cmis.CMISInfo;
 import org.structr.common.GraphObjectComparator;
+import org.structr.common.PermissionResolutionCache;
 import org.structr.common.PropertyView;
 import org.structr.common.SecurityContext;
 import org.structr.common.ValidationHelper;
@@ -482,6 +484,7 @@ public abstract class AbstractRelationship<S extends NodeInterface, T extends No
 
 	@Override
 	public void onModification(SecurityContext securityContext, ErrorBuffer errorBuffer, final ModificationQueue modificationQueue) throws FrameworkException {
+		invalidatePermissionResolutionCache();
 	}
 
 	@Override
@@ -494,6 +497,7 @@ public abstract class AbstractRelationship<S extends NodeInterface, T extends No
 
 	@Override
 	public void afterModification(SecurityContext securityContext) {
+		invalidatePermissionResolutionCache();
 	}
 
 	@Override
@@ -756,6 +760,39 @@ public abstract class AbstractRelationship<S extends NodeInterface, T extends No
 		return null;
 	}
 
+	// ----- private methods -----
+	private void invalidatePermissionResolutionCache() {
+
+		// the properties of security and permission propagation relationships
+		// are part of the resolved permissions of both end nodes
+		if (dbRelationship != null) {
+
+			try {
+
+				final Node startNode = dbRelationship.getStartNode();
+				final Node endNode   = dbRelationship.getEndNode();
+
+				if (startNode != null && endNode != null) {
+
+					PermissionResolutionCache.invalidateForId(startNode.getId());
+					PermissionResolutionCache.invalidateForId(endNode.getId());
+
+				} else {
+
+					// one of the end nodes was deleted already, so we don't
+					// know which results are affected
+					PermissionResolutionCache.invalidate();
+				}
+
+			} catch (NotFoundException nfex) {
+
+				logger.debug("Unable to determine end nodes of relationship {}, clearing permission resolution cache: {}", dbRelationship.getId(), nfex.getMessage());
+
+				PermissionResolutionCache.invalidate();
+			}
+		}
+	}
+
 	// ----- Cloud synchronization and replication -----
 	@Override
 	public List<GraphObject> getSyncData() {
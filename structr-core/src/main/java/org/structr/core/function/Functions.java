@@ -29,6 +29,8 @@ import java.util.LinkedList;
 import java.util.Map;
 import java.util.Set;
 import org.apache.commons.lang3.StringUtils;
+import org.structr.api.config.Settings;
+import org.structr.api.util.ConcurrentFixedSizeCache;
 import org.structr.common.error.FrameworkException;
 import org.structr.common.error.UnlicensedException;
 import org.structr.core.GraphObject;
@@ -60,8 +62,9 @@ import org.structr.schema.action.Function;
  */
 public class Functions {
 
-	private static final Map<String, Function<Object, Object>> functions = new LinkedHashMap<>();
-	public static final String NULL_STRING                               = "___NULL___";
+	private static final ConcurrentFixedSizeCache<String, Expression> expressionCache = new ConcurrentFixedSizeCache<>(Settings.ScriptingCacheSize.getValue());
+	private static final Map<String, Function<Object, Object>> functions              = new LinkedHashMap<>();
+	public static final String NULL_STRING                                            = "___NULL___";
 
 	public static void put(final boolean licensed, final int edition, final String name, final Function<Object, Object> function) {
 
@@ -73,6 +76,16 @@ public class Functions {
 
 			functions.put(name, new UnlicensedFunction(name, edition));
 		}
+
+		// parsed expressions contain references to the registered functions
+		clearCache();
+	}
+
+	/**
+	 * Removes all parsed expressions from the expression cache.
+	 */
+	public static void clearCache() {
+		expressionCache.clear();
 	}
 
 	public static Set<String> getNames() {
@@ -89,6 +102,57 @@ public class Functions {
 
 	public static Object evaluate(final ActionContext actionContext, final GraphObject entity, final String expression) throws FrameworkException, UnlicensedException {
 
+		Expression root = expressionCache.get(expression);
+		if (root == null) {
+
+			root = parse(expression);
+		}
+
+		return root.evaluate(actionContext, entity);
+	}
+
+	public static String cleanString(final Object input) {
+
+		if (input == null) {
+
+			return "";
+		}
+
+		String normalized = Normalizer.normalize(input.toString(), Normalizer.Form.NFD)
+			.replaceAll("\\<", "")
+			.replaceAll("\\>", "")
+			.replaceAll("\\.", "")
+			.replaceAll("\\'", "-")
+			.replaceAll("\\?", "")
+			.replaceAll("\\(", "")
+			.replaceAll("\\)", "")
+			.replaceAll("\\{", "")
+			.replaceAll("\\}", "")
+			.replaceAll("\\[", "")
+			.replaceAll("\\]", "")
+			.replaceAll("\\+", "-")
+			.replaceAll("/", "-")
+			.replaceAll("–", "-")
+			.replaceAll("\\\\", "-")
+			.replaceAll("\\|", "-")
+			.replaceAll("'", "-")
+			.replaceAll("!", "")
+			.replaceAll(",", "")
+			.replaceAll("-", " ")
+			.replaceAll("_", " ")
+			.replaceAll("`", "-");
+
+		String result = normalized.replaceAll("-", " ");
+		result = StringUtils.normalizeSpace(result.toLowerCase());
+		result = result.replaceAll("[^\\p{ASCII}]", "").replaceAll("\\p{P}", "-").replaceAll("\\-(\\s+\\-)+", "-");
+		result = result.replaceAll(" ", "-");
+
+		return result;
+	}
+
+	// ----- private methods -----
+	private static Expression parse(final String expression) throws FrameworkException {
+
 		final String expressionWithoutNewlines = expression.replace('\n', ' ').replace('\r', ' ');
 		final StreamTokenizer tokenizer = new StreamTokenizer(new StringReader(expressionWithoutNewlines));
 		tokenizer.eolIsSignificant(true);
@@ -98,6 +162,7 @@ public class Functions {
 		tokenizer.wordChars('!', '!');
 
 		Expression root = new RootExpression();
+		boolean cacheable = true;
 		Expression current = root;
 		Expression next = null;
 		String lastToken = null;
@@ -130,6 +195,11 @@ public class Functions {
 						throw new FrameworkException(422, "Invalid expression: mismatched opening bracket before " + tokenizer.sval);
 					}
 					next = checkReservedWords(tokenizer.sval);
+					if (next instanceof BatchExpression) {
+
+						// batch expressions store the batch size while being evaluated
+						cacheable = false;
+					}
 					Expression previousExpression = current.getPrevious();
 					if (tokenizer.sval.startsWith(".") && previousExpression != null && previousExpression instanceof FunctionExpression && next instanceof ValueExpression) {
 
@@ -214,49 +284,15 @@ public class Functions {
 			throw new FrameworkException(422, "Invalid expression: mismatched closing bracket after " + lastToken);
 		}
 
-		return root.evaluate(actionContext, entity);
-	}
-
-	public static String cleanString(final Object input) {
+		if (cacheable) {
 
-		if (input == null) {
-
-			return "";
+			// expression trees are immutable after parsing and can be shared
+			expressionCache.put(expression, root);
 		}
 
-		String normalized = Normalizer.normalize(input.toString(), Normalizer.Form.NFD)
-			.replaceAll("\\<", "")
-			.replaceAll("\\>", "")
-			.replaceAll("\\.", "")
-			.replaceAll("\\'", "-")
-			.replaceAll("\\?", "")
-			.replaceAll("\\(", "")
-			.replaceAll("\\)", "")
-			.replaceAll("\\{", "")
-			.replaceAll("\\}", "")
-			.replaceAll("\\[", "")
-			.replaceAll("\\]", "")
-			.replaceAll("\\+", "-")
-			.replaceAll("/", "-")
-			.replaceAll("–", "-")
-			.replaceAll("\\\\", "-")
-			.replaceAll("\\|", "-")
-			.replaceAll("'", "-")
-			.replaceAll("!", "")
-			.replaceAll(",", "")
-			.replaceAll("-", " ")
-			.replaceAll("_", " ")
-			.replaceAll("`", "-");
-
-		String result = normalized.replaceAll("-", " ");
-		result = StringUtils.normalizeSpace(result.toLowerCase());
-		result = result.replaceAll("[^\\p{ASCII}]", "").replaceAll("\\p{P}", "-").replaceAll("\\-(\\s+\\-)+", "-");
-		result = result.replaceAll(" ", "-");
-
-		return result;
+		return root;
 	}
 
-	// ----- private methods -----
 	private static Expression checkReservedWords(final String word) throws FrameworkException {
 
 		if (word == null) {
@@ -19,9 +19,13 @@
 package org.structr.core.graph;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.function.Function;
@@ -29,6 +33,8 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.structr.api.NetworkException;
 import org.structr.api.QueryResult;
+import org.structr.api.graph.Direction;
+import org.structr.api.graph.Node;
 import org.structr.api.graph.Relationship;
 import org.structr.common.FactoryDefinition;
 import org.structr.common.SecurityContext;
@@ -37,6 +43,10 @@ import org.structr.core.Adapter;
 import org.structr.core.GraphObject;
 import org.structr.core.Result;
 import org.structr.core.app.StructrApp;
+import org.structr.core.entity.AbstractEndpoint;
+import org.structr.core.entity.Relation;
+import org.structr.core.property.PropertyKey;
+import org.structr.core.property.RelationProperty;
 import org.structr.schema.SchemaHelper;
 
 public abstract class Factory<S, T extends GraphObject> implements Adapter<S, T>, Function<S, T> {
@@ -151,6 +161,56 @@ public abstract class Factory<S, T extends GraphObject> implements Adapter<S, T>
 
 	}
 
+	/**
+	 * Create structr nodes from the underlying database nodes of a single
+	 * page of results, with security check.
+	 *
+	 * Paging was already done by the database, so all given nodes are
+	 * instantiated and the given overall count is used for the result.
+	 *
+	 * @param input
+	 * @param overallCount the overall number of results, or -1 if unknown
+	 * @param offset the number of results before this page
+	 * @return result
+	 * @throws org.structr.common.error.FrameworkException
+	 */
+	public Result instantiatePage(final QueryResult<S> input, final int overallCount, final int offset) throws FrameworkException {
+
+		final List<T> nodes = new ArrayList<>();
+
+		try (final QueryResult<S> tmp = input) {
+
+			for (final S item : tmp) {
+
+				final T n = instantiate(item);
+				if (n != null) {
+
+					nodes.add(n);
+				}
+			}
+
+		} catch (NetworkException nex) {
+			throw new FrameworkException(503, nex.getMessage());
+		}
+
+		// The overall count may be inaccurate if it is unknown
+		return new Result(nodes, overallCount >= 0 ? overallCount : offset + nodes.size(), true, false);
+	}
+
+	/**
+	 * Create structr nodes from the given database cursor lazily, with
+	 * security check. Nodes are instantiated while the returned iterable
+	 * is consumed, so only the current page of the cursor is held in
+	 * memory. The cursor is closed when it is exhausted, when reading
+	 * fails or when the returned result is closed.
+	 *
+	 * @param input
+	 * @return nodes
+	 */
+	public QueryResult<T> stream(final QueryResult<S> input) {
+		return new StreamingResult(input);
+	}
+
 	/**
 	 * Create structr nodes from all given underlying database nodes
 	 * No paging, but security check
@@ -178,6 +238,63 @@ public abstract class Factory<S, T extends GraphObject> implements Adapter<S, T>
 		return nodes;
 	}
 
+	/**
+	 * Loads the relationships of all related node properties of the given
+	 * view for all nodes in the given collection in advance, with a single
+	 * query per property instead of one query per node and property.
+	 *
+	 * @param objects
+	 * @param propertyView
+	 */
+	public static void prefetchRelationships(final Iterable<? extends GraphObject> objects, final String propertyView) {
+
+		final Map<Class, List<NodeInterface>> nodesByType = new LinkedHashMap<>();
+
+		for (final GraphObject obj : objects) {
+
+			if (obj instanceof NodeInterface) {
+
+				nodesByType.computeIfAbsent(obj.getClass(), k -> new LinkedList<>()).add((NodeInterface)obj);
+			}
+		}
+
+		for (final List<NodeInterface> nodes : nodesByType.values()) {
+
+			// a single node doesn't benefit from prefetching
+			if (nodes.size() < 2) {
+				continue;
+			}
+
+			final Iterable<PropertyKey> keys = nodes.get(0).getPropertyKeys(propertyView);
+			if (keys != null) {
+
+				final List<Node> dbNodes = new LinkedList<>();
+
+				for (final NodeInterface node : nodes) {
+					dbNodes.add(node.getNode());
+				}
+
+				for (final PropertyKey key : keys) {
+
+					if (key instanceof RelationProperty) {
+
+						final RelationProperty property = (RelationProperty)key;
+						final Relation relation         = property.getRelation();
+						final boolean incoming          = "in".equals(property.getDirectionKey());
+
+						if (relation != null) {
+
+							final Direction direction = incoming ? Direction.INCOMING : Direction.OUTGOING;
+							final String otherLabel   = AbstractEndpoint.getLabel(incoming ? relation.getSourceType() : relation.getTargetType());
+
+							StructrApp.getInstance().getDatabaseService().prefetchRelationships(dbNodes, direction, relation, otherLabel);
+						}
+					}
+				}
+			}
+		}
+	}
+
 	@Override
 	public T adapt(S s) {
 		return instantiate(s);
@@ -383,5 +500,87 @@ public abstract class Factory<S, T extends GraphObject> implements Adapter<S, T>
 
 	}
 
+	private class StreamingResult implements QueryResult<T> {
+
+		private QueryResult<S> input = null;
+		private boolean closed       = false;
+
+		public StreamingResult(final QueryResult<S> input) {
+
+			this.input  = input;
+			this.closed = input == null;
+		}
+
+		@Override
+		public Iterator<T> iterator() {
+
+			if (closed) {
+				return Collections.emptyIterator();
+			}
+
+			final Iterator<S> source;
+
+			try {
+
+				source = input.iterator();
+
+			} catch (RuntimeException rex) {
+
+				close();
+				throw rex;
+			}
+
+			return new Iterator<T>() {
+
+				private T current = null;
+
+				@Override
+				public boolean hasNext() {
+
+					try {
+
+						while (current == null && !closed && source.hasNext()) {
+							current = instantiate(source.next());
+						}
+
+					} catch (RuntimeException rex) {
+
+						close();
+						throw rex;
+					}
+
+					if (current == null) {
+						close();
+					}
+
+					return current != null;
+				}
+
+				@Override
+				public T next() {
+
+					if (!hasNext()) {
+						throw new NoSuchElementException();
+					}
+
+					final T next = current;
+					current      = null;
+
+					return next;
+				}
+			};
+		}
+
+		@Override
+		public void close() {
+
+			if (!closed) {
+
+				closed = true;
+				input.close();
+			}
+		}
+	}
+
 	// </editor-fold>
 }
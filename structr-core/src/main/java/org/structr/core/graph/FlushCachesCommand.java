@@ -25,9 +25,12 @@ import org.slf4j.LoggerFactory;
 import org.structr.bolt.wrapper.NodeWrapper;
 import org.structr.bolt.wrapper.RelationshipWrapper;
 import org.structr.common.AccessPathCache;
+import org.structr.common.PermissionResolutionCache;
 import org.structr.common.error.FrameworkException;
 import org.structr.core.app.App;
 import org.structr.core.app.StructrApp;
+import org.structr.core.function.Functions;
+import org.structr.core.script.Scripting;
 
 //~--- classes ----------------------------------------------------------------
 
@@ -49,6 +52,9 @@ public class FlushCachesCommand extends NodeServiceCommand implements Maintenanc
 		NodeWrapper.clearCache();
 		RelationshipWrapper.clearCache();
 		AccessPathCache.invalidate();
+		PermissionResolutionCache.invalidate();
+		Functions.clearCache();
+		Scripting.clearCache();
 
 		App app = StructrApp.getInstance();
 
@@ -18,29 +18,101 @@
  */
 package org.structr.core.graph;
 
-import java.util.LinkedHashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.TreeSet;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
+ * A set of locks, one for each synchronization key (type).
  *
+ * The locks for a set of keys are acquired in the natural order of the
+ * keys, without holding a global monitor, so that transactions that
+ * modify disjoint sets of types never wait for each other. If a lock
+ * cannot be acquired within a short time, all locks acquired so far are
+ * released again and the acquisition is retried after a random backoff,
+ * so that a waiting transaction does not block others that only need a
+ * subset of its keys.
+ *
+ * Locks are owned by the acquiring thread, release() only releases the
+ * locks that are held by the current thread.
  */
 public class MultiSemaphore {
 
-	private static final Logger logger = LoggerFactory.getLogger(MultiSemaphore.class.getName());
+	private static final Logger logger      = LoggerFactory.getLogger(MultiSemaphore.class.getName());
+	private static final long TRY_LOCK_TIME = 50L;
+	private static final long MAX_BACKOFF   = 100L;
+	private static final long WARN_TIME     = 10000L;
 
-	private final Map<String, Semaphore> semaphoreMap = new ConcurrentHashMap<>();
+	private final Map<String, KeyLock> locks = new ConcurrentHashMap<>();
 
-	public synchronized void acquire(final Set<String> types) throws InterruptedException {
+	public void acquire(final Set<String> types) throws InterruptedException {
 
 		if (types != null && !types.isEmpty()) {
 
-			for (Semaphore semaphore : getSemaphores(types)) {
-				semaphore.acquire();
+			// sorted order prevents deadlocks between transactions with overlapping keys
+			final List<KeyLock> sorted = getLocks(types);
+			final List<KeyLock> held   = new LinkedList<>();
+			final long t0              = System.nanoTime();
+			long backoff               = 1L;
+			boolean warned             = false;
+
+			while (true) {
+
+				KeyLock failed = null;
+
+				try {
+
+					for (final KeyLock lock : sorted) {
+
+						final long start      = System.nanoTime();
+						final boolean success = lock.lock.tryLock(TRY_LOCK_TIME, TimeUnit.MILLISECONDS);
+
+						lock.waited(System.nanoTime() - start, success);
+
+						if (success) {
+
+							held.add(lock);
+
+						} else {
+
+							failed = lock;
+							break;
+						}
+					}
+
+				} catch (InterruptedException iex) {
+
+					release(held);
+					throw iex;
+				}
+
+				if (failed == null) {
+					return;
+				}
+
+				// give up all locks and try again later
+				release(held);
+				held.clear();
+
+				if (!warned && TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - t0) > WARN_TIME) {
+
+					logger.warn("Waiting for more than {} ms to acquire synchronization key {}", WARN_TIME, failed.key);
+					warned = true;
+				}
+
+				Thread.sleep(ThreadLocalRandom.current().nextLong(backoff) + 1L);
+
+				backoff = Math.min(MAX_BACKOFF, backoff * 2);
 			}
 		}
 	}
@@ -49,34 +121,100 @@ public class MultiSemaphore {
 
 		if (types != null && !types.isEmpty()) {
 
-			for (Semaphore semaphore : getSemaphores(types)) {
-				semaphore.release();
+			for (final String type : types) {
+
+				if (type != null) {
+
+					final KeyLock lock = locks.get(type);
+					if (lock != null && lock.lock.isHeldByCurrentThread()) {
+
+						lock.lock.unlock();
+					}
+				}
 			}
 		}
 	}
 
-	private Set<Semaphore> getSemaphores(final Set<String> types) {
+	/**
+	 * Returns wait time statistics for each synchronization key. Times
+	 * are given in milliseconds.
+	 *
+	 * @return a map of statistics for each key
+	 */
+	public Map<String, Map<String, Long>> getStatistics() {
 
-		Set<Semaphore> semaphores = new LinkedHashSet<>();
+		final Map<String, Map<String, Long>> statistics = new LinkedHashMap<>();
 
-		if (types != null) {
+		for (final KeyLock lock : new TreeSet<>(locks.values())) {
 
-			for (String type : types) {
+			final Map<String, Long> values = new LinkedHashMap<>();
+			final long count               = lock.count.get();
 
-				if (type != null) {
+			values.put("acquisitions",  count);
+			values.put("timeouts",      lock.contended.get());
+			values.put("waitTimeTotal", TimeUnit.NANOSECONDS.toMillis(lock.waitTime.get()));
+			values.put("waitTimeMax",   TimeUnit.NANOSECONDS.toMillis(lock.maxWaitTime.get()));
+			values.put("waitTimeAvg",   count > 0 ? TimeUnit.NANOSECONDS.toMillis(lock.waitTime.get() / count) : 0L);
+			values.put("queueLength",   Long.valueOf(lock.lock.getQueueLength()));
 
-					Semaphore semaphore = semaphoreMap.get(type);
-					if (semaphore == null) {
+			statistics.put(lock.key, values);
+		}
 
-						semaphore = new Semaphore(1, true);
-						semaphoreMap.put(type, semaphore);
-					}
+		return statistics;
+	}
 
-					semaphores.add(semaphore);
-				}
+	// ----- private methods -----
+	private List<KeyLock> getLocks(final Set<String> types) {
+
+		final Set<KeyLock> sorted = new TreeSet<>();
+
+		for (final String type : types) {
+
+			if (type != null) {
+
+				sorted.add(locks.computeIfAbsent(type, KeyLock::new));
 			}
 		}
 
-		return semaphores;
+		return new LinkedList<>(sorted);
+	}
+
+	private void release(final List<KeyLock> held) {
+
+		for (final KeyLock lock : held) {
+			lock.lock.unlock();
+		}
+	}
+
+	// ----- nested classes -----
+	private static class KeyLock implements Comparable<KeyLock> {
+
+		private final ReentrantLock lock     = new ReentrantLock(true);
+		private final AtomicLong count       = new AtomicLong();
+		private final AtomicLong contended   = new AtomicLong();
+		private final AtomicLong waitTime    = new AtomicLong();
+		private final AtomicLong maxWaitTime = new AtomicLong();
+		private String key                   = null;
+
+		public KeyLock(final String key) {
+			this.key = key;
+		}
+
+		public void waited(final long nanos, final boolean success) {
+
+			if (success) {
+				count.incrementAndGet();
+			} else {
+				contended.incrementAndGet();
+			}
+
+			waitTime.addAndGet(nanos);
+			maxWaitTime.accumulateAndGet(nanos, Math::max);
+		}
+
+		@Override
+		public int compareTo(final KeyLock other) {
+			return key.compareTo(other.key);
+		}
 	}
 }
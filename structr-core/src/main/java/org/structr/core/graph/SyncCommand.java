@@ -34,6 +34,7 @@ import java.lang.reflect.Array;
 import java.text.DecimalFormat;
 import java.text.DecimalFormatSymbols;
 import java.util.Collections;
+import java.util.Date;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedHashMap;
@@ -71,6 +72,7 @@ import org.structr.core.entity.AbstractRelationship;
 import org.structr.core.entity.AbstractSchemaNode;
 import org.structr.core.entity.SuperUser;
 import org.structr.schema.SchemaHelper;
+import org.structr.schema.parser.DatePropertyParser;
 
 /**
  *
@@ -121,7 +123,9 @@ public class SyncCommand extends NodeServiceCommand implements MaintenanceComman
 		String validate         = (String)attributes.get("validate");
 		String query            = (String)attributes.get("query");
 		Long batchSize          = (Long)attributes.get("batchSize");
+		Long parallelism        = (Long)attributes.get("parallelism");
 		boolean doValidation    = true;
+		int threads             = parallelism != null ? parallelism.intValue() : Runtime.getRuntime().availableProcessors();
 
 		// should we validate imported nodes?
 		if (validate != null) {
@@ -149,9 +153,13 @@ public class SyncCommand extends NodeServiceCommand implements MaintenanceComman
 
 			exportToFile(graphDb, fileName, query, false);
 
+		} else if ("snapshot".equals(mode)) {
+
+			SyncSnapshot.exportToFile(graphDb, fileName, getSince(attributes), threads);
+
 		} else if ("import".equals(mode)) {
 
-			importFromFile(graphDb, securityContext, fileName, doValidation, batchSize);
+			importFromFile(graphDb, securityContext, fileName, doValidation, batchSize, threads);
 
 		} else {
 
@@ -169,6 +177,36 @@ public class SyncCommand extends NodeServiceCommand implements MaintenanceComman
 		return false;
 	}
 
+	// ----- private methods -----
+	private long getSince(final Map<String, Object> attributes) throws FrameworkException {
+
+		final Object since    = attributes.get("since");
+		final String previous = (String)attributes.get("previous");
+
+		if (previous != null) {
+
+			return SyncSnapshot.getSnapshotDate(previous);
+		}
+
+		if (since instanceof Number) {
+
+			return ((Number)since).longValue();
+		}
+
+		if (since != null) {
+
+			final Date date = DatePropertyParser.parse(since.toString(), null);
+			if (date == null) {
+
+				throw new FrameworkException(400, "Unable to parse since date " + since);
+			}
+
+			return date.getTime();
+		}
+
+		return 0L;
+	}
+
 	// ----- static methods -----
 	/**
 	 * Exports the whole structr database to a file with the given name.
@@ -313,10 +351,14 @@ public class SyncCommand extends NodeServiceCommand implements MaintenanceComman
 	}
 
 	public static void importFromFile(final DatabaseService graphDb, final SecurityContext securityContext, final String fileName, boolean doValidation, final Long batchSize) throws FrameworkException {
+		importFromFile(graphDb, securityContext, fileName, doValidation, batchSize, 1);
+	}
+
+	public static void importFromFile(final DatabaseService graphDb, final SecurityContext securityContext, final String fileName, boolean doValidation, final Long batchSize, final int parallelism) throws FrameworkException {
 
 		try (final InputStream fis = new FileInputStream(fileName)) {
 
-			importFromStream(graphDb, securityContext, fis, doValidation, batchSize);
+			importFromStream(graphDb, securityContext, fis, doValidation, batchSize, parallelism);
 
 		} catch (Throwable t) {
 
@@ -327,6 +369,24 @@ public class SyncCommand extends NodeServiceCommand implements MaintenanceComman
 	}
 
 	public static void importFromStream(final DatabaseService graphDb, final SecurityContext securityContext, final InputStream inputStream, boolean doValidation, final Long batchSize) throws FrameworkException {
+		importFromStream(graphDb, securityContext, inputStream, doValidation, batchSize, 1);
+	}
+
+	/**
+	 * Imports an export or snapshot file from the given input stream. The
+	 * given parallelism applies to snapshot files only.
+	 *
+	 * @param graphDb
+	 * @param securityContext
+	 * @param inputStream
+	 * @param doValidation
+	 * @param batchSize
+	 * @param parallelism
+	 * @throws FrameworkException
+	 */
+	public static void importFromStream(final DatabaseService graphDb, final SecurityContext securityContext, final InputStream inputStream, boolean doValidation, final Long batchSize, final int parallelism) throws FrameworkException {
+
+		SyncSnapshot.Importer snapshot = null;
 
 		try (final ZipInputStream zis = new ZipInputStream(inputStream)) {
 
@@ -338,6 +398,14 @@ public class SyncCommand extends NodeServiceCommand implements MaintenanceComman
 
 					importDatabase(graphDb, securityContext, zis, doValidation, batchSize);
 
+				} else if (entry.getName().startsWith(SyncSnapshot.SNAPSHOT_PREFIX)) {
+
+					if (snapshot == null) {
+						snapshot = new SyncSnapshot.Importer(graphDb, securityContext, doValidation, batchSize, parallelism);
+					}
+
+					snapshot.read(entry.getName(), zis);
+
 				} else {
 
 					// store other files in "files" dir..
@@ -347,9 +415,19 @@ public class SyncCommand extends NodeServiceCommand implements MaintenanceComman
 				entry = zis.getNextEntry();
 			}
 
+			if (snapshot != null) {
+				snapshot.finish();
+			}
+
 		} catch (IOException ioex) {
 
 			logger.warn("", ioex);
+
+		} finally {
+
+			if (snapshot != null) {
+				snapshot.close();
+			}
 		}
 	}
 
@@ -373,6 +451,20 @@ public class SyncCommand extends NodeServiceCommand implements MaintenanceComman
 
 	public static void serialize(DataOutputStream outputStream, Object obj) throws IOException {
 
+		serializeValue(outputStream, obj);
+
+		outputStream.flush();
+	}
+
+	/**
+	 * Serializes the given object like {@link #serialize}, but without
+	 * flushing the stream, so that buffered streams can be used.
+	 *
+	 * @param outputStream
+	 * @param obj
+	 */
+	static void serializeValue(DataOutputStream outputStream, Object obj) throws IOException {
+
 		if (obj != null) {
 
 			Class clazz = obj.getClass();
@@ -389,7 +481,7 @@ public class SyncCommand extends NodeServiceCommand implements MaintenanceComman
 
 					// serialize array
 					for (Object o : (Object[])obj) {
-						serialize(outputStream, o);
+						serializeValue(outputStream, o);
 					}
 
 				} else {
@@ -410,8 +502,6 @@ public class SyncCommand extends NodeServiceCommand implements MaintenanceComman
 			// null value
 			outputStream.writeByte((byte)127);
 		}
-
-		outputStream.flush();
 	}
 
 	public static byte[] deserializeData(final DataInputStream inputStream) throws IOException {
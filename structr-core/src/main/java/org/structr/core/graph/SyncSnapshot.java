@@ -0,0 +1,999 @@
+/**
+ * Copyright (C) 2010-2018 Structr GmbH
+ *
+ * This file is part of Structr <http://structr.org>.
+ *
+ * Structr is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Structr is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.structr.core.graph;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.structr.api.DatabaseService;
+import org.structr.api.NativeResult;
+import org.structr.api.NotFoundException;
+import org.structr.api.RetryException;
+import org.structr.api.graph.Direction;
+import org.structr.api.graph.Label;
+import org.structr.api.graph.Node;
+import org.structr.api.graph.PropertyContainer;
+import org.structr.api.graph.Relationship;
+import org.structr.api.graph.RelationshipType;
+import org.structr.common.SecurityContext;
+import org.structr.common.error.ErrorBuffer;
+import org.structr.common.error.FrameworkException;
+import org.structr.core.GraphObject;
+import org.structr.core.app.App;
+import org.structr.core.app.StructrApp;
+import org.structr.core.entity.AbstractSchemaNode;
+import org.structr.schema.SchemaHelper;
+
+/**
+ * A binary snapshot of the database, written by {@link SyncCommand} in
+ * the "snapshot" mode.
+ *
+ * A snapshot is a ZIP file with a manifest, a dictionary of all property
+ * keys and one segment per node type and relationship type. Properties
+ * reference their key by its index in the dictionary, values use the
+ * encoding of {@link SyncCommand#serialize}. The segments are written to
+ * temporary files by parallel workers and copied into the ZIP file
+ * afterwards.
+ *
+ * An incremental snapshot contains only the nodes and relationships that
+ * were modified since a given date. On import, existing entities with the
+ * same UUID are updated instead of created.
+ *
+ * The segments are read in separate transactions, so a snapshot of a
+ * database that is modified during the export is not a point-in-time
+ * snapshot. A node segment contains the nodes that were created before
+ * the segment was started. Nodes that were created later and that are
+ * referenced by an exported relationship are added to the segment of
+ * their type at the end, so no relationship is lost on import.
+ */
+public class SyncSnapshot {
+
+	private static final Logger logger         = LoggerFactory.getLogger(SyncSnapshot.class.getName());
+
+	public static final String SNAPSHOT_PREFIX = "snapshot/";
+	public static final String MANIFEST_NAME   = SNAPSHOT_PREFIX + "manifest";
+	public static final String KEYS_NAME       = SNAPSHOT_PREFIX + "keys";
+	public static final String NODES_PREFIX    = SNAPSHOT_PREFIX + "nodes/";
+	public static final String RELS_PREFIX     = SNAPSHOT_PREFIX + "rels/";
+
+	private static final int VERSION           = 1;
+
+	private final Map<String, Integer> keys     = new ConcurrentHashMap<>();
+	private final Map<String, Long> readStarted = new ConcurrentHashMap<>();
+	private final Map<String, Long> endpoints   = new ConcurrentHashMap<>();
+	private final List<Segment> createdSegments = new LinkedList<>();
+	private final AtomicInteger keyCount        = new AtomicInteger();
+	private final String uuidPropertyName       = GraphObject.id.dbName();
+	private final String typePropertyName       = NodeInterface.type.dbName();
+	private final String createdDateName        = GraphObject.createdDate.dbName();
+	private final String lastModifiedName       = GraphObject.lastModifiedDate.dbName();
+	private final long exportStarted            = System.currentTimeMillis();
+	private DatabaseService graphDb             = null;
+	private long since                          = 0L;
+	private boolean segmentsDeleted             = false;
+
+	private SyncSnapshot(final DatabaseService graphDb, final long since) {
+
+		this.graphDb = graphDb;
+		this.since   = since;
+	}
+
+	/**
+	 * Exports the database to a snapshot file with the given name. If
+	 * since is greater than zero, only the entities that were modified
+	 * at or after the given point in time are exported.
+	 *
+	 * @param graphDb
+	 * @param fileName
+	 * @param since
+	 * @param parallelism
+	 * @throws FrameworkException
+	 */
+	public static void exportToFile(final DatabaseService graphDb, final String fileName, final long since, final int parallelism) throws FrameworkException {
+
+		final SyncSnapshot snapshot = new SyncSnapshot(graphDb, since);
+
+		try (final FileOutputStream fos = new FileOutputStream(fileName)) {
+
+			snapshot.export(fos, parallelism);
+
+		} catch (IOException ioex) {
+
+			logger.warn("", ioex);
+			throw new FrameworkException(500, ioex.getMessage());
+		}
+	}
+
+	/**
+	 * Returns the creation date of the snapshot with the given file name,
+	 * to be used as the start of the next incremental snapshot.
+	 *
+	 * @param fileName
+	 * @return the creation date of the snapshot
+	 * @throws FrameworkException
+	 */
+	public static long getSnapshotDate(final String fileName) throws FrameworkException {
+
+		try (final ZipFile zipFile = new ZipFile(fileName)) {
+
+			final ZipEntry entry = zipFile.getEntry(MANIFEST_NAME);
+			if (entry != null) {
+
+				try (final DataInputStream dis = new DataInputStream(zipFile.getInputStream(entry))) {
+
+					checkVersion(dis.readInt());
+
+					return dis.readLong();
+				}
+			}
+
+		} catch (IOException ioex) {
+
+			throw new FrameworkException(400, "Unable to read snapshot " + fileName + ": " + ioex.getMessage());
+		}
+
+		throw new FrameworkException(400, "File " + fileName + " is not a snapshot.");
+	}
+
+	// ----- private methods -----
+	private void export(final FileOutputStream outputStream, final int parallelism) throws IOException, FrameworkException {
+
+		final ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, parallelism));
+		final List<Future<Segment>> nodeSegments = new LinkedList<>();
+		final List<Future<Segment>> relSegments  = new LinkedList<>();
+		final long createdAt                     = exportStarted;
+		final List<Segment> segments             = new LinkedList<>();
+		long nodeCount                           = 0L;
+		long relCount                            = 0L;
+
+		try {
+
+			for (final String type : getNodeTypes()) {
+				nodeSegments.add(executor.submit(() -> exportNodes(type)));
+			}
+
+			for (final String type : getRelationshipTypes()) {
+				relSegments.add(executor.submit(() -> exportRelationships(type)));
+			}
+
+			for (final Future<Segment> future : nodeSegments) {
+				segments.add(waitFor(future));
+			}
+
+			for (final Future<Segment> future : relSegments) {
+
+				final Segment segment = waitFor(future);
+
+				relCount += segment.count;
+				segments.add(segment);
+			}
+
+			// must be called before the node count is computed
+			exportMissingEndpoints(segments);
+
+			for (final Segment segment : segments) {
+
+				if (segment.name.startsWith(NODES_PREFIX)) {
+					nodeCount += segment.count;
+				}
+			}
+
+			try (final ZipOutputStream zos = new ZipOutputStream(new BufferedOutputStream(outputStream))) {
+
+				final DataOutputStream dos = new DataOutputStream(zos);
+
+				zos.setLevel(6);
+
+				// manifest
+				zos.putNextEntry(new ZipEntry(MANIFEST_NAME));
+				dos.writeInt(VERSION);
+				dos.writeLong(createdAt);
+				dos.writeLong(since);
+				dos.flush();
+				zos.closeEntry();
+
+				// property key dictionary, ordered by index
+				final String[] dictionary = new String[keys.size()];
+				for (final Map.Entry<String, Integer> entry : keys.entrySet()) {
+					dictionary[entry.getValue()] = entry.getKey();
+				}
+
+				zos.putNextEntry(new ZipEntry(KEYS_NAME));
+				dos.writeInt(dictionary.length);
+
+				for (final String key : dictionary) {
+					dos.writeUTF(key);
+				}
+
+				dos.flush();
+				zos.closeEntry();
+
+				// segments, nodes before relationships
+				for (final Segment segment : segments) {
+
+					if (segment.count > 0) {
+
+						zos.putNextEntry(new ZipEntry(segment.name));
+						Files.copy(segment.file, zos);
+						zos.closeEntry();
+					}
+				}
+
+				zos.finish();
+			}
+
+		} finally {
+
+			executor.shutdownNow();
+
+			// delete the segments of all workers, including unfinished ones
+			deleteSegments();
+		}
+
+		logger.info("Exported {} nodes and {} rels in {} segments", nodeCount, relCount, segments.size());
+	}
+
+	private Segment exportNodes(final String type) throws IOException, FrameworkException {
+
+		final Segment segment = createSegment(NODES_PREFIX + type);
+		final App app         = StructrApp.getInstance();
+		final long started    = System.currentTimeMillis();
+
+		readStarted.put(type, started);
+
+		try (final DataOutputStream dos = segment.open()) {
+
+			try (final Tx tx = app.tx()) {
+
+				for (final Node node : graphDb.getNodesByTypeProperty(type)) {
+
+					// ignore non-structr nodes, nodes that were created after the
+					// read started are exported with the missing endpoints
+					if (node.hasProperty(uuidPropertyName) && isModified(node) && !isCreatedAfter(node, started)) {
+
+						writeProperties(dos, node);
+						segment.count++;
+					}
+				}
+
+				tx.success();
+			}
+		}
+
+		return segment;
+	}
+
+	private Segment exportRelationships(final String type) throws IOException, FrameworkException {
+
+		final Segment segment = createSegment(RELS_PREFIX + type);
+		final App app         = StructrApp.getInstance();
+
+		try (final DataOutputStream dos = segment.open()) {
+
+			try (final Tx tx = app.tx()) {
+
+				for (final Relationship rel : graphDb.getRelationshipsByType(type)) {
+
+					// ignore non-structr relationships
+					if (rel.hasProperty(uuidPropertyName) && isModified(rel)) {
+
+						final Node startNode = rel.getStartNode();
+						final Node endNode   = rel.getEndNode();
+
+						if (startNode.hasProperty(uuidPropertyName) && endNode.hasProperty(uuidPropertyName)) {
+
+							final String startId = (String)startNode.getProperty(uuidPropertyName);
+							final String endId   = (String)endNode.getProperty(uuidPropertyName);
+
+							dos.writeUTF(startId);
+							dos.writeUTF(endId);
+
+							// endpoints are checked after all node segments are complete
+							if (isCreatedDuringRead(startNode)) {
+								endpoints.put(startId, startNode.getId());
+							}
+
+							if (isCreatedDuringRead(endNode)) {
+								endpoints.put(endId, endNode.getId());
+							}
+
+							writeProperties(dos, rel);
+							segment.count++;
+						}
+					}
+				}
+
+				tx.success();
+			}
+		}
+
+		return segment;
+	}
+
+	/**
+	 * Appends the nodes that are referenced by exported relationships but
+	 * are missing in the node segments, because they were created after
+	 * the segment of their type was started.
+	 */
+	private void exportMissingEndpoints(final List<Segment> segments) throws IOException, FrameworkException {
+
+		final Map<String, List<Node>> missing = new LinkedHashMap<>();
+
+		try (final Tx tx = StructrApp.getInstance().tx()) {
+
+			for (final Map.Entry<String, Long> entry : endpoints.entrySet()) {
+
+				final String uuid = entry.getKey();
+
+				try {
+
+					final Node node = graphDb.getNodeById(entry.getValue());
+
+					// node IDs can be reused after a node was deleted
+					if (uuid.equals(node.getProperty(uuidPropertyName)) && node.hasProperty(typePropertyName) && isModified(node)) {
+
+						final String type  = (String)node.getProperty(typePropertyName);
+						final Long started = readStarted.get(type);
+
+						// all segments are complete now, so a type without a start
+						// time didn't exist when the export started
+						if (started == null || isCreatedAfter(node, started)) {
+
+							missing.computeIfAbsent(type, k -> new LinkedList<>()).add(node);
+						}
+					}
+
+				} catch (NotFoundException nfex) {
+					// node was deleted in the meantime
+				}
+			}
+
+			for (final Map.Entry<String, List<Node>> entry : missing.entrySet()) {
+
+				final String name = NODES_PREFIX + entry.getKey();
+				Segment segment   = null;
+
+				for (final Segment existing : segments) {
+
+					if (name.equals(existing.name)) {
+						segment = existing;
+					}
+				}
+
+				if (segment == null) {
+
+					// a type that didn't exist when the export started, insert
+					// before the relationship segments
+					segment = createSegment(name);
+					segments.add(0, segment);
+				}
+
+				try (final DataOutputStream dos = segment.append()) {
+
+					for (final Node node : entry.getValue()) {
+
+						writeProperties(dos, node);
+						segment.count++;
+					}
+				}
+
+				logger.info("Added {} nodes of type {} that were created during the export", entry.getValue().size(), entry.getKey());
+			}
+
+			tx.success();
+		}
+	}
+
+	private Segment createSegment(final String name) throws IOException {
+
+		synchronized (createdSegments) {
+
+			if (segmentsDeleted) {
+				throw new IOException("Snapshot export was aborted.");
+			}
+
+			final Segment segment = new Segment(name);
+
+			createdSegments.add(segment);
+
+			return segment;
+		}
+	}
+
+	private void deleteSegments() {
+
+		synchronized (createdSegments) {
+
+			segmentsDeleted = true;
+
+			for (final Segment segment : createdSegments) {
+
+				try {
+
+					Files.deleteIfExists(segment.file);
+
+				} catch (IOException ioex) {
+					logger.warn("Unable to delete temporary snapshot file {}: {}", segment.file, ioex.getMessage());
+				}
+			}
+		}
+	}
+
+	private Set<String> getNodeTypes() throws FrameworkException {
+
+		final Set<String> types = new LinkedHashSet<>();
+
+		try (final Tx tx = StructrApp.getInstance().tx()) {
+
+			try (final NativeResult result = graphDb.execute("MATCH (n) WHERE exists(n." + uuidPropertyName + ") RETURN DISTINCT n." + typePropertyName + " AS type")) {
+
+				while (result.hasNext()) {
+
+					final Object type = result.next().get("type");
+					if (type instanceof String) {
+
+						// skip schema
+						final Class entityType = StructrApp.getConfiguration().getNodeEntityClass((String)type);
+						if (entityType == null || !AbstractSchemaNode.class.isAssignableFrom(entityType)) {
+
+							types.add((String)type);
+						}
+					}
+				}
+			}
+
+			tx.success();
+		}
+
+		return types;
+	}
+
+	private Set<String> getRelationshipTypes() throws FrameworkException {
+
+		final Set<String> types = new LinkedHashSet<>();
+
+		try (final Tx tx = StructrApp.getInstance().tx()) {
+
+			try (final NativeResult result = graphDb.execute("MATCH ()-[r]->() RETURN DISTINCT type(r) AS type")) {
+
+				while (result.hasNext()) {
+
+					final Object type = result.next().get("type");
+					if (type instanceof String) {
+
+						types.add((String)type);
+					}
+				}
+			}
+
+			tx.success();
+		}
+
+		return types;
+	}
+
+	private boolean isModified(final PropertyContainer container) {
+
+		if (since > 0L) {
+
+			final Object lastModified = container.getProperty(lastModifiedName);
+			if (lastModified instanceof Number) {
+
+				return ((Number)lastModified).longValue() >= since;
+			}
+		}
+
+		return true;
+	}
+
+	private boolean isCreatedAfter(final Node node, final long time) {
+
+		final Object createdDate = node.getProperty(createdDateName);
+		if (createdDate instanceof Number) {
+
+			return ((Number)createdDate).longValue() > time;
+		}
+
+		return false;
+	}
+
+	/**
+	 * Indicates whether the given node may be missing in the segment of its
+	 * type. If the segment has not been started yet, the node is checked
+	 * against the start of the export, the final check is done after all
+	 * segments are complete.
+	 */
+	private boolean isCreatedDuringRead(final Node node) {
+
+		final Object type  = node.getProperty(typePropertyName);
+		final Long started = type != null ? readStarted.get(type) : null;
+
+		return isCreatedAfter(node, started != null ? started : exportStarted);
+	}
+
+	private void writeProperties(final DataOutputStream dos, final PropertyContainer container) throws IOException {
+
+		final List<String> names = new ArrayList<>();
+
+		for (final String name : container.getPropertyKeys()) {
+			names.add(name);
+		}
+
+		writeVarInt(dos, names.size());
+
+		for (final String name : names) {
+
+			writeVarInt(dos, keys.computeIfAbsent(name, k -> keyCount.getAndIncrement()));
+			SyncCommand.serializeValue(dos, container.getProperty(name));
+		}
+	}
+
+	private static <T> T waitFor(final Future<T> future) throws IOException, FrameworkException {
+
+		try {
+
+			return future.get();
+
+		} catch (InterruptedException iex) {
+
+			Thread.currentThread().interrupt();
+			throw new FrameworkException(500, "Interrupted while waiting for snapshot segments.");
+
+		} catch (ExecutionException eex) {
+
+			final Throwable cause = eex.getCause();
+
+			if (cause instanceof FrameworkException) {
+				throw (FrameworkException)cause;
+			}
+
+			if (cause instanceof IOException) {
+				throw (IOException)cause;
+			}
+
+			throw new FrameworkException(500, cause.getMessage());
+		}
+	}
+
+	private static void checkVersion(final int version) throws IOException {
+
+		if (version != VERSION) {
+			throw new IOException("Unsupported snapshot version " + version);
+		}
+	}
+
+	private static void writeVarInt(final DataOutputStream dos, final int value) throws IOException {
+
+		int remaining = value;
+
+		while ((remaining & ~0x7f) != 0) {
+
+			dos.writeByte((remaining & 0x7f) | 0x80);
+			remaining >>>= 7;
+		}
+
+		dos.writeByte(remaining);
+	}
+
+	private static int readVarInt(final DataInputStream dis) throws IOException {
+
+		int value = 0;
+		int shift = 0;
+		byte b;
+
+		do {
+
+			b      = dis.readByte();
+			value |= (b & 0x7f) << shift;
+			shift += 7;
+
+		} while ((b & 0x80) != 0);
+
+		return value;
+	}
+
+	// ----- nested classes -----
+	/**
+	 * Imports the entries of a snapshot in the order of the ZIP file.
+	 * Records are decoded in batches that are written by parallel workers
+	 * in separate transactions. All node segments are imported before the
+	 * first relationship segment.
+	 */
+	static class Importer implements AutoCloseable {
+
+		private final Map<String, Long> uuidMap         = new ConcurrentHashMap<>();
+		private final Set<String> nodeTypes             = new LinkedHashSet<>();
+		private final List<Future<?>> pending           = new LinkedList<>();
+		private final AtomicLong nodeCount              = new AtomicLong();
+		private final AtomicLong relCount               = new AtomicLong();
+		private final String uuidPropertyName           = GraphObject.id.dbName();
+		private final long t0                           = System.currentTimeMillis();
+		private SecurityContext securityContext         = null;
+		private ThreadPoolExecutor executor             = null;
+		private DatabaseService graphDb                 = null;
+		private boolean doValidation                    = true;
+		private boolean nodesDone                       = false;
+		private boolean incremental                     = false;
+		private String[] dictionary                     = null;
+		private int batchSize                           = 1000;
+
+		Importer(final DatabaseService graphDb, final SecurityContext securityContext, final boolean doValidation, final Long batchSize, final int parallelism) {
+
+			final int threads = Math.max(1, parallelism);
+
+			this.graphDb         = graphDb;
+			this.securityContext = securityContext;
+			this.doValidation    = doValidation;
+			this.batchSize       = batchSize != null ? batchSize.intValue() : 1000;
+
+			// bounded queue, the reading thread writes batches itself when all workers are busy
+			this.executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(threads * 2), new ThreadPoolExecutor.CallerRunsPolicy());
+		}
+
+		void read(final String name, final InputStream inputStream) throws IOException, FrameworkException {
+
+			final DataInputStream dis = new DataInputStream(new BufferedInputStream(inputStream));
+
+			if (MANIFEST_NAME.equals(name)) {
+
+				checkVersion(dis.readInt());
+
+				dis.readLong();
+				incremental = dis.readLong() > 0L;
+
+			} else if (KEYS_NAME.equals(name)) {
+
+				dictionary = new String[dis.readInt()];
+
+				for (int i=0; i<dictionary.length; i++) {
+					dictionary[i] = dis.readUTF();
+				}
+
+			} else if (name.startsWith(NODES_PREFIX)) {
+
+				final String type = name.substring(NODES_PREFIX.length());
+
+				nodeTypes.add(type);
+				readNodes(dis, type);
+
+			} else if (name.startsWith(RELS_PREFIX)) {
+
+				if (!nodesDone) {
+
+					// relationships need the IDs of all imported nodes
+					waitForPending();
+					nodesDone = true;
+				}
+
+				readRelationships(dis, name.substring(RELS_PREFIX.length()));
+
+			} else {
+
+				logger.warn("Unknown snapshot entry {}, ignoring", name);
+			}
+		}
+
+		void finish() throws IOException, FrameworkException {
+
+			final App app = StructrApp.getInstance();
+
+			waitForPending();
+
+			logger.info("Imported {} nodes and {} rels", nodeCount.get(), relCount.get());
+
+			// build schema
+			try (final Tx tx = app.tx()) {
+
+				SchemaHelper.reloadSchema(new ErrorBuffer(), securityContext.getSessionId());
+				tx.success();
+
+			} catch (FrameworkException fex) {
+				logger.warn("", fex);
+			}
+
+			// set correct labels after schema has been compiled, only the
+			// imported types need to be updated
+			final BulkCreateLabelsCommand createLabels = app.command(BulkCreateLabelsCommand.class);
+
+			for (final String type : nodeTypes) {
+
+				createLabels.execute(Collections.singletonMap("type", type));
+			}
+
+			logger.info("Snapshot import done in {} s", (System.currentTimeMillis() - t0) / 1000.0);
+		}
+
+		@Override
+		public void close() {
+			executor.shutdownNow();
+		}
+
+		// ----- private methods -----
+		private void readNodes(final DataInputStream dis, final String type) throws IOException, FrameworkException {
+
+			List<Map<String, Object>> batch = new ArrayList<>(batchSize);
+
+			while (true) {
+
+				final int count;
+
+				try {
+					count = readVarInt(dis);
+
+				} catch (EOFException eof) {
+					break;
+				}
+
+				batch.add(readProperties(dis, count));
+
+				if (batch.size() >= batchSize) {
+
+					submitNodes(type, batch);
+					batch = new ArrayList<>(batchSize);
+				}
+			}
+
+			if (!batch.isEmpty()) {
+				submitNodes(type, batch);
+			}
+		}
+
+		private void readRelationships(final DataInputStream dis, final String type) throws IOException, FrameworkException {
+
+			List<Object[]> batch = new ArrayList<>(batchSize);
+
+			while (true) {
+
+				final String startId;
+
+				try {
+					startId = dis.readUTF();
+
+				} catch (EOFException eof) {
+					break;
+				}
+
+				final String endId = dis.readUTF();
+
+				batch.add(new Object[] { startId, endId, readProperties(dis, readVarInt(dis)) });
+
+				if (batch.size() >= batchSize) {
+
+					submitRelationships(type, batch);
+					batch = new ArrayList<>(batchSize);
+				}
+			}
+
+			if (!batch.isEmpty()) {
+				submitRelationships(type, batch);
+			}
+		}
+
+		private Map<String, Object> readProperties(final DataInputStream dis, final int count) throws IOException {
+
+			final Map<String, Object> properties = new LinkedHashMap<>();
+
+			for (int i=0; i<count; i++) {
+
+				final String key   = dictionary[readVarInt(dis)];
+				final Object value = SyncCommand.deserialize(dis);
+
+				if (value != null) {
+					properties.put(key, value);
+				}
+			}
+
+			return properties;
+		}
+
+		private void submitNodes(final String type, final List<Map<String, Object>> batch) throws IOException, FrameworkException {
+
+			submit(() -> {
+
+				final Label label = graphDb.forName(Label.class, type);
+
+				for (final Map<String, Object> properties : batch) {
+
+					final String uuid = (String)properties.get(uuidPropertyName);
+					Node node         = incremental ? findNode(uuid) : null;
+
+					if (node != null) {
+
+						node.setProperties(properties);
+						node.addLabel(label);
+
+					} else {
+
+						node = graphDb.createNode(Collections.singleton(type), properties);
+					}
+
+					uuidMap.put(uuid, node.getId());
+				}
+
+				nodeCount.addAndGet(batch.size());
+
+				return null;
+			});
+		}
+
+		private void submitRelationships(final String type, final List<Object[]> batch) throws IOException, FrameworkException {
+
+			submit(() -> {
+
+				final RelationshipType relType = RelationshipType.forName(type);
+
+				for (final Object[] record : batch) {
+
+					final Map<String, Object> properties = (Map<String, Object>)record[2];
+					final Node startNode                 = getNode((String)record[0]);
+					final Node endNode                   = getNode((String)record[1]);
+
+					if (startNode != null && endNode != null) {
+
+						final String uuid = (String)properties.get(uuidPropertyName);
+						Relationship rel  = incremental ? findRelationship(startNode, endNode, relType, uuid) : null;
+
+						if (rel == null) {
+							rel = startNode.createRelationshipTo(endNode, relType);
+						}
+
+						rel.setProperties(properties);
+
+						relCount.incrementAndGet();
+
+					} else {
+
+						logger.warn("NOT creating relationship of type {}, start: {}, end: {}", type, record[0], record[1]);
+					}
+				}
+
+				return null;
+			});
+		}
+
+		private void submit(final Callable<Void> writer) throws IOException, FrameworkException {
+
+			final App app = StructrApp.getInstance();
+
+			pending.add(executor.submit(() -> {
+
+				// retry batches that failed because of concurrent writes to the same nodes
+				for (int i=0; ; i++) {
+
+					try (final Tx tx = app.tx(doValidation)) {
+
+						writer.call();
+						tx.success();
+
+						return null;
+
+					} catch (RetryException rex) {
+
+						if (i >= 3) {
+							throw rex;
+						}
+					}
+				}
+			}));
+
+			// limit the number of pending futures
+			if (pending.size() > 1000) {
+
+				waitFor(pending.remove(0));
+			}
+		}
+
+		private void waitForPending() throws IOException, FrameworkException {
+
+			while (!pending.isEmpty()) {
+
+				waitFor(pending.remove(0));
+			}
+		}
+
+		private Node getNode(final String uuid) throws FrameworkException {
+
+			final Long id = uuidMap.get(uuid);
+			if (id != null) {
+
+				return graphDb.getNodeById(id);
+			}
+
+			return incremental ? findNode(uuid) : null;
+		}
+
+		private Node findNode(final String uuid) throws FrameworkException {
+
+			// query the database directly, the UUID cache may contain stale IDs after a reset
+			final NodeInterface existing = StructrApp.getInstance().nodeQuery().uuid(uuid).getFirst();
+			if (existing != null) {
+
+				return existing.getNode();
+			}
+
+			return null;
+		}
+
+		private Relationship findRelationship(final Node startNode, final Node endNode, final RelationshipType relType, final String uuid) {
+
+			for (final Relationship rel : startNode.getRelationships(Direction.OUTGOING, relType)) {
+
+				if (uuid != null && uuid.equals(rel.getProperty(uuidPropertyName)) && rel.getEndNode().getId() == endNode.getId()) {
+
+					return rel;
+				}
+			}
+
+			return null;
+		}
+	}
+
+	private static class Segment {
+
+		private String name = null;
+		private Path file   = null;
+		private long count  = 0L;
+
+		Segment(final String name) throws IOException {
+
+			this.name = name;
+			this.file = Files.createTempFile("structr-snapshot-", ".segment");
+		}
+
+		DataOutputStream open() throws IOException {
+			return new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file), 65536));
+		}
+
+		DataOutputStream append() throws IOException {
+			return new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file, StandardOpenOption.APPEND), 65536));
+		}
+	}
+}
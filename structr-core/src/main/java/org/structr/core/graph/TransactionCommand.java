@@ -132,6 +132,9 @@ public class TransactionCommand extends NodeServiceCommand implements AutoClosea
 				throw new FrameworkException(422, "Unable to commit transaction, transaction post processing failed", errorBuffer);
 			}
 
+			// write buffered changes so that errors are reported to the caller
+			tx.flush();
+
 			try {
 				tx.success();
 
@@ -401,10 +404,34 @@ public class TransactionCommand extends NodeServiceCommand implements AutoClosea
 
 	}
 
+	/**
+	 * Returns the wait time statistics of the per-type locks that protect
+	 * the validation phase of each transaction.
+	 *
+	 * @return a map of statistics for each synchronization key
+	 */
+	public static Map<String, Map<String, Long>> getSynchronizationStatistics() {
+		return semaphore.getStatistics();
+	}
+
 	public static boolean inTransaction() {
 		return currentCommand.get() != null;
 	}
 
+	public static boolean isCreated(final Node node) {
+
+		if (!inTransaction()) {
+			throw new NotInTransactionException("Not in transaction.");
+		}
+
+		final ModificationQueue queue = queues.get();
+		if (queue != null) {
+			return queue.isCreated(node);
+		}
+
+		return false;
+	}
+
 	public static boolean isDeleted(final Node node) {
 
 		if (!inTransaction()) {
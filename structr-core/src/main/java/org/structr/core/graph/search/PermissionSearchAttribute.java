@@ -0,0 +1,108 @@
+/**
+ * Copyright (C) 2010-2018 Structr GmbH
+ *
+ * This file is part of Structr <http://structr.org>.
+ *
+ * Structr is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Structr is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.structr.core.graph.search;
+
+import java.util.LinkedHashSet;
+import java.util.LinkedList;
+import java.util.Queue;
+import java.util.Set;
+import org.structr.api.search.Occurrence;
+import org.structr.api.search.PermissionQuery;
+import org.structr.common.Permission;
+import org.structr.core.GraphObject;
+import org.structr.core.entity.Principal;
+
+/**
+ * Restricts a query to the nodes a principal can access through
+ * ownership, security relationships or the visibility flags. This
+ * attribute is evaluated by the database only, permissions that are
+ * resolved along permission propagation paths are not included.
+ */
+public class PermissionSearchAttribute extends SearchAttribute<String> implements PermissionQuery {
+
+	private final Set<Long> principalIds = new LinkedHashSet<>();
+	private Permission permission        = null;
+	private long principalId             = -1L;
+
+	public PermissionSearchAttribute(final Principal principal, final Permission permission) {
+
+		super(Occurrence.REQUIRED);
+
+		this.principalId = principal.getId();
+		this.permission  = permission;
+
+		// collect principal and all of its groups
+		final Queue<Principal> queue = new LinkedList<>();
+
+		queue.add(principal);
+
+		while (!queue.isEmpty()) {
+
+			final Principal current = queue.poll();
+
+			if (principalIds.add(current.getId())) {
+
+				queue.addAll(current.getParents());
+			}
+		}
+	}
+
+	@Override
+	public String toString() {
+		return "PermissionSearchAttribute(" + permission + ", " + principalIds + ")";
+	}
+
+	@Override
+	public Class getQueryType() {
+		return PermissionQuery.class;
+	}
+
+	@Override
+	public String getName() {
+		return null;
+	}
+
+	@Override
+	public boolean isExactMatch() {
+		return true;
+	}
+
+	@Override
+	public boolean includeInResult(final GraphObject entity) {
+
+		// permissions are evaluated by the node factory
+		return true;
+	}
+
+	// ----- interface PermissionQuery -----
+	@Override
+	public long getPrincipalId() {
+		return principalId;
+	}
+
+	@Override
+	public Set<Long> getPrincipalIds() {
+		return principalIds;
+	}
+
+	@Override
+	public String getPermission() {
+		return permission.name();
+	}
+}
@@ -20,21 +20,27 @@ package org.structr.core.graph.search;
 
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
+import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.Queue;
 import java.util.Set;
+import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.structr.api.Predicate;
 import org.structr.api.QueryResult;
+import org.structr.api.config.Settings;
 import org.structr.api.graph.PropertyContainer;
 import org.structr.api.index.Index;
 import org.structr.api.search.Occurrence;
 import org.structr.common.GraphObjectComparator;
 import org.structr.common.PagingHelper;
+import org.structr.common.Permission;
 import org.structr.common.SecurityContext;
 import org.structr.common.error.FrameworkException;
 import org.structr.common.geo.GeoCodingResult;
@@ -44,6 +50,8 @@ import org.structr.core.Result;
 import org.structr.core.app.StructrApp;
 import org.structr.core.entity.AbstractNode;
 import org.structr.core.entity.AbstractRelationship;
+import org.structr.core.entity.Principal;
+import org.structr.core.entity.SchemaRelationshipNode;
 import org.structr.core.graph.Factory;
 import org.structr.core.graph.NodeInterface;
 import org.structr.core.graph.NodeServiceCommand;
@@ -95,6 +103,8 @@ public abstract class SearchCommand<S extends PropertyContainer, T extends Graph
 	private Class type                           = null;
 	private int pageSize                         = Integer.MAX_VALUE;
 	private int page                             = 1;
+	private boolean defaultAttributesAdded       = false;
+	private boolean visibilityAttributesAdded    = false;
 
 	public abstract Factory<S, T> getFactory(final SecurityContext securityContext, final boolean includeDeletedAndHidden, final boolean publicOnly, final int pageSize, final int page);
 	public abstract boolean isRelationshipSearch();
@@ -111,18 +121,7 @@ public abstract class SearchCommand<S extends PropertyContainer, T extends Graph
 		boolean hasGraphSources      = false;
 		boolean hasSpatialSource     = false;
 
-		if (securityContext.getUser(false) == null) {
-
-			rootGroup.add(new PropertySearchAttribute(GraphObject.visibleToPublicUsers, true, Occurrence.REQUIRED, true));
-
-		}
-
-		// special handling of deleted and hidden flags
-		if (!includeDeletedAndHidden && !isRelationshipSearch()) {
-
-			rootGroup.add(new PropertySearchAttribute(NodeInterface.hidden,  true, Occurrence.FORBIDDEN, true));
-			rootGroup.add(new PropertySearchAttribute(NodeInterface.deleted, true, Occurrence.FORBIDDEN, true));
-		}
+		addDefaultAttributes();
 
 		// At this point, all search attributes are ready
 		final List<SourceSearchAttribute> sources    = new ArrayList<>();
@@ -210,6 +209,11 @@ public abstract class SearchCommand<S extends PropertyContainer, T extends Graph
 					factory.disablePaging();
 				}
 
+				if (!hasEmptySearchFields && !hasGraphSources && !hasSpatialSource && canPageInDatabase()) {
+
+					return pageInDatabase(index, factory);
+				}
+
 				// do query
 				final QueryResult hits = getIndex().query(rootGroup);
 				intermediateResult     = factory.instantiate(hits);
@@ -275,6 +279,166 @@ public abstract class SearchCommand<S extends PropertyContainer, T extends Graph
 		}
 	}
 
+	/**
+	 * Indicates whether the visibility of the results can be evaluated by
+	 * the database, so that paging and counting can be done there too.
+	 */
+	private boolean canPageInDatabase() {
+
+		if (!Settings.PermissionFilter.getValue() || isRelationshipSearch()) {
+			return false;
+		}
+
+		if (securityContext.isSuperUser() || publicOnly) {
+			return true;
+		}
+
+		final Principal user = securityContext.getUser(false);
+		if (user == null || user.isAdmin()) {
+
+			// anonymous users can only see public nodes, which
+			// is already a search attribute at this point
+			return true;
+		}
+
+		// permissions that are resolved along permission propagation
+		// paths or by custom queries cannot be evaluated in the database
+		if (!SchemaRelationshipNode.getPropagatingRelationshipTypes().isEmpty()) {
+			return false;
+		}
+
+		final PropertyKey<String> key = StructrApp.getConfiguration().getPropertyKeyForJSONName(Principal.class, "customPermissionQueryRead");
+		final Queue<Principal> queue  = new LinkedList<>();
+		final Set<Principal> seen     = new HashSet<>();
+
+		queue.add(user);
+
+		while (!queue.isEmpty()) {
+
+			final Principal principal = queue.poll();
+
+			if (seen.add(principal)) {
+
+				if (StringUtils.isNotEmpty(principal.getProperty(key))) {
+					return false;
+				}
+
+				queue.addAll(principal.getParents());
+			}
+		}
+
+		return true;
+	}
+
+	/**
+	 * Evaluates visibility, paging and the overall count of the results in
+	 * the database, and instantiates only the nodes of the requested page.
+	 */
+	private Result<T> pageInDatabase(final Index<S> index, final Factory<S, T> factory) throws FrameworkException {
+
+		addVisibilityAttributes();
+
+		if (pageSize == Integer.MAX_VALUE) {
+
+			final Result<T> result = factory.instantiatePage(index.query(rootGroup), -1, 0);
+
+			// all results were instantiated, so the count is accurate
+			return new Result(result.getResults(), result.getResults().size(), true, false);
+		}
+
+		int overallCount = -1;
+		int offset       = (page - 1) * pageSize;
+
+		if (page < 0 || !securityContext.ignoreResultCount()) {
+
+			overallCount = (int)index.count(rootGroup);
+		}
+
+		if (page < 0) {
+
+			// negative pages are counted from the end
+			offset = Math.max(0, overallCount + (page * pageSize));
+		}
+
+		return factory.instantiatePage(index.query(rootGroup, offset, pageSize), overallCount, offset);
+	}
+
+	private void addDefaultAttributes() {
+
+		// add the attributes only once, so the query can be executed again
+		if (defaultAttributesAdded) {
+			return;
+		}
+
+		defaultAttributesAdded = true;
+
+		if (securityContext.getUser(false) == null) {
+
+			rootGroup.add(new PropertySearchAttribute(GraphObject.visibleToPublicUsers, true, Occurrence.REQUIRED, true));
+
+		}
+
+		// special handling of deleted and hidden flags
+		if (!includeDeletedAndHidden && !isRelationshipSearch()) {
+
+			rootGroup.add(new PropertySearchAttribute(NodeInterface.hidden,  true, Occurrence.FORBIDDEN, true));
+			rootGroup.add(new PropertySearchAttribute(NodeInterface.deleted, true, Occurrence.FORBIDDEN, true));
+		}
+	}
+
+	/**
+	 * Adds the visibility checks for the current user to the query, so
+	 * that they are evaluated by the database.
+	 */
+	private void addVisibilityAttributes() {
+
+		if (visibilityAttributesAdded) {
+			return;
+		}
+
+		visibilityAttributesAdded = true;
+
+		final Principal user = securityContext.getUser(false);
+
+		if (!securityContext.isSuperUser()) {
+
+			if (publicOnly) {
+
+				rootGroup.add(new PropertySearchAttribute(GraphObject.visibleToPublicUsers, true, Occurrence.REQUIRED, true));
+
+			} else if (user != null && !user.isAdmin()) {
+
+				rootGroup.add(new PermissionSearchAttribute(user, Permission.read));
+			}
+		}
+	}
+
+	/**
+	 * Indicates whether the query contains attributes that are evaluated
+	 * in memory after the database query.
+	 */
+	private boolean needsInMemoryEvaluation() {
+
+		for (final SearchAttribute attr : rootGroup.getSearchAttributes()) {
+
+			if (attr instanceof SearchAttributeGroup) {
+
+				for (final SearchAttribute item : ((SearchAttributeGroup)attr).getSearchAttributes()) {
+
+					if (item instanceof SourceSearchAttribute || item instanceof EmptySearchAttribute) {
+						return true;
+					}
+				}
+			}
+
+			if (attr instanceof SourceSearchAttribute || attr instanceof EmptySearchAttribute || attr instanceof DistanceSearchAttribute) {
+				return true;
+			}
+		}
+
+		return false;
+	}
+
 	private Set<GraphObject> mergeSources(List<SourceSearchAttribute> sources) {
 
 		final Set<GraphObject> mergedResult = new LinkedHashSet<>();
@@ -331,6 +495,40 @@ public abstract class SearchCommand<S extends PropertyContainer, T extends Graph
 		return Collections.emptyList();
 	}
 
+	@Override
+	public Iterable<T> getResultStream() throws FrameworkException {
+
+		final Index<S> index = getIndex();
+
+		if (index != null && !needsInMemoryEvaluation()) {
+
+			// paging is not supported for streams
+			final Factory<S, T> factory = getFactory(securityContext, includeDeletedAndHidden, publicOnly, Integer.MAX_VALUE, 1);
+
+			addDefaultAttributes();
+
+			// otherwise the factory checks the visibility of each result
+			// when it is instantiated
+			if (canPageInDatabase()) {
+				addVisibilityAttributes();
+			}
+
+			if (sortKey != null && !doNotSort) {
+
+				rootGroup.setSortKey(sortKey);
+				rootGroup.sortDescending(sortDescending);
+			}
+
+			return factory.stream(index.query(rootGroup));
+		}
+
+		// paging is not supported for streams
+		this.pageSize = Integer.MAX_VALUE;
+		this.page     = 1;
+
+		return getAsList();
+	}
+
 	@Override
 	public T getFirst() throws FrameworkException {
 
@@ -18,6 +18,7 @@
  */
 package org.structr.core.scheduler;
 
+import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
@@ -25,8 +26,21 @@ import java.util.Queue;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentLinkedDeque;
 import java.util.concurrent.atomic.AtomicLong;
+import org.structr.api.config.Setting;
+import org.structr.api.config.Settings;
 import org.structr.common.error.FrameworkException;
 
+/**
+ * Runs scheduled jobs concurrently, within the limits configured for all
+ * jobs, for each user, for each job type (e.g. with the setting
+ * <code>application.scheduler.csv.max.jobs</code>) and for write-heavy
+ * jobs like file imports. Paused jobs keep their slot.
+ *
+ * When a slot becomes available, the queued job with the highest priority
+ * that fits into the limits is started. Among jobs with equal priority,
+ * jobs of users with fewer active jobs are preferred, then the job that
+ * was queued first.
+ */
 public class JobQueueManager {
 
 	private static JobQueueManager singletonInstance = null;
@@ -41,7 +55,7 @@ public class JobQueueManager {
 	/*
 	 * Public API
 	 */
-	public static JobQueueManager getInstance() {
+	public static synchronized JobQueueManager getInstance() {
 
 		if (singletonInstance == null) {
 			singletonInstance = new JobQueueManager();
@@ -59,25 +73,23 @@ public class JobQueueManager {
 
 			appendToQueueInternal(job);
 
-			if (!hasRunningJobs()) {
+			startQueuedJobs();
 
-				startNextJobInQueue();
-
-			} else {
+			if (queuedJobs.containsKey(jobId)) {
 
 				job.reportQueued();
-
 			}
 		}
 	}
 
 	/**
 	 * Starts an import job if it exists. Returns true if it is started.
+	 * Jobs that are started explicitly are not subject to the limits.
 	 *
 	 * @param jobId Job to start
 	 * @return boolean "job started"
 	 */
-	public boolean startJob(final Long jobId) {
+	public synchronized boolean startJob(final Long jobId) {
 
 		final ScheduledJob job = removeFromQueueInternal(jobId);
 
@@ -129,20 +141,14 @@ public class JobQueueManager {
 
 		activeJobs.remove(job.jobId());
 
-		if (!hasRunningJobs()) {
-			startNextJobInQueue();
-		}
-
+		startQueuedJobs();
 	}
 
 	protected void jobAborted (final ScheduledJob job) {
 
 		activeJobs.remove(job.jobId());
 
-		if (!hasRunningJobs()) {
-			startNextJobInQueue();
-		}
-
+		startQueuedJobs();
 	}
 
 
@@ -158,35 +164,79 @@ public class JobQueueManager {
 		return queuedJobs.remove(jobId);
 	}
 
-	private boolean hasRunningJobs() {
+	private synchronized void startQueuedJobs() {
+
+		ScheduledJob job = getNextJobInQueue();
 
-		// if any job is RUNNING or PAUSED, dont auto-start new tasks
-		return (!activeJobs.isEmpty());
+		while (job != null) {
 
-//		// if any job is RUNNING, dont auto-start new tasks
-//		// this effectively means that if a user PAUSES a job, the queue is stopped BUT
-//		// if another job is queued or the last running job finishes, then the next queued job is started
-//		boolean hasRunningJob = false;
-//
-//		for (ImportJob job : activeJobs.values()) {
-//			if (job.getCurrentStatus().equals(ImportJob.JobStatus.RUNNING)) {
-//				hasRunningJob = true;
-//			}
-//		}
-//
-//		return hasRunningJob;
+			startJob(job.jobId());
 
+			job = getNextJobInQueue();
+		}
 	}
 
-	private void startNextJobInQueue() {
-		final Long jobId = jobIdQueue.peek();
+	private ScheduledJob getNextJobInQueue() {
+
+		if (activeJobs.size() >= Settings.JobsMaxConcurrent.getValue()) {
+			return null;
+		}
+
+		final Map<String, Integer> activeJobsPerType = new HashMap<>();
+		final Map<String, Integer> activeJobsPerUser = new HashMap<>();
+		int activeWriteHeavyJobs                     = 0;
+
+		for (final ScheduledJob job : activeJobs.values()) {
+
+			activeJobsPerType.merge(job.getJobType(), 1, Integer::sum);
+			activeJobsPerUser.merge(job.getUsername(), 1, Integer::sum);
+
+			if (job.isWriteHeavy()) {
+				activeWriteHeavyJobs++;
+			}
+		}
+
+		final int maxPerUser    = Settings.JobsMaxPerUser.getValue();
+		final int maxWriteHeavy = Settings.JobsMaxWriteHeavy.getValue();
+		ScheduledJob next       = null;
+
+		for (final Long jobId : jobIdQueue) {
+
+			final ScheduledJob job = queuedJobs.get(jobId);
+			if (job == null) {
+				continue;
+			}
+
+			final int jobsOfUser = activeJobsPerUser.getOrDefault(job.getUsername(), 0);
 
-		if (jobId != null) {
-			boolean didStart = startJob(jobId);
-			if (!didStart) {
-				startNextJobInQueue();
+			if (jobsOfUser >= maxPerUser) {
+				continue;
+			}
+
+			if (activeJobsPerType.getOrDefault(job.getJobType(), 0) >= getMaxJobsForType(job.getJobType())) {
+				continue;
+			}
+
+			if (job.isWriteHeavy() && activeWriteHeavyJobs >= maxWriteHeavy) {
+				continue;
+			}
+
+			if (next == null || job.getPriority() > next.getPriority() || (job.getPriority() == next.getPriority() && jobsOfUser < activeJobsPerUser.getOrDefault(next.getUsername(), 0))) {
+				next = job;
 			}
 		}
+
+		return next;
 	}
-}
 
+	private int getMaxJobsForType(final String jobType) {
+
+		final Setting<Integer> setting = Settings.getIntegerSetting("application.scheduler", jobType.toLowerCase(), "max.jobs");
+		if (setting != null && setting.getValue() != null) {
+
+			return setting.getValue();
+		}
+
+		return Integer.MAX_VALUE;
+	}
+}
@@ -129,6 +129,33 @@ public abstract class ScheduledJob {
 		return username;
 	}
 
+	/**
+	 * Returns the priority of this job, queued jobs with a higher priority
+	 * are started first. The priority can be set with the configuration
+	 * entry "priority".
+	 *
+	 * @return the priority
+	 */
+	public int getPriority () {
+
+		if (configuration != null) {
+			return parseInt(configuration.get("priority"), 0);
+		}
+
+		return 0;
+	}
+
+	/**
+	 * Override this method and return true if this job creates or modifies
+	 * large amounts of data, so the number of jobs of this kind that run
+	 * at the same time can be limited.
+	 *
+	 * @return whether this job is write-heavy
+	 */
+	public boolean isWriteHeavy () {
+		return false;
+	}
+
 	public JobStatus getCurrentStatus () {
 		return currentStatus;
 	}
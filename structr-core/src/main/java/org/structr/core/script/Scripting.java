@@ -21,9 +21,14 @@ package org.structr.core.script;
 import java.io.StringWriter;
 import java.util.Collections;
 import java.util.Date;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import javax.script.Bindings;
@@ -31,16 +36,18 @@ import javax.script.ScriptContext;
 import javax.script.ScriptEngine;
 import javax.script.ScriptEngineManager;
 import javax.script.ScriptException;
-import org.apache.commons.collections4.map.LRUMap;
 import org.apache.commons.lang3.StringUtils;
 import org.mozilla.javascript.Context;
 import org.mozilla.javascript.ContextFactory;
 import org.mozilla.javascript.Script;
 import org.mozilla.javascript.Scriptable;
+import org.mozilla.javascript.ScriptableObject;
 import org.mozilla.javascript.Undefined;
 import org.renjin.script.RenjinScriptEngine;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.structr.api.config.Settings;
+import org.structr.api.util.ConcurrentFixedSizeCache;
 import org.structr.common.error.FrameworkException;
 import org.structr.common.error.UnlicensedException;
 import org.structr.core.GraphObject;
@@ -56,9 +63,15 @@ import org.structr.schema.parser.DatePropertyParser;
  */
 public class Scripting {
 
-	private static final Logger logger                       = LoggerFactory.getLogger(Scripting.class.getName());
-	private static final Pattern ScriptEngineExpression      = Pattern.compile("^\\$\\{(\\w+)\\{(.*)\\}\\}$", Pattern.DOTALL);
-	private static final Map<String, Script> compiledScripts = Collections.synchronizedMap(new LRUMap<>(10000));
+	private static final ConcurrentFixedSizeCache<String, CompletableFuture<Script>> compiledScripts = new ConcurrentFixedSizeCache<>(Settings.ScriptingCacheSize.getValue());
+	private static final ConcurrentFixedSizeCache<String, List<String>> extractedScripts             = new ConcurrentFixedSizeCache<>(Settings.ScriptingCacheSize.getValue());
+	private static final Logger logger                                                              = LoggerFactory.getLogger(Scripting.class.getName());
+	private static final Pattern ScriptEngineExpression                                             = Pattern.compile("^\\$\\{(\\w+)\\{(.*)\\}\\}$", Pattern.DOTALL);
+	private static final AtomicLong scriptCacheHits                                                 = new AtomicLong();
+	private static final AtomicLong scriptCacheMisses                                               = new AtomicLong();
+	private static final AtomicLong compileTime                                                     = new AtomicLong();
+	private static final AtomicLong compileErrors                                                   = new AtomicLong();
+	private static volatile ScriptableObject sharedScope                                            = null;
 
 	public static String replaceVariables(final ActionContext actionContext, final GraphObject entity, final Object rawValue) throws FrameworkException {
 
@@ -77,7 +90,7 @@ public class Scripting {
 
 				final List<Tuple> replacements = new LinkedList<>();
 
-				for (final String expression : extractScripts(value)) {
+				for (final String expression : getScripts(value)) {
 
 					try {
 
@@ -213,7 +226,7 @@ public class Scripting {
 			scriptingContext.setGenerateObserverCount(false);
 			scriptingContext.setGeneratingDebug(true);
 
-			final Scriptable scope = scriptingContext.initStandardObjects();
+			final Scriptable scope = createScope(scriptingContext);
 			final StructrScriptable scriptable = new StructrScriptable(actionContext, entity, scriptingContext);
 
 			scriptable.setParentScope(scope);
@@ -339,21 +352,156 @@ public class Scripting {
 		return buf.toString();
 	}
 
+	/**
+	 * Creates a new top-level scope for a single script evaluation. The
+	 * standard objects are initialized only once and shared (sealed)
+	 * between all scopes, the returned scope uses them as its prototype.
+	 *
+	 * @param context the current context
+	 * @return a new scope
+	 */
+	public static Scriptable createScope(final Context context) {
+
+		ScriptableObject shared = sharedScope;
+		if (shared == null) {
+
+			synchronized (Scripting.class) {
+
+				shared = sharedScope;
+				if (shared == null) {
+
+					// sealed standard objects can safely be used by multiple threads
+					shared      = context.initStandardObjects(null, true);
+					sharedScope = shared;
+				}
+			}
+		}
+
+		final Scriptable scope = context.newObject(shared);
+
+		// global variables of the script are stored in the new scope
+		scope.setPrototype(shared);
+		scope.setParentScope(null);
+
+		return scope;
+	}
+
+	/**
+	 * Returns the compiled version of the given source. Scripts are compiled
+	 * outside of any lock, concurrent requests for the same source wait for
+	 * the result of the first compilation.
+	 *
+	 * @param context the current context
+	 * @param source the source code
+	 * @param sourceName the name of the source for error messages
+	 * @param lineNo the line number of the source for error messages
+	 *
+	 * @return the compiled script
+	 */
 	public static Script compileOrGetCached(final Context context, final String source, final String sourceName, final int lineNo) {
 
-		synchronized (compiledScripts) {
+		CompletableFuture<Script> future = compiledScripts.get(source);
+		if (future == null) {
+
+			final CompletableFuture<Script> newFuture = new CompletableFuture<>();
+
+			future = compiledScripts.putIfAbsent(source, newFuture);
+			if (future == null) {
+
+				scriptCacheMisses.incrementAndGet();
+
+				final long t0 = System.nanoTime();
+
+				try {
+
+					newFuture.complete(context.compileString(source, sourceName, lineNo, null));
+
+				} catch (final Throwable t) {
+
+					compileErrors.incrementAndGet();
+
+					// do not cache compilation errors (including errors like
+					// StackOverflowError), but notify waiting threads
+					compiledScripts.remove(source);
+					newFuture.completeExceptionally(t);
+
+					throw t;
+
+				} finally {
+
+					compileTime.addAndGet(System.nanoTime() - t0);
+				}
+
+				return newFuture.join();
+			}
+		}
+
+		scriptCacheHits.incrementAndGet();
+
+		try {
+
+			return future.join();
 
-			Script script = compiledScripts.get(source);
-			if (script == null) {
+		} catch (CompletionException cex) {
 
-				script = context.compileString(source, sourceName, lineNo, null);
-				compiledScripts.put(source, script);
+			final Throwable cause = cex.getCause();
+			if (cause instanceof RuntimeException) {
+
+				throw (RuntimeException)cause;
+			}
+
+			if (cause instanceof Error) {
+
+				throw (Error)cause;
 			}
 
-			return script;
+			throw cex;
 		}
 	}
 
+	public static Map<String, Long> getScriptCacheStatistics() {
+
+		final Map<String, Long> statistics = new LinkedHashMap<>();
+
+		statistics.put("size",          Long.valueOf(compiledScripts.size()));
+		statistics.put("hits",          scriptCacheHits.get());
+		statistics.put("misses",        scriptCacheMisses.get());
+		statistics.put("compileErrors", compileErrors.get());
+		statistics.put("compileTime",   TimeUnit.NANOSECONDS.toMillis(compileTime.get()));
+
+		return statistics;
+	}
+
+	/**
+	 * Returns the scripts contained in the given source, using a cache of
+	 * previously extracted scripts.
+	 *
+	 * @param source the source
+	 * @return an unmodifiable list of scripts
+	 */
+	public static List<String> getScripts(final String source) {
+
+		// fast path for values that cannot contain any scripts
+		if (!source.contains("${")) {
+			return Collections.emptyList();
+		}
+
+		List<String> scripts = extractedScripts.get(source);
+		if (scripts == null) {
+
+			scripts = Collections.unmodifiableList(extractScripts(source));
+			extractedScripts.put(source, scripts);
+		}
+
+		return scripts;
+	}
+
+	public static void clearCache() {
+
+		compiledScripts.clear();
+		extractedScripts.clear();
+	}
+
 	// this is only public to be testable :(
 	public static List<String> extractScripts(final String source) {
 
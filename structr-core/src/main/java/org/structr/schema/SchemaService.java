@@ -50,6 +50,7 @@ import org.structr.core.app.StructrApp;
 import org.structr.core.entity.AbstractNode;
 import org.structr.core.entity.SchemaNode;
 import org.structr.core.entity.SchemaRelationshipNode;
+import org.structr.core.function.Functions;
 import org.structr.core.graph.NodeInterface;
 import org.structr.core.graph.Tx;
 import org.structr.core.graph.search.SearchCommand;
@@ -181,6 +182,9 @@ public class SchemaService implements Service {
 						// clear permission cache
 						AbstractNode.clearPermissionResolutionCache();
 
+						// clear parsed expressions
+						Functions.clearCache();
+
 						// inject views in configuration provider
 						config.registerDynamicViews(dynamicViews);
 
@@ -0,0 +1,273 @@
+/**
+ * Copyright (C) 2010-2018 Structr GmbH
+ *
+ * This file is part of Structr <http://structr.org>.
+ *
+ * Structr is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Structr is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.structr.agent;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import org.junit.Test;
+import org.structr.api.config.Settings;
+import org.structr.common.StructrTest;
+
+/**
+ * Test for task scheduling in the agent service.
+ */
+public class AgentServiceTest extends StructrTest {
+
+	private static final List<String> processed   = Collections.synchronizedList(new ArrayList<>());
+	private static final List<Integer> batchSizes = Collections.synchronizedList(new ArrayList<>());
+	private static CountDownLatch started         = null;
+	private static CountDownLatch blocker         = null;
+
+	@Test
+	public void test01PriorityAndBatching() {
+
+		final AgentService agentService = new AgentService();
+
+		Settings.AgentWorkers.setValue(1);
+		Settings.AgentBatchSize.setValue(10);
+
+		reset();
+
+		try {
+
+			agentService.startService();
+
+			// occupy the only worker so that the following tasks are queued
+			agentService.processTask(new TestTask("block"));
+			assertTrue("Agent did not start", started.await(10, TimeUnit.SECONDS));
+
+			agentService.processTask(new TestTask("low1", 0));
+			agentService.processTask(new TestTask("high", 5));
+			agentService.processTask(new TestTask("low2", 0));
+
+			assertEquals("Invalid number of queued tasks", 3, agentService.getTaskQueue().size());
+
+			blocker.countDown();
+
+			waitFor(4);
+
+			assertEquals("Tasks were not processed in order of priority", Arrays.asList("block", "high", "low1", "low2"), processed);
+			assertEquals("Queued tasks were not processed in a single batch", Arrays.asList(1, 3), batchSizes);
+
+			final Map<String, Object> statistics = agentService.getStatistics().get(TestTask.class.getName());
+
+			assertEquals("Invalid agent statistics", 4L, statistics.get("submitted"));
+			assertEquals("Invalid agent statistics", 4L, statistics.get("processed"));
+			assertEquals("Invalid agent statistics", 0,  statistics.get("queued"));
+
+		} catch (Exception ex) {
+
+			ex.printStackTrace();
+			fail("Unexpected exception.");
+
+		} finally {
+
+			agentService.stopService();
+
+			Settings.AgentWorkers.setValue(Settings.AgentWorkers.getDefaultValue());
+			Settings.AgentBatchSize.setValue(Settings.AgentBatchSize.getDefaultValue());
+		}
+	}
+
+	@Test
+	public void test02PendingTasksAreJournaled() {
+
+		final File file = new File(Settings.getBasePath() + "agent-tasks.journal");
+
+		Settings.AgentWorkers.setValue(1);
+
+		reset();
+
+		try {
+
+			final AgentService agentService = new AgentService();
+
+			agentService.startService();
+
+			agentService.processTask(new TestTask("block"));
+			assertTrue("Agent did not start", started.await(10, TimeUnit.SECONDS));
+
+			agentService.processTask(new TestTask("pending1"));
+			agentService.processTask(new TestTask("pending2"));
+
+			// tasks are written to the journal when they are enqueued
+			assertTrue("Pending tasks were not journaled", file.exists());
+			assertEquals("Pending tasks were not journaled", 3, Files.readAllLines(file.toPath()).size());
+
+			agentService.stopService();
+			blocker.countDown();
+
+			waitFor(1);
+
+			assertEquals("Pending tasks must not be processed after shutdown", Arrays.asList("block"), processed);
+
+			// a new agent service must process the pending tasks, including
+			// the task that was being processed during the shutdown
+			final AgentService restartedService = new AgentService();
+
+			reset();
+			blocker.countDown();
+
+			restartedService.startService();
+
+			waitFor(3);
+
+			assertEquals("Pending tasks were not restored", Arrays.asList("block", "pending1", "pending2"), processed);
+
+			restartedService.stopService();
+
+			assertFalse("Journal of finished tasks was not removed", file.exists());
+
+		} catch (Exception ex) {
+
+			ex.printStackTrace();
+			fail("Unexpected exception.");
+
+		} finally {
+
+			Settings.AgentWorkers.setValue(Settings.AgentWorkers.getDefaultValue());
+		}
+	}
+
+	@Test
+	public void test03SuspendedAgentIsResumed() {
+
+		final AgentService agentService = new AgentService();
+
+		Settings.AgentWorkers.setValue(1);
+
+		reset();
+
+		try {
+
+			agentService.startService();
+
+			agentService.processTask(new TestTask("block"));
+			assertTrue("Agent did not start", started.await(10, TimeUnit.SECONDS));
+
+			final Agent agent = agentService.getRunningAgents().get(TestTask.class.getName()).get(0);
+
+			agent.suspendAgent();
+			blocker.countDown();
+
+			agentService.processTask(new TestTask("next"));
+
+			Thread.sleep(1000);
+
+			assertEquals("Suspended agent must not process tasks", Arrays.asList("block"), processed);
+
+			agent.resumeAgent();
+
+			waitFor(2);
+
+			assertEquals("Resumed agent did not process tasks", Arrays.asList("block", "next"), processed);
+
+		} catch (Exception ex) {
+
+			ex.printStackTrace();
+			fail("Unexpected exception.");
+
+		} finally {
+
+			agentService.stopService();
+
+			Settings.AgentWorkers.setValue(Settings.AgentWorkers.getDefaultValue());
+		}
+	}
+
+	// ----- private methods -----
+	private void reset() {
+
+		processed.clear();
+		batchSizes.clear();
+
+		started = new CountDownLatch(1);
+		blocker = new CountDownLatch(1);
+	}
+
+	private void waitFor(final int count) throws InterruptedException {
+
+		for (int i=0; i<100 && processed.size() < count; i++) {
+			Thread.sleep(100);
+		}
+	}
+
+	// ----- nested classes -----
+	public static class TestTask extends AbstractTask<String> {
+
+		public TestTask(final String id) {
+			this(id, 0);
+		}
+
+		public TestTask(final String id, final int priority) {
+
+			super("Test", null, id);
+
+			setPriority(priority);
+		}
+	}
+
+	public static class TestAgent extends Agent<String> {
+
+		@Override
+		public ReturnValue processTask(final Task<String> task) throws Throwable {
+
+			batchSizes.add(task.getWorkObjects().size());
+
+			for (final String id : task.getWorkObjects()) {
+
+				if ("block".equals(id)) {
+
+					started.countDown();
+					blocker.await(10, TimeUnit.SECONDS);
+				}
+
+				processed.add(id);
+			}
+
+			return ReturnValue.Success;
+		}
+
+		@Override
+		public Class getSupportedTaskType() {
+			return TestTask.class;
+		}
+
+		@Override
+		public boolean createEnclosingTransaction() {
+			return false;
+		}
+
+		@Override
+		protected boolean supportsBatching() {
+			return true;
+		}
+	}
+}
@@ -18,6 +18,8 @@
  */
 package org.structr.common;
 
+import java.util.Arrays;
+import java.util.LinkedList;
 import java.util.List;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
@@ -28,6 +30,7 @@ import static org.junit.Assert.fail;
 import org.junit.Test;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.structr.api.config.Settings;
 import org.structr.api.graph.Direction;
 import org.structr.api.graph.Relationship;
 import org.structr.api.util.Iterables;
@@ -1080,7 +1083,278 @@ public class AccessControlTest extends StructrTest {
 
 	}
 
+	@Test
+	public void test11PermissionFilterInDatabase() {
+
+		// remove auto-generated resource access objects
+		clearResourceAccess();
+
+		final List<String> expected = new LinkedList<>();
+		Principal user1             = null;
+
+		try (final Tx tx = app.tx()) {
+
+			final List<Principal> users = createTestNodes(Principal.class, 2);
+			final Group group           = app.create(Group.class, "group");
+
+			user1 = users.get(0);
+
+			group.addMember(user1);
+
+			for (int i=0; i<10; i++) {
+
+				// all nodes except one are owned by the second user
+				final TestOne node = createTestNode(TestOne.class, new PropertyMap(AbstractNode.name, "node0" + i), i == 8 ? user1 : users.get(1));
+
+				switch (i) {
+
+					case 1:
+						node.setProperty(AbstractNode.visibleToAuthenticatedUsers, true);
+						expected.add(node.getUuid());
+						break;
+
+					case 2:
+						node.grant(Permission.read, user1);
+						expected.add(node.getUuid());
+						break;
+
+					case 4:
+						node.grant(Permission.read, group);
+						expected.add(node.getUuid());
+						break;
+
+					case 5:
+						node.setProperty(AbstractNode.visibleToPublicUsers, true);
+						expected.add(node.getUuid());
+						break;
+
+					case 6:
+						node.grant(Permission.write, user1);
+						break;
+
+					case 8:
+						expected.add(node.getUuid());
+						break;
+				}
+			}
+
+			tx.success();
+
+		} catch (FrameworkException fex) {
+
+			logger.warn("", fex);
+			fail("Unexpected exception");
+		}
+
+		final App userApp = StructrApp.getInstance(SecurityContext.getInstance(user1, AccessMode.Backend));
+
+		try {
+
+			Settings.PermissionFilter.setValue(true);
+
+			try (final Tx tx = userApp.tx()) {
+
+				final List<String> actual = new LinkedList<>();
+
+				for (int page=1; page<=3; page++) {
+
+					final Result<TestOne> result = userApp.nodeQuery(TestOne.class).sort(AbstractNode.name).page(page).pageSize(2).getResult();
+
+					assertEquals("Invalid result count with permission filter in database", 5, (int)result.getRawResultCount());
+
+					for (final TestOne node : result.getResults()) {
+						actual.add(node.getUuid());
+					}
+				}
+
+				assertEquals("Invalid results with permission filter in database", expected, actual);
+
+				// negative page counts from the end
+				final Result<TestOne> last = userApp.nodeQuery(TestOne.class).sort(AbstractNode.name).page(-1).pageSize(2).getResult();
+
+				assertEquals("Invalid result size for negative page", 2, last.size());
+				assertEquals("Invalid result for negative page", expected.get(3), last.get(0).getUuid());
+				assertEquals("Invalid result for negative page", expected.get(4), last.get(1).getUuid());
+
+				tx.success();
+			}
+
+		} catch (FrameworkException fex) {
+
+			logger.warn("", fex);
+			fail("Unexpected exception");
+
+		} finally {
+
+			Settings.PermissionFilter.setValue(false);
+		}
+	}
+
+	@Test
+	public void test12PermissionFilterForGroupMember() {
+
+		// remove auto-generated resource access objects
+		clearResourceAccess();
+
+		Principal user1 = null;
+
+		try (final Tx tx = app.tx()) {
+
+			final List<Principal> users = createTestNodes(Principal.class, 2);
+			final Group group           = app.create(Group.class, "group");
+			final Group parent          = app.create(Group.class, "parent");
+			final Group other           = app.create(Group.class, "other");
+
+			user1 = users.get(0);
+
+			group.addMember(user1);
+			parent.addMember(group);
+			other.addMember(users.get(1));
+
+			tx.success();
+
+		} catch (FrameworkException fex) {
+
+			logger.warn("", fex);
+			fail("Unexpected exception");
+		}
+
+		final App userApp = StructrApp.getInstance(SecurityContext.getInstance(user1, AccessMode.Backend));
+
+		try {
+
+			final List<String> inMemory = getNames(userApp, Group.class);
+			final int inMemoryCount     = getResultCount(userApp, Group.class);
+
+			assertEquals("Invalid groups visible to group member", Arrays.asList("group", "parent"), inMemory);
+
+			Settings.PermissionFilter.setValue(true);
+
+			assertEquals("Permission filter in database differs from in-memory check", inMemory,      getNames(userApp, Group.class));
+			assertEquals("Permission filter in database differs from in-memory check", inMemoryCount, getResultCount(userApp, Group.class));
+
+			Settings.PermissionFilter.setValue(false);
+
+			final List<String> principals = getNames(userApp, Principal.class);
+
+			Settings.PermissionFilter.setValue(true);
+
+			assertEquals("Permission filter in database differs from in-memory check", principals, getNames(userApp, Principal.class));
+
+		} catch (FrameworkException fex) {
+
+			logger.warn("", fex);
+			fail("Unexpected exception");
+
+		} finally {
+
+			Settings.PermissionFilter.setValue(false);
+		}
+	}
+
+	@Test
+	public void test13PermissionFilterAfterRelationshipChanges() {
+
+		// remove auto-generated resource access objects
+		clearResourceAccess();
+
+		Principal user1 = null;
+		TestOne node    = null;
+
+		try (final Tx tx = app.tx()) {
+
+			final List<Principal> users = createTestNodes(Principal.class, 2);
+
+			user1 = users.get(0);
+			node  = createTestNode(TestOne.class, new PropertyMap(AbstractNode.name, "node"), users.get(1));
+
+			tx.success();
+
+		} catch (FrameworkException fex) {
+
+			logger.warn("", fex);
+			fail("Unexpected exception");
+		}
+
+		final App userApp = StructrApp.getInstance(SecurityContext.getInstance(user1, AccessMode.Backend));
+
+		try {
+
+			Settings.PermissionFilter.setValue(true);
+
+			assertEquals("Invalid number of visible nodes", 0, countTestOnes(userApp));
+
+			try (final Tx tx = app.tx()) {
+
+				node.grant(Permission.read, user1);
+				tx.success();
+			}
+
+			// cached results must be invalidated when a relationship is created
+			assertEquals("Invalid number of visible nodes after grant", 1, countTestOnes(userApp));
+			assertEquals("Invalid number of visible nodes after grant", 1, countTestOnes(userApp));
+
+			try (final Tx tx = app.tx()) {
+
+				node.revokeAll();
+				tx.success();
+			}
+
+			// ... and when a relationship is deleted
+			assertEquals("Invalid number of visible nodes after revoke", 0, countTestOnes(userApp));
+
+		} catch (FrameworkException fex) {
+
+			logger.warn("", fex);
+			fail("Unexpected exception");
+
+		} finally {
+
+			Settings.PermissionFilter.setValue(false);
+		}
+	}
+
 	// ----- private methods -----
+	private int countTestOnes(final App userApp) throws FrameworkException {
+
+		try (final Tx tx = userApp.tx()) {
+
+			final int count = userApp.nodeQuery(TestOne.class).getAsList().size();
+
+			tx.success();
+
+			return count;
+		}
+	}
+
+	private List<String> getNames(final App userApp, final Class<? extends Principal> type) throws FrameworkException {
+
+		final List<String> names = new LinkedList<>();
+
+		try (final Tx tx = userApp.tx()) {
+
+			for (final Principal principal : userApp.nodeQuery(type).sort(AbstractNode.name).getAsList()) {
+				names.add(principal.getName());
+			}
+
+			tx.success();
+		}
+
+		return names;
+	}
+
+	private int getResultCount(final App userApp, final Class<? extends Principal> type) throws FrameworkException {
+
+		try (final Tx tx = userApp.tx()) {
+
+			final int count = (int)userApp.nodeQuery(type).sort(AbstractNode.name).page(1).pageSize(1).getResult().getRawResultCount();
+
+			tx.success();
+
+			return count;
+		}
+	}
+
 	public static void clearResourceAccess() {
 
 		final App app = StructrApp.getInstance();
@@ -236,6 +236,128 @@ public class PermissionResolutionTest extends StructrTest {
 		}
 	}
 
+	@Test
+	public void test02PermissionResolutionCacheInvalidation() {
+
+		NodeInterface instance1 = null;
+		Principal user1         = null;
+		Class type1             = null;
+		Class type2             = null;
+
+		try (final Tx tx = app.tx()) {
+
+			// create a test user
+			user1 = app.create(Principal.class, "user1");
+
+			// create schema setup with permission propagation
+			final SchemaNode t1 = app.create(SchemaNode.class, "Type1");
+			final SchemaNode t2 = app.create(SchemaNode.class, "Type2");
+
+			app.create(SchemaRelationshipNode.class,
+				new NodeAttribute<>(SchemaRelationshipNode.sourceNode, t1),
+				new NodeAttribute<>(SchemaRelationshipNode.targetNode, t2),
+				new NodeAttribute<>(SchemaRelationshipNode.relationshipType, "RELATED"),
+				new NodeAttribute<>(SchemaRelationshipNode.sourceMultiplicity, "1"),
+				new NodeAttribute<>(SchemaRelationshipNode.targetMultiplicity, "1"),
+				new NodeAttribute<>(SchemaRelationshipNode.sourceJsonName, "source"),
+				new NodeAttribute<>(SchemaRelationshipNode.targetJsonName, "target"),
+				new NodeAttribute<>(SchemaRelationshipNode.permissionPropagation, Direction.Out),
+				new NodeAttribute<>(SchemaRelationshipNode.readPropagation, Propagation.Add)
+			);
+
+			tx.success();
+
+		} catch (FrameworkException fex) {
+			fex.printStackTrace();
+			fail("Unexpected exception");
+		}
+
+		try (final Tx tx = app.tx()) {
+
+			type1 = StructrApp.getConfiguration().getNodeEntityClass("Type1");
+			type2 = StructrApp.getConfiguration().getNodeEntityClass("Type2");
+
+			instance1 = app.create(type1, "instance1OfType1");
+
+			final NodeInterface instance2 = app.create(type2, "instance1OfType2");
+
+			instance1.setProperty(StructrApp.key(type1, "target"), instance2);
+
+			// make instance1 visible to user1
+			instance1.grant(Permission.read, user1);
+
+			tx.success();
+
+		} catch (FrameworkException fex) {
+			fex.printStackTrace();
+			fail("Unexpected exception");
+		}
+
+		final App userApp = StructrApp.getInstance(SecurityContext.getInstance(user1, AccessMode.Backend));
+
+		// the resolved permission for instance2 is cached now
+		try (final Tx tx = userApp.tx()) {
+
+			Assert.assertNotNull("User1 should be able to find instance of type Type2", userApp.nodeQuery(type2).getFirst());
+			Assert.assertNotNull("User1 should be able to find instance of type Type2", userApp.nodeQuery(type2).getFirst());
+
+			tx.success();
+
+		} catch (FrameworkException fex) {
+			fex.printStackTrace();
+			fail("Unexpected exception");
+		}
+
+		// revoke the permission on instance1, the cached result for
+		// instance2 depends on instance1 and must be invalidated
+		try (final Tx tx = app.tx()) {
+
+			instance1.revoke(Permission.read, user1);
+
+			tx.success();
+
+		} catch (FrameworkException fex) {
+			fex.printStackTrace();
+			fail("Unexpected exception");
+		}
+
+		try (final Tx tx = userApp.tx()) {
+
+			Assert.assertNull("User1 should NOT be able to find instance of type Type1", userApp.nodeQuery(type1).getFirst());
+			Assert.assertNull("User1 should NOT be able to find instance of type Type2", userApp.nodeQuery(type2).getFirst());
+
+			tx.success();
+
+		} catch (FrameworkException fex) {
+			fex.printStackTrace();
+			fail("Unexpected exception");
+		}
+
+		// grant the permission again
+		try (final Tx tx = app.tx()) {
+
+			instance1.grant(Permission.read, user1);
+
+			tx.success();
+
+		} catch (FrameworkException fex) {
+			fex.printStackTrace();
+			fail("Unexpected exception");
+		}
+
+		try (final Tx tx = userApp.tx()) {
+
+			Assert.assertNotNull("User1 should be able to find instance of type Type1", userApp.nodeQuery(type1).getFirst());
+			Assert.assertNotNull("User1 should be able to find instance of type Type2", userApp.nodeQuery(type2).getFirst());
+
+			tx.success();
+
+		} catch (FrameworkException fex) {
+			fex.printStackTrace();
+			fail("Unexpected exception");
+		}
+	}
+
 	// ----- private methods -----
 	public static void clearResourceAccess() {
 
@@ -19,14 +19,21 @@
 package org.structr.common;
 
 import java.util.Arrays;
+import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import org.apache.commons.lang3.StringUtils;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
@@ -45,6 +52,7 @@ import org.structr.core.entity.TestFive;
 import org.structr.core.entity.TestOne;
 import org.structr.core.entity.TestSix;
 import org.structr.core.entity.Principal;
+import org.structr.core.graph.MultiSemaphore;
 import org.structr.core.graph.NodeAttribute;
 import org.structr.core.graph.NodeInterface;
 import org.structr.core.graph.Tx;
@@ -714,6 +722,84 @@ public class SystemTest extends StructrTest {
 		}
 	}
 
+	@Test
+	public void testMultiSemaphoreWithDisjointKeys() {
+
+		final MultiSemaphore semaphore = new MultiSemaphore();
+		final ExecutorService service  = Executors.newCachedThreadPool();
+		final CountDownLatch acquired  = new CountDownLatch(1);
+		final CountDownLatch finished  = new CountDownLatch(1);
+
+		try {
+
+			// first thread holds the lock for type A until the test is finished
+			final Future holder = service.submit(() -> {
+
+				final Set<String> keys = new HashSet<>(Arrays.asList("A"));
+
+				semaphore.acquire(keys);
+				acquired.countDown();
+				finished.await();
+				semaphore.release(keys);
+
+				return null;
+			});
+
+			acquired.await();
+
+			// second thread waits for A and C
+			final Future waiting = service.submit(() -> {
+
+				final Set<String> keys = new HashSet<>(Arrays.asList("A", "C"));
+
+				semaphore.acquire(keys);
+				semaphore.release(keys);
+
+				return null;
+			});
+
+			// wait until the second thread is blocked
+			Thread.sleep(200);
+
+			// releasing a lock that is not held by the current thread must not have any effect
+			semaphore.release(new HashSet<>(Arrays.asList("A")));
+
+			// third thread only needs C and must not be blocked by the other two
+			final Future independent = service.submit(() -> {
+
+				final Set<String> keys = new HashSet<>(Arrays.asList("C"));
+
+				semaphore.acquire(keys);
+				semaphore.release(keys);
+
+				return null;
+			});
+
+			independent.get(5, TimeUnit.SECONDS);
+
+			assertFalse("Lock for type A was released by a thread that does not hold it", waiting.isDone());
+
+			finished.countDown();
+
+			holder.get(5, TimeUnit.SECONDS);
+			waiting.get(5, TimeUnit.SECONDS);
+
+			final Map<String, Map<String, Long>> statistics = semaphore.getStatistics();
+
+			assertEquals("Invalid synchronization statistics", 2, statistics.get("C").get("acquisitions").intValue());
+			assertTrue("Invalid synchronization statistics", statistics.get("A").get("timeouts") > 0);
+
+		} catch (ExecutionException | InterruptedException | TimeoutException ex) {
+
+			logger.warn("", ex);
+			fail("Unexpected exception");
+
+		} finally {
+
+			service.shutdownNow();
+		}
+	}
+
 	private static class TestRunner implements Runnable {
 
 		private boolean success = true;
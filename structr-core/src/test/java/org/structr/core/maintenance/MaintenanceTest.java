@@ -26,6 +26,7 @@ import java.util.HashSet;
 import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.UUID;
 import java.util.stream.Collectors;
@@ -44,8 +45,11 @@ import org.structr.common.StructrTest;
 import org.structr.common.error.FrameworkException;
 import org.structr.core.Result;
 import org.structr.core.entity.Group;
+import org.structr.core.entity.SixThreeOneToMany;
 import org.structr.core.entity.TestEleven;
 import org.structr.core.entity.TestOne;
+import org.structr.core.entity.TestSix;
+import org.structr.core.entity.TestThree;
 import org.structr.core.entity.TestTwo;
 import org.structr.core.graph.BulkCreateLabelsCommand;
 import org.structr.core.graph.BulkRebuildIndexCommand;
@@ -256,6 +260,118 @@ public class MaintenanceTest extends StructrTest {
 		}
 	}
 
+	@Test
+	public void testSyncCommandSnapshotExportImport() {
+
+		try {
+
+			final List<TestSix> sixes     = createTestNodes(TestSix.class, 50);
+			final List<TestThree> threes  = createTestNodes(TestThree.class, 50);
+
+			for (int i=0; i<50; i++) {
+				createTestRelationship(sixes.get(i), threes.get(i), SixThreeOneToMany.class);
+			}
+
+			// test export
+			app.command(SyncCommand.class).execute(toMap("mode", "snapshot", "file", EXPORT_FILENAME, "parallelism", 4L));
+
+			final Path exportFile = Paths.get(EXPORT_FILENAME);
+
+			assertTrue("Export file doesn't exist!", Files.exists(exportFile));
+
+			cleanDatabase();
+
+			// test parallel import with small batches
+			final Map<String, Object> attributes = new LinkedHashMap<>();
+
+			attributes.put("mode",        "import");
+			attributes.put("file",        EXPORT_FILENAME);
+			attributes.put("batchSize",   7L);
+			attributes.put("parallelism", 4L);
+
+			app.command(SyncCommand.class).execute(attributes);
+
+			try (final Tx tx = app.tx()) {
+
+				assertEquals(50, app.nodeQuery(TestSix.class).getResult().size());
+				assertEquals(50, app.nodeQuery(TestThree.class).getResult().size());
+				assertEquals(50, app.relationshipQuery(SixThreeOneToMany.class).getResult().size());
+
+				for (final TestSix six : app.nodeQuery(TestSix.class).getAsList()) {
+					assertEquals("Relationship was not imported", 1, six.getProperty(TestSix.oneToManyTestThrees).size());
+				}
+
+				tx.success();
+			}
+
+			// clean-up after test
+			Files.delete(exportFile);
+
+		} catch (Exception ex) {
+			logger.warn("", ex);
+			fail("Unexpected exception.");
+		}
+	}
+
+	@Test
+	public void testSyncCommandIncrementalSnapshot() {
+
+		final String incrementalFileName = "___structr-test-incremental___.zip";
+
+		try {
+
+			final List<TestOne> nodes = createTestNodes(TestOne.class, 20);
+
+			app.command(SyncCommand.class).execute(toMap("mode", "snapshot", "file", EXPORT_FILENAME));
+
+			// make sure that the modifications are newer than the snapshot
+			Thread.sleep(10);
+
+			try (final Tx tx = app.tx()) {
+
+				for (int i=0; i<5; i++) {
+					nodes.get(i).setProperty(TestOne.name, "modified" + i);
+				}
+
+				tx.success();
+			}
+
+			createTestNodes(TestOne.class, 10);
+
+			app.command(SyncCommand.class).execute(toMap("mode", "snapshot", "file", incrementalFileName, "previous", EXPORT_FILENAME));
+
+			cleanDatabase();
+
+			// restore full snapshot, then apply the incremental one
+			app.command(SyncCommand.class).execute(toMap("mode", "import", "file", EXPORT_FILENAME));
+
+			try (final Tx tx = app.tx()) {
+
+				assertEquals(20, app.nodeQuery(TestOne.class).getResult().size());
+				assertEquals(0,  app.nodeQuery(TestOne.class).andName("modified0").getResult().size());
+			}
+
+			app.command(SyncCommand.class).execute(toMap("mode", "import", "file", incrementalFileName));
+
+			try (final Tx tx = app.tx()) {
+
+				assertEquals(30, app.nodeQuery(TestOne.class).getResult().size());
+
+				for (int i=0; i<5; i++) {
+					assertEquals(1, app.nodeQuery(TestOne.class).andName("modified" + i).getResult().size());
+				}
+			}
+
+			// clean-up after test
+			Files.delete(Paths.get(EXPORT_FILENAME));
+			Files.delete(Paths.get(incrementalFileName));
+
+		} catch (Exception ex) {
+			logger.warn("", ex);
+			fail("Unexpected exception.");
+		}
+	}
+
 	@Test
 	public void testBulkCreateLabelsCommand() {
 
@@ -0,0 +1,291 @@
+/**
+ * Copyright (C) 2010-2018 Structr GmbH
+ *
+ * This file is part of Structr <http://structr.org>.
+ *
+ * Structr is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Structr is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.structr.core.scheduler;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+import org.junit.Test;
+import org.structr.api.config.Settings;
+import org.structr.common.StructrTest;
+import org.structr.common.error.FrameworkException;
+import org.structr.core.entity.Principal;
+import org.structr.core.graph.Tx;
+
+/**
+ * Test for concurrent job execution in the JobQueueManager.
+ */
+public class JobQueueManagerTest extends StructrTest {
+
+	@Test
+	public void testConcurrentJobsWithLimits() {
+
+		final JobQueueManager manager = JobQueueManager.getInstance();
+		Principal user1               = null;
+		Principal user2               = null;
+
+		try (final Tx tx = app.tx()) {
+
+			user1 = app.create(Principal.class, "user1");
+			user2 = app.create(Principal.class, "user2");
+
+			tx.success();
+
+		} catch (FrameworkException fex) {
+
+			fex.printStackTrace();
+			fail("Unexpected exception.");
+		}
+
+		Settings.JobsMaxConcurrent.setValue(4);
+		Settings.JobsMaxPerUser.setValue(2);
+		Settings.JobsMaxWriteHeavy.setValue(1);
+
+		try {
+
+			final TestJob importA = new TestJob(user1, "IMPORT", true, 0);
+			final TestJob importB = new TestJob(user1, "IMPORT", true, 0);
+			final TestJob script1 = new TestJob(user1, "SCRIPT", false, 0);
+			final TestJob script2 = new TestJob(user1, "SCRIPT", false, 0);
+			final TestJob script3 = new TestJob(user2, "SCRIPT", false, 0);
+			final TestJob importC = new TestJob(user2, "IMPORT", true, 5);
+
+			manager.addJob(importA);
+			manager.addJob(importB);
+			manager.addJob(script1);
+
+			// a running import must not block jobs that are not write-heavy
+			assertStatus(ScheduledJob.JobStatus.RUNNING, importA);
+			assertStatus(ScheduledJob.JobStatus.QUEUED,  importB);
+			assertStatus(ScheduledJob.JobStatus.RUNNING, script1);
+
+			// user1 has reached the limit of jobs per user
+			manager.addJob(script2);
+			manager.addJob(script3);
+
+			assertStatus(ScheduledJob.JobStatus.QUEUED,  script2);
+			assertStatus(ScheduledJob.JobStatus.RUNNING, script3);
+
+			manager.addJob(importC);
+
+			assertStatus(ScheduledJob.JobStatus.QUEUED, importC);
+
+			// the import with the higher priority is started next
+			importA.finish();
+
+			waitForStatus(ScheduledJob.JobStatus.RUNNING, importC);
+
+			assertStatus(ScheduledJob.JobStatus.QUEUED, importB);
+			assertStatus(ScheduledJob.JobStatus.RUNNING, script2);
+
+			// user1 is still at the limit, so importB must wait for one of
+			// the scripts of user1 even when no other import is running
+			importC.finish();
+			Thread.sleep(500);
+
+			assertStatus(ScheduledJob.JobStatus.QUEUED, importB);
+
+			script1.finish();
+			waitForStatus(ScheduledJob.JobStatus.RUNNING, importB);
+
+			importB.finish();
+			script2.finish();
+			script3.finish();
+
+			for (int i=0; i<100 && !manager.listJobs().isEmpty(); i++) {
+				Thread.sleep(100);
+			}
+
+			assertEquals("All jobs should be finished", Collections.emptyList(), manager.listJobs());
+
+		} catch (FrameworkException | InterruptedException ex) {
+
+			ex.printStackTrace();
+			fail("Unexpected exception.");
+
+		} finally {
+
+			Settings.JobsMaxConcurrent.setValue(Settings.JobsMaxConcurrent.getDefaultValue());
+			Settings.JobsMaxPerUser.setValue(Settings.JobsMaxPerUser.getDefaultValue());
+			Settings.JobsMaxWriteHeavy.setValue(Settings.JobsMaxWriteHeavy.getDefaultValue());
+		}
+	}
+
+	@Test
+	public void testWriteHeavyLimitAppliesToAllTypes() {
+
+		final JobQueueManager manager = JobQueueManager.getInstance();
+		Principal user1               = null;
+		Principal user2               = null;
+
+		try (final Tx tx = app.tx()) {
+
+			user1 = app.create(Principal.class, "user1");
+			user2 = app.create(Principal.class, "user2");
+
+			tx.success();
+
+		} catch (FrameworkException fex) {
+
+			fex.printStackTrace();
+			fail("Unexpected exception.");
+		}
+
+		try {
+
+			final TestJob csvImportA = new TestJob(user1, "CSV", true, 0);
+			final TestJob xmlImport  = new TestJob(user2, "XML", true, 0);
+			final TestJob csvImportB = new TestJob(user2, "CSV", true, 0);
+
+			manager.addJob(csvImportA);
+			manager.addJob(xmlImport);
+			manager.addJob(csvImportB);
+
+			// the limit for write-heavy jobs counts the imports of all types
+			assertStatus(ScheduledJob.JobStatus.RUNNING, csvImportA);
+			assertStatus(ScheduledJob.JobStatus.QUEUED,  xmlImport);
+			assertStatus(ScheduledJob.JobStatus.QUEUED,  csvImportB);
+
+			csvImportA.finish();
+			waitForStatus(ScheduledJob.JobStatus.RUNNING, xmlImport);
+			assertStatus(ScheduledJob.JobStatus.QUEUED,   csvImportB);
+
+			xmlImport.finish();
+			waitForStatus(ScheduledJob.JobStatus.RUNNING, csvImportB);
+
+			csvImportB.finish();
+
+			for (int i=0; i<100 && !manager.listJobs().isEmpty(); i++) {
+				Thread.sleep(100);
+			}
+
+			assertEquals("All jobs should be finished", Collections.emptyList(), manager.listJobs());
+
+		} catch (FrameworkException | InterruptedException ex) {
+
+			ex.printStackTrace();
+			fail("Unexpected exception.");
+		}
+	}
+
+	// ----- private methods -----
+	private void assertStatus(final ScheduledJob.JobStatus status, final TestJob job) {
+		assertEquals("Invalid status of job " + job.jobId(), status, job.getCurrentStatus());
+	}
+
+	private void waitForStatus(final ScheduledJob.JobStatus status, final TestJob job) throws InterruptedException {
+
+		for (int i=0; i<100 && !status.equals(job.getCurrentStatus()); i++) {
+			Thread.sleep(100);
+		}
+
+		assertStatus(status, job);
+	}
+
+	// ----- nested classes -----
+	private static class TestJob extends ScheduledJob {
+
+		private final CountDownLatch latch = new CountDownLatch(1);
+		private boolean writeHeavy         = false;
+		private String type                = null;
+
+		public TestJob(final Principal user, final String type, final boolean writeHeavy, final int priority) {
+
+			super(type, user, Collections.singletonMap("priority", priority));
+
+			this.writeHeavy = writeHeavy;
+			this.type       = type;
+		}
+
+		public void finish() {
+			latch.countDown();
+		}
+
+		@Override
+		public boolean runInitialChecks() throws FrameworkException {
+			return true;
+		}
+
+		@Override
+		public Runnable getRunnable() {
+
+			return () -> {
+
+				try {
+
+					latch.await(30, TimeUnit.SECONDS);
+
+				} catch (InterruptedException ignore) {
+
+				} finally {
+
+					jobFinished();
+				}
+			};
+		}
+
+		@Override
+		public boolean isWriteHeavy() {
+			return writeHeavy;
+		}
+
+		@Override
+		public String getJobType() {
+			return type;
+		}
+
+		@Override
+		public String getJobStatusType() {
+			return "TEST_JOB_STATUS";
+		}
+
+		@Override
+		public String getJobExceptionMessageType() {
+			return "TEST_JOB_EXCEPTION";
+		}
+
+		@Override
+		public Map<String, Object> getStatusData(final JobStatusMessageSubtype subtype) {
+
+			final Map<String, Object> data = new LinkedHashMap<>();
+
+			data.put("jobId",   jobId());
+			data.put("type",    getJobStatusType());
+			data.put("subtype", subtype);
+
+			return data;
+		}
+
+		@Override
+		public Map<String, Object> getJobInfo() {
+
+			final Map<String, Object> jobInfo = new LinkedHashMap<>();
+
+			jobInfo.put("jobId",   jobId());
+			jobInfo.put("jobtype", getJobType());
+			jobInfo.put("status",  getCurrentStatus());
+
+			return jobInfo;
+		}
+	}
+}
@@ -0,0 +1,118 @@
+/**
+ * Copyright (C) 2010-2018 Structr GmbH
+ *
+ * This file is part of Structr <http://structr.org>.
+ *
+ * Structr is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Structr is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.structr.core.script;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.structr.common.StructrTest;
+import org.structr.common.error.FrameworkException;
+import org.structr.core.entity.TestOne;
+import org.structr.core.function.Functions;
+import org.structr.core.graph.Tx;
+import org.structr.core.property.PropertyMap;
+import org.structr.schema.action.ActionContext;
+
+/**
+ * Compares the template evaluation throughput with and without the cache
+ * for parsed expressions. The uncached run clears the caches before every
+ * evaluation, which is what the parser did for each call before the cache
+ * was introduced. The results are logged and depend on the hardware, so
+ * this class is not part of the test suite. Run it explicitly with
+ *
+ * <code>mvn test -pl structr-core -Dtest=ScriptingBenchmark</code>
+ */
+public class ScriptingBenchmark extends StructrTest {
+
+	private static final Logger logger = LoggerFactory.getLogger(ScriptingBenchmark.class.getName());
+
+	private static final int WARMUP_ITERATIONS      = 3;
+	private static final int MEASUREMENT_ITERATIONS = 5;
+	private static final int OPERATIONS             = 10000;
+
+	private static final String TEMPLATE = "<p>${this.name}</p><p>${if(equal(this.aString, 'test'), upper(this.aString), 'none')}</p><p>${join(merge('a', 'b', this.anInt), ',')}</p>";
+	private static final String EXPECTED = "<p>first</p><p>TEST</p><p>a,b,1</p>";
+
+	@Test
+	public void benchmarkExpressionCache() {
+
+		try (final Tx tx = app.tx()) {
+
+			final TestOne test      = createTestNode(TestOne.class, new PropertyMap(TestOne.name, "first"));
+			final ActionContext ctx = new ActionContext(securityContext, null);
+
+			test.setProperty(TestOne.aString, "test");
+			test.setProperty(TestOne.anInt, 1);
+
+			final double uncached = measure("uncached", () -> {
+
+				Functions.clearCache();
+				Scripting.clearCache();
+
+				return Scripting.replaceVariables(ctx, test, TEMPLATE);
+			});
+
+			final double cached = measure("cached", () -> Scripting.replaceVariables(ctx, test, TEMPLATE));
+
+			logger.info("Uncached: {} ops/s, cached: {} ops/s, speedup {}", (long)uncached, (long)cached, String.format("%.2f", cached / uncached));
+
+			tx.success();
+
+		} catch (FrameworkException fex) {
+
+			fex.printStackTrace();
+			fail("Unexpected exception.");
+		}
+	}
+
+	// ----- private methods -----
+	private double measure(final String name, final Evaluation evaluation) throws FrameworkException {
+
+		double best = 0.0;
+
+		for (int iteration=0; iteration<WARMUP_ITERATIONS + MEASUREMENT_ITERATIONS; iteration++) {
+
+			final long t0 = System.nanoTime();
+
+			for (int i=0; i<OPERATIONS; i++) {
+				assertEquals("Invalid result", EXPECTED, evaluation.evaluate());
+			}
+
+			final long t1        = System.nanoTime();
+			final double opsPerS = (OPERATIONS * 1000000000.0) / Math.max(1L, t1 - t0);
+
+			if (iteration >= WARMUP_ITERATIONS) {
+
+				logger.info("{} iteration {}: {} ops/s", name, iteration - WARMUP_ITERATIONS + 1, (long)opsPerS);
+
+				best = Math.max(best, opsPerS);
+			}
+		}
+
+		return best;
+	}
+
+	// ----- nested classes -----
+	private interface Evaluation {
+
+		String evaluate() throws FrameworkException;
+	}
+}
@@ -30,6 +30,10 @@ import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import org.apache.commons.lang3.StringUtils;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
@@ -66,6 +70,7 @@ import org.structr.core.entity.TestTwo;
 import org.structr.core.entity.Principal;
 import org.structr.core.function.DateFormatFunction;
 import org.structr.core.function.FindFunction;
+import org.structr.core.function.Functions;
 import org.structr.core.function.NumberFormatFunction;
 import org.structr.core.function.ParseDateFunction;
 import org.structr.core.function.RoundFunction;
@@ -2464,4 +2469,125 @@ public class ScriptingTest extends StructrTest {
 			fail("Unexpected exception.");
 		}
 	}
+
+	@Test
+	public void testExpressionCache() {
+
+		final String template = "<p>${this.name}</p><p>${if(equal(this.aString, 'test'), upper(this.aString), 'none')}</p><p>${join(merge('a', 'b', this.anInt), ',')}</p>";
+
+		try (final Tx tx = app.tx()) {
+
+			final TestOne first     = createTestNode(TestOne.class, new PropertyMap(TestOne.name, "first"));
+			final TestOne second    = createTestNode(TestOne.class, new PropertyMap(TestOne.name, "second"));
+			final ActionContext ctx = new ActionContext(securityContext, null);
+
+			first.setProperty(TestOne.aString, "test");
+			first.setProperty(TestOne.anInt, 1);
+			second.setProperty(TestOne.aString, "other");
+			second.setProperty(TestOne.anInt, 2);
+
+			// cached expression trees must be evaluated against the given entity
+			assertEquals("Invalid result for cached expression", "<p>first</p><p>TEST</p><p>a,b,1</p>",  Scripting.replaceVariables(ctx, first, template));
+			assertEquals("Invalid result for cached expression", "<p>second</p><p>none</p><p>a,b,2</p>", Scripting.replaceVariables(ctx, second, template));
+			assertEquals("Invalid result for cached expression", "<p>first</p><p>TEST</p><p>a,b,1</p>",  Scripting.replaceVariables(ctx, first, template));
+
+			// invalid expressions must not be cached
+			for (int i=0; i<2; i++) {
+
+				try {
+					Functions.evaluate(ctx, first, "upper(this.name");
+					fail("Invalid expression should throw an exception");
+
+				} catch (FrameworkException expected) {}
+			}
+
+			// cleared caches must be rebuilt with the same results
+			Functions.clearCache();
+			Scripting.clearCache();
+
+			assertEquals("Invalid result after clearing the cache", "<p>second</p><p>none</p><p>a,b,2</p>", Scripting.replaceVariables(ctx, second, template));
+			assertEquals("Invalid result after clearing the cache", "<p>first</p><p>TEST</p><p>a,b,1</p>",  Scripting.replaceVariables(ctx, first, template));
+
+			tx.success();
+
+		} catch (UnlicensedException | FrameworkException fex) {
+
+			fex.printStackTrace();
+			fail("Unexpected exception.");
+		}
+	}
+
+	@Test
+	public void testJavascriptSharedScope() {
+
+		try (final Tx tx = app.tx()) {
+
+			final ActionContext ctx = new ActionContext(securityContext, null);
+
+			// global variables must not be visible in subsequent evaluations
+			assertEquals("Invalid JavaScript evaluation result", "defined", Scripting.evaluate(ctx, null, "${{ leaked = 'defined'; return leaked; }}", "test"));
+			assertEquals("Global variable leaked into the shared scope", "undefined", Scripting.evaluate(ctx, null, "${{ return typeof leaked; }}", "test"));
+
+			// standard objects must be available
+			assertEquals("Invalid JavaScript evaluation result", "a-b-c", Scripting.evaluate(ctx, null, "${{ return ['a', 'b', 'c'].join('-'); }}", "test"));
+			assertEquals("Invalid JavaScript evaluation result", "4", Scripting.evaluate(ctx, null, "${{ return Math.max(1, 4, 2).toFixed(0); }}", "test"));
+
+			tx.success();
+
+		} catch (UnlicensedException | FrameworkException fex) {
+
+			fex.printStackTrace();
+			fail("Unexpected exception.");
+		}
+
+		final ExecutorService service = Executors.newFixedThreadPool(8);
+		final List<Future<Object>> futures = new LinkedList<>();
+
+		for (int i=0; i<64; i++) {
+
+			final int value = i;
+
+			futures.add(service.submit(() -> {
+
+				try (final Tx tx = app.tx()) {
+
+					final ActionContext ctx = new ActionContext(securityContext, null);
+
+					// identical source in all threads, the value is passed via the context store
+					ctx.store("value", value);
+
+					final Object result = Scripting.evaluate(ctx, null, "${{ var result = Structr.retrieve('value') * 2; return result; }}", "test");
+
+					tx.success();
+
+					return result;
+				}
+			}));
+		}
+
+		try {
+
+			int i = 0;
+
+			for (final Future<Object> future : futures) {
+
+				final Object result = future.get();
+
+				assertEquals("Invalid result of concurrent JavaScript evaluation", i++ * 2, ((Number)result).intValue());
+			}
+
+		} catch (InterruptedException | ExecutionException ex) {
+
+			ex.printStackTrace();
+			fail("Unexpected exception.");
+
+		} finally {
+
+			service.shutdownNow();
+		}
+
+		final Map<String, Long> statistics = Scripting.getScriptCacheStatistics();
+
+		assertTrue("Compiled script cache was not used", statistics.get("hits") >= 63);
+	}
 }
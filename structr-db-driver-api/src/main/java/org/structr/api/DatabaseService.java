@@ -20,9 +20,11 @@ package org.structr.api;
 
 import java.util.Map;
 import java.util.Set;
+import org.structr.api.graph.Direction;
 import org.structr.api.graph.GraphProperties;
 import org.structr.api.graph.Node;
 import org.structr.api.graph.Relationship;
+import org.structr.api.graph.RelationshipType;
 import org.structr.api.index.Index;
 
 /**
@@ -58,6 +60,19 @@ public interface DatabaseService {
 
 	GraphProperties getGlobalProperties();
 
+	/**
+	 * Loads the relationships of the given type and direction, and the
+	 * nodes at their other ends, for all of the given nodes at once, so
+	 * that subsequent calls to {@link Node#getRelationships(Direction, RelationshipType, String)}
+	 * with the same arguments can be answered without accessing the database.
+	 *
+	 * @param nodes the nodes
+	 * @param direction the direction of the relationships
+	 * @param relationshipType the type of the relationships
+	 * @param otherLabel the label of the nodes at the other end, or null
+	 */
+	void prefetchRelationships(final Iterable<Node> nodes, final Direction direction, final RelationshipType relationshipType, final String otherLabel);
+
 
 	// ----- index -----
 	Index<Node> nodeIndex();
@@ -68,4 +83,12 @@ public interface DatabaseService {
 	NativeResult execute(final String nativeQuery);
 
 	void invalidateQueryCache();
+
+	/**
+	 * Returns hit, miss, eviction and invalidation counters of the query
+	 * caches of this database service, grouped by index.
+	 *
+	 * @return the query cache statistics
+	 */
+	Map<String, Map<String, Long>> getQueryCacheStatistics();
 }
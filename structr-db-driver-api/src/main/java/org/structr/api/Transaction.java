@@ -26,6 +26,12 @@ public interface Transaction extends AutoCloseable {
 	void failure();
 	void success();
 
+	/**
+	 * Sends all changes that are buffered in this transaction to the
+	 * database.
+	 */
+	void flush();
+
 	@Override
 	void close();
 }
@@ -88,10 +88,22 @@ public class Settings {
 	public static final Setting<Boolean> GzipCompression      = new BooleanSetting(serverGroup, "HTTP Settings", "HttpService.gzip.enabled",        true);
 	public static final Setting<Boolean> ForceHttps           = new BooleanSetting(serverGroup, "HTTP Settings", "HttpService.force.https",         false);
 	public static final Setting<Boolean> Async                = new BooleanSetting(serverGroup, "HTTP Settings", "HttpService.async",               true);
+	public static final Setting<Integer> AsyncRenderThreads   = new IntegerSetting(serverGroup, "HTTP Settings", "HttpService.async.threads",       16);
+	public static final Setting<Integer> AsyncBufferSize      = new IntegerSetting(serverGroup, "HTTP Settings", "HttpService.async.buffer.size",   65536);
+	public static final Setting<Integer> AsyncWriteTimeout    = new IntegerSetting(serverGroup, "HTTP Settings", "HttpService.async.timeout",       30000);
+	public static final Setting<Boolean> StreamingOutput      = new BooleanSetting(serverGroup, "HTTP Settings", "HttpService.streaming",           false);
+	public static final Setting<Boolean> OutputCache          = new BooleanSetting(serverGroup, "HTTP Settings", "HttpService.outputcache",         false);
+	public static final Setting<Integer> OutputCacheSize      = new IntegerSetting(serverGroup, "HTTP Settings", "HttpService.outputcache.size",    64);
 	public static final Setting<Boolean> JsonIndentation      = new BooleanSetting(serverGroup, "HTTP Settings", "json.indentation",                true);
 	public static final Setting<Boolean> HtmlIndentation      = new BooleanSetting(serverGroup, "HTTP Settings", "html.indentation",                true);
 	public static final Setting<Boolean> WsIndentation        = new BooleanSetting(serverGroup, "HTTP Settings", "ws.indentation",                  true);
+	public static final Setting<Integer> WsBroadcastQueueSize = new IntegerSetting(serverGroup, "HTTP Settings", "ws.broadcast.queue.size",         10000);
+	public static final Setting<Integer> WsCoalesceWindow     = new IntegerSetting(serverGroup, "HTTP Settings", "ws.broadcast.coalesce",           50);
+	public static final Setting<Integer> WsClientBufferSize   = new IntegerSetting(serverGroup, "HTTP Settings", "ws.broadcast.client.buffer",      1000);
+	public static final Setting<Boolean> WsDisconnectSlow     = new BooleanSetting(serverGroup, "HTTP Settings", "ws.broadcast.disconnect",         true);
 	public static final Setting<Integer> SessionTimeout       = new IntegerSetting(serverGroup, "HTTP Settings", "application.session.timeout",     1800);
+	public static final Setting<String> SessionStore          = new ChoiceSetting(serverGroup,  "HTTP Settings", "application.session.store",       "graph", "graph", "file");
+	public static final Setting<Integer> SessionStoreCoalesce = new IntegerSetting(serverGroup, "HTTP Settings", "application.session.store.coalesce", 1000);
 
 	public static final Setting<String> AccessControlMaxAge           = new StringSetting(serverGroup, "CORS Settings", "access.control.max.age",           "3600");
 	public static final Setting<String> AccessControlAllowMethods     = new StringSetting(serverGroup, "CORS Settings", "access.control.allow.methods",     "");
@@ -115,12 +127,18 @@ public class Settings {
 	public static final Setting<Integer> NodeCacheSize         = new IntegerSetting(databaseGroup, "Caching",             "database.cache.node.size",         100000);
 	public static final Setting<Integer> UuidCacheSize         = new IntegerSetting(databaseGroup, "Caching",             "database.cache.uuid.size",         100000);
 	public static final Setting<Integer> QueryCacheSize        = new IntegerSetting(databaseGroup, "Caching",             "database.cache.query.size",        1000);
+	public static final Setting<Integer> QueryCacheLimit       = new IntegerSetting(databaseGroup, "Caching",             "database.cache.query.limit",       10000);
+	public static final Setting<Boolean> WriteBehind           = new BooleanSetting(databaseGroup, "Caching",             "database.writebehind",             true);
+	public static final Setting<Boolean> LabelFiltering        = new BooleanSetting(databaseGroup, "Queries",             "database.query.labelfilter",       true);
 	public static final Setting<Boolean> CypherDebugLogging    = new BooleanSetting(databaseGroup, "Debugging",           "log.cypher.debug",                 false);
 	public static final Setting<Boolean> SyncDebugging         = new BooleanSetting(databaseGroup, "Sync debugging",      "sync.debug",                       false);
 
 	// application settings
 	public static final Setting<Integer> ResolutionDepth      = new IntegerSetting(applicationGroup, "Security",   "application.security.resolution.depth",       5);
 	public static final Setting<String> OwnerlessNodes        = new StringSetting(applicationGroup,  "Security",   "application.security.ownerless.nodes",        "read");
+	public static final Setting<Integer> PermissionCacheSize  = new IntegerSetting(applicationGroup, "Security",   "application.security.cache.size",             100000);
+	public static final Setting<Boolean> PermissionFilter     = new BooleanSetting(applicationGroup, "Security",   "application.security.filter.database",        false);
+	public static final Setting<Integer> ScriptingCacheSize   = new IntegerSetting(applicationGroup, "Scripting",  "application.scripting.cache.size",            10000);
 	public static final Setting<Boolean> ChangelogEnabled     = new BooleanSetting(applicationGroup, "Changelog",  "application.changelog.enabled",               false);
 	public static final Setting<Boolean> FilesystemEnabled    = new BooleanSetting(applicationGroup, "Filesystem", "application.filesystem.enabled",              false);
 	public static final Setting<Boolean> UniquePaths          = new BooleanSetting(applicationGroup, "Filesystem", "application.filesystem.unique.paths",         true);
@@ -131,6 +149,16 @@ public class Settings {
 	public static final Setting<Integer> IndexingMaxLength    = new IntegerSetting(applicationGroup, "Filesystem", "application.filesystem.indexing.maxlength",   30);
 	public static final Setting<Boolean> FollowSymlinks       = new BooleanSetting(applicationGroup, "Filesystem", "application.filesystem.mount.followSymlinks", true);
 	public static final Setting<String> DefaultUploadFolder   = new StringSetting(applicationGroup,  "Filesystem", "application.uploads.folder",                  "");
+	public static final Setting<Integer> ThumbnailThreads     = new IntegerSetting(applicationGroup, "Filesystem", "application.thumbnails.threads",              2);
+	public static final Setting<Integer> ThumbnailQueueSize   = new IntegerSetting(applicationGroup, "Filesystem", "application.thumbnails.queue.size",           1000);
+	public static final Setting<Boolean> ThumbnailPregenerate = new BooleanSetting(applicationGroup, "Filesystem", "application.thumbnails.pregenerate",          true);
+	public static final Setting<Integer> AgentWorkers         = new IntegerSetting(applicationGroup, "Agents",     "application.agents.workers",                  4);
+	public static final Setting<Integer> AgentBatchSize       = new IntegerSetting(applicationGroup, "Agents",     "application.agents.batch.size",               50);
+	public static final Setting<Boolean> AgentPersistTasks    = new BooleanSetting(applicationGroup, "Agents",     "application.agents.persist",                  true);
+	public static final Setting<Integer> JobsMaxConcurrent    = new IntegerSetting(applicationGroup, "Scheduler",  "application.scheduler.max.jobs",              4);
+	public static final Setting<Integer> JobsMaxPerUser       = new IntegerSetting(applicationGroup, "Scheduler",  "application.scheduler.max.jobs.per.user",     2);
+	public static final Setting<Integer> JobsMaxWriteHeavy    = new IntegerSetting(applicationGroup, "Scheduler",  "application.scheduler.max.write.jobs",        1);
+	public static final Setting<Integer> CsvImportWriters     = new IntegerSetting(applicationGroup, "Import",     "application.import.csv.writers",              1);
 	public static final Setting<String> HttpProxyUrl          = new StringSetting(applicationGroup,  "Proxy",      "application.proxy.http.url",                  "");
 	public static final Setting<String> HttpProxyUser         = new StringSetting(applicationGroup,  "Proxy",      "application.proxy.http.username",             "");
 	public static final Setting<String> HttpProxyPassword     = new StringSetting(applicationGroup,  "Proxy",      "application.proxy.http.password",             "");
@@ -38,4 +38,16 @@ public interface Node extends PropertyContainer {
 	Iterable<Relationship> getRelationships();
 	Iterable<Relationship> getRelationships(final Direction direction);
 	Iterable<Relationship> getRelationships(final Direction direction, final RelationshipType relationshipType);
+
+	/**
+	 * Returns the relationships of the given type and direction whose
+	 * other node has the given label.
+	 *
+	 * @param direction the direction of the relationships
+	 * @param relationshipType the type of the relationships
+	 * @param otherLabel the label of the other node, or null for all nodes
+	 *
+	 * @return the relationships
+	 */
+	Iterable<Relationship> getRelationships(final Direction direction, final RelationshipType relationshipType, final String otherLabel);
 }
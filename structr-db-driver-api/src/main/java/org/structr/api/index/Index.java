@@ -32,4 +32,26 @@ public interface Index<T> {
 	void remove(final T t, final String key);
 
 	QueryResult<T> query(final QueryPredicate predicate);
+
+	/**
+	 * Returns at most limit results of the given query, starting at the
+	 * given offset. Skipping and limiting is done in the database.
+	 *
+	 * @param predicate the query
+	 * @param offset the number of results to skip
+	 * @param limit the maximum number of results
+	 *
+	 * @return the results
+	 */
+	QueryResult<T> query(final QueryPredicate predicate, final int offset, final int limit);
+
+	/**
+	 * Returns the number of results of the given query, counted in the
+	 * database.
+	 *
+	 * @param predicate the query
+	 *
+	 * @return the number of results
+	 */
+	long count(final QueryPredicate predicate);
 }
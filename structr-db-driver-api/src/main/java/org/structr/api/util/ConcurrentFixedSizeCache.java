@@ -0,0 +1,288 @@
+/**
+ * Copyright (C) 2010-2018 Structr GmbH
+ *
+ * This file is part of Structr <http://structr.org>.
+ *
+ * Structr is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Structr is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.structr.api.util;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A thread-safe, map-like storage structure with a fixed maximum size.
+ *
+ * The cache is split into independent segments, each of which has its
+ * own lock and a fixed share of the total capacity. Lookups do not
+ * acquire any lock, they only mark the entry as recently used. When
+ * the insertion of a new entry causes a segment to exceed its capacity,
+ * an entry that was not used since the last pass is evicted (CLOCK /
+ * second chance algorithm, an approximation of LRU).
+ *
+ * Values that implement {@link Cachable} are notified when they are
+ * evicted due to size restrictions, just like in {@link FixedSizeCache}.
+ *
+ * @param <K>
+ * @param <V>
+ */
+public class ConcurrentFixedSizeCache<K, V> {
+
+	private static final int MIN_SEGMENT_SIZE = 64;
+
+	private final Segment<K, V>[] segments;
+	private final int mask;
+
+	public ConcurrentFixedSizeCache(final int maxSize) {
+		this(maxSize, Runtime.getRuntime().availableProcessors() * 4);
+	}
+
+	public ConcurrentFixedSizeCache(final int maxSize, final int concurrencyLevel) {
+
+		final int maxSegments = Math.max(1, maxSize / MIN_SEGMENT_SIZE);
+		int segmentCount      = 1;
+
+		// number of segments must be a power of two
+		while (segmentCount < concurrencyLevel && segmentCount * 2 <= maxSegments) {
+			segmentCount *= 2;
+		}
+
+		this.segments = new Segment[segmentCount];
+		this.mask     = segmentCount - 1;
+
+		for (int i=0; i<segmentCount; i++) {
+
+			// distribute the remainder over the first segments
+			final int segmentSize = (maxSize / segmentCount) + (i < (maxSize % segmentCount) ? 1 : 0);
+
+			segments[i] = new Segment<>(Math.max(1, segmentSize));
+		}
+	}
+
+	public void put(final K key, final V value) {
+		segmentFor(key).put(key, value, false);
+	}
+
+	/**
+	 * Stores the given value if no value is present for the given key.
+	 *
+	 * @param key
+	 * @param value
+	 *
+	 * @return the existing value, or null if the given value was stored
+	 */
+	public V putIfAbsent(final K key, final V value) {
+		return segmentFor(key).put(key, value, true);
+	}
+
+	public V get(final K key) {
+		return segmentFor(key).get(key);
+	}
+
+	public void remove(final K key) {
+		segmentFor(key).remove(key);
+	}
+
+	public void clear() {
+
+		for (final Segment<K, V> segment : segments) {
+			segment.clear();
+		}
+	}
+
+	public int size() {
+
+		int size = 0;
+
+		for (final Segment<K, V> segment : segments) {
+			size += segment.size();
+		}
+
+		return size;
+	}
+
+	public boolean isEmpty() {
+
+		for (final Segment<K, V> segment : segments) {
+
+			if (segment.size() > 0) {
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	// ----- private methods -----
+	private Segment<K, V> segmentFor(final K key) {
+
+		// spread hash code bits so that keys with similar hash codes
+		// (e.g. sequential node IDs) are distributed over all segments
+		int hash = key.hashCode();
+
+		hash ^= (hash >>> 16);
+		hash *= 0x85ebca6b;
+		hash ^= (hash >>> 13);
+
+		return segments[hash & mask];
+	}
+
+	// ----- nested classes -----
+	private static class Entry<K, V> {
+
+		private final K key;
+		private volatile V value;
+		private volatile boolean referenced = true;
+		private volatile boolean removed    = false;
+
+		public Entry(final K key, final V value) {
+
+			this.key   = key;
+			this.value = value;
+		}
+	}
+
+	private static class Segment<K, V> {
+
+		private final ConcurrentHashMap<K, Entry<K, V>> map;
+		private final Entry<K, V>[] ring;
+		private int count = 0;
+		private int hand  = 0;
+
+		public Segment(final int capacity) {
+
+			this.map  = new ConcurrentHashMap<>(capacity);
+			this.ring = new Entry[capacity];
+		}
+
+		public V get(final K key) {
+
+			final Entry<K, V> entry = map.get(key);
+			if (entry != null) {
+
+				// avoid unnecessary writes to shared memory
+				if (!entry.referenced) {
+					entry.referenced = true;
+				}
+
+				return entry.value;
+			}
+
+			return null;
+		}
+
+		public V put(final K key, final V value, final boolean onlyIfAbsent) {
+
+			V evicted = null;
+
+			try {
+
+				synchronized (this) {
+
+					final Entry<K, V> existing = map.get(key);
+					if (existing != null) {
+
+						if (onlyIfAbsent) {
+							return existing.value;
+						}
+
+						existing.value      = value;
+						existing.referenced = true;
+
+						return null;
+					}
+
+					final Entry<K, V> entry = new Entry<>(key, value);
+
+					if (count < ring.length) {
+
+						ring[count++] = entry;
+
+					} else {
+
+						final Entry<K, V> victim = findVictim();
+
+						if (!victim.removed) {
+
+							map.remove(victim.key, victim);
+							victim.removed = true;
+
+							evicted = victim.value;
+						}
+
+						// replace victim in the ring and advance hand
+						ring[hand] = entry;
+						hand       = (hand + 1) % ring.length;
+					}
+
+					map.put(key, entry);
+				}
+
+			} finally {
+
+				// notify evicted value outside of the lock
+				if (evicted instanceof Cachable) {
+
+					((Cachable)evicted).onRemoveFromCache();
+				}
+			}
+
+			return null;
+		}
+
+		public synchronized void remove(final K key) {
+
+			final Entry<K, V> entry = map.remove(key);
+			if (entry != null) {
+
+				// slot is reused on the next eviction
+				entry.removed = true;
+			}
+		}
+
+		public synchronized void clear() {
+
+			for (int i=0; i<count; i++) {
+
+				ring[i].removed = true;
+				ring[i]         = null;
+			}
+
+			map.clear();
+
+			count = 0;
+			hand  = 0;
+		}
+
+		public int size() {
+			return map.size();
+		}
+
+		// ----- private methods -----
+		private Entry<K, V> findVictim() {
+
+			while (true) {
+
+				final Entry<K, V> candidate = ring[hand];
+
+				if (candidate.removed || !candidate.referenced) {
+					return candidate;
+				}
+
+				// give the entry a second chance
+				candidate.referenced = false;
+				hand                 = (hand + 1) % ring.length;
+			}
+		}
+	}
+}
@@ -0,0 +1,131 @@
+/**
+ * Copyright (C) 2010-2018 Structr GmbH
+ *
+ * This file is part of Structr <http://structr.org>.
+ *
+ * Structr is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Structr is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.structr.api.util;
+
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+import org.junit.Assert;
+
+/**
+ * Compares the multi-threaded get/put throughput of FixedSizeCache and
+ * ConcurrentFixedSizeCache. The results are printed and depend on the
+ * hardware, so this class is not part of the test suite. Run it explicitly
+ * with
+ *
+ * <code>mvn test -pl structr-db-driver-api -Dtest=ConcurrentFixedSizeCacheBenchmark</code>
+ */
+public class ConcurrentFixedSizeCacheBenchmark {
+
+	private static final int WARMUP_ITERATIONS      = 2;
+	private static final int MEASUREMENT_ITERATIONS = 5;
+	private static final int OPERATIONS             = 500000;
+	private static final int SIZE                   = 10000;
+
+	@org.junit.Test
+	public void benchmarkThroughput() {
+
+		for (final int threads : new int[] { 1, 4, 16 }) {
+
+			final FixedSizeCache<Long, Long> fixedSizeCache                 = new FixedSizeCache<>(SIZE);
+			final ConcurrentFixedSizeCache<Long, Long> concurrentSizeCache = new ConcurrentFixedSizeCache<>(SIZE);
+
+			final double fixed      = measure("FixedSizeCache",           threads, fixedSizeCache::get,      fixedSizeCache::put);
+			final double concurrent = measure("ConcurrentFixedSizeCache", threads, concurrentSizeCache::get, concurrentSizeCache::put);
+
+			// this module has no logging backend, so the results are printed
+			System.out.println(String.format("%2d threads: FixedSizeCache %,d ops/s, ConcurrentFixedSizeCache %,d ops/s, speedup %.2f", threads, (long)fixed, (long)concurrent, concurrent / fixed));
+		}
+	}
+
+	// ----- private methods -----
+	private double measure(final String name, final int threadCount, final Function<Long, Long> get, final BiConsumer<Long, Long> put) {
+
+		double best = 0.0;
+
+		for (int iteration=0; iteration<WARMUP_ITERATIONS + MEASUREMENT_ITERATIONS; iteration++) {
+
+			final double opsPerS = run(name, threadCount, get, put);
+
+			if (iteration >= WARMUP_ITERATIONS) {
+				best = Math.max(best, opsPerS);
+			}
+		}
+
+		return best;
+	}
+
+	private double run(final String name, final int threadCount, final Function<Long, Long> get, final BiConsumer<Long, Long> put) {
+
+		final CyclicBarrier barrier = new CyclicBarrier(threadCount + 1);
+		final List<Thread> threads  = new LinkedList<>();
+		final AtomicInteger errors  = new AtomicInteger();
+
+		for (int i=0; i<threadCount; i++) {
+
+			final long seed = i;
+
+			threads.add(new Thread(() -> {
+
+				final Random random = new Random(seed);
+
+				try {
+
+					barrier.await();
+
+					for (int j=0; j<OPERATIONS; j++) {
+
+						// skewed key distribution with 90% reads
+						final Long key = (long)Math.abs(random.nextGaussian() * 5000.0);
+
+						if (get.apply(key) == null || random.nextInt(10) == 0) {
+							put.accept(key, key);
+						}
+					}
+
+				} catch (Throwable t) {
+
+					t.printStackTrace();
+					errors.incrementAndGet();
+				}
+			}, name + "-" + i));
+		}
+
+		threads.forEach(Thread::start);
+
+		final long t0 = System.nanoTime();
+
+		try { barrier.await(); } catch (Exception ex) {}
+
+		for (final Thread thread : threads) {
+
+			try { thread.join(); } catch (InterruptedException iex) {}
+		}
+
+		final long t1 = System.nanoTime();
+
+		Assert.assertEquals("Errors during concurrent access to " + name, 0, errors.get());
+
+		return (1000000000.0 * threadCount * OPERATIONS) / Math.max(1L, t1 - t0);
+	}
+}
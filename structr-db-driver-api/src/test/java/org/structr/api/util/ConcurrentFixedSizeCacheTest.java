@@ -0,0 +1,178 @@
+/**
+ * Copyright (C) 2010-2018 Structr GmbH
+ *
+ * This file is part of Structr <http://structr.org>.
+ *
+ * Structr is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Structr is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.structr.api.util;
+
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+import org.junit.Assert;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ *
+ */
+public class ConcurrentFixedSizeCacheTest {
+
+	private static final Logger logger = LoggerFactory.getLogger(ConcurrentFixedSizeCacheTest.class.getName());
+
+	@org.junit.Test
+	public void testConcurrentFixedSizeCache() {
+
+		final ConcurrentFixedSizeCache<Long, Long> test = new ConcurrentFixedSizeCache<>(1000);
+
+		for (int i=0; i<10000; i++) {
+
+			final Long value = Long.valueOf(i);
+			test.put(value, value);
+		}
+
+		Assert.assertEquals("Invalid ConcurrentFixedSizeCache size", 1000, test.size());
+
+		// check that the most recent entries are kept
+		for (int i=9990; i<10000; i++) {
+
+			final Long value = Long.valueOf(i);
+			Assert.assertEquals("Invalid ConcurrentFixedSizeCache contents", test.get(value), value);
+		}
+
+		test.remove(9999L);
+		Assert.assertNull("Invalid ConcurrentFixedSizeCache contents", test.get(9999L));
+		Assert.assertEquals("Invalid ConcurrentFixedSizeCache size", 999, test.size());
+
+		test.clear();
+		Assert.assertTrue("Invalid ConcurrentFixedSizeCache size", test.isEmpty());
+	}
+
+	@org.junit.Test
+	public void testRecentlyUsedEntriesAreKept() {
+
+		final ConcurrentFixedSizeCache<Long, Long> test = new ConcurrentFixedSizeCache<>(10);
+
+		for (int i=0; i<10; i++) {
+
+			final Long value = Long.valueOf(i);
+			test.put(value, value);
+		}
+
+		// fill the cache so that every entry has been visited by the clock
+		// hand, then access the first entry before inserting more entries
+		test.put(10L, 10L);
+		test.get(1L);
+		test.put(11L, 11L);
+
+		Assert.assertEquals("Invalid ConcurrentFixedSizeCache size", 10, test.size());
+		Assert.assertEquals("Recently used entry was evicted", Long.valueOf(1L), test.get(1L));
+	}
+
+	@org.junit.Test
+	public void testPutIfAbsentAndEvictionCallback() {
+
+		final ConcurrentFixedSizeCache<Long, TestCachable> test = new ConcurrentFixedSizeCache<>(10);
+		final AtomicInteger evictions                           = new AtomicInteger();
+		final TestCachable first                                = new TestCachable(evictions);
+
+		Assert.assertNull("Invalid putIfAbsent result", test.putIfAbsent(0L, first));
+		Assert.assertEquals("Invalid putIfAbsent result", first, test.putIfAbsent(0L, new TestCachable(evictions)));
+
+		for (int i=1; i<20; i++) {
+			test.put(Long.valueOf(i), new TestCachable(evictions));
+		}
+
+		Assert.assertEquals("Invalid number of eviction callbacks", 10, evictions.get());
+	}
+
+	@org.junit.Test
+	public void testConcurrentAccess() {
+
+		final ConcurrentFixedSizeCache<Long, Long> test = new ConcurrentFixedSizeCache<>(1000);
+
+		run("ConcurrentFixedSizeCache", 8, 200000, test::get, test::put);
+
+		Assert.assertTrue("Invalid ConcurrentFixedSizeCache size", test.size() <= 1000);
+	}
+
+	// ----- private methods -----
+	private void run(final String name, final int threadCount, final int operations, final Function<Long, Long> get, final BiConsumer<Long, Long> put) {
+
+		final List<Thread> threads = new LinkedList<>();
+		final AtomicInteger errors = new AtomicInteger();
+
+		for (int i=0; i<threadCount; i++) {
+
+			final long seed = i;
+
+			threads.add(new Thread(() -> {
+
+				final Random random = new Random(seed);
+
+				try {
+
+					for (int j=0; j<operations; j++) {
+
+						// skewed key distribution with 90% reads
+						final Long key = (long)Math.abs(random.nextGaussian() * 5000.0);
+
+						final Long value = get.apply(key);
+
+						if (value != null && !value.equals(key)) {
+							throw new IllegalStateException("Invalid value " + value + " for key " + key);
+						}
+
+						if (value == null || random.nextInt(10) == 0) {
+							put.accept(key, key);
+						}
+					}
+
+				} catch (Throwable t) {
+
+					logger.warn("", t);
+					errors.incrementAndGet();
+				}
+			}, name + "-" + i));
+		}
+
+		threads.forEach(Thread::start);
+
+		for (final Thread thread : threads) {
+
+			try { thread.join(); } catch (InterruptedException iex) {}
+		}
+
+		Assert.assertEquals("Errors during concurrent access to " + name, 0, errors.get());
+	}
+
+	// ----- nested classes -----
+	private static class TestCachable implements Cachable {
+
+		private AtomicInteger evictions = null;
+
+		public TestCachable(final AtomicInteger evictions) {
+			this.evictions = evictions;
+		}
+
+		@Override
+		public void onRemoveFromCache() {
+			evictions.incrementAndGet();
+		}
+	}
+}
@@ -0,0 +1,237 @@
+/**
+ * Copyright (C) 2010-2018 Structr GmbH
+ *
+ * This file is part of Structr <http://structr.org>.
+ *
+ * Structr is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Structr is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.structr.transform;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.jayway.restassured.RestAssured;
+import com.jayway.restassured.filter.log.ResponseLoggingFilter;
+import java.io.BufferedWriter;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+import org.junit.After;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.structr.common.error.FrameworkException;
+import org.structr.core.app.StructrApp;
+import org.structr.core.graph.NodeAttribute;
+import org.structr.core.graph.Tx;
+import org.structr.core.scheduler.JobQueueManager;
+import org.structr.schema.export.StructrSchema;
+import org.structr.schema.json.JsonSchema;
+import org.structr.schema.json.JsonType;
+import org.structr.web.common.FileHelper;
+import org.structr.web.entity.File;
+import org.structr.web.entity.User;
+
+/**
+ * Imports a generated CSV file with different numbers of writer threads
+ * and logs the import throughput. The file has two million rows by default,
+ * which takes a while and depends on the hardware, so this class is not
+ * part of the test suite. Run it explicitly with
+ *
+ * <code>mvn test -pl structr-modules/structr-api-builder-module -Dtest=CsvImportBenchmark</code>
+ *
+ * The number of rows and the writer counts to compare can be set with
+ * <code>-DcsvImportRows=2000000 -DcsvImportWriters=1,4</code>.
+ */
+public class CsvImportBenchmark extends StructrApiModuleTest {
+
+	private static final Logger logger = LoggerFactory.getLogger(CsvImportBenchmark.class.getName());
+
+	@Test
+	public void benchmarkCsvFileImport() {
+
+		final int rows         = Integer.getInteger("csvImportRows", 2000000);
+		final String[] writers = System.getProperty("csvImportWriters", "1,4").split("[, ]+");
+		String fileId          = null;
+		Path fixture           = null;
+
+		try {
+
+			fixture = createFixture(rows);
+
+			// test setup
+			try (final Tx tx = app.tx(); final InputStream is = new FileInputStream(fixture.toFile())) {
+
+				final File file = FileHelper.createFile(securityContext, is, "text/csv", File.class, "benchmark.csv");
+
+				// extract UUID for later use
+				fileId = file.getUuid();
+
+				// create one type per run so that all runs start with an empty type
+				final JsonSchema schema = StructrSchema.createEmptySchema();
+
+				for (final String count : writers) {
+
+					final JsonType newType = schema.addType("Item" + count);
+
+					newType.addStringProperty("name");
+					newType.addIntegerProperty("originId");
+					newType.addStringProperty("typeName");
+				}
+
+				StructrSchema.extendDatabaseSchema(app, schema);
+
+				// create test user
+				app.create(User.class,
+					new NodeAttribute<>(StructrApp.key(User.class, "name"),     "admin"),
+					new NodeAttribute<>(StructrApp.key(User.class, "password"), "admin"),
+					new NodeAttribute<>(StructrApp.key(User.class, "isAdmin"),  true)
+				);
+
+				tx.success();
+			}
+
+			for (final String count : writers) {
+
+				final long duration = runImport(fileId, "Item" + count, Integer.valueOf(count));
+
+				try (final Tx tx = app.tx()) {
+
+					final Class type = StructrApp.getConfiguration().getNodeEntityClass("Item" + count);
+					int imported     = 0;
+
+					for (final Object item : app.nodeQuery(type).getResultStream()) {
+						imported++;
+					}
+
+					assertEquals("Invalid CSV import result, expected all rows to be imported", rows, imported);
+					tx.success();
+				}
+
+				logger.info("{} writers: imported {} rows in {} ms, {} rows/s", count, rows, duration, (rows * 1000L) / Math.max(1L, duration));
+			}
+
+		} catch (Throwable t) {
+
+			t.printStackTrace();
+			fail("Unexpected exception.");
+
+		} finally {
+
+			if (fixture != null) {
+
+				try { Files.deleteIfExists(fixture); } catch (IOException ignore) {}
+			}
+		}
+	}
+
+	/**
+	 * Deletes the imported nodes in batches, they are too many to be
+	 * removed in the single transaction that cleans the database.
+	 */
+	@After
+	public void deleteImportedNodes() {
+
+		final Map<String, Object> parameters = new LinkedHashMap<>();
+
+		for (final String count : System.getProperty("csvImportWriters", "1,4").split("[, ]+")) {
+
+			final Class type = StructrApp.getConfiguration().getNodeEntityClass("Item" + count);
+			if (type != null) {
+
+				boolean hasMore = true;
+
+				while (hasMore) {
+
+					try (final Tx tx = app.tx()) {
+
+						app.cypher("MATCH (n:Item" + count + ") WITH n LIMIT 10000 DETACH DELETE n", parameters);
+
+						hasMore = app.nodeQuery(type).getFirst() != null;
+
+						tx.success();
+
+					} catch (FrameworkException fex) {
+
+						logger.warn("Unable to delete imported nodes: {}", fex.getMessage());
+						hasMore = false;
+					}
+				}
+			}
+		}
+	}
+
+	// ----- private methods -----
+	private Path createFixture(final int rows) throws IOException {
+
+		final Path path = Files.createTempFile("structr-csv-benchmark", ".csv");
+
+		try (final BufferedWriter writer = Files.newBufferedWriter(path, StandardCharsets.UTF_8)) {
+
+			writer.write("id;type;name\n");
+
+			for (int i=0; i<rows; i++) {
+
+				writer.write(i + ";Type" + (i % 10) + ";name: " + i + "\n");
+			}
+		}
+
+		return path;
+	}
+
+	private long runImport(final String fileId, final String targetType, final int writers) throws InterruptedException {
+
+		final Gson gson                    = new GsonBuilder().setPrettyPrinting().create();
+		final Map<String, Object> params   = new LinkedHashMap<>();
+		final Map<String, Object> mappings = new LinkedHashMap<>();
+
+		// import parameters
+		params.put("targetType",     targetType);
+		params.put("quoteChar",      "");
+		params.put("delimiter",      ";");
+		params.put("commitInterval", 1000);
+		params.put("writers",        writers);
+		params.put("mappings",       mappings);
+
+		// property mapping
+		mappings.put("originId", "id");
+		mappings.put("typeName", "type");
+		mappings.put("name",     "name");
+
+		final long startTime = System.currentTimeMillis();
+
+		RestAssured.given()
+			.contentType("application/json; charset=UTF-8")
+			.header("X-User",     "admin")
+			.header("X-Password", "admin")
+			.filter(ResponseLoggingFilter.logResponseIfStatusCodeIs(401))
+			.filter(ResponseLoggingFilter.logResponseIfStatusCodeIs(400))
+			.filter(ResponseLoggingFilter.logResponseIfStatusCodeIs(500))
+			.body(gson.toJson(params))
+			.expect().statusCode(200).when().post("/File/" + fileId + "/doCSVImport");
+
+		// wait for the import job to finish (import is async.)
+		while (!JobQueueManager.getInstance().listJobs().isEmpty()) {
+			Thread.sleep(100);
+		}
+
+		return System.currentTimeMillis() - startTime;
+	}
+}
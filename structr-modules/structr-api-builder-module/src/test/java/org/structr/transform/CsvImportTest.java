@@ -23,9 +23,11 @@ import com.google.gson.GsonBuilder;
 import com.jayway.restassured.RestAssured;
 import com.jayway.restassured.filter.log.RequestLoggingFilter;
 import com.jayway.restassured.filter.log.ResponseLoggingFilter;
+import java.util.HashSet;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.fail;
 import org.junit.Test;
@@ -546,4 +548,117 @@ public class CsvImportTest extends StructrApiModuleTest {
 		}
 
 	}
+
+	/**
+	 * Imports a generated CSV file with several writer threads.
+	 */
+	@Test
+	public void testCsvFileImportWithMultipleWriters() {
+
+		final int rows   = 2000;
+		String newFileId = null;
+
+		// test setup
+		try (final Tx tx = app.tx()) {
+
+			final StringBuilder csvData = new StringBuilder("id;type;name\n");
+
+			for (int i=0; i<rows; i++) {
+				csvData.append(i).append(";Type").append(i % 10).append(";name: ").append(i).append("\n");
+			}
+
+			final byte[] fileData = csvData.toString().getBytes("utf-8");
+			final File file       = FileHelper.createFile(securityContext, fileData, "text/csv", File.class, "test.csv");
+
+			// extract UUID for later use
+			newFileId = file.getUuid();
+
+			// create new type
+			final JsonSchema schema = StructrSchema.createEmptySchema();
+			final JsonType newType  = schema.addType("Item");
+
+			newType.addStringProperty("name");
+			newType.addIntegerProperty("originId").isIndexed();
+			newType.addStringProperty("typeName");
+
+			StructrSchema.extendDatabaseSchema(app, schema);
+
+			// create test user
+			app.create(User.class,
+				new NodeAttribute<>(StructrApp.key(User.class, "name"),     "admin"),
+				new NodeAttribute<>(StructrApp.key(User.class, "password"), "admin"),
+				new NodeAttribute<>(StructrApp.key(User.class, "isAdmin"),  true)
+			);
+
+			tx.success();
+
+		} catch (Throwable t) {
+			t.printStackTrace();
+			fail("Unexpected exception.");
+		}
+
+		final Gson gson                    = new GsonBuilder().setPrettyPrinting().create();
+		final Map<String, Object> params   = new LinkedHashMap<>();
+		final Map<String, Object> mappings = new LinkedHashMap<>();
+
+		// import parameters
+		params.put("targetType",     "Item");
+		params.put("quoteChar",      "");
+		params.put("delimiter",      ";");
+		params.put("commitInterval", 100);
+		params.put("writers",        4);
+		params.put("mappings",       mappings);
+
+		// property mapping
+		mappings.put("originId", "id");
+		mappings.put("typeName", "type");
+		mappings.put("name",     "name");
+
+		RestAssured.given()
+			.contentType("application/json; charset=UTF-8")
+			.header("X-User",     "admin")
+			.header("X-Password", "admin")
+			.filter(ResponseLoggingFilter.logResponseIfStatusCodeIs(401))
+			.filter(ResponseLoggingFilter.logResponseIfStatusCodeIs(400))
+			.filter(ResponseLoggingFilter.logResponseIfStatusCodeIs(500))
+			.body(gson.toJson(params))
+			.expect().statusCode(200).when().post("/File/" + newFileId + "/doCSVImport");
+
+		// wait for result (import is async.)
+		try {
+
+			final Class type = StructrApp.getConfiguration().getNodeEntityClass("Item");
+			int count        = 0;
+
+			for (int i=0; i<600 && count < rows; i++) {
+
+				Thread.sleep(100);
+
+				try (final Tx tx = app.tx()) {
+
+					count = app.nodeQuery(type).getAsList().size();
+					tx.success();
+				}
+			}
+
+			try (final Tx tx = app.tx()) {
+
+				final List<NodeInterface> items = app.nodeQuery(type).getAsList();
+				final Set<Integer> ids          = new HashSet<>();
+
+				for (final NodeInterface item : items) {
+					ids.add((Integer)item.getProperty(StructrApp.getConfiguration().getPropertyKeyForJSONName(type, "originId")));
+				}
+
+				assertEquals("Invalid CSV import result, expected all rows to be imported exactly once", rows, items.size());
+				assertEquals("Invalid CSV import result, expected all rows to be imported exactly once", rows, ids.size());
+
+				tx.success();
+			}
+
+		} catch (FrameworkException | InterruptedException ex) {
+			ex.printStackTrace();
+			fail("Unexpected exception.");
+		}
+	}
 }
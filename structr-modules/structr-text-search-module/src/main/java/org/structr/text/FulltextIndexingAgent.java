@@ -111,6 +111,11 @@ public class FulltextIndexingAgent extends Agent<String> {
 		return FulltextIndexingTask.class;
 	}
 
+	@Override
+	protected boolean supportsBatching() {
+		return true;
+	}
+
 	// ----- private methods -----
 	private boolean doIndexing(final String indexableId) {
 
@@ -27,10 +27,12 @@ import java.io.Writer;
 import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.Properties;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
 import org.neo4j.driver.v1.AuthTokens;
 import org.neo4j.driver.v1.Config;
 import org.neo4j.driver.v1.Driver;
@@ -51,6 +53,7 @@ import org.structr.api.NotInTransactionException;
 import org.structr.api.QueryResult;
 import org.structr.api.Transaction;
 import org.structr.api.config.Settings;
+import org.structr.api.graph.Direction;
 import org.structr.api.graph.GraphProperties;
 import org.structr.api.graph.Label;
 import org.structr.api.graph.Node;
@@ -77,6 +80,7 @@ public class BoltDatabaseService implements DatabaseService, GraphProperties {
 	private static final Map<String, RelationshipType> relTypeCache   = new ConcurrentHashMap<>();
 	private static final Map<String, Label> labelCache                = new ConcurrentHashMap<>();
 	private static final ThreadLocal<SessionTransaction> sessions     = new ThreadLocal<>();
+	private static final Pattern WRITE_CLAUSES                        = Pattern.compile("\\b(CREATE|MERGE|SET|DELETE|REMOVE|DROP)\\b", Pattern.CASE_INSENSITIVE);
 	private Properties globalGraphProperties                          = null;
 	private CypherRelationshipIndex relationshipIndex                 = null;
 	private CypherNodeIndex nodeIndex                                 = null;
@@ -232,7 +236,12 @@ public class BoltDatabaseService implements DatabaseService, GraphProperties {
 		// make properties available to Cypher statement
 		map.put("properties", properties);
 
-		return NodeWrapper.newInstance(this, getCurrentTransaction().getNode(buf.toString(), map));
+		final SessionTransaction tx = getCurrentTransaction();
+		final NodeWrapper node      = NodeWrapper.newInstance(this, tx.getNode(buf.toString(), map));
+
+		tx.created(node);
+
+		return node;
 	}
 
 	@Override
@@ -304,6 +313,11 @@ public class BoltDatabaseService implements DatabaseService, GraphProperties {
 		return this;
 	}
 
+	@Override
+	public void prefetchRelationships(final Iterable<Node> nodes, final Direction direction, final RelationshipType relationshipType, final String otherLabel) {
+		NodeWrapper.prefetchRelationships(this, nodes, direction, relationshipType, otherLabel);
+	}
+
 	@Override
 	public Index<Node> nodeIndex() {
 
@@ -326,7 +340,17 @@ public class BoltDatabaseService implements DatabaseService, GraphProperties {
 
 	@Override
 	public NativeResult execute(final String nativeQuery, final Map<String, Object> parameters) {
-		return getCurrentTransaction().run(nativeQuery, parameters);
+
+		final SessionTransaction tx = getCurrentTransaction();
+
+		// we cannot know which entities are modified by a native query
+		if (WRITE_CLAUSES.matcher(nativeQuery).find()) {
+
+			tx.modifiedUnknown();
+			invalidateQueryCache();
+		}
+
+		return tx.run(nativeQuery, parameters);
 	}
 
 	@Override
@@ -346,6 +370,33 @@ public class BoltDatabaseService implements DatabaseService, GraphProperties {
 		}
 	}
 
+	public void invalidateQueryCache(final Set<String> labels, final Set<String> keys) {
+
+		if (nodeIndex != null) {
+			nodeIndex.invalidateCache(labels, keys);
+		}
+
+		if (relationshipIndex != null) {
+			relationshipIndex.invalidateCache(labels, keys);
+		}
+	}
+
+	@Override
+	public Map<String, Map<String, Long>> getQueryCacheStatistics() {
+
+		final Map<String, Map<String, Long>> statistics = new LinkedHashMap<>();
+
+		if (nodeIndex != null) {
+			statistics.put("nodes", nodeIndex.getCacheStatistics());
+		}
+
+		if (relationshipIndex != null) {
+			statistics.put("relationships", relationshipIndex.getCacheStatistics());
+		}
+
+		return statistics;
+	}
+
 	public SessionTransaction getCurrentTransaction() {
 
 		final SessionTransaction tx = sessions.get();
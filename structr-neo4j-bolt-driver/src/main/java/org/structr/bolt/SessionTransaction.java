@@ -18,11 +18,17 @@
  */
 package org.structr.bolt;
 
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Map.Entry;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
 import org.apache.commons.lang.StringUtils;
 import org.neo4j.driver.v1.Record;
 import org.neo4j.driver.v1.Session;
@@ -45,6 +51,7 @@ import org.structr.api.NetworkException;
 import org.structr.api.NotFoundException;
 import org.structr.api.QueryResult;
 import org.structr.api.RetryException;
+import org.structr.api.config.Settings;
 import org.structr.api.util.QueryUtils;
 import org.structr.bolt.mapper.RecordLongMapper;
 import org.structr.bolt.mapper.RecordNodeMapper;
@@ -57,8 +64,17 @@ import org.structr.bolt.wrapper.StatementResultWrapper;
  */
 public class SessionTransaction implements org.structr.api.Transaction {
 
+	private static final AtomicLong bufferedStatements = new AtomicLong();
+	private static final AtomicLong flushedStatements  = new AtomicLong();
+
+	private final Map<String, Map<Long, Map<String, Object>>> pendingUpdates = new LinkedHashMap<>();
+	private final Set<EntityWrapper> createdEntities  = new HashSet<>();
 	private final Set<EntityWrapper> modifiedEntities = new HashSet<>();
+	private final Set<String> modifiedLabels          = new HashSet<>();
+	private final Set<String> modifiedKeys            = new HashSet<>();
 	private BoltDatabaseService db                    = null;
+	private boolean structuralChanges                 = false;
+	private boolean unknownChanges                    = false;
 	private Session session                           = null;
 	private Transaction tx                            = null;
 	private boolean closed                            = false;
@@ -79,6 +95,16 @@ public class SessionTransaction implements org.structr.api.Transaction {
 	@Override
 	public void success() {
 
+		try {
+
+			flush();
+
+		} catch (RuntimeException rex) {
+
+			tx.failure();
+			throw rex;
+		}
+
 		tx.success();
 
 		// transaction must be marked successfull explicitely
@@ -90,6 +116,8 @@ public class SessionTransaction implements org.structr.api.Transaction {
 
 		if (!success) {
 
+			pendingUpdates.clear();
+
 			// We need to invalidate all existing references because we cannot
 			// be sure that they contain the correct values after a rollback.
 			for (final EntityWrapper entity : modifiedEntities) {
@@ -98,10 +126,15 @@ public class SessionTransaction implements org.structr.api.Transaction {
 
 		} else {
 
-			if (!modifiedEntities.isEmpty()) {
+			if (unknownChanges) {
 
-				// data was written, invalidate query cache
+				// arbitrary data was written, invalidate query cache
 				db.invalidateQueryCache();
+
+			} else if (!modifiedEntities.isEmpty()) {
+
+				// data was written, invalidate affected entries of the query cache
+				db.invalidateQueryCache(modifiedLabels, structuralChanges ? null : modifiedKeys);
 			}
 
 			// Notify all nodes that are modified in this transaction
@@ -168,6 +201,8 @@ public class SessionTransaction implements org.structr.api.Transaction {
 
 		try {
 
+			flush();
+
 			return tx.run(statement, map).next().get(0).asBoolean();
 
 		} catch (TransientException tex) {
@@ -208,6 +243,8 @@ public class SessionTransaction implements org.structr.api.Transaction {
 
 		try {
 
+			flush();
+
 			return tx.run(statement, map).next().get(0).asLong();
 
 		} catch (TransientException tex) {
@@ -228,6 +265,8 @@ public class SessionTransaction implements org.structr.api.Transaction {
 
 		try {
 
+			flush();
+
 			final StatementResult result = tx.run(statement, map);
 			if (result.hasNext()) {
 
@@ -254,6 +293,8 @@ public class SessionTransaction implements org.structr.api.Transaction {
 
 		try {
 
+			flush();
+
 			return tx.run(statement, map).next().get(0).asEntity();
 
 		} catch (TransientException tex) {
@@ -274,6 +315,8 @@ public class SessionTransaction implements org.structr.api.Transaction {
 
 		try {
 
+			flush();
+
 			return tx.run(statement, map).next().get(0).asNode();
 
 		} catch (TransientException tex) {
@@ -294,6 +337,8 @@ public class SessionTransaction implements org.structr.api.Transaction {
 
 		try {
 
+			flush();
+
 			return tx.run(statement, map).next().get(0).asRelationship();
 
 		} catch (TransientException tex) {
@@ -314,6 +359,8 @@ public class SessionTransaction implements org.structr.api.Transaction {
 
 		try {
 
+			flush();
+
 			return QueryUtils.map(new RecordNodeMapper(), new StatementIterable(tx.run(statement, map)));
 
 		} catch (TransientException tex) {
@@ -334,6 +381,8 @@ public class SessionTransaction implements org.structr.api.Transaction {
 
 		try {
 
+			flush();
+
 			return QueryUtils.map(new RecordRelationshipMapper(), new StatementIterable(tx.run(statement, map)));
 
 		} catch (TransientException tex) {
@@ -354,6 +403,8 @@ public class SessionTransaction implements org.structr.api.Transaction {
 
 		try {
 
+			flush();
+
 			return QueryUtils.map(new RecordLongMapper(), new StatementIterable(tx.run(statement, map)));
 
 		} catch (TransientException tex) {
@@ -374,6 +425,8 @@ public class SessionTransaction implements org.structr.api.Transaction {
 
 		try {
 
+			flush();
+
 			final StatementResult result = tx.run(statement, map);
 			final Record record = result.next();
 			final Value value = record.get(0);
@@ -409,6 +462,8 @@ public class SessionTransaction implements org.structr.api.Transaction {
 
 		try {
 
+			flush();
+
 			return new StatementResultWrapper(db, tx.run(statement, map));
 
 		} catch (TransientException tex) {
@@ -429,6 +484,84 @@ public class SessionTransaction implements org.structr.api.Transaction {
 
 	public void set(final String statement, final Map<String, Object> map) {
 
+		flush();
+		write(statement, map);
+	}
+
+	/**
+	 * Buffers the given property values of the given entity. Buffered
+	 * values are written with a single statement per entity kind before
+	 * the next statement is executed in this transaction and before the
+	 * transaction is committed. A null value removes the property.
+	 *
+	 * Only entities that were created in this transaction are buffered,
+	 * because they are not visible to other transactions. Values of all
+	 * other entities are written immediately so that the write lock is
+	 * acquired at the time of the modification.
+	 *
+	 * @param wrapper the entity
+	 * @param queryPrefix the MATCH clause for the kind of entity
+	 * @param values the property values
+	 */
+	public void setLater(final EntityWrapper wrapper, final String queryPrefix, final Map<String, Object> values) {
+
+		final long id = wrapper.getId();
+
+		if (!Settings.WriteBehind.getValue() || !createdEntities.contains(wrapper)) {
+
+			final Map<String, Object> map = new HashMap<>();
+
+			map.put("id", id);
+			map.put("properties", values);
+
+			set(queryPrefix + " WHERE ID(n) = {id} SET n += {properties}", map);
+
+			return;
+		}
+
+		pendingUpdates.computeIfAbsent(queryPrefix, k -> new LinkedHashMap<>()).computeIfAbsent(id, k -> new HashMap<>()).putAll(values);
+		bufferedStatements.incrementAndGet();
+	}
+
+	/**
+	 * Writes all buffered property values to the database.
+	 */
+	@Override
+	public void flush() {
+
+		if (pendingUpdates.isEmpty()) {
+			return;
+		}
+
+		final Map<String, Map<Long, Map<String, Object>>> updates = new LinkedHashMap<>(pendingUpdates);
+
+		// clear buffer before writing so that we don't write twice in case of an error
+		pendingUpdates.clear();
+
+		for (final Entry<String, Map<Long, Map<String, Object>>> entry : updates.entrySet()) {
+
+			final List<Map<String, Object>> list = new ArrayList<>(entry.getValue().size());
+			final Map<String, Object> map        = new HashMap<>();
+
+			for (final Entry<Long, Map<String, Object>> update : entry.getValue().entrySet()) {
+
+				final Map<String, Object> data = new HashMap<>();
+
+				data.put("id",         update.getKey());
+				data.put("properties", update.getValue());
+
+				list.add(data);
+			}
+
+			map.put("updates", list);
+
+			write("UNWIND {updates} AS update " + entry.getKey() + " WHERE ID(n) = update.id SET n += update.properties", map);
+			flushedStatements.incrementAndGet();
+		}
+	}
+
+	private void write(final String statement, final Map<String, Object> map) {
+
 		final long t0 = System.currentTimeMillis();
 
 		try {
@@ -478,15 +611,109 @@ public class SessionTransaction implements org.structr.api.Transaction {
 		}
 	}
 
+	/**
+	 * Registers the given entity as created, deleted or relabeled in this
+	 * transaction.
+	 *
+	 * @param wrapper the modified entity
+	 */
 	public void modified(final EntityWrapper wrapper) {
+		modified(wrapper, null);
+	}
 
-		// data was written, invalidate query cache
-		db.invalidateQueryCache();
+	/**
+	 * Registers the creation of the given entity in this transaction.
+	 *
+	 * @param wrapper the created entity
+	 */
+	public void created(final EntityWrapper wrapper) {
+
+		createdEntities.add(wrapper);
+		modified(wrapper);
+	}
+
+	/**
+	 * Registers a modification of the given property keys of the given
+	 * entity in this transaction. The query cache is invalidated for the
+	 * labels and keys of all modified entities when the transaction is
+	 * committed.
+	 *
+	 * @param wrapper the modified entity
+	 * @param keys the modified property keys, or null for structural changes
+	 */
+	public void modified(final EntityWrapper wrapper, final Set<String> keys) {
 
 		modifiedEntities.add(wrapper);
+		modifiedLabels.addAll(wrapper.getCacheLabels());
+
+		if (keys != null) {
+
+			modifiedKeys.addAll(keys);
+
+		} else {
+
+			structuralChanges = true;
+		}
+	}
+
+	/**
+	 * Registers a modification of unknown scope (e.g. caused by a native
+	 * Cypher query) in this transaction.
+	 */
+	public void modifiedUnknown() {
+		unknownChanges = true;
+	}
+
+	/**
+	 * Indicates whether entities with one of the given labels were modified
+	 * in this transaction, in which case cached query results for those
+	 * labels do not reflect the uncommitted state of this transaction. An
+	 * empty set of labels matches any modification.
+	 *
+	 * @param labels the labels to check
+	 * @return whether entities with one of the given labels were modified
+	 */
+	public boolean isModified(final Set<String> labels) {
+
+		if (unknownChanges) {
+			return true;
+		}
+
+		if (labels.isEmpty()) {
+			return !modifiedEntities.isEmpty();
+		}
+
+		for (final String label : labels) {
+
+			if (modifiedLabels.contains(label)) {
+				return true;
+			}
+		}
+
+		return false;
 	}
 
 	// ----- public static methods -----
+	/**
+	 * Returns the number of property updates that were buffered, the number
+	 * of statements that were sent to write them and the number of
+	 * statements that were saved.
+	 *
+	 * @return statistics
+	 */
+	public static Map<String, Long> getStatistics() {
+
+		final Map<String, Long> statistics = new LinkedHashMap<>();
+		final long buffered                = bufferedStatements.get();
+		final long flushed                 = flushedStatements.get();
+
+		statistics.put("buffered", buffered);
+		statistics.put("flushed",  flushed);
+		statistics.put("saved",    buffered - flushed);
+
+		return statistics;
+	}
+
 	public static RuntimeException translateClientException(final ClientException cex) {
 
 		switch (cex.code()) {
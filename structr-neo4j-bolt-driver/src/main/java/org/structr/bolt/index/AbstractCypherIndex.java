@@ -20,15 +20,22 @@ package org.structr.bolt.index;
 
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.structr.api.QueryResult;
+import org.structr.api.config.Settings;
 import org.structr.api.graph.PropertyContainer;
 import org.structr.api.index.Index;
 import org.structr.api.search.ArrayQuery;
@@ -37,13 +44,15 @@ import org.structr.api.search.ExactQuery;
 import org.structr.api.search.FulltextQuery;
 import org.structr.api.search.GroupQuery;
 import org.structr.api.search.NotEmptyQuery;
+import org.structr.api.search.PermissionQuery;
 import org.structr.api.search.QueryPredicate;
 import org.structr.api.search.RangeQuery;
 import org.structr.api.search.SpatialQuery;
 import org.structr.api.search.TypeConverter;
 import org.structr.api.search.TypeQuery;
 import org.structr.api.search.UuidQuery;
-import org.structr.api.util.FixedSizeCache;
+import org.structr.api.util.Cachable;
+import org.structr.api.util.ConcurrentFixedSizeCache;
 import org.structr.api.util.Iterables;
 import org.structr.bolt.*;
 import org.structr.bolt.index.converter.BooleanTypeConverter;
@@ -60,6 +69,7 @@ import org.structr.bolt.index.factory.EmptyQueryFactory;
 import org.structr.bolt.index.factory.GroupQueryFactory;
 import org.structr.bolt.index.factory.KeywordQueryFactory;
 import org.structr.bolt.index.factory.NotEmptyQueryFactory;
+import org.structr.bolt.index.factory.PermissionQueryFactory;
 import org.structr.bolt.index.factory.QueryFactory;
 import org.structr.bolt.index.factory.RangeQueryFactory;
 import org.structr.bolt.index.factory.SpatialQueryFactory;
@@ -83,16 +93,17 @@ public abstract class AbstractCypherIndex<T extends PropertyContainer> implement
 
 	static {
 
-		FACTORIES.put(NotEmptyQuery.class, new NotEmptyQueryFactory());
-		FACTORIES.put(FulltextQuery.class, new KeywordQueryFactory());
-		FACTORIES.put(SpatialQuery.class,  new SpatialQueryFactory());
-		FACTORIES.put(GroupQuery.class,    new GroupQueryFactory());
-		FACTORIES.put(RangeQuery.class,    new RangeQueryFactory());
-		FACTORIES.put(ExactQuery.class,    new KeywordQueryFactory());
-		FACTORIES.put(ArrayQuery.class,    new ArrayQueryFactory());
-		FACTORIES.put(EmptyQuery.class,    new EmptyQueryFactory());
-		FACTORIES.put(TypeQuery.class,     new TypeQueryFactory());
-		FACTORIES.put(UuidQuery.class,     new UuidQueryFactory());
+		FACTORIES.put(NotEmptyQuery.class,   new NotEmptyQueryFactory());
+		FACTORIES.put(FulltextQuery.class,   new KeywordQueryFactory());
+		FACTORIES.put(SpatialQuery.class,    new SpatialQueryFactory());
+		FACTORIES.put(GroupQuery.class,      new GroupQueryFactory());
+		FACTORIES.put(RangeQuery.class,      new RangeQueryFactory());
+		FACTORIES.put(ExactQuery.class,      new KeywordQueryFactory());
+		FACTORIES.put(ArrayQuery.class,      new ArrayQueryFactory());
+		FACTORIES.put(EmptyQuery.class,      new EmptyQueryFactory());
+		FACTORIES.put(TypeQuery.class,       new TypeQueryFactory());
+		FACTORIES.put(UuidQuery.class,       new UuidQueryFactory());
+		FACTORIES.put(PermissionQuery.class, new PermissionQueryFactory());
 
 		CONVERTERS.put(Boolean.class, new BooleanTypeConverter());
 		CONVERTERS.put(String.class,  new StringTypeConverter());
@@ -105,13 +116,25 @@ public abstract class AbstractCypherIndex<T extends PropertyContainer> implement
 		CONVERTERS.put(byte.class,    new ByteTypeConverter());
 	}
 
-	protected final FixedSizeCache<Integer, CachedQueryResult> queryCache;
+	private static final String WILDCARD = "*";
+
+	private final Map<String, Set<QueryCacheKey>> cacheKeysByLabel = new ConcurrentHashMap<>();
+	private final Map<String, AtomicLong> generations        = new ConcurrentHashMap<>();
+	private final AtomicLong globalGeneration                = new AtomicLong();
+	private final AtomicLong hits                            = new AtomicLong();
+	private final AtomicLong misses                          = new AtomicLong();
+	private final AtomicLong evictions                       = new AtomicLong();
+	private final AtomicLong invalidations                   = new AtomicLong();
+
+	protected final ConcurrentFixedSizeCache<QueryCacheKey, CachedQueryResult> queryCache;
 	protected final BoltDatabaseService db;
+	protected final int maxCachedResultSize;
 
 	public AbstractCypherIndex(final BoltDatabaseService db, final int queryCacheSize) {
 
-		this.queryCache = new FixedSizeCache<>(queryCacheSize);
-		this.db         = db;
+		this.maxCachedResultSize = Settings.QueryCacheLimit.getValue();
+		this.queryCache          = new ConcurrentFixedSizeCache<>(queryCacheSize);
+		this.db                  = db;
 	}
 
 	public abstract QueryResult<T> getResult(final PageableQuery query);
@@ -148,26 +171,88 @@ public abstract class AbstractCypherIndex<T extends PropertyContainer> implement
 
 	@Override
 	public QueryResult<T> query(final QueryPredicate predicate) {
+		return query(createQuery(predicate));
+	}
+
+	@Override
+	public QueryResult<T> query(final QueryPredicate predicate, final int offset, final int limit) {
+
+		final AdvancedCypherQuery query = createQuery(predicate);
+
+		query.limit(offset, limit);
+
+		return query(query);
+	}
+
+	@Override
+	public long count(final QueryPredicate predicate) {
 
 		final AdvancedCypherQuery query = new AdvancedCypherQuery(this);
+		final SessionTransaction tx     = db.getCurrentTransaction();
 
 		createQuery(this, predicate, query, true);
 
-		final String sortKey = predicate.getSortKey();
-		if (sortKey != null) {
+		if (query.isUnion()) {
 
-			query.sort(predicate.getSortType(), sortKey, predicate.sortDescending());
+			// UNION removes duplicate IDs, so we can count the rows
+			try (final QueryResult<Long> ids = tx.getIds(query.getCountStatement(), query.getParameters())) {
+
+				return Iterables.count(ids);
+			}
 		}
 
-		return getResult(query);
+		return tx.getLong(query.getCountStatement(), query.getParameters());
 	}
 
 	public void invalidateCache() {
 
+		globalGeneration.incrementAndGet();
+
+		for (final AtomicLong generation : generations.values()) {
+			generation.incrementAndGet();
+		}
+
 		if (!queryCache.isEmpty()) {
 
 			queryCache.clear();
 		}
+
+		cacheKeysByLabel.clear();
+	}
+
+	/**
+	 * Removes all cached query results that depend on one of the given
+	 * labels (or relationship types) and on one of the given property keys.
+	 * Cached results that are not restricted to any label are always
+	 * removed.
+	 *
+	 * @param labels the labels of the modified entities
+	 * @param keys the modified property keys, or null if entities were created, deleted or relabeled
+	 */
+	public void invalidateCache(final Set<String> labels, final Set<String> keys) {
+
+		globalGeneration.incrementAndGet();
+
+		for (final String label : labels) {
+
+			getGeneration(label).incrementAndGet();
+			invalidateCacheEntries(cacheKeysByLabel.get(label), keys);
+		}
+
+		invalidateCacheEntries(cacheKeysByLabel.get(WILDCARD), keys);
+	}
+
+	public Map<String, Long> getCacheStatistics() {
+
+		final Map<String, Long> statistics = new LinkedHashMap<>();
+
+		statistics.put("size",          Long.valueOf(queryCache.size()));
+		statistics.put("hits",          hits.get());
+		statistics.put("misses",        misses.get());
+		statistics.put("evictions",     evictions.get());
+		statistics.put("invalidations", invalidations.get());
+
+		return statistics;
 	}
 
 	// ----- interface QueryFactory -----
@@ -191,12 +276,136 @@ public abstract class AbstractCypherIndex<T extends PropertyContainer> implement
 		return false;
 	}
 
+	// ----- private methods -----
+	private AdvancedCypherQuery createQuery(final QueryPredicate predicate) {
+
+		final AdvancedCypherQuery query = new AdvancedCypherQuery(this);
+
+		createQuery(this, predicate, query, true);
+
+		final String sortKey = predicate.getSortKey();
+		if (sortKey != null) {
+
+			query.sort(predicate.getSortType(), sortKey, predicate.sortDescending());
+		}
+
+		return query;
+	}
+
+	private QueryResult<T> query(final AdvancedCypherQuery query) {
+
+		final Set<String> labels    = query.getCacheLabels();
+		final SessionTransaction tx = db.getCurrentTransaction();
+
+		// the current transaction has uncommitted changes that can affect
+		// the result of this query, so we must not use the shared cache
+		if (tx.isModified(labels)) {
+			return getResult(query);
+		}
+
+		final QueryCacheKey cacheKey   = query.getCacheKey();
+		final CachedQueryResult cached = queryCache.get(cacheKey);
+
+		if (cached != null) {
+
+			hits.incrementAndGet();
+			return cached;
+		}
+
+		misses.incrementAndGet();
+
+		return new CachingQueryResult(cacheKey, labels, query.getCachePropertyKeys(), getGeneration(labels), getResult(query));
+	}
+
+	private void invalidateCacheEntries(final Set<QueryCacheKey> cacheKeys, final Set<String> keys) {
+
+		if (cacheKeys != null) {
+
+			for (final QueryCacheKey cacheKey : cacheKeys) {
+
+				final CachedQueryResult cached = queryCache.get(cacheKey);
+				if (cached == null) {
+
+					// entry was already evicted
+					cacheKeys.remove(cacheKey);
+
+				} else if (cached.dependsOn(keys)) {
+
+					queryCache.remove(cacheKey);
+					unregister(cached);
+
+					invalidations.incrementAndGet();
+				}
+			}
+		}
+	}
+
+	private void register(final CachedQueryResult cached) {
+
+		queryCache.put(cached.cacheKey, cached);
+
+		for (final String label : cached.labels) {
+			cacheKeysByLabel.computeIfAbsent(label, k -> ConcurrentHashMap.newKeySet()).add(cached.cacheKey);
+		}
+	}
+
+	private void unregister(final CachedQueryResult cached) {
+
+		for (final String label : cached.labels) {
+
+			final Set<QueryCacheKey> cacheKeys = cacheKeysByLabel.get(label);
+			if (cacheKeys != null) {
+
+				cacheKeys.remove(cached.cacheKey);
+			}
+		}
+	}
+
+	private AtomicLong getGeneration(final String label) {
+		return generations.computeIfAbsent(label, k -> new AtomicLong());
+	}
+
+	/**
+	 * Returns a value that changes whenever entities with one of the given
+	 * labels are modified, so that results of queries that were running
+	 * during a commit can be identified and excluded from the cache.
+	 */
+	private long getGeneration(final Set<String> labels) {
+
+		if (labels.isEmpty()) {
+			return globalGeneration.get();
+		}
+
+		long generation = 0L;
+
+		for (final String label : labels) {
+			generation += getGeneration(label).get();
+		}
+
+		return generation;
+	}
+
 	// ----- nested classes -----
-	protected class CachedQueryResult implements QueryResult<T> {
+	protected class CachedQueryResult implements QueryResult<T>, Cachable {
+
+		private Collection<T> result   = null;
+		private QueryCacheKey cacheKey = null;
+		private Set<String> labels     = null;
+		private Set<String> keys       = null;
+
+		public CachedQueryResult(final QueryCacheKey cacheKey, final Set<String> labels, final Set<String> keys, final Iterable<T> source) {
 
-		private Collection<T> result = null;
+			this.cacheKey = cacheKey;
+			this.keys     = keys;
 
-		public CachedQueryResult(final Iterable<T> source) {
+			if (labels.isEmpty()) {
+
+				this.labels = Collections.singleton(WILDCARD);
+
+			} else {
+
+				this.labels = labels;
+			}
 
 			if (source instanceof Collection) {
 
@@ -218,8 +427,120 @@ public abstract class AbstractCypherIndex<T extends PropertyContainer> implement
 			return result.iterator();
 		}
 
+		@Override
+		public void onRemoveFromCache() {
+
+			unregister(this);
+			evictions.incrementAndGet();
+		}
+
 		public boolean isEmpty() {
 			return result.isEmpty();
 		}
+
+		public boolean dependsOn(final Set<String> modifiedKeys) {
+
+			if (modifiedKeys == null || keys == null) {
+				return true;
+			}
+
+			for (final String key : modifiedKeys) {
+
+				if (keys.contains(key)) {
+					return true;
+				}
+			}
+
+			return false;
+		}
+	}
+
+	/**
+	 * Query result that collects the elements of the underlying result
+	 * while it is being consumed, and stores them in the query cache if
+	 * the result was consumed completely and the cache was not invalidated
+	 * in the meantime.
+	 */
+	private class CachingQueryResult implements QueryResult<T> {
+
+		private QueryResult<T> source  = null;
+		private QueryCacheKey cacheKey = null;
+		private Set<String> labels     = null;
+		private Set<String> keys       = null;
+		private long generation        = 0L;
+
+		public CachingQueryResult(final QueryCacheKey cacheKey, final Set<String> labels, final Set<String> keys, final long generation, final QueryResult<T> source) {
+
+			this.generation = generation;
+			this.cacheKey   = cacheKey;
+			this.source     = source;
+			this.labels     = labels;
+			this.keys       = keys;
+		}
+
+		@Override
+		public void close() {
+			source.close();
+		}
+
+		@Override
+		public Iterator<T> iterator() {
+
+			final Iterator<T> iterator = source.iterator();
+
+			return new Iterator<T>() {
+
+				private List<T> elements = new LinkedList<>();
+
+				@Override
+				public boolean hasNext() {
+
+					final boolean hasNext = iterator.hasNext();
+					if (!hasNext && elements != null) {
+
+						// only store result if no modification happened while the query was running
+						if (generation == getGeneration(labels)) {
+
+							final CachedQueryResult cached = new CachedQueryResult(cacheKey, labels, keys, elements);
+
+							register(cached);
+
+							// an invalidation between the check above and the registration
+							// may have missed the new entry, so we need to check again
+							if (generation != getGeneration(labels) && queryCache.get(cacheKey) == cached) {
+
+								queryCache.remove(cacheKey);
+								unregister(cached);
+							}
+						}
+
+						elements = null;
+					}
+
+					return hasNext;
+				}
+
+				@Override
+				public T next() {
+
+					final T next = iterator.next();
+
+					if (elements != null) {
+
+						if (elements.size() < maxCachedResultSize) {
+
+							elements.add(next);
+
+						} else {
+
+							// result too large to be cached
+							elements = null;
+						}
+					}
+
+					return next;
+				}
+			};
+		}
 	}
 }
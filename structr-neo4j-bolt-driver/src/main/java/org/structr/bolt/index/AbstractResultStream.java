@@ -66,7 +66,7 @@ public abstract class AbstractResultStream<T> implements QueryResult<T> {
 					}
 
 					// fetch more?
-					if (remaining == 0) {
+					if (remaining == 0 && query.hasMorePages()) {
 
 						// reset count
 						remaining = query.pageSize();
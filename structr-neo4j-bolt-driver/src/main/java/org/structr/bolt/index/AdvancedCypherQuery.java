@@ -18,12 +18,15 @@
  */
 package org.structr.bolt.index;
 
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Set;
 import org.structr.api.search.SortType;
 
 /**
@@ -32,8 +35,12 @@ import org.structr.api.search.SortType;
 public class AdvancedCypherQuery implements PageableQuery {
 
 	private final Map<String, Object> parameters = new HashMap<>();
+	private final Set<String> propertyKeys       = new LinkedHashSet<>();
 	private final List<String> typeLabels        = new LinkedList<>();
 	private final StringBuilder buffer           = new StringBuilder();
+	private final StringBuilder filter           = new StringBuilder();
+	private boolean dependsOnAllKeys             = false;
+	private boolean permissionFilter             = false;
 	private String sourceTypeLabel               = null;
 	private String targetTypeLabel               = null;
 	private AbstractCypherIndex<?> index         = null;
@@ -42,6 +49,8 @@ public class AdvancedCypherQuery implements PageableQuery {
 	private String sortKey                       = null;
 	private int page                             = 0;
 	private int pageSize                         = 0;
+	private int offset                           = 0;
+	private int limit                            = -1;
 	private int count                            = 0;
 
 	public AdvancedCypherQuery(final AbstractCypherIndex<?> index) {
@@ -73,6 +82,10 @@ public class AdvancedCypherQuery implements PageableQuery {
 		return hashCode;
 	}
 
+	public QueryCacheKey getCacheKey() {
+		return new QueryCacheKey(getStatement(), parameters, getHashCode());
+	}
+
 	@Override
 	public void nextPage() {
 		page++;
@@ -83,6 +96,11 @@ public class AdvancedCypherQuery implements PageableQuery {
 		return this.pageSize;
 	}
 
+	@Override
+	public boolean hasMorePages() {
+		return limit < 0 || page * pageSize < limit;
+	}
+
 	@Override
 	public String getStatement() {
 
@@ -95,10 +113,7 @@ public class AdvancedCypherQuery implements PageableQuery {
 
 				buf.append(index.getQueryPrefix(null, sourceTypeLabel, targetTypeLabel));
 
-				if (buffer.length() > 0) {
-					buf.append(" WHERE ");
-					buf.append(buffer);
-				}
+				appendWhereClause(buf);
 
 				buf.append(index.getQuerySuffix());
 				break;
@@ -107,10 +122,7 @@ public class AdvancedCypherQuery implements PageableQuery {
 
 				buf.append(index.getQueryPrefix(typeLabels.get(0), sourceTypeLabel, targetTypeLabel));
 
-				if (buffer.length() > 0) {
-					buf.append(" WHERE ");
-					buf.append(buffer);
-				}
+				appendWhereClause(buf);
 
 				buf.append(index.getQuerySuffix());
 				break;
@@ -122,10 +134,7 @@ public class AdvancedCypherQuery implements PageableQuery {
 
 					buf.append(index.getQueryPrefix(it.next(), sourceTypeLabel, targetTypeLabel));
 
-					if (buffer.length() > 0) {
-						buf.append(" WHERE ");
-						buf.append(buffer);
-					}
+					appendWhereClause(buf);
 
 					buf.append(index.getQuerySuffix());
 
@@ -169,13 +178,63 @@ public class AdvancedCypherQuery implements PageableQuery {
 		}
 
 		buf.append(" SKIP ");
-		buf.append(page * pageSize);
+		buf.append(offset + page * pageSize);
 		buf.append(" LIMIT ");
-		buf.append(pageSize);
+
+		if (limit >= 0) {
+
+			buf.append(Math.min(pageSize, limit - page * pageSize));
+
+		} else {
+
+			buf.append(pageSize);
+		}
 
 		return buf.toString();
 	}
 
+	/**
+	 * Returns a statement that counts the results of this query. If the
+	 * query is a UNION of more than one type label, the statement returns
+	 * the distinct IDs of the results instead, see {@link #isUnion()}.
+	 *
+	 * @return the count statement
+	 */
+	public String getCountStatement() {
+
+		final StringBuilder buf = new StringBuilder();
+
+		if (isUnion()) {
+
+			for (final Iterator<String> it = typeLabels.iterator(); it.hasNext();) {
+
+				buf.append(index.getQueryPrefix(it.next(), sourceTypeLabel, targetTypeLabel));
+
+				appendWhereClause(buf);
+
+				buf.append(" RETURN DISTINCT ID(n) AS id");
+
+				if (it.hasNext()) {
+					buf.append(" UNION ");
+				}
+			}
+
+		} else {
+
+			buf.append(index.getQueryPrefix(typeLabels.isEmpty() ? null : typeLabels.get(0), sourceTypeLabel, targetTypeLabel));
+
+			appendWhereClause(buf);
+
+			buf.append(" RETURN count(DISTINCT n)");
+		}
+
+		return buf.toString();
+	}
+
+	public boolean isUnion() {
+		return typeLabels.size() > 1;
+	}
+
 	@Override
 	public Map<String, Object> getParameters() {
 		return parameters;
@@ -209,6 +268,79 @@ public class AdvancedCypherQuery implements PageableQuery {
 		buffer.append(" True ");
 	}
 
+	/**
+	 * Restricts the results of this query to the given range. Skipping and
+	 * limiting is done in the database.
+	 *
+	 * @param offset the number of results to skip
+	 * @param limit the maximum number of results
+	 */
+	public void limit(final int offset, final int limit) {
+
+		this.pageSize = Math.max(1, Math.min(pageSize, limit));
+		this.offset   = offset;
+		this.limit    = limit;
+	}
+
+	/**
+	 * Restricts the results of this query to the nodes the given principal
+	 * or one of the given principals (the principal and its groups) can
+	 * access with the given permission. The filter is combined with the
+	 * other predicates of this query using AND.
+	 *
+	 * @param principalId the ID of the principal
+	 * @param principalIds the IDs of the principal and its groups
+	 * @param permission the permission
+	 */
+	public void permission(final long principalId, final Set<Long> principalIds, final String permission) {
+
+		final String principalKey  = "param" + count++;
+		final String principalsKey = "param" + count++;
+		final String permissionKey = "param" + count++;
+
+		if (filter.length() > 0) {
+			filter.append(" AND ");
+		}
+
+		filter.append("(");
+
+		if ("read".equals(permission)) {
+
+			filter.append("n.visibleToPublicUsers = true OR n.visibleToAuthenticatedUsers = true OR ");
+
+			propertyKeys.add("visibleToPublicUsers");
+			propertyKeys.add("visibleToAuthenticatedUsers");
+		}
+
+		if ("read".equals(permission)) {
+
+			// principals can read themselves and all of their groups
+			filter.append("ID(n) IN {");
+			filter.append(principalsKey);
+
+		} else {
+
+			filter.append("ID(n) = {");
+			filter.append(principalKey);
+		}
+
+		filter.append("} OR ANY(x IN [(n)<-[:OWNS]-(p) | ID(p)] WHERE x IN {");
+		filter.append(principalsKey);
+		filter.append("}) OR ANY(x IN [(n)<-[r:SECURITY]-(p) WHERE ID(p) IN {");
+		filter.append(principalsKey);
+		filter.append("} | r.allowed] WHERE {");
+		filter.append(permissionKey);
+		filter.append("} IN x))");
+
+		parameters.put(principalKey,  principalId);
+		parameters.put(principalsKey, new ArrayList<>(principalIds));
+		parameters.put(permissionKey, permission);
+
+		propertyKeys.add("allowed");
+
+		permissionFilter = true;
+	}
+
 	public void typeLabel(final String typeLabel) {
 		this.typeLabels.add(typeLabel);
 	}
@@ -223,6 +355,16 @@ public class AdvancedCypherQuery implements PageableQuery {
 
 	public void addSimpleParameter(final String key, final String operator, final Object value, final boolean isProperty, final boolean caseInsensitive) {
 
+		if (isProperty) {
+
+			propertyKeys.add(key);
+
+		} else {
+
+			// arbitrary expression, we cannot know which keys are involved
+			dependsOnAllKeys = true;
+		}
+
 		if (value != null) {
 
 			final String paramKey = "param" + count++;
@@ -277,6 +419,8 @@ public class AdvancedCypherQuery implements PageableQuery {
 
 	public void addListParameter(final String key, final String operator, final Object value) {
 
+		propertyKeys.add(key);
+
 		if (value != null) {
 
 			final String paramKey = "param" + count++;
@@ -306,6 +450,8 @@ public class AdvancedCypherQuery implements PageableQuery {
 		final String paramKey1 = "param" + count++;
 		final String paramKey2 = "param" + count++;
 
+		propertyKeys.add(key);
+
 		buffer.append("(n.`");
 		buffer.append(key);
 		buffer.append("` ");
@@ -331,6 +477,8 @@ public class AdvancedCypherQuery implements PageableQuery {
 		this.sortDescending = sortDescending;
 		this.sortType       = sortType;
 		this.sortKey        = sortKey;
+
+		propertyKeys.add(sortKey);
 	}
 
 	public void setSourceType(final String sourceTypeLabel) {
@@ -341,6 +489,78 @@ public class AdvancedCypherQuery implements PageableQuery {
 		this.targetTypeLabel = targetTypeLabel;
 	}
 
+	/**
+	 * Returns the labels (or relationship types) the result of this query
+	 * depends on. An empty set means that the query is not restricted to
+	 * any label and can be affected by any modification.
+	 *
+	 * @return the labels this query depends on
+	 */
+	public Set<String> getCacheLabels() {
+
+		final Set<String> labels = new LinkedHashSet<>(typeLabels);
+
+		if (sourceTypeLabel != null) {
+			labels.add(sourceTypeLabel);
+		}
+
+		if (targetTypeLabel != null) {
+			labels.add(targetTypeLabel);
+		}
+
+		// the result of a query with a permission filter also depends
+		// on the ownership and security relationships of the nodes
+		if (permissionFilter && !labels.isEmpty()) {
+
+			labels.add("OWNS");
+			labels.add("SECURITY");
+		}
+
+		return labels;
+	}
+
+	/**
+	 * Returns the property keys that are used in the predicates and the
+	 * sort clause of this query, or null if the query contains expressions
+	 * that can depend on arbitrary properties.
+	 *
+	 * @return the property keys this query depends on, or null
+	 */
+	public Set<String> getCachePropertyKeys() {
+
+		if (dependsOnAllKeys) {
+			return null;
+		}
+
+		return propertyKeys;
+	}
+
+	// ----- private methods -----
+	private void appendWhereClause(final StringBuilder buf) {
+
+		if (buffer.length() > 0) {
+
+			buf.append(" WHERE ");
+
+			if (filter.length() > 0) {
+
+				buf.append("(");
+				buf.append(buffer);
+				buf.append(") AND ");
+				buf.append(filter);
+
+			} else {
+
+				buf.append(buffer);
+			}
+
+		} else if (filter.length() > 0) {
+
+			buf.append(" WHERE ");
+			buf.append(filter);
+		}
+	}
+
 	private int deepHashCode(final Map<String, Object> map) {
 
 		final StringBuilder buf = new StringBuilder();
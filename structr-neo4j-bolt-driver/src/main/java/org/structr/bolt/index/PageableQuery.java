@@ -24,6 +24,7 @@ public interface PageableQuery {
 
 	int pageSize();
 	void nextPage();
+	boolean hasMorePages();
 	String getStatement();
 	Map<String, Object> getParameters();
 
@@ -0,0 +1,82 @@
+/**
+ * Copyright (C) 2010-2018 Structr GmbH
+ *
+ * This file is part of Structr <http://structr.org>.
+ *
+ * Structr is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Structr is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.structr.bolt.index;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Objects;
+
+/**
+ * Key of a cached query result. Two keys are equal only if both the
+ * statement and the parameters are equal, so that results of different
+ * queries with the same hash code are never mixed up.
+ */
+public class QueryCacheKey {
+
+	private final Map<String, Object> parameters;
+	private final String statement;
+	private final int hashCode;
+
+	public QueryCacheKey(final String statement, final Map<String, Object> parameters, final int hashCode) {
+
+		this.parameters = new HashMap<>(parameters);
+		this.statement  = statement;
+		this.hashCode   = hashCode;
+	}
+
+	@Override
+	public int hashCode() {
+		return hashCode;
+	}
+
+	@Override
+	public boolean equals(final Object other) {
+
+		if (this == other) {
+			return true;
+		}
+
+		if (!(other instanceof QueryCacheKey)) {
+			return false;
+		}
+
+		final QueryCacheKey key = (QueryCacheKey)other;
+
+		if (hashCode != key.hashCode || !statement.equals(key.statement) || parameters.size() != key.parameters.size()) {
+			return false;
+		}
+
+		for (final Entry<String, Object> entry : parameters.entrySet()) {
+
+			final String name = entry.getKey();
+
+			if (!key.parameters.containsKey(name) || !Objects.deepEquals(entry.getValue(), key.parameters.get(name))) {
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	@Override
+	public String toString() {
+		return statement + " " + parameters;
+	}
+}
@@ -47,6 +47,11 @@ public class SimpleCypherQuery implements PageableQuery {
 		return this.pageSize;
 	}
 
+	@Override
+	public boolean hasMorePages() {
+		return true;
+	}
+
 	@Override
 	public String getStatement() {
 
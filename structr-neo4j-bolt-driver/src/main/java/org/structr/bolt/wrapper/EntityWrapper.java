@@ -19,10 +19,12 @@
 package org.structr.bolt.wrapper;
 
 import java.lang.reflect.Array;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import org.neo4j.driver.v1.exceptions.NoSuchRecordException;
 import org.neo4j.driver.v1.types.Entity;
@@ -55,6 +57,14 @@ public abstract class EntityWrapper<T extends Entity> implements PropertyContain
 	protected abstract String getQueryPrefix();
 	public abstract void clearCaches();
 
+	/**
+	 * Returns the labels (or the relationship type) of this entity, used
+	 * to determine which cached query results are affected by changes.
+	 *
+	 * @return the labels of this entity
+	 */
+	public abstract Set<String> getCacheLabels();
+
 	@Override
 	public String toString() {
 		return (this instanceof NodeWrapper ? "N" : "R") + getId();
@@ -128,21 +138,15 @@ public abstract class EntityWrapper<T extends Entity> implements PropertyContain
 		// only update values if actually different from what is stored
 		if (differentValue(key, value)) {
 
-			final Map<String, Object> map = new HashMap<>();
-			final String query            = getQueryPrefix() + " WHERE ID(n) = {id} SET n.`" + key + "` = {value}";
-
-			map.put("id", id);
-			map.put("value", value);
-
 			// update entity handle
-			tx.set(query, map);
+			tx.setLater(this, getQueryPrefix(), Collections.singletonMap(key, value));
 
 			// update data
 			update(key, value);
 		}
 
 		// mark node as modified
-		tx.modified(this);
+		tx.modified(this, Collections.singleton(key));
 	}
 
 	@Override
@@ -150,21 +154,15 @@ public abstract class EntityWrapper<T extends Entity> implements PropertyContain
 
 		assertNotStale();
 
-		final Map<String, Object> map = new HashMap<>();
-		final SessionTransaction tx   = db.getCurrentTransaction();
-		final String query            = getQueryPrefix() + " WHERE ID(n) = {id} SET n += {properties}";
-
-		// overwrite a potential "id" property
-		map.put("id", id);
-		map.put("properties", values);
+		final SessionTransaction tx = db.getCurrentTransaction();
 
-		// execute query
-		tx.set(query, map);
+		// update entity handle
+		tx.setLater(this, getQueryPrefix(), values);
 
 		// update data
 		update(values);
 
-		tx.modified(this);
+		tx.modified(this, values.keySet());
 	}
 
 	@Override
@@ -172,19 +170,15 @@ public abstract class EntityWrapper<T extends Entity> implements PropertyContain
 
 		assertNotStale();
 
-		final SessionTransaction tx   = db.getCurrentTransaction();
-		final Map<String, Object> map = new HashMap<>();
-		final String query            = getQueryPrefix() + " WHERE ID(n) = {id} SET n.`" + key + "` = Null";
-
-		map.put("id", id);
+		final SessionTransaction tx = db.getCurrentTransaction();
 
-		// execute query
-		tx.set(query, map);
+		// a null value removes the property
+		tx.setLater(this, getQueryPrefix(), Collections.singletonMap(key, null));
 
 		// remove key from data
 		data.remove(key);
 
-		tx.modified(this);
+		tx.modified(this, Collections.singleton(key));
 	}
 
 	@Override
@@ -18,20 +18,24 @@
  */
 package org.structr.bolt.wrapper;
 
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 import org.structr.api.graph.Direction;
 import org.structr.api.graph.Label;
 import org.structr.api.graph.Node;
 import org.structr.api.graph.Relationship;
 import org.structr.api.graph.RelationshipType;
-import org.structr.api.util.FixedSizeCache;
+import org.structr.api.util.ConcurrentFixedSizeCache;
 import org.structr.api.util.Iterables;
 import org.structr.bolt.BoltDatabaseService;
 import org.structr.bolt.SessionTransaction;
@@ -42,15 +46,25 @@ import org.structr.bolt.mapper.RelationshipRelationshipMapper;
  */
 public class NodeWrapper extends EntityWrapper<org.neo4j.driver.v1.types.Node> implements Node {
 
+	private static final int PREFETCH_BATCH_SIZE                                 = 1000;
+	private static final AtomicLong labelVersion                                 = new AtomicLong();
 	private final Map<String, Map<String, List<Relationship>>> relationshipCache = new HashMap<>();
-	private static FixedSizeCache<Long, NodeWrapper> nodeCache                   = null;
+	private final Set<String> labels                                             = ConcurrentHashMap.newKeySet();
+	private static ConcurrentFixedSizeCache<Long, NodeWrapper> nodeCache         = null;
+	private boolean labelsModified                                               = false;
+	private long cachedLabelVersion                                              = 0L;
 
 	private NodeWrapper(final BoltDatabaseService db, final org.neo4j.driver.v1.types.Node node) {
+
 		super(db, node);
+
+		for (final String label : node.labels()) {
+			labels.add(label);
+		}
 	}
 
 	public static void initialize(final int cacheSize) {
-		nodeCache = new FixedSizeCache<>(cacheSize);
+		nodeCache = new ConcurrentFixedSizeCache<>(cacheSize);
 	}
 
 	@Override
@@ -60,13 +74,23 @@ public class NodeWrapper extends EntityWrapper<org.neo4j.driver.v1.types.Node> i
 
 	@Override
 	public void onRemoveFromCache() {
+
 		relationshipCache.clear();
+		labelsCommitted();
+
 		this.stale = true;
 	}
 
 	@Override
 	public void clearCaches() {
+
 		relationshipCache.clear();
+		labelsCommitted();
+	}
+
+	@Override
+	public Set<String> getCacheLabels() {
+		return labels;
 	}
 
 	@Override
@@ -93,14 +117,17 @@ public class NodeWrapper extends EntityWrapper<org.neo4j.driver.v1.types.Node> i
 				+ "SET r += {relProperties} RETURN r",
 			map);
 
+		final RelationshipWrapper relationship = RelationshipWrapper.newInstance(db, rel);
+
 		tx.modified(this);
 		tx.modified(otherNode);
+		tx.modified(relationship);
 
 		// clear caches
 		((NodeWrapper)endNode).relationshipCache.clear();
 		relationshipCache.clear();
 
-		return RelationshipWrapper.newInstance(db, rel);
+		return relationship;
 	}
 
 	@Override
@@ -114,6 +141,10 @@ public class NodeWrapper extends EntityWrapper<org.neo4j.driver.v1.types.Node> i
 		map.put("id", id);
 
 		tx.set("MATCH (n) WHERE ID(n) = {id} SET n :" + label.name(), map);
+
+		labels.add(label.name());
+		labelsModified();
+
 		tx.modified(this);
 	}
 
@@ -128,7 +159,13 @@ public class NodeWrapper extends EntityWrapper<org.neo4j.driver.v1.types.Node> i
 		map.put("id", id);
 
 		tx.set("MATCH (n) WHERE ID(n) = {id} REMOVE n:" + label.name(), map);
+
+		// register modification before the label is removed so that
+		// cached query results for the removed label are invalidated
 		tx.modified(this);
+
+		labels.remove(label.name());
+		labelsModified();
 	}
 
 	@Override
@@ -254,35 +291,41 @@ public class NodeWrapper extends EntityWrapper<org.neo4j.driver.v1.types.Node> i
 
 	@Override
 	public Iterable<Relationship> getRelationships(final Direction direction, final RelationshipType relationshipType) {
+		return getRelationships(direction, relationshipType, null);
+	}
+
+	@Override
+	public Iterable<Relationship> getRelationships(final Direction direction, final RelationshipType relationshipType, final String otherLabel) {
 
 		assertNotStale();
 
 		final RelationshipRelationshipMapper mapper = new RelationshipRelationshipMapper(db);
-		List<Relationship> list                     = getList(direction, relationshipType);
+		List<Relationship> list                     = getList(direction, relationshipType, otherLabel);
 
 		if (list == null) {
 
 			final SessionTransaction tx   = db.getCurrentTransaction();
 			final Map<String, Object> map = new HashMap<>();
+			final String other            = getOtherNodePattern(otherLabel);
 
 			map.put("id", id);
 
 			switch (direction) {
 
 				case BOTH:
-					list = toList(Iterables.map(mapper, tx.getRelationships("MATCH (n)-[r:" + relationshipType.name() + "]-() WHERE ID(n) = {id} RETURN r", map)));
+					list = toList(Iterables.map(mapper, tx.getRelationships("MATCH (n)-[r:" + relationshipType.name() + "]-" + other + " WHERE ID(n) = {id} RETURN r", map)));
 					break;
 
 				case OUTGOING:
-					list = toList(Iterables.map(mapper, tx.getRelationships("MATCH (n)-[r:" + relationshipType.name() + "]->() WHERE ID(n) = {id} RETURN r", map)));
+					list = toList(Iterables.map(mapper, tx.getRelationships("MATCH (n)-[r:" + relationshipType.name() + "]->" + other + " WHERE ID(n) = {id} RETURN r", map)));
 					break;
 
 				case INCOMING:
-					list = toList(Iterables.map(mapper, tx.getRelationships("MATCH (n)<-[r:" + relationshipType.name() + "]-() WHERE ID(n) = {id} RETURN r", map)));
+					list = toList(Iterables.map(mapper, tx.getRelationships("MATCH (n)<-[r:" + relationshipType.name() + "]-" + other + " WHERE ID(n) = {id} RETURN r", map)));
 					break;
 			}
 
-			setList(direction, relationshipType, list);
+			setList(direction, relationshipType, otherLabel, list);
 		}
 
 		return list;
@@ -319,40 +362,155 @@ public class NodeWrapper extends EntityWrapper<org.neo4j.driver.v1.types.Node> i
 	// ----- public static methods -----
 	public static NodeWrapper newInstance(final BoltDatabaseService db, final org.neo4j.driver.v1.types.Node node) {
 
-		synchronized (nodeCache) {
+		final NodeWrapper wrapper = nodeCache.get(node.id());
+		if (wrapper == null) {
 
-			NodeWrapper wrapper = nodeCache.get(node.id());
-			if (wrapper == null) {
+			return register(new NodeWrapper(db, node));
+		}
 
-				wrapper = new NodeWrapper(db, node);
-				nodeCache.put(node.id(), wrapper);
-			}
+		return wrapper;
+	}
+
+	public static NodeWrapper newInstance(final BoltDatabaseService db, final long id) {
+
+		final NodeWrapper wrapper = nodeCache.get(id);
+		if (wrapper == null) {
+
+			final SessionTransaction tx   = db.getCurrentTransaction();
+			final Map<String, Object> map = new HashMap<>();
+
+			map.put("id", id);
 
-			return wrapper;
+			return register(new NodeWrapper(db, tx.getNode("MATCH (n) WHERE ID(n) = {id} RETURN n", map)));
 		}
+
+		return wrapper;
 	}
 
-	public static NodeWrapper newInstance(final BoltDatabaseService db, final long id) {
+	/**
+	 * Loads the relationships of the given type and direction of all given
+	 * nodes whose relationship cache does not contain them yet, with a
+	 * single query per batch of nodes. The nodes at the other end of the
+	 * relationships are loaded into the node cache as well.
+	 *
+	 * @param db
+	 * @param nodes
+	 * @param direction
+	 * @param relationshipType
+	 * @param otherLabel the label of the nodes at the other end, or null
+	 */
+	public static void prefetchRelationships(final BoltDatabaseService db, final Iterable<Node> nodes, final Direction direction, final RelationshipType relationshipType, final String otherLabel) {
+
+		final Map<Long, NodeWrapper> batch = new LinkedHashMap<>();
+
+		for (final Node node : nodes) {
 
-		synchronized (nodeCache) {
+			if (node instanceof NodeWrapper) {
 
-			NodeWrapper wrapper = nodeCache.get(id);
-			if (wrapper == null) {
+				final NodeWrapper wrapper = (NodeWrapper)node;
 
-				final SessionTransaction tx   = db.getCurrentTransaction();
-				final Map<String, Object> map = new HashMap<>();
+				if (!wrapper.stale && wrapper.getList(direction, relationshipType, otherLabel) == null) {
 
-				map.put("id", id);
+					batch.put(wrapper.getId(), wrapper);
 
-				wrapper = new NodeWrapper(db, tx.getNode("MATCH (n) WHERE ID(n) = {id} RETURN n", map));
-				nodeCache.put(id, wrapper);
+					if (batch.size() >= PREFETCH_BATCH_SIZE) {
+
+						prefetchBatch(db, batch, direction, relationshipType, otherLabel);
+						batch.clear();
+					}
+				}
 			}
+		}
 
-			return wrapper;
+		if (!batch.isEmpty()) {
+			prefetchBatch(db, batch, direction, relationshipType, otherLabel);
 		}
 	}
 
 	// ----- private methods -----
+	private static void prefetchBatch(final BoltDatabaseService db, final Map<Long, NodeWrapper> batch, final Direction direction, final RelationshipType relationshipType, final String otherLabel) {
+
+		final RelationshipRelationshipMapper mapper       = new RelationshipRelationshipMapper(db);
+		final Map<Long, List<Relationship>> relationships = new HashMap<>();
+		final Set<Long> otherNodeIds                      = new LinkedHashSet<>();
+		final SessionTransaction tx                       = db.getCurrentTransaction();
+		final Map<String, Object> map                     = new HashMap<>();
+		final String type                                 = relationshipType.name();
+		final String other                                = getOtherNodePattern(otherLabel);
+		String statement                                  = null;
+
+		map.put("ids", new ArrayList<>(batch.keySet()));
+
+		switch (direction) {
+
+			case OUTGOING:
+				statement = "MATCH (n)-[r:" + type + "]->" + other + " WHERE ID(n) IN {ids} RETURN DISTINCT r";
+				break;
+
+			case INCOMING:
+				statement = "MATCH (n)<-[r:" + type + "]-" + other + " WHERE ID(n) IN {ids} RETURN DISTINCT r";
+				break;
+
+			default:
+				statement = "MATCH (n)-[r:" + type + "]-" + other + " WHERE ID(n) IN {ids} RETURN DISTINCT r";
+				break;
+		}
+
+		for (final Relationship relationship : Iterables.map(mapper, tx.getRelationships(statement, map))) {
+
+			final RelationshipWrapper wrapper = (RelationshipWrapper)relationship;
+			final long startNodeId            = wrapper.getStartNodeId();
+			final long endNodeId              = wrapper.getEndNodeId();
+
+			if (!Direction.INCOMING.equals(direction) && batch.containsKey(startNodeId)) {
+
+				relationships.computeIfAbsent(startNodeId, k -> new LinkedList<>()).add(relationship);
+				otherNodeIds.add(endNodeId);
+			}
+
+			if (!Direction.OUTGOING.equals(direction) && batch.containsKey(endNodeId) && (startNodeId != endNodeId || Direction.INCOMING.equals(direction))) {
+
+				relationships.computeIfAbsent(endNodeId, k -> new LinkedList<>()).add(relationship);
+				otherNodeIds.add(startNodeId);
+			}
+		}
+
+		// load the nodes at the other end that are not cached yet
+		otherNodeIds.removeIf(otherNodeId -> nodeCache.get(otherNodeId) != null);
+
+		if (!otherNodeIds.isEmpty()) {
+
+			final Map<String, Object> nodeMap = new HashMap<>();
+
+			nodeMap.put("ids", new ArrayList<>(otherNodeIds));
+
+			for (final org.neo4j.driver.v1.types.Node node : tx.getNodes("MATCH (n) WHERE ID(n) IN {ids} RETURN n", nodeMap)) {
+				newInstance(db, node);
+			}
+		}
+
+		// nodes without relationships get an empty list so they are not queried again
+		for (final NodeWrapper wrapper : batch.values()) {
+
+			final List<Relationship> list = relationships.get(wrapper.getId());
+
+			wrapper.setList(direction, relationshipType, otherLabel, wrapper.toList(list != null ? list : Collections.emptyList()));
+		}
+	}
+
+	private static NodeWrapper register(final NodeWrapper wrapper) {
+
+		// another thread may have created a wrapper for the same node in the
+		// meantime, make sure that only a single instance is used
+		final NodeWrapper existing = nodeCache.putIfAbsent(wrapper.getId(), wrapper);
+		if (existing != null) {
+
+			return existing;
+		}
+
+		return wrapper;
+	}
+
 	private Map<String, List<Relationship>> getCache(final Direction direction) {
 
 		final String key                      = direction != null ? direction.name() : "*";
@@ -368,19 +526,69 @@ public class NodeWrapper extends EntityWrapper<org.neo4j.driver.v1.types.Node> i
 	}
 
 	private List<Relationship> getList(final Direction direction, final RelationshipType relType) {
+		return getList(direction, relType, null);
+	}
+
+	private List<Relationship> getList(final Direction direction, final RelationshipType relType, final String otherLabel) {
+
+		// lists that are filtered by label are outdated when the labels of any node were modified
+		final long version = labelVersion.get();
+		if (version != cachedLabelVersion) {
+
+			relationshipCache.clear();
+			cachedLabelVersion = version;
+		}
 
-		final String key                            = relType != null ? relType.name() : "*";
 		final Map<String, List<Relationship>> cache = getCache(direction);
 
-		return cache.get(key);
+		return cache.get(getCacheKey(relType, otherLabel));
 	}
 
 	private void setList(final Direction direction, final RelationshipType relType, final List<Relationship> list) {
+		setList(direction, relType, null, list);
+	}
+
+	private void setList(final Direction direction, final RelationshipType relType, final String otherLabel, final List<Relationship> list) {
 
-		final String key                            = relType != null ? relType.name() : "*";
 		final Map<String, List<Relationship>> cache = getCache(direction);
 
-		cache.put(key, list);
+		cache.put(getCacheKey(relType, otherLabel), list);
+	}
+
+	private String getCacheKey(final RelationshipType relType, final String otherLabel) {
+
+		final String key = relType != null ? relType.name() : "*";
+
+		if (otherLabel != null) {
+			return key + ":" + otherLabel;
+		}
+
+		return key;
+	}
+
+	private void labelsModified() {
+
+		labelsModified = true;
+		labelVersion.incrementAndGet();
+	}
+
+	private void labelsCommitted() {
+
+		// other transactions may have cached relationships with the old labels
+		if (labelsModified) {
+
+			labelsModified = false;
+			labelVersion.incrementAndGet();
+		}
+	}
+
+	private static String getOtherNodePattern(final String otherLabel) {
+
+		if (otherLabel != null) {
+			return "(:" + otherLabel + ")";
+		}
+
+		return "()";
 	}
 
 	private AssociationList toList(final Iterable<Relationship> source) {
@@ -19,12 +19,14 @@
 package org.structr.bolt.wrapper;
 
 import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.Map;
+import java.util.Set;
 import org.structr.api.NotFoundException;
 import org.structr.api.graph.Node;
 import org.structr.api.graph.Relationship;
 import org.structr.api.graph.RelationshipType;
-import org.structr.api.util.FixedSizeCache;
+import org.structr.api.util.ConcurrentFixedSizeCache;
 import org.structr.bolt.BoltDatabaseService;
 import org.structr.bolt.SessionTransaction;
 
@@ -33,7 +35,7 @@ import org.structr.bolt.SessionTransaction;
  */
 public class RelationshipWrapper extends EntityWrapper<org.neo4j.driver.v1.types.Relationship> implements Relationship {
 
-	private static FixedSizeCache<Long, RelationshipWrapper> relationshipCache = null;
+	private static ConcurrentFixedSizeCache<Long, RelationshipWrapper> relationshipCache = null;
 
 	private long sourceNodeId = -1L;
 	private long targetNodeId = -1L;
@@ -49,7 +51,7 @@ public class RelationshipWrapper extends EntityWrapper<org.neo4j.driver.v1.types
 	}
 
 	public static void initialize(final int cacheSize) {
-		relationshipCache = new FixedSizeCache<>(cacheSize);
+		relationshipCache = new ConcurrentFixedSizeCache<>(cacheSize);
 	}
 
 	@Override
@@ -83,6 +85,41 @@ public class RelationshipWrapper extends EntityWrapper<org.neo4j.driver.v1.types
 	public void clearCaches() {
 	}
 
+	/**
+	 * Returns the type of this relationship and the labels of both end
+	 * nodes, because the results of node queries (e.g. with a permission
+	 * filter) can depend on the relationships of the nodes.
+	 */
+	@Override
+	public Set<String> getCacheLabels() {
+
+		final Set<String> labels = new LinkedHashSet<>();
+
+		labels.add(type);
+
+		final NodeWrapper startNode = (NodeWrapper)getStartNode();
+		if (startNode != null) {
+
+			labels.addAll(startNode.getCacheLabels());
+		}
+
+		final NodeWrapper endNode = (NodeWrapper)getEndNode();
+		if (endNode != null) {
+
+			labels.addAll(endNode.getCacheLabels());
+		}
+
+		return labels;
+	}
+
+	long getStartNodeId() {
+		return sourceNodeId;
+	}
+
+	long getEndNodeId() {
+		return targetNodeId;
+	}
+
 	@Override
 	public Node getStartNode() {
 
@@ -144,36 +181,42 @@ public class RelationshipWrapper extends EntityWrapper<org.neo4j.driver.v1.types
 	// ----- public static methods -----
 	public static RelationshipWrapper newInstance(final BoltDatabaseService db, final org.neo4j.driver.v1.types.Relationship relationship) {
 
-		synchronized (relationshipCache) {
-
-			RelationshipWrapper wrapper = relationshipCache.get(relationship.id());
-			if (wrapper == null) {
-
-				wrapper = new RelationshipWrapper(db, relationship);
-				relationshipCache.put(relationship.id(), wrapper);
-			}
+		final RelationshipWrapper wrapper = relationshipCache.get(relationship.id());
+		if (wrapper == null) {
 
-			return wrapper;
+			return register(new RelationshipWrapper(db, relationship));
 		}
+
+		return wrapper;
 	}
 
 	public static RelationshipWrapper newInstance(final BoltDatabaseService db, final long id) {
 
-		synchronized (relationshipCache) {
+		final RelationshipWrapper wrapper = relationshipCache.get(id);
+		if (wrapper == null) {
 
-			RelationshipWrapper wrapper = relationshipCache.get(id);
-			if (wrapper == null) {
+			final SessionTransaction tx   = db.getCurrentTransaction();
+			final Map<String, Object> map = new HashMap<>();
 
-				final SessionTransaction tx   = db.getCurrentTransaction();
-				final Map<String, Object> map = new HashMap<>();
+			map.put("id", id);
 
-				map.put("id", id);
+			return register(new RelationshipWrapper(db, tx.getRelationship("MATCH ()-[n]-() WHERE ID(n) = {id} RETURN n", map)));
+		}
 
-				wrapper = new RelationshipWrapper(db, tx.getRelationship("MATCH ()-[n]-() WHERE ID(n) = {id} RETURN n", map));
-				relationshipCache.put(id, wrapper);
-			}
+		return wrapper;
+	}
 
-			return wrapper;
+	// ----- private methods -----
+	private static RelationshipWrapper register(final RelationshipWrapper wrapper) {
+
+		// another thread may have created a wrapper for the same relationship
+		// in the meantime, make sure that only a single instance is used
+		final RelationshipWrapper existing = relationshipCache.putIfAbsent(wrapper.getId(), wrapper);
+		if (existing != null) {
+
+			return existing;
 		}
+
+		return wrapper;
 	}
 }
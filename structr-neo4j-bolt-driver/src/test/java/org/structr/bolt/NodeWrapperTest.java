@@ -20,15 +20,21 @@ package org.structr.bolt;
 
 import java.io.IOException;
 import java.nio.file.Files;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 import org.junit.Assert;
 import static org.junit.Assert.fail;
 import org.junit.Test;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.structr.api.NativeResult;
 import org.structr.api.Transaction;
 import org.structr.api.config.Settings;
+import org.structr.api.graph.Direction;
+import org.structr.api.graph.Label;
 import org.structr.api.graph.Node;
 import org.structr.api.graph.Relationship;
 import org.structr.api.graph.RelationshipType;
@@ -167,4 +173,250 @@ public class NodeWrapperTest {
 		s.shutdown();
 	}
 
+	@Test
+	public void testWriteBehind() {
+
+		try {
+
+			Settings.DatabasePath.setValue(Files.createTempDirectory("structr-test").toFile().getAbsolutePath());
+			Settings.ConnectionUrl.setValue(Settings.TestingConnectionUrl.getValue());
+
+		} catch (IOException ioex) {
+			logger.warn("", ioex);
+		}
+
+		final BoltDatabaseService s = new BoltDatabaseService();
+		s.initialize();
+
+		final long saved = SessionTransaction.getStatistics().get("saved");
+		long id          = 0L;
+
+		try (final Transaction tx = s.beginTx()) {
+
+			final Node node = s.createNode(Collections.singleton("WriteBehindTest"), Collections.EMPTY_MAP);
+
+			id = node.getId();
+
+			node.setProperty("key1", "value1");
+			node.setProperty("key2", 2);
+			node.setProperty("key3", new String[] { "a", "b" });
+			node.setProperties(Collections.singletonMap("key4", "value4"));
+			node.removeProperty("key2");
+
+			// buffered values must be visible to queries in the same transaction
+			try (final NativeResult result = s.execute("MATCH (n:WriteBehindTest) RETURN n.key1 AS key1, n.key2 AS key2, n.key4 AS key4")) {
+
+				final Map<String, Object> row = result.next();
+
+				Assert.assertEquals("Buffered property value not visible in transaction", "value1", row.get("key1"));
+				Assert.assertNull("Buffered property removal not visible in transaction",          row.get("key2"));
+				Assert.assertEquals("Buffered property value not visible in transaction", "value4", row.get("key4"));
+			}
+
+			node.setProperty("key1", "value2");
+
+			tx.success();
+
+		} catch (Exception ex) {
+
+			logger.warn("", ex);
+			fail("Unexpected exception.");
+		}
+
+		Assert.assertEquals("Invalid write-behind statistics", saved + 4, (long)SessionTransaction.getStatistics().get("saved"));
+
+		try (final Transaction tx = s.beginTx()) {
+
+			try (final NativeResult result = s.execute("MATCH (n) WHERE ID(n) = {id} RETURN n.key1 AS key1, n.key3 AS key3", Collections.singletonMap("id", id))) {
+
+				final Map<String, Object> row = result.next();
+
+				Assert.assertEquals("Buffered property value was not committed", "value2", row.get("key1"));
+				Assert.assertEquals("Buffered property value was not committed", Arrays.asList("a", "b"), row.get("key3"));
+			}
+
+			final long buffered = SessionTransaction.getStatistics().get("buffered");
+
+			// nodes that were created in other transactions are written immediately
+			s.getNodeById(id).setProperty("key1", "value3");
+
+			Assert.assertEquals("Property value of existing node must not be buffered", buffered, (long)SessionTransaction.getStatistics().get("buffered"));
+
+			tx.success();
+
+		} catch (Exception ex) {
+
+			logger.warn("", ex);
+			fail("Unexpected exception.");
+		}
+
+		s.shutdown();
+	}
+
+	@Test
+	public void testPrefetchRelationships() {
+
+		try {
+
+			Settings.DatabasePath.setValue(Files.createTempDirectory("structr-test").toFile().getAbsolutePath());
+			Settings.ConnectionUrl.setValue(Settings.TestingConnectionUrl.getValue());
+
+		} catch (IOException ioex) {
+			logger.warn("", ioex);
+		}
+
+		final BoltDatabaseService s = new BoltDatabaseService();
+		s.initialize();
+
+		final List<Long> ids = new LinkedList<>();
+		long targetId        = 0L;
+
+		try (final Transaction tx = s.beginTx()) {
+
+			final RelationshipType type  = s.forName(RelationshipType.class, "PREFETCH");
+			final RelationshipType other = s.forName(RelationshipType.class, "OTHER");
+			final Node node1             = s.createNode(Collections.EMPTY_SET, Collections.EMPTY_MAP);
+			final Node node2             = s.createNode(Collections.EMPTY_SET, Collections.EMPTY_MAP);
+			final Node node3             = s.createNode(Collections.EMPTY_SET, Collections.EMPTY_MAP);
+			final Node target1           = s.createNode(Collections.EMPTY_SET, Collections.EMPTY_MAP);
+			final Node target2           = s.createNode(Collections.EMPTY_SET, Collections.EMPTY_MAP);
+
+			node1.createRelationshipTo(target1, type);
+			node1.createRelationshipTo(target2, type);
+			node2.createRelationshipTo(target1, type);
+			node3.createRelationshipTo(target1, other);
+
+			ids.add(node1.getId());
+			ids.add(node2.getId());
+			ids.add(node3.getId());
+
+			targetId = target1.getId();
+
+			tx.success();
+
+		} catch (Exception ex) {
+
+			logger.warn("", ex);
+			fail("Unexpected exception.");
+		}
+
+		try (final Transaction tx = s.beginTx()) {
+
+			final RelationshipType type = s.forName(RelationshipType.class, "PREFETCH");
+			final List<Node> nodes      = new LinkedList<>();
+
+			for (final long id : ids) {
+				nodes.add(s.getNodeById(id));
+			}
+
+			s.prefetchRelationships(nodes, Direction.OUTGOING, type, null);
+			s.prefetchRelationships(Collections.singletonList(s.getNodeById(targetId)), Direction.INCOMING, type, null);
+
+			Assert.assertEquals("Invalid prefetch result", 2, Iterables.count(nodes.get(0).getRelationships(Direction.OUTGOING, type)));
+			Assert.assertEquals("Invalid prefetch result", 1, Iterables.count(nodes.get(1).getRelationships(Direction.OUTGOING, type)));
+			Assert.assertEquals("Invalid prefetch result", 0, Iterables.count(nodes.get(2).getRelationships(Direction.OUTGOING, type)));
+			Assert.assertEquals("Invalid prefetch result", 2, Iterables.count(s.getNodeById(targetId).getRelationships(Direction.INCOMING, type)));
+
+			for (final Relationship rel : nodes.get(0).getRelationships(Direction.OUTGOING, type)) {
+				Assert.assertEquals("Invalid prefetch result", nodes.get(0), rel.getStartNode());
+			}
+
+			tx.success();
+
+		} catch (Exception ex) {
+
+			logger.warn("", ex);
+			fail("Unexpected exception.");
+		}
+
+		s.shutdown();
+	}
+
+	@Test
+	public void testRelationshipsWithOtherLabel() {
+
+		try {
+
+			Settings.DatabasePath.setValue(Files.createTempDirectory("structr-test").toFile().getAbsolutePath());
+			Settings.ConnectionUrl.setValue(Settings.TestingConnectionUrl.getValue());
+
+		} catch (IOException ioex) {
+			logger.warn("", ioex);
+		}
+
+		final BoltDatabaseService s = new BoltDatabaseService();
+		s.initialize();
+
+		long sourceId = 0L;
+		long otherId  = 0L;
+
+		try (final Transaction tx = s.beginTx()) {
+
+			final RelationshipType type = s.forName(RelationshipType.class, "LABELLED");
+			final Node source           = s.createNode(Collections.EMPTY_SET, Collections.EMPTY_MAP);
+
+			source.createRelationshipTo(s.createNode(Collections.singleton("LabelA"), Collections.EMPTY_MAP), type);
+			source.createRelationshipTo(s.createNode(Collections.singleton("LabelA"), Collections.EMPTY_MAP), type);
+
+			final Node other = s.createNode(Collections.singleton("LabelB"), Collections.EMPTY_MAP);
+			source.createRelationshipTo(other, type);
+
+			sourceId = source.getId();
+			otherId  = other.getId();
+
+			tx.success();
+
+		} catch (Exception ex) {
+
+			logger.warn("", ex);
+			fail("Unexpected exception.");
+		}
+
+		try (final Transaction tx = s.beginTx()) {
+
+			final RelationshipType type = s.forName(RelationshipType.class, "LABELLED");
+			final Node source           = s.getNodeById(sourceId);
+
+			Assert.assertEquals("Invalid relationship count", 3, Iterables.count(source.getRelationships(Direction.OUTGOING, type)));
+			Assert.assertEquals("Invalid relationship count", 2, Iterables.count(source.getRelationships(Direction.OUTGOING, type, "LabelA")));
+			Assert.assertEquals("Invalid relationship count", 1, Iterables.count(source.getRelationships(Direction.OUTGOING, type, "LabelB")));
+			Assert.assertEquals("Invalid relationship count", 0, Iterables.count(source.getRelationships(Direction.INCOMING, type, "LabelA")));
+
+			tx.success();
+
+		} catch (Exception ex) {
+
+			logger.warn("", ex);
+			fail("Unexpected exception.");
+		}
+
+		// a label change of the other node must be visible in the cached relationships
+		try (final Transaction tx = s.beginTx()) {
+
+			s.getNodeById(otherId).addLabel(s.forName(Label.class, "LabelA"));
+
+			tx.success();
+
+		} catch (Exception ex) {
+
+			logger.warn("", ex);
+			fail("Unexpected exception.");
+		}
+
+		try (final Transaction tx = s.beginTx()) {
+
+			final RelationshipType type = s.forName(RelationshipType.class, "LABELLED");
+
+			Assert.assertEquals("Invalid relationship count after label change", 3, Iterables.count(s.getNodeById(sourceId).getRelationships(Direction.OUTGOING, type, "LabelA")));
+
+			tx.success();
+
+		} catch (Exception ex) {
+
+			logger.warn("", ex);
+			fail("Unexpected exception.");
+		}
+
+		s.shutdown();
+	}
 }
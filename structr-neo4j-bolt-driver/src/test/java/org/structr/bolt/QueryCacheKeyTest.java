@@ -0,0 +1,62 @@
+/**
+ * Copyright (C) 2010-2018 Structr GmbH
+ *
+ * This file is part of Structr <http://structr.org>.
+ *
+ * Structr is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Structr is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.structr.bolt;
+
+import java.util.HashMap;
+import java.util.Map;
+import org.junit.Assert;
+import org.junit.Test;
+import org.structr.bolt.index.QueryCacheKey;
+
+public class QueryCacheKeyTest {
+
+	@Test
+	public void testKeysWithSameHashCode() {
+
+		final Map<String, Object> params1 = new HashMap<>();
+		final Map<String, Object> params2 = new HashMap<>();
+
+		params1.put("id", "a");
+		params2.put("id", "b");
+
+		final QueryCacheKey key1 = new QueryCacheKey("MATCH (n:One) RETURN n", params1, 42);
+		final QueryCacheKey key2 = new QueryCacheKey("MATCH (n:Two) RETURN n", params1, 42);
+		final QueryCacheKey key3 = new QueryCacheKey("MATCH (n:One) RETURN n", params2, 42);
+
+		Assert.assertFalse("Keys with different statements must not be equal", key1.equals(key2));
+		Assert.assertFalse("Keys with different parameters must not be equal", key1.equals(key3));
+		Assert.assertEquals("Keys with equal statement and parameters must be equal", key1, new QueryCacheKey("MATCH (n:One) RETURN n", params1, 42));
+	}
+
+	@Test
+	public void testArrayParameters() {
+
+		final Map<String, Object> params1 = new HashMap<>();
+		final Map<String, Object> params2 = new HashMap<>();
+
+		params1.put("ids", new String[] { "a", "b" });
+		params2.put("ids", new String[] { "a", "b" });
+
+		Assert.assertEquals("Array parameters must be compared by content", new QueryCacheKey("MATCH (n) RETURN n", params1, 1), new QueryCacheKey("MATCH (n) RETURN n", params2, 1));
+
+		params2.put("ids", new String[] { "a", "c" });
+
+		Assert.assertNotEquals("Array parameters must be compared by content", new QueryCacheKey("MATCH (n) RETURN n", params1, 1), new QueryCacheKey("MATCH (n) RETURN n", params2, 1));
+	}
+}
@@ -27,6 +27,7 @@ import org.structr.api.config.Settings;
 import org.structr.common.error.FrameworkException;
 import org.structr.common.error.UnlicensedException;
 import org.structr.core.app.StructrApp;
+import org.structr.core.auth.SessionIndex;
 import org.structr.core.auth.exception.AuthenticationException;
 import org.structr.core.entity.AbstractNode;
 import org.structr.core.entity.Principal;
@@ -168,14 +169,26 @@ public class AuthHelper {
 	}
 
 	/**
-	 * Find a {@link Principal} for the given session id
+	 * Find a {@link Principal} for the given session id. The session index
+	 * is consulted first, the database is only queried if the session id
+	 * is not in the index.
 	 *
 	 * @param sessionId
 	 * @return principal
 	 */
 	public static Principal getPrincipalForSessionId(final String sessionId) {
-		return getPrincipalForCredential(StructrApp.key(Principal.class, "sessionIds"), new String[]{ sessionId });
 
+		Principal principal = SessionIndex.getPrincipal(sessionId);
+		if (principal == null) {
+
+			principal = getPrincipalForCredential(StructrApp.key(Principal.class, "sessionIds"), new String[]{ sessionId });
+			if (principal != null) {
+
+				SessionIndex.add(sessionId, principal.getUuid());
+			}
+		}
+
+		return principal;
 	}
 
 	public static void doLogin(final HttpServletRequest request, final Principal user) throws FrameworkException {
@@ -34,6 +34,7 @@ import org.structr.core.Services;
 import org.structr.core.app.App;
 import org.structr.core.app.Query;
 import org.structr.core.app.StructrApp;
+import org.structr.core.auth.SessionIndex;
 import org.structr.core.entity.Principal;
 import org.structr.core.property.PropertyKey;
 import org.structr.rest.service.HttpService;
@@ -129,6 +130,8 @@ public class SessionHelper {
 		final PropertyKey<String[]> sessionIdKey = StructrApp.key(Principal.class, "sessionIds");
 		final Query<Principal> query             = app.nodeQuery(Principal.class).and(sessionIdKey, new String[]{sessionId}).disableSorting();
 
+		SessionIndex.remove(sessionId);
+
 		try {
 			List<Principal> principals = query.getAsList();
 
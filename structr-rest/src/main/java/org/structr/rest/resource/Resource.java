@@ -86,6 +86,30 @@ public abstract class Resource {
 		return getClass().getName() + "(" + getResourceSignature() + ")";
 	}
 
+	/**
+	 * Returns all results of this resource for a streaming export. The
+	 * default implementation returns the complete result of doGet, so
+	 * resources that can read their results from a database cursor
+	 * should override this method.
+	 *
+	 * @param sortKey
+	 * @param sortDescending
+	 * @return the results
+	 * @throws FrameworkException
+	 */
+	public Iterable<? extends GraphObject> doStream(final PropertyKey sortKey, final boolean sortDescending) throws FrameworkException {
+
+		final Result result = doGet(sortKey, sortDescending, NodeFactory.DEFAULT_PAGE_SIZE, NodeFactory.DEFAULT_PAGE);
+		if (result != null) {
+
+			postProcessResultSet(result);
+
+			return result.getResults();
+		}
+
+		return Collections.emptyList();
+	}
+
 	public RestMethodResult doHead() throws FrameworkException {
 		Thread.dumpStack();
 		throw new IllegalStateException("Resource.doHead() called, this should not happen.");
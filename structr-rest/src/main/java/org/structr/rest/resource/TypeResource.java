@@ -135,22 +135,15 @@ public class TypeResource extends SortableResource {
 			// default sort key & order
 			if (actualSortKey == null) {
 
-				try {
+				final GraphObject templateEntity = getTemplateEntity();
+				if (templateEntity != null) {
 
-					GraphObject templateEntity  = ((GraphObject)entityClass.newInstance());
-					PropertyKey sortKeyProperty = templateEntity.getDefaultSortKey();
-					actualSortOrder             = GraphObjectComparator.DESCENDING.equals(templateEntity.getDefaultSortOrder());
+					final PropertyKey sortKeyProperty = templateEntity.getDefaultSortKey();
 
-					if (sortKeyProperty != null) {
+					actualSortOrder = GraphObjectComparator.DESCENDING.equals(templateEntity.getDefaultSortOrder());
+					actualSortKey   = sortKeyProperty != null ? sortKeyProperty : AbstractNode.name;
 
-						actualSortKey = sortKeyProperty;
-
-					} else {
-
-						actualSortKey = AbstractNode.name;
-					}
-
-				} catch(Throwable t) {
+				} else {
 
 					// fallback to name
 					actualSortKey = AbstractNode.name;
@@ -191,6 +184,39 @@ public class TypeResource extends SortableResource {
 		return new Result(emptyList, null, isCollectionResource(), isPrimitiveArray());
 	}
 
+	@Override
+	public Iterable<? extends GraphObject> doStream(final PropertyKey sortKey, final boolean sortDescending) throws FrameworkException {
+
+		// virtual types transform the complete result
+		if (rawType == null || entityClass == null || virtualType != null) {
+			return super.doStream(sortKey, sortDescending);
+		}
+
+		collectSearchAttributes(query);
+
+		if (sortKey != null) {
+
+			query.sort(sortKey).order(sortDescending);
+
+		} else {
+
+			final GraphObject templateEntity = getTemplateEntity();
+			if (templateEntity != null && templateEntity.getDefaultSortKey() != null) {
+
+				query.sort(templateEntity.getDefaultSortKey()).order(GraphObjectComparator.DESCENDING.equals(templateEntity.getDefaultSortOrder()));
+
+			} else {
+
+				query.sort(AbstractNode.name);
+			}
+		}
+
+		return query
+			.includeDeletedAndHidden(true)
+			.publicOnly(false)
+			.getResultStream();
+	}
+
 	@Override
 	public RestMethodResult doPost(final Map<String, Object> propertySet) throws FrameworkException {
 
@@ -352,6 +378,17 @@ public class TypeResource extends SortableResource {
 	}
 
 	// ----- private methods -----
+	private GraphObject getTemplateEntity() {
+
+		try {
+
+			return (GraphObject)entityClass.newInstance();
+
+		} catch (Throwable t) {
+			return null;
+		}
+	}
+
 	private Relation getRelationshipTemplate() {
 
 		try {
@@ -22,6 +22,7 @@ import java.io.IOException;
 import java.io.Writer;
 import java.text.DecimalFormat;
 import java.text.DecimalFormatSymbols;
+import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
@@ -45,6 +46,7 @@ import org.structr.core.app.StructrApp;
 import org.structr.core.converter.PropertyConverter;
 import org.structr.core.entity.AbstractNode;
 import org.structr.core.function.Functions;
+import org.structr.core.graph.Factory;
 import org.structr.core.property.PropertyKey;
 import org.structr.core.property.PropertyMap;
 
@@ -56,6 +58,7 @@ public abstract class StreamingWriter {
 
 	private static final Logger logger                   = LoggerFactory.getLogger(StreamingWriter.class.getName());
 	private static final long MAX_SERIALIZATION_TIME     = TimeUnit.SECONDS.toMillis(300);
+	private static final int STREAM_CHUNK_SIZE           = 1000;
 	private static final Set<PropertyKey> idTypeNameOnly = new LinkedHashSet<>();
 
 	static {
@@ -253,6 +256,9 @@ public abstract class StreamingWriter {
 
 				if (result.isCollection()) {
 
+					// load related nodes of the whole collection in advance
+					Factory.prefetchRelationships(results, localPropertyView);
+
 					writer.name(resultKeyName).beginArray();
 
 					// serialize list of results
@@ -309,6 +315,58 @@ public abstract class StreamingWriter {
 		writer.endDocument();
 	}
 
+	/**
+	 * Writes the given results as a collection while they are read from
+	 * the database. The results are serialized in chunks, with the
+	 * relationships of each chunk prefetched together, and the output is
+	 * flushed after each chunk. Result count and paging information are
+	 * not known in advance and are therefore omitted.
+	 *
+	 * @param securityContext
+	 * @param output
+	 * @param results
+	 * @param baseUrl
+	 * @throws IOException
+	 */
+	public void stream(final SecurityContext securityContext, final Writer output, final Iterable<? extends GraphObject> results, final String baseUrl) throws IOException {
+
+		final long t0                 = System.nanoTime();
+		final RestWriter writer       = getRestWriter(securityContext, output);
+		final String localView        = propertyView.get(null);
+		final List<GraphObject> chunk = new ArrayList<>(STREAM_CHUNK_SIZE);
+
+		if (indent) {
+			writer.setIndent("	");
+		}
+
+		writer.beginDocument(baseUrl, propertyView.get(securityContext));
+
+		// open result set
+		writer.beginObject();
+		writer.name(resultKeyName).beginArray();
+
+		for (final GraphObject obj : results) {
+
+			chunk.add(obj);
+
+			if (chunk.size() >= STREAM_CHUNK_SIZE) {
+				streamChunk(writer, output, chunk, localView);
+			}
+		}
+
+		streamChunk(writer, output, chunk, localView);
+
+		writer.endArray();
+
+		if (renderSerializationTime) {
+			writer.name("serialization_time").value(decimalFormat.format((System.nanoTime() - t0) / 1000000000.0));
+		}
+
+		// finished
+		writer.endObject();
+		writer.endDocument();
+	}
+
 	public void setResultKeyName(final String resultKeyName) {
 		this.resultKeyName = resultKeyName;
 	}
@@ -321,6 +379,21 @@ public abstract class StreamingWriter {
 		this.renderResultCount = doRender;
 	}
 
+	private void streamChunk(final RestWriter writer, final Writer output, final List<GraphObject> chunk, final String localView) throws IOException {
+
+		// load related nodes of the whole chunk in advance
+		Factory.prefetchRelationships(chunk, localView);
+
+		for (final GraphObject obj : chunk) {
+			root.serialize(writer, obj, localView, 0);
+		}
+
+		// release the objects of this chunk
+		chunk.clear();
+
+		output.flush();
+	}
+
 	private Serializer getSerializerForType(Class type) {
 
 		Class localType       = type;
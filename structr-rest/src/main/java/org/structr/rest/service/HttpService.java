@@ -56,6 +56,7 @@ import org.eclipse.jetty.server.handler.gzip.GzipHandler;
 import org.eclipse.jetty.server.session.DefaultSessionCache;
 import org.eclipse.jetty.server.session.DefaultSessionIdManager;
 import org.eclipse.jetty.server.session.SessionCache;
+import org.eclipse.jetty.server.session.SessionDataStore;
 import org.eclipse.jetty.servlet.FilterHolder;
 import org.eclipse.jetty.servlet.ServletContextHandler;
 import org.eclipse.jetty.servlet.ServletHolder;
@@ -278,7 +279,17 @@ public class HttpService implements RunnableService {
 			
 		}
 		
-		final StructrSessionDataStore sessionDataStore = new StructrSessionDataStore();
+		final SessionDataStore sessionDataStore;
+
+		if ("file".equals(Settings.SessionStore.getValue())) {
+
+			sessionDataStore = new StructrFileSessionDataStore(new File(basePath, "sessions"), Settings.SessionStoreCoalesce.getValue());
+
+		} else {
+
+			sessionDataStore = new StructrSessionDataStore();
+		}
+
 		//sessionDataStore.setSavePeriodSec(60);
 	
 		sessionCache.setSessionDataStore(sessionDataStore);
@@ -0,0 +1,575 @@
+/**
+ * Copyright (C) 2010-2018 Structr GmbH
+ *
+ * This file is part of Structr <http://structr.org>.
+ *
+ * Structr is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Structr is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.structr.rest.service;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.apache.commons.lang3.SerializationUtils;
+import org.eclipse.jetty.server.session.AbstractSessionDataStore;
+import org.eclipse.jetty.server.session.SessionData;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.structr.common.error.FrameworkException;
+import org.structr.core.app.App;
+import org.structr.core.app.StructrApp;
+import org.structr.core.graph.Tx;
+import org.structr.rest.auth.AuthHelper;
+import org.structr.rest.auth.SessionHelper;
+
+/**
+ * Session data store that keeps the session data of authenticated users
+ * in an append-only file instead of on the principal nodes.
+ *
+ * Session data is encoded in a compact binary format and kept in memory.
+ * Repeated stores of the same session within the coalescing window are
+ * written to the file only once. The file is replayed on startup and
+ * rewritten when it contains too many outdated records.
+ */
+public class StructrFileSessionDataStore extends AbstractSessionDataStore {
+
+	private static final Logger logger              = LoggerFactory.getLogger(StructrFileSessionDataStore.class.getName());
+	private static final AtomicLong stores          = new AtomicLong();
+	private static final AtomicLong coalesced       = new AtomicLong();
+	private static final AtomicLong writes          = new AtomicLong();
+	private static final AtomicLong compactions     = new AtomicLong();
+	private static final byte[] DELETED             = new byte[0];
+	private static final String FILE_NAME           = "sessions.dat";
+	private static final byte RECORD_STORE          = 1;
+	private static final byte RECORD_DELETE         = 2;
+	private static final byte TYPE_NULL             = 0;
+	private static final byte TYPE_STRING           = 1;
+	private static final byte TYPE_BOOLEAN          = 2;
+	private static final byte TYPE_INTEGER          = 3;
+	private static final byte TYPE_LONG             = 4;
+	private static final byte TYPE_OBJECT           = 5;
+	private static final int MIN_COMPACTION_RECORDS = 1000;
+
+	private final Map<String, byte[]> sessions      = new ConcurrentHashMap<>();
+	private final Map<String, byte[]> pending       = new ConcurrentHashMap<>();
+	private ScheduledExecutorService writer         = null;
+	private DataOutputStream out                    = null;
+	private File directory                          = null;
+	private int coalesceWindow                      = 0;
+	private long recordCount                        = 0L;
+	private final App app;
+
+	public StructrFileSessionDataStore(final File directory, final int coalesceWindow) {
+
+		this.app            = StructrApp.getInstance();
+		this.directory      = directory;
+		this.coalesceWindow = coalesceWindow;
+	}
+
+	@Override
+	protected void doStart() throws Exception {
+
+		open();
+
+		super.doStart();
+	}
+
+	@Override
+	protected void doStop() throws Exception {
+
+		super.doStop();
+
+		close();
+	}
+
+	@Override
+	public void doStore(final String id, final SessionData data, final long lastSaveTime) throws Exception {
+
+		// store sessions only for authenticated users
+		if (!sessions.containsKey(id) && !isAuthenticated(id)) {
+			return;
+		}
+
+		final byte[] encoded = encode(data);
+
+		sessions.put(id, encoded);
+		stores.incrementAndGet();
+
+		if (pending.put(id, encoded) != null) {
+			coalesced.incrementAndGet();
+		}
+
+		if (coalesceWindow <= 0) {
+			flush();
+		}
+	}
+
+	@Override
+	public Set<String> doGetExpired(final Set<String> candidates) {
+
+		final Set<String> expired = new HashSet<>(candidates);
+		final long now            = System.currentTimeMillis();
+
+		for (final Entry<String, byte[]> entry : sessions.entrySet()) {
+
+			final long expiry = getExpiry(entry.getValue());
+			if (expiry > 0 && expiry <= now) {
+
+				expired.add(entry.getKey());
+			}
+		}
+
+		return expired;
+	}
+
+	@Override
+	public boolean isPassivating() {
+		return true;
+	}
+
+	@Override
+	public boolean exists(final String id) throws Exception {
+
+		final byte[] data = sessions.get(id);
+		if (data != null) {
+
+			final long expiry = getExpiry(data);
+
+			return expiry <= 0 || expiry > System.currentTimeMillis();
+		}
+
+		return false;
+	}
+
+	@Override
+	public SessionData load(final String id) throws Exception {
+
+		final byte[] data = sessions.get(id);
+		if (data != null) {
+
+			return decode(id, data);
+		}
+
+		return null;
+	}
+
+	@Override
+	public boolean delete(final String id) throws Exception {
+
+		if (sessions.remove(id) != null) {
+
+			pending.put(id, DELETED);
+
+			if (coalesceWindow <= 0) {
+				flush();
+			}
+		}
+
+		try (final Tx tx = app.tx(false, false, false)) {
+
+			SessionHelper.clearSession(id);
+
+			tx.success();
+
+			return true;
+
+		} catch (FrameworkException ex) {
+
+			logger.info("Unable to delete session data for session id " + id + ".", ex);
+		}
+
+		return false;
+	}
+
+	/**
+	 * Writes all pending changes to the session file.
+	 */
+	public synchronized void flush() {
+
+		if (out == null || pending.isEmpty()) {
+			return;
+		}
+
+		try {
+
+			for (final Iterator<Entry<String, byte[]>> it = pending.entrySet().iterator(); it.hasNext();) {
+
+				final Entry<String, byte[]> entry = it.next();
+				final String id                   = entry.getKey();
+				final byte[] data                 = entry.getValue();
+
+				// remove only if not replaced by a newer store in the meantime
+				pending.remove(id, data);
+
+				writeRecord(out, id, data == DELETED ? null : data);
+				writes.incrementAndGet();
+			}
+
+			out.flush();
+
+			if (recordCount > MIN_COMPACTION_RECORDS && recordCount > sessions.size() * 2L) {
+				compact();
+			}
+
+		} catch (IOException ioex) {
+			logger.warn("Unable to write session data: {}", ioex.getMessage());
+		}
+	}
+
+	public static Map<String, Long> getStatistics() {
+
+		final Map<String, Long> statistics = new LinkedHashMap<>();
+
+		statistics.put("stores",      stores.get());
+		statistics.put("coalesced",   coalesced.get());
+		statistics.put("writes",      writes.get());
+		statistics.put("compactions", compactions.get());
+
+		return statistics;
+	}
+
+	// ----- package-private methods -----
+	synchronized void open() throws IOException {
+
+		if (!directory.exists()) {
+			directory.mkdirs();
+		}
+
+		final File file = getFile();
+		if (file.exists()) {
+
+			replay(file);
+		}
+
+		// rewrite the file on startup to remove outdated and incomplete records
+		compact();
+
+		if (coalesceWindow > 0) {
+
+			writer = Executors.newSingleThreadScheduledExecutor(r -> {
+
+				final Thread thread = new Thread(r, "SessionDataWriter");
+				thread.setDaemon(true);
+
+				return thread;
+			});
+
+			writer.scheduleWithFixedDelay(this::flush, coalesceWindow, coalesceWindow, TimeUnit.MILLISECONDS);
+		}
+	}
+
+	synchronized void close() throws IOException {
+
+		if (writer != null) {
+
+			writer.shutdown();
+			writer = null;
+		}
+
+		flush();
+
+		if (out != null) {
+
+			out.close();
+			out = null;
+		}
+
+		sessions.clear();
+		pending.clear();
+	}
+
+	// ----- private methods -----
+	private File getFile() {
+		return new File(directory, FILE_NAME);
+	}
+
+	private boolean isAuthenticated(final String id) {
+
+		try (final Tx tx = app.tx(false, false, false)) {
+
+			final boolean authenticated = AuthHelper.getPrincipalForSessionId(id) != null;
+
+			tx.success();
+
+			return authenticated;
+
+		} catch (FrameworkException ex) {
+
+			logger.info("Unable to determine if session " + id + " is authenticated.", ex);
+		}
+
+		return false;
+	}
+
+	private void replay(final File file) throws IOException {
+
+		try (final DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+
+			while (true) {
+
+				final byte type = in.readByte();
+				final String id = in.readUTF();
+
+				if (type == RECORD_STORE) {
+
+					final byte[] data = new byte[in.readInt()];
+
+					in.readFully(data);
+					sessions.put(id, data);
+
+				} else {
+
+					sessions.remove(id);
+				}
+			}
+
+		} catch (EOFException eof) {
+			// end of file or incomplete last record
+		}
+	}
+
+	private void compact() throws IOException {
+
+		final File file = getFile();
+		final File tmp  = new File(directory, FILE_NAME + ".tmp");
+
+		if (out != null) {
+			out.close();
+		}
+
+		try (final DataOutputStream tmpOut = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)))) {
+
+			for (final Entry<String, byte[]> entry : sessions.entrySet()) {
+
+				writeRecord(tmpOut, entry.getKey(), entry.getValue());
+			}
+		}
+
+		Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+		out         = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file, true)));
+		recordCount = sessions.size();
+
+		compactions.incrementAndGet();
+	}
+
+	private void writeRecord(final DataOutputStream dos, final String id, final byte[] data) throws IOException {
+
+		if (data != null) {
+
+			dos.writeByte(RECORD_STORE);
+			dos.writeUTF(id);
+			dos.writeInt(data.length);
+			dos.write(data);
+
+		} else {
+
+			dos.writeByte(RECORD_DELETE);
+			dos.writeUTF(id);
+		}
+
+		recordCount++;
+	}
+
+	private long getExpiry(final byte[] data) {
+
+		try {
+
+			// expiry is the first value of the encoded session data
+			return new DataInputStream(new ByteArrayInputStream(data)).readLong();
+
+		} catch (IOException ioex) {
+			return -1L;
+		}
+	}
+
+	private byte[] encode(final SessionData data) throws IOException {
+
+		final ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+		final DataOutputStream dos        = new DataOutputStream(bytes);
+		final Map<String, Object> attrs   = data.getAllAttributes();
+
+		dos.writeLong(data.getExpiry());
+		dos.writeLong(data.getCreated());
+		dos.writeLong(data.getAccessed());
+		dos.writeLong(data.getLastAccessed());
+		dos.writeLong(data.getMaxInactiveMs());
+		dos.writeLong(data.getCookieSet());
+		dos.writeLong(data.getLastSaved());
+		writeString(dos, data.getContextPath());
+		writeString(dos, data.getVhost());
+		writeString(dos, data.getLastNode());
+
+		dos.writeInt(attrs.size());
+
+		for (final Entry<String, Object> entry : attrs.entrySet()) {
+
+			final Object value = entry.getValue();
+
+			writeString(dos, entry.getKey());
+
+			if (value == null) {
+
+				dos.writeByte(TYPE_NULL);
+
+			} else if (value instanceof String) {
+
+				dos.writeByte(TYPE_STRING);
+				writeString(dos, (String)value);
+
+			} else if (value instanceof Boolean) {
+
+				dos.writeByte(TYPE_BOOLEAN);
+				dos.writeBoolean((Boolean)value);
+
+			} else if (value instanceof Integer) {
+
+				dos.writeByte(TYPE_INTEGER);
+				dos.writeInt((Integer)value);
+
+			} else if (value instanceof Long) {
+
+				dos.writeByte(TYPE_LONG);
+				dos.writeLong((Long)value);
+
+			} else {
+
+				final byte[] serialized = SerializationUtils.serialize((Serializable)value);
+
+				dos.writeByte(TYPE_OBJECT);
+				dos.writeInt(serialized.length);
+				dos.write(serialized);
+			}
+		}
+
+		dos.flush();
+
+		return bytes.toByteArray();
+	}
+
+	private SessionData decode(final String id, final byte[] data) throws IOException {
+
+		final DataInputStream in = new DataInputStream(new ByteArrayInputStream(data));
+		final long expiry        = in.readLong();
+		final long created       = in.readLong();
+		final long accessed      = in.readLong();
+		final long lastAccessed  = in.readLong();
+		final long maxInactiveMs = in.readLong();
+		final long cookieSet     = in.readLong();
+		final long lastSaved     = in.readLong();
+		final String contextPath = readString(in);
+		final String vhost       = readString(in);
+		final String lastNode    = readString(in);
+		final SessionData result = new SessionData(id, contextPath, vhost, created, accessed, lastAccessed, maxInactiveMs);
+		final int count          = in.readInt();
+
+		result.setLastNode(lastNode);
+		result.setExpiry(expiry);
+		result.setCookieSet(cookieSet);
+		result.setLastSaved(lastSaved);
+
+		for (int i=0; i<count; i++) {
+
+			final String key = readString(in);
+			final byte type  = in.readByte();
+
+			switch (type) {
+
+				case TYPE_STRING:
+					result.setAttribute(key, readString(in));
+					break;
+
+				case TYPE_BOOLEAN:
+					result.setAttribute(key, in.readBoolean());
+					break;
+
+				case TYPE_INTEGER:
+					result.setAttribute(key, in.readInt());
+					break;
+
+				case TYPE_LONG:
+					result.setAttribute(key, in.readLong());
+					break;
+
+				case TYPE_OBJECT:
+					final byte[] serialized = new byte[in.readInt()];
+					in.readFully(serialized);
+					result.setAttribute(key, SerializationUtils.deserialize(serialized));
+					break;
+
+				default:
+					result.setAttribute(key, null);
+					break;
+			}
+		}
+
+		// data was just loaded, nothing to store yet
+		result.setDirty(false);
+
+		return result;
+	}
+
+	private void writeString(final DataOutputStream dos, final String value) throws IOException {
+
+		if (value != null) {
+
+			final byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+
+			dos.writeInt(bytes.length);
+			dos.write(bytes);
+
+		} else {
+
+			dos.writeInt(-1);
+		}
+	}
+
+	private String readString(final DataInputStream in) throws IOException {
+
+		final int length = in.readInt();
+		if (length >= 0) {
+
+			final byte[] bytes = new byte[length];
+
+			in.readFully(bytes);
+
+			return new String(bytes, StandardCharsets.UTF_8);
+		}
+
+		return null;
+	}
+}
@@ -20,6 +20,7 @@ package org.structr.rest.servlet;
 
 import com.google.gson.JsonParseException;
 import com.google.gson.JsonSyntaxException;
+import java.io.BufferedWriter;
 import java.io.IOException;
 import java.io.Reader;
 import java.io.UnsupportedEncodingException;
@@ -35,7 +36,6 @@ import java.util.LinkedList;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
-import java.util.regex.Pattern;
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
@@ -96,9 +96,11 @@ public class CsvServlet extends HttpServlet implements HttpServiceServlet {
 
 	private static final String REMOVE_LINE_BREAK_PARAM = "nolinebreaks";
 	private static final String WRITE_BOM = "bom";
+	private static final long FLUSH_INTERVAL = 1000L;
+	private static final int STREAM_BUFFER_SIZE = 65536;
 
 	private SecurityContext securityContext;
-	private final Map<Pattern, Class<? extends Resource>> resourceMap = new LinkedHashMap<>();
+	private ResourceRouter resourceRouter = null;
 	private Value<String> propertyView = null;
 
 	private static boolean removeLineBreaks = false;
@@ -117,7 +119,7 @@ public class CsvServlet extends HttpServlet implements HttpServiceServlet {
 	public void init() {
 
 		// inject resources
-		resourceMap.putAll(config.getResourceProvider().getResources());
+		resourceRouter = ResourceRouter.getInstance(config.getResourceProvider());
 
 		// initialize variables
 		this.propertyView        = new ThreadLocalPropertyView();
@@ -156,7 +158,7 @@ public class CsvServlet extends HttpServlet implements HttpServiceServlet {
 			// isolate resource authentication
 			try (final Tx tx = app.tx()) {
 
-				resource = ResourceHelper.optimizeNestedResourceChain(securityContext, request, resourceMap, propertyView);
+				resource = ResourceHelper.optimizeNestedResourceChain(securityContext, request, resourceRouter, propertyView);
 				authenticator.checkResourceAccess(securityContext, request, resource.getResourceSignature(), propertyView.get(securityContext));
 
 				tx.success();
@@ -194,6 +196,44 @@ public class CsvServlet extends HttpServlet implements HttpServiceServlet {
 				// Should a leading BOM be written?
 				writeBom = StringUtils.equals(request.getParameter(WRITE_BOM), "1");
 
+				// stream the complete result set if no paging is requested (the
+				// result set is not passed to postProcessResultSet in this case,
+				// which only adds sort and paging information to the result)
+				if (pageSizeParameter == null && pageParameter == null && resource.isCollectionResource()) {
+
+					Iterable<? extends GraphObject> results = null;
+
+					try {
+
+						final Writer writer = new BufferedWriter(response.getWriter(), STREAM_BUFFER_SIZE);
+
+						results = resource.doStream(sortKey, sortDescending);
+
+						if (writeBom) {
+							writeUtf8Bom(writer);
+						}
+
+						response.setStatus(HttpServletResponse.SC_OK);
+
+						writeCsv(results, writer, propertyView.get(securityContext));
+						writer.flush();
+						writer.close();
+
+						tx.success();
+
+					} catch (Throwable t) {
+
+						// the result may be partially sent already
+						ResourceHelper.handleStreamingError(request, response, t);
+
+					} finally {
+
+						ResourceHelper.closeStream(results);
+					}
+
+					return;
+				}
+
 				// do action
 				result = resource.doGet(sortKey, sortDescending, pageSize, page);
 				if (result != null) {
@@ -318,7 +358,7 @@ public class CsvServlet extends HttpServlet implements HttpServiceServlet {
 				// isolate resource authentication
 				try (final Tx tx = app.tx()) {
 
-					resource = ResourceHelper.applyViewTransformation(request, securityContext, ResourceHelper.optimizeNestedResourceChain(securityContext, request, resourceMap, propertyView), propertyView);
+					resource = ResourceHelper.applyViewTransformation(request, securityContext, ResourceHelper.optimizeNestedResourceChain(securityContext, request, resourceRouter, propertyView), propertyView);
 					authenticator.checkResourceAccess(securityContext, request, resource.getResourceSignature(), propertyView.get(securityContext));
 					tx.success();
 				}
@@ -628,10 +668,24 @@ public class CsvServlet extends HttpServlet implements HttpServiceServlet {
 	 * @throws IOException
 	 */
 	public static void writeCsv(final Result result, final Writer out, final String propertyView) throws IOException {
+		writeCsv(result.getResults(), out, propertyView);
+	}
 
-		final List<GraphObject> list = result.getResults();
-		final StringBuilder row      = new StringBuilder();
-		boolean headerWritten        = false;
+	/**
+	 * Write objects to output while they are read. The output is flushed
+	 * in regular intervals instead of after each line, so that the writer
+	 * can buffer the rows between two flushes.
+	 *
+	 * @param list
+	 * @param out
+	 * @param propertyView
+	 * @throws IOException
+	 */
+	public static void writeCsv(final Iterable<? extends GraphObject> list, final Writer out, final String propertyView) throws IOException {
+
+		final StringBuilder row = new StringBuilder();
+		boolean headerWritten   = false;
+		long lastFlush          = System.currentTimeMillis();
 
 		for (final GraphObject obj : list) {
 
@@ -655,9 +709,6 @@ public class CsvServlet extends HttpServlet implements HttpServiceServlet {
 				// append DOS-style line feed as defined in RFC 4180
 				out.append(row).append("\r\n");
 
-				// flush each line
-				out.flush();
-
 				headerWritten = true;
 
 			}
@@ -678,10 +729,16 @@ public class CsvServlet extends HttpServlet implements HttpServiceServlet {
 			row.deleteCharAt(row.lastIndexOf("" + DEFAULT_FIELD_SEPARATOR));
 			out.append(row).append("\r\n");
 
-			// flush each line
-			out.flush();
+			// flush periodically
+			final long now = System.currentTimeMillis();
+			if (now - lastFlush > FLUSH_INTERVAL) {
+
+				out.flush();
+				lastFlush = now;
+			}
 		}
 
+		out.flush();
 	}
 
 
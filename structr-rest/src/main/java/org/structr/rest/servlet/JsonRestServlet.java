@@ -31,7 +31,6 @@ import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Set;
-import java.util.regex.Pattern;
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
@@ -86,6 +85,7 @@ public class JsonRestServlet extends HttpServlet implements HttpServiceServlet {
 	public static final String REQUEST_PARAMETER_SORT_KEY               = "sort";
 	public static final String REQUEST_PARAMETER_SORT_ORDER             = "order";
 	public static final String REQUEST_PARAMTER_OUTPUT_DEPTH            = "outputNestingDepth";
+	public static final String REQUEST_PARAMETER_STREAM                 = "stream";
 	public static final Set<String> commonRequestParameters             = new LinkedHashSet<>();
 	private static final Logger logger                                  = LoggerFactory.getLogger(JsonRestServlet.class.getName());
 
@@ -97,6 +97,7 @@ public class JsonRestServlet extends HttpServlet implements HttpServiceServlet {
 		commonRequestParameters.add(REQUEST_PARAMETER_SORT_KEY);
 		commonRequestParameters.add(REQUEST_PARAMETER_SORT_ORDER);
 		commonRequestParameters.add(REQUEST_PARAMTER_OUTPUT_DEPTH);
+		commonRequestParameters.add(REQUEST_PARAMETER_STREAM);
 		commonRequestParameters.add("debugLoggingEnabled");
 		commonRequestParameters.add("ignoreResultCount");
 
@@ -113,10 +114,10 @@ public class JsonRestServlet extends HttpServlet implements HttpServiceServlet {
 	}
 
 	// final fields
-	private final Map<Pattern, Class<? extends Resource>> resourceMap = new LinkedHashMap<>();
-	private final StructrHttpServiceConfig config                     = new StructrHttpServiceConfig();
+	private final StructrHttpServiceConfig config = new StructrHttpServiceConfig();
 
 	// non-final fields
+	private ResourceRouter resourceRouter    = null;
 	private Value<String> propertyView       = null;
 	private ThreadLocalGson gson             = null;
 	private boolean indentJson               = true;
@@ -136,10 +137,12 @@ public class JsonRestServlet extends HttpServlet implements HttpServiceServlet {
 		final ResourceProvider provider = config.getResourceProvider();
 		if (provider != null) {
 
-			resourceMap.putAll(provider.getResources());
+			resourceRouter = ResourceRouter.getInstance(provider);
 
 		} else {
 
+			resourceRouter = new ResourceRouter(new LinkedHashMap<>());
+
 			logger.error("Unable to initialize JsonRestServlet, no resource provider found. Please check structr.conf for a valid resource provider class");
 		}
 
@@ -186,7 +189,7 @@ public class JsonRestServlet extends HttpServlet implements HttpServiceServlet {
 			// isolate resource authentication
 			try (final Tx tx = app.tx()) {
 
-				resource = ResourceHelper.optimizeNestedResourceChain(securityContext, request, resourceMap, propertyView);
+				resource = ResourceHelper.optimizeNestedResourceChain(securityContext, request, resourceRouter, propertyView);
 				authenticator.checkResourceAccess(securityContext, request, resource.getResourceSignature(), propertyView.get(securityContext));
 
 				tx.success();
@@ -309,7 +312,7 @@ public class JsonRestServlet extends HttpServlet implements HttpServiceServlet {
 			// isolate resource authentication
 			try (final Tx tx = app.tx()) {
 
-				resource = ResourceHelper.applyViewTransformation(request, securityContext, ResourceHelper.optimizeNestedResourceChain(securityContext, request, resourceMap, propertyView), propertyView);
+				resource = ResourceHelper.applyViewTransformation(request, securityContext, ResourceHelper.optimizeNestedResourceChain(securityContext, request, resourceRouter, propertyView), propertyView);
 				authenticator.checkResourceAccess(securityContext, request, resource.getResourceSignature(), propertyView.get(securityContext));
 				tx.success();
 			}
@@ -421,7 +424,7 @@ public class JsonRestServlet extends HttpServlet implements HttpServiceServlet {
 				// isolate resource authentication
 				try (final Tx tx = app.tx()) {
 
-					resource = ResourceHelper.applyViewTransformation(request, securityContext, ResourceHelper.optimizeNestedResourceChain(securityContext, request, resourceMap, propertyView), propertyView);
+					resource = ResourceHelper.applyViewTransformation(request, securityContext, ResourceHelper.optimizeNestedResourceChain(securityContext, request, resourceRouter, propertyView), propertyView);
 					authenticator.checkResourceAccess(securityContext, request, resource.getResourceSignature(), propertyView.get(securityContext));
 					tx.success();
 				}
@@ -609,7 +612,7 @@ public class JsonRestServlet extends HttpServlet implements HttpServiceServlet {
 				try (final Tx tx = app.tx()) {
 
 					// evaluate constraint chain
-					resource = ResourceHelper.applyViewTransformation(request, securityContext, ResourceHelper.optimizeNestedResourceChain(securityContext, request, resourceMap, propertyView), propertyView);
+					resource = ResourceHelper.applyViewTransformation(request, securityContext, ResourceHelper.optimizeNestedResourceChain(securityContext, request, resourceRouter, propertyView), propertyView);
 					authenticator.checkResourceAccess(securityContext, request, resource.getResourceSignature(), propertyView.get(securityContext));
 					tx.success();
 				}
@@ -789,7 +792,7 @@ public class JsonRestServlet extends HttpServlet implements HttpServiceServlet {
 			// isolate resource authentication
 			try (final Tx tx = app.tx()) {
 
-				resource = ResourceHelper.applyViewTransformation(request, securityContext, ResourceHelper.optimizeNestedResourceChain(securityContext, request, resourceMap, propertyView), propertyView);
+				resource = ResourceHelper.applyViewTransformation(request, securityContext, ResourceHelper.optimizeNestedResourceChain(securityContext, request, resourceRouter, propertyView), propertyView);
 				authenticator.checkResourceAccess(securityContext, request, resource.getResourceSignature(), propertyView.get(securityContext));
 				tx.success();
 			}
@@ -821,6 +824,38 @@ public class JsonRestServlet extends HttpServlet implements HttpServiceServlet {
 				sortKey = StructrApp.getConfiguration().getPropertyKeyForDatabaseName(type, sortKeyName, false);
 			}
 
+			// streaming export, results are read from the database while they are written
+			if (returnContent && "1".equals(request.getParameter(REQUEST_PARAMETER_STREAM)) && resource.isCollectionResource()) {
+
+				final StreamingJsonWriter jsonStreamer = new StreamingJsonWriter(this.propertyView, indentJson, depth);
+				Iterable<? extends GraphObject> results = null;
+
+				try (final Tx tx = app.tx()) {
+
+					final Writer writer = response.getWriter();
+
+					results = resource.doStream(sortKey, sortDescending);
+
+					response.setStatus(HttpServletResponse.SC_OK);
+
+					jsonStreamer.stream(securityContext, writer, results, baseUrl);
+					writer.append("\n");    // useful newline
+
+					tx.success();
+
+				} catch (Throwable t) {
+
+					// the result may be partially sent already
+					ResourceHelper.handleStreamingError(request, response, t);
+
+				} finally {
+
+					ResourceHelper.closeStream(results);
+				}
+
+				return;
+			}
+
 			// isolate doGet
 			boolean retry = true;
 			while (retry) {
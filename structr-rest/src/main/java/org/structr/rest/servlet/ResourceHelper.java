@@ -19,26 +19,24 @@
 package org.structr.rest.servlet;
 
 
-import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
-import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import javax.servlet.http.HttpServletRequest;
-import org.apache.commons.lang3.StringUtils;
+import javax.servlet.http.HttpServletResponse;
+import org.eclipse.jetty.server.Request;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.structr.api.NetworkException;
+import org.structr.api.QueryResult;
 import org.structr.common.SecurityContext;
 import org.structr.common.error.FrameworkException;
-import org.structr.core.Services;
+import org.structr.core.GraphObject;
 import org.structr.core.Value;
 import org.structr.core.ViewTransformation;
 import org.structr.core.app.StructrApp;
 import org.structr.rest.exception.IllegalPathException;
-import org.structr.rest.exception.NoResultsException;
-import org.structr.rest.exception.NotFoundException;
 import org.structr.rest.resource.Resource;
 import org.structr.rest.resource.TransformationResource;
 import org.structr.rest.resource.ViewFilterResource;
@@ -66,105 +64,21 @@ public class ResourceHelper {
 	 * @throws FrameworkException
 	 */
 	public static List<Resource> parsePath(final SecurityContext securityContext, final HttpServletRequest request, final Map<Pattern, Class<? extends Resource>> resourceMap, final Value<String> propertyView) throws FrameworkException {
+		return parsePath(securityContext, request, new ResourceRouter(resourceMap), propertyView);
+	}
 
-		final String path = request.getPathInfo();
-
-		// intercept empty path and send 204 No Content
-		if (StringUtils.isBlank(path)) {
-
-			throw new NoResultsException("No content");
-		}
-
-		// 1.: split request path into URI parts
-		final String[] pathParts = path.split("[/]+");
-
-		// 2.: create container for resource constraints
-		final Set<String> propertyViews    = Services.getInstance().getConfigurationProvider().getPropertyViews();
-		final List<Resource> resourceChain = new ArrayList<>(pathParts.length);
-
-		// 3.: try to assign resource constraints for each URI part
-		for (int i = 0; i < pathParts.length; i++) {
-
-			// eliminate empty strings
-			final String part = pathParts[i].trim();
-
-			if (part.length() > 0) {
-
-				boolean found = false;
-
-				// check views first
-				if (propertyViews.contains(part)) {
-
-					Resource resource = new ViewFilterResource();
-					resource.checkAndConfigure(part, securityContext, request);
-					resource.configurePropertyView(propertyView);
-
-					resourceChain.add(resource);
-
-					// mark this part as successfully parsed
-					found = true;
-
-				} else {
-
-					// look for matching pattern
-					for (Map.Entry<Pattern, Class<? extends Resource>> entry : resourceMap.entrySet()) {
-
-						Pattern pattern = entry.getKey();
-						Matcher matcher = pattern.matcher(pathParts[i]);
-
-						if (matcher.matches()) {
-
-							Class<? extends Resource> type = entry.getValue();
-							Resource resource              = null;
-
-							try {
-
-								// instantiate resource constraint
-								resource = type.newInstance();
-							} catch (Throwable t) {
-
-								logger.warn("Error instantiating resource class", t);
-
-							}
-
-							if (resource != null) {
-
-								// set security context
-								resource.setSecurityContext(securityContext);
-
-								if (resource.checkAndConfigure(part, securityContext, request)) {
-
-									logger.debug("{} matched, adding resource of type {} for part {}", new Object[] { matcher.pattern(), type.getName(),
-										part });
-
-									// allow constraint to modify context
-									resource.configurePropertyView(propertyView);
-
-									// add constraint and go on
-									resourceChain.add(resource);
-
-									found = true;
-
-									// first match wins, so choose priority wisely ;)
-									break;
-
-								}
-							}
-
-						}
-					}
-				}
-
-				if (!found) {
-
-					throw new NotFoundException("Cannot resolve URL path");
-				}
-
-			}
-		}
-
-		return resourceChain;
-
+	/**
+	 * Parse the request path with the given precompiled router
+	 *
+	 * @param securityContext
+	 * @param request
+	 * @param router
+	 * @param propertyView
+	 * @return resourceChain
+	 * @throws FrameworkException
+	 */
+	public static List<Resource> parsePath(final SecurityContext securityContext, final HttpServletRequest request, final ResourceRouter router, final Value<String> propertyView) throws FrameworkException {
+		return router.resolve(securityContext, request, propertyView);
 	}
 
 	/**
@@ -178,8 +92,23 @@ public class ResourceHelper {
 	 * @throws FrameworkException
 	 */
 	public static Resource optimizeNestedResourceChain(final SecurityContext securityContext, final HttpServletRequest request, final Map<Pattern, Class<? extends Resource>> resourceMap, final Value<String> propertyView) throws FrameworkException {
+		return optimizeNestedResourceChain(securityContext, request, new ResourceRouter(resourceMap), propertyView);
+	}
+
+	/**
+	 * Optimize the resource chain that the given router resolves for the
+	 * request path by trying to combine two resources to a new one
+	 *
+	 * @param securityContext
+	 * @param request
+	 * @param router
+	 * @param propertyView
+	 * @return finalResource
+	 * @throws FrameworkException
+	 */
+	public static Resource optimizeNestedResourceChain(final SecurityContext securityContext, final HttpServletRequest request, final ResourceRouter router, final Value<String> propertyView) throws FrameworkException {
 
-		final List<Resource> resourceChain = ResourceHelper.parsePath(securityContext, request, resourceMap, propertyView);
+		final List<Resource> resourceChain = ResourceHelper.parsePath(securityContext, request, router, propertyView);
 
 		ViewFilterResource view = null;
 		int num                 = resourceChain.size();
@@ -288,4 +217,54 @@ public class ResourceHelper {
 		return transformedResource;
 	}
 
+	/**
+	 * Handle an error that occurred while a result was streamed. If the
+	 * response is not committed yet, the buffered output is discarded and
+	 * the error is rethrown, so that the caller can send a normal error
+	 * response (database connection errors are mapped to 503). Otherwise
+	 * the status line has already been sent, and the connection is aborted
+	 * so the client can't mistake the truncated output for a complete one.
+	 *
+	 * @param request
+	 * @param response
+	 * @param t
+	 * @throws FrameworkException
+	 */
+	public static void handleStreamingError(final HttpServletRequest request, final HttpServletResponse response, final Throwable t) throws FrameworkException {
+
+		if (!response.isCommitted()) {
+
+			response.resetBuffer();
+
+			if (t instanceof FrameworkException) {
+				throw (FrameworkException)t;
+			}
+
+			if (t instanceof NetworkException) {
+				throw new FrameworkException(HttpServletResponse.SC_SERVICE_UNAVAILABLE, t.getMessage());
+			}
+
+			throw new FrameworkException(HttpServletResponse.SC_INTERNAL_SERVER_ERROR, t.getMessage());
+		}
+
+		logger.warn("Unable to stream result, aborting response: {}", t.getMessage());
+
+		final Request baseRequest = Request.getBaseRequest(request);
+		if (baseRequest != null) {
+
+			baseRequest.getHttpChannel().abort(t);
+		}
+	}
+
+	/**
+	 * Close the database cursor of a streamed result, if any.
+	 *
+	 * @param results
+	 */
+	public static void closeStream(final Iterable<? extends GraphObject> results) {
+
+		if (results instanceof QueryResult) {
+			((QueryResult)results).close();
+		}
+	}
 }
@@ -0,0 +1,349 @@
+/**
+ * Copyright (C) 2010-2018 Structr GmbH
+ *
+ * This file is part of Structr <http://structr.org>.
+ *
+ * Structr is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Structr is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.structr.rest.servlet;
+
+import java.lang.reflect.Constructor;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+import javax.servlet.http.HttpServletRequest;
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.structr.api.util.ConcurrentFixedSizeCache;
+import org.structr.common.SecurityContext;
+import org.structr.common.error.FrameworkException;
+import org.structr.core.Services;
+import org.structr.core.Value;
+import org.structr.rest.ResourceProvider;
+import org.structr.rest.exception.NoResultsException;
+import org.structr.rest.exception.NotFoundException;
+import org.structr.rest.resource.Resource;
+import org.structr.rest.resource.ViewFilterResource;
+
+/**
+ * Precompiled form of a resource map that resolves request paths to
+ * resource chains.
+ *
+ * Patterns that consist of a single literal segment are stored in a hash
+ * map, all other patterns are kept as regex fallbacks. The candidate
+ * resource types of a path segment are determined once and cached, and
+ * the matched form of a request path is cached as a template, so that
+ * repeated requests don't evaluate any pattern. Templates are keyed by
+ * the shape of the path, i.e. UUID segments are replaced by a placeholder,
+ * so requests for different objects share a template and UUIDs don't
+ * displace other entries. The candidates of UUID segments are determined
+ * for each request because they depend on the characters of the UUID
+ * (e.g. whether it starts with a letter).
+ *
+ * Resources are still created and configured for each request, in the
+ * priority order of the resource map, so the first resource whose
+ * checkAndConfigure method accepts the segment wins, as before.
+ */
+public class ResourceRouter {
+
+	private static final Logger logger                              = LoggerFactory.getLogger(ResourceRouter.class.getName());
+	private static final Map<Class, ResourceRouter> routers         = new ConcurrentHashMap<>();
+	private static final Pattern LITERAL_PATTERN                    = Pattern.compile("[a-zA-Z0-9_\\-]+");
+	private static final Pattern UUID_PATTERN                       = Pattern.compile("[a-fA-F0-9]{32}");
+	private static final String UUID_PLACEHOLDER                    = "{uuid}";
+	private static final int SEGMENT_CACHE_SIZE                     = 10000;
+	private static final int TEMPLATE_CACHE_SIZE                    = 10000;
+
+	private final ConcurrentFixedSizeCache<String, Route[]> segments  = new ConcurrentFixedSizeCache<>(SEGMENT_CACHE_SIZE);
+	private final ConcurrentFixedSizeCache<String, Template> templates = new ConcurrentFixedSizeCache<>(TEMPLATE_CACHE_SIZE);
+	private final Map<String, List<Route>> literalRoutes              = new HashMap<>();
+	private final List<Route> patternRoutes                           = new ArrayList<>();
+	private final AtomicLong hits                                     = new AtomicLong();
+	private final AtomicLong misses                                   = new AtomicLong();
+
+	public ResourceRouter(final Map<Pattern, Class<? extends Resource>> resourceMap) {
+
+		int index = 0;
+
+		for (final Map.Entry<Pattern, Class<? extends Resource>> entry : resourceMap.entrySet()) {
+
+			final Pattern pattern = entry.getKey();
+			final Route route     = new Route(index++, pattern, entry.getValue());
+
+			if (pattern.flags() == 0 && LITERAL_PATTERN.matcher(pattern.pattern()).matches()) {
+
+				literalRoutes.computeIfAbsent(pattern.pattern(), k -> new ArrayList<>()).add(route);
+
+			} else {
+
+				patternRoutes.add(route);
+			}
+		}
+	}
+
+	/**
+	 * Returns the shared router for the resources of the given provider.
+	 * The resource map of a provider is static, so the router is created
+	 * only once per provider class.
+	 *
+	 * @param provider
+	 * @return the router
+	 */
+	public static ResourceRouter getInstance(final ResourceProvider provider) {
+		return routers.computeIfAbsent(provider.getClass(), k -> new ResourceRouter(provider.getResources()));
+	}
+
+	/**
+	 * Parse the request path and match with possible resource patterns
+	 *
+	 * @param securityContext
+	 * @param request
+	 * @param propertyView
+	 * @return resourceChain
+	 * @throws FrameworkException
+	 */
+	public List<Resource> resolve(final SecurityContext securityContext, final HttpServletRequest request, final Value<String> propertyView) throws FrameworkException {
+
+		final String path = request.getPathInfo();
+
+		// intercept empty path and send 204 No Content
+		if (StringUtils.isBlank(path)) {
+
+			throw new NoResultsException("No content");
+		}
+
+		final String[] parts               = split(path);
+		final Template template            = getTemplate(parts);
+		final Set<String> propertyViews    = Services.getInstance().getConfigurationProvider().getPropertyViews();
+		final List<Resource> resourceChain = new ArrayList<>(parts.length);
+
+		for (int i = 0; i < parts.length; i++) {
+
+			final String part = parts[i];
+
+			// check views first
+			if (propertyViews.contains(part)) {
+
+				final Resource resource = new ViewFilterResource();
+				resource.checkAndConfigure(part, securityContext, request);
+				resource.configurePropertyView(propertyView);
+
+				resourceChain.add(resource);
+
+			} else {
+
+				final Route[] candidates = template.routes[i] != null ? template.routes[i] : findCandidates(part);
+				final Resource resource  = getResource(candidates, part, securityContext, request);
+				if (resource == null) {
+
+					throw new NotFoundException("Cannot resolve URL path");
+				}
+
+				// allow constraint to modify context
+				resource.configurePropertyView(propertyView);
+
+				resourceChain.add(resource);
+			}
+		}
+
+		return resourceChain;
+	}
+
+	public Map<String, Long> getStatistics() {
+
+		final Map<String, Long> statistics = new LinkedHashMap<>();
+
+		statistics.put("templates", Long.valueOf(templates.size()));
+		statistics.put("segments",  Long.valueOf(segments.size()));
+		statistics.put("hits",      hits.get());
+		statistics.put("misses",    misses.get());
+
+		return statistics;
+	}
+
+	// ----- private methods -----
+	private Resource getResource(final Route[] candidates, final String part, final SecurityContext securityContext, final HttpServletRequest request) throws FrameworkException {
+
+		for (final Route route : candidates) {
+
+			final Resource resource = route.newInstance();
+			if (resource != null) {
+
+				// set security context
+				resource.setSecurityContext(securityContext);
+
+				// first match wins, so choose priority wisely ;)
+				if (resource.checkAndConfigure(part, securityContext, request)) {
+
+					logger.debug("{} matched, adding resource of type {} for part {}", new Object[] { route.pattern, route.type.getName(), part });
+
+					return resource;
+				}
+			}
+		}
+
+		return null;
+	}
+
+	private String[] split(final String path) {
+
+		final List<String> parts = new ArrayList<>();
+
+		for (final String segment : path.split("[/]+")) {
+
+			// eliminate empty strings
+			final String part = segment.trim();
+			if (part.length() > 0) {
+
+				parts.add(part);
+			}
+		}
+
+		return parts.toArray(new String[0]);
+	}
+
+	private Template getTemplate(final String[] parts) {
+
+		final StringBuilder shape = new StringBuilder();
+
+		for (final String part : parts) {
+
+			shape.append("/");
+			shape.append(isUuid(part) ? UUID_PLACEHOLDER : part);
+		}
+
+		final String key  = shape.toString();
+		Template template = templates.get(key);
+
+		if (template == null) {
+
+			final Route[][] routes = new Route[parts.length][];
+
+			for (int i = 0; i < parts.length; i++) {
+
+				// candidates of UUID segments are determined for each request
+				if (!isUuid(parts[i])) {
+					routes[i] = getCandidates(parts[i]);
+				}
+			}
+
+			template = new Template(routes);
+
+			templates.put(key, template);
+			misses.incrementAndGet();
+
+		} else {
+
+			hits.incrementAndGet();
+		}
+
+		return template;
+	}
+
+	private Route[] getCandidates(final String segment) {
+
+		Route[] candidates = segments.get(segment);
+		if (candidates == null) {
+
+			candidates = findCandidates(segment);
+
+			segments.put(segment, candidates);
+		}
+
+		return candidates;
+	}
+
+	private Route[] findCandidates(final String segment) {
+
+		final List<Route> list    = new ArrayList<>();
+		final List<Route> literal = literalRoutes.get(segment);
+
+		if (literal != null) {
+			list.addAll(literal);
+		}
+
+		for (final Route route : patternRoutes) {
+
+			if (route.pattern.matcher(segment).matches()) {
+				list.add(route);
+			}
+		}
+
+		// restore the priority order of the resource map
+		list.sort(Comparator.comparingInt(r -> r.index));
+
+		return list.toArray(new Route[0]);
+	}
+
+	private boolean isUuid(final String segment) {
+		return segment.length() == 32 && UUID_PATTERN.matcher(segment).matches();
+	}
+
+	// ----- nested classes -----
+	private static class Template {
+
+		private Route[][] routes = null;
+
+		public Template(final Route[][] routes) {
+			this.routes = routes;
+		}
+	}
+
+	private static class Route {
+
+		private Constructor<? extends Resource> constructor = null;
+		private Class<? extends Resource> type              = null;
+		private Pattern pattern                             = null;
+		private int index                                   = 0;
+
+		public Route(final int index, final Pattern pattern, final Class<? extends Resource> type) {
+
+			this.index   = index;
+			this.pattern = pattern;
+			this.type    = type;
+
+			try {
+
+				this.constructor = type.getConstructor();
+
+			} catch (Throwable t) {
+
+				logger.debug("Resource class {} has no public default constructor", type.getName());
+			}
+		}
+
+		public Resource newInstance() {
+
+			try {
+
+				// instantiate resource constraint
+				return constructor != null ? constructor.newInstance() : type.newInstance();
+
+			} catch (Throwable t) {
+
+				logger.warn("Error instantiating resource class", t);
+			}
+
+			return null;
+		}
+	}
+}
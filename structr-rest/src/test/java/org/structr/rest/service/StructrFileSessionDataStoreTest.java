@@ -0,0 +1,131 @@
+/**
+ * Copyright (C) 2010-2018 Structr GmbH
+ *
+ * This file is part of Structr <http://structr.org>.
+ *
+ * Structr is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Structr is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.structr.rest.service;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+import org.apache.commons.io.FileUtils;
+import org.eclipse.jetty.server.session.SessionData;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import org.junit.Test;
+import org.structr.common.error.FrameworkException;
+import org.structr.core.entity.Principal;
+import org.structr.core.graph.Tx;
+import org.structr.rest.common.StructrRestTest;
+
+/**
+ * Test for the file-based session data store.
+ */
+public class StructrFileSessionDataStoreTest extends StructrRestTest {
+
+	@Test
+	public void testStoreLoadAndDelete() {
+
+		final Class userType = createTestUserType();
+
+		try (final Tx tx = app.tx()) {
+
+			final Principal user = (Principal)app.create(userType);
+
+			user.addSessionId("session1");
+
+			tx.success();
+
+		} catch (FrameworkException fex) {
+
+			fex.printStackTrace();
+			fail("Unexpected exception.");
+		}
+
+		File directory = null;
+
+		try {
+
+			directory = Files.createTempDirectory("structr-sessions").toFile();
+
+			final long now                        = System.currentTimeMillis();
+			final List<String> list               = Arrays.asList("a", "b");
+			final SessionData data                = new SessionData("session1", "/", "0.0.0.0", now, now, now, 60000);
+			StructrFileSessionDataStore store     = new StructrFileSessionDataStore(directory, 60000);
+
+			data.setAttribute("string", "value");
+			data.setAttribute("number", 42);
+			data.setAttribute("list", list);
+
+			store.open();
+
+			final long coalesced = StructrFileSessionDataStore.getStatistics().get("coalesced");
+			final long writes    = StructrFileSessionDataStore.getStatistics().get("writes");
+
+			// repeated stores of the same session are written once
+			store.doStore("session1", data, 0L);
+			store.doStore("session1", data, 0L);
+			store.flush();
+
+			assertEquals("Invalid session store statistics", coalesced + 1, (long)StructrFileSessionDataStore.getStatistics().get("coalesced"));
+			assertEquals("Invalid session store statistics", writes + 1,    (long)StructrFileSessionDataStore.getStatistics().get("writes"));
+
+			// sessions of anonymous users are not stored
+			store.doStore("session2", new SessionData("session2", "/", "0.0.0.0", now, now, now, 60000), 0L);
+
+			assertFalse("Session of anonymous user was stored", store.exists("session2"));
+
+			store.close();
+
+			// session data must survive a restart
+			store = new StructrFileSessionDataStore(directory, 60000);
+			store.open();
+
+			final SessionData loaded = store.load("session1");
+
+			assertTrue("Stored session does not exist", store.exists("session1"));
+			assertEquals("Invalid session data", "value",  loaded.getAttribute("string"));
+			assertEquals("Invalid session data", 42,       loaded.getAttribute("number"));
+			assertEquals("Invalid session data", list,     loaded.getAttribute("list"));
+			assertEquals("Invalid session data", "/",      loaded.getContextPath());
+			assertEquals("Invalid session data", 60000L,   loaded.getMaxInactiveMs());
+
+			store.delete("session1");
+			store.close();
+
+			// deletion must survive a restart
+			store = new StructrFileSessionDataStore(directory, 60000);
+			store.open();
+
+			assertNull("Deleted session was loaded", store.load("session1"));
+
+			store.close();
+
+		} catch (Exception ex) {
+
+			ex.printStackTrace();
+			fail("Unexpected exception.");
+
+		} finally {
+
+			FileUtils.deleteQuietly(directory);
+		}
+	}
+}
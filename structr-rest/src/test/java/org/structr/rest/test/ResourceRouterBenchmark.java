@@ -0,0 +1,189 @@
+/**
+ * Copyright (C) 2010-2018 Structr GmbH
+ *
+ * This file is part of Structr <http://structr.org>.
+ *
+ * Structr is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Structr is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.structr.rest.test;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.regex.Pattern;
+import javax.servlet.http.HttpServletRequest;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.structr.common.PropertyView;
+import org.structr.common.error.FrameworkException;
+import org.structr.core.StaticValue;
+import org.structr.core.graph.Tx;
+import org.structr.rest.DefaultResourceProvider;
+import org.structr.rest.common.StructrRestTest;
+import org.structr.rest.resource.Resource;
+import org.structr.rest.servlet.ResourceRouter;
+
+/**
+ * Compares the path resolution throughput of the resource router with a
+ * linear scan over the resource map, which was used before the router was
+ * introduced. The results are logged and depend on the hardware, so this
+ * class is not part of the test suite. Run it explicitly with
+ *
+ * <code>mvn test -pl structr-rest -Dtest=ResourceRouterBenchmark</code>
+ */
+public class ResourceRouterBenchmark extends StructrRestTest {
+
+	private static final Logger logger = LoggerFactory.getLogger(ResourceRouterBenchmark.class.getName());
+
+	private static final int WARMUP_ITERATIONS      = 3;
+	private static final int MEASUREMENT_ITERATIONS = 5;
+	private static final int OPERATIONS             = 20000;
+
+	@Test
+	public void benchmarkResolution() {
+
+		final Map<Pattern, Class<? extends Resource>> resourceMap = new DefaultResourceProvider().getResources();
+		final ResourceRouter router                               = new ResourceRouter(resourceMap);
+		final List<String> paths                                  = new ArrayList<>();
+
+		for (int i=0; i<1000; i++) {
+
+			final String uuid = UUID.randomUUID().toString().replaceAll("[\\-]+", "");
+
+			paths.add("/TestOne");
+			paths.add("/TestOne/" + uuid);
+			paths.add("/" + uuid + "/in");
+			paths.add("/TestOne/public");
+		}
+
+		try (final Tx tx = app.tx()) {
+
+			// both implementations must resolve the same resource chains
+			for (final String path : paths) {
+
+				assertEquals("Resource chains differ for " + path, types(scan(resourceMap, path)), types(router.resolve(securityContext, request(path), new StaticValue<>(PropertyView.Public))));
+			}
+
+			final double scan   = measure("linear scan", paths, path -> scan(resourceMap, path));
+			final double routed = measure("router",      paths, path -> router.resolve(securityContext, request(path), new StaticValue<>(PropertyView.Public)));
+
+			logger.info("Linear scan: {} ops/s, router: {} ops/s, speedup {}", (long)scan, (long)routed, String.format("%.2f", routed / scan));
+			logger.info("Router statistics: {}", router.getStatistics());
+
+			tx.success();
+
+		} catch (FrameworkException fex) {
+
+			fex.printStackTrace();
+			fail("Unexpected exception.");
+		}
+	}
+
+	// ----- private methods -----
+	private double measure(final String name, final List<String> paths, final Resolver resolver) throws FrameworkException {
+
+		double best = 0.0;
+
+		for (int iteration=0; iteration<WARMUP_ITERATIONS + MEASUREMENT_ITERATIONS; iteration++) {
+
+			final long t0 = System.nanoTime();
+
+			for (int i=0; i<OPERATIONS; i++) {
+				resolver.resolve(paths.get(i % paths.size()));
+			}
+
+			final long t1        = System.nanoTime();
+			final double opsPerS = (OPERATIONS * 1000000000.0) / Math.max(1L, t1 - t0);
+
+			if (iteration >= WARMUP_ITERATIONS) {
+
+				logger.info("{} iteration {}: {} ops/s", name, iteration - WARMUP_ITERATIONS + 1, (long)opsPerS);
+
+				best = Math.max(best, opsPerS);
+			}
+		}
+
+		return best;
+	}
+
+	/**
+	 * Resolves the given path by matching every segment against all
+	 * patterns of the resource map, the first accepting resource wins.
+	 */
+	private List<Resource> scan(final Map<Pattern, Class<? extends Resource>> resourceMap, final String path) throws FrameworkException {
+
+		final HttpServletRequest request = request(path);
+		final List<Resource> chain       = new ArrayList<>();
+
+		for (final String segment : path.split("[/]+")) {
+
+			final String part = segment.trim();
+			if (part.length() > 0) {
+
+				for (final Map.Entry<Pattern, Class<? extends Resource>> entry : resourceMap.entrySet()) {
+
+					if (entry.getKey().matcher(part).matches()) {
+
+						try {
+
+							final Resource resource = entry.getValue().newInstance();
+
+							resource.setSecurityContext(securityContext);
+
+							if (resource.checkAndConfigure(part, securityContext, request)) {
+
+								chain.add(resource);
+								break;
+							}
+
+						} catch (InstantiationException | IllegalAccessException ex) {
+							logger.warn("", ex);
+						}
+					}
+				}
+			}
+		}
+
+		return chain;
+	}
+
+	private List<Class> types(final List<Resource> chain) {
+
+		final List<Class> types = new ArrayList<>();
+
+		for (final Resource resource : chain) {
+			types.add(resource.getClass());
+		}
+
+		return types;
+	}
+
+	private HttpServletRequest request(final String path) {
+
+		return (HttpServletRequest)Proxy.newProxyInstance(getClass().getClassLoader(), new Class[] { HttpServletRequest.class }, (proxy, method, args) -> {
+			return "getPathInfo".equals(method.getName()) ? path : null;
+		});
+	}
+
+	// ----- nested classes -----
+	private interface Resolver {
+
+		Object resolve(final String path) throws FrameworkException;
+	}
+}
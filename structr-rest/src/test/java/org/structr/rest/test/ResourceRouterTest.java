@@ -0,0 +1,176 @@
+/**
+ * Copyright (C) 2010-2018 Structr GmbH
+ *
+ * This file is part of Structr <http://structr.org>.
+ *
+ * Structr is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Structr is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.structr.rest.test;
+
+import java.lang.reflect.Proxy;
+import java.util.List;
+import java.util.UUID;
+import javax.servlet.http.HttpServletRequest;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+import org.junit.Test;
+import org.structr.common.PropertyView;
+import org.structr.common.error.FrameworkException;
+import org.structr.core.StaticValue;
+import org.structr.core.graph.Tx;
+import org.structr.rest.DefaultResourceProvider;
+import org.structr.rest.common.StructrRestTest;
+import org.structr.rest.resource.MaintenanceParameterResource;
+import org.structr.rest.resource.MaintenanceResource;
+import org.structr.rest.resource.RelationshipResource;
+import org.structr.rest.resource.Resource;
+import org.structr.rest.resource.SchemaResource;
+import org.structr.rest.resource.TypeResource;
+import org.structr.rest.resource.UuidResource;
+import org.structr.rest.resource.ViewFilterResource;
+import org.structr.rest.servlet.ResourceRouter;
+
+/**
+ * Test for the precompiled resource router.
+ */
+public class ResourceRouterTest extends StructrRestTest {
+
+	@Test
+	public void testResourceResolution() {
+
+		final ResourceRouter router = new ResourceRouter(new DefaultResourceProvider().getResources());
+
+		try (final Tx tx = app.tx()) {
+
+			assertChain(router, "/TestOne",                                         TypeResource.class);
+			assertChain(router, "/TestOne/0123456789abcdef0123456789abcdef",        TypeResource.class, UuidResource.class);
+			assertChain(router, "//TestOne///public",                               TypeResource.class, ViewFilterResource.class);
+			assertChain(router, "/_schema",                                         SchemaResource.class);
+			assertChain(router, "/maintenance/importGist",                          MaintenanceResource.class, MaintenanceParameterResource.class);
+
+			// second resolution of the same path uses the cached template
+			final long hits = router.getStatistics().get("hits");
+
+			assertChain(router, "/TestOne",                                         TypeResource.class);
+			assertEquals("Invalid router statistics", hits + 1, (long)router.getStatistics().get("hits"));
+
+			tx.success();
+
+		} catch (FrameworkException fex) {
+
+			fex.printStackTrace();
+			fail("Unexpected exception.");
+		}
+	}
+
+	@Test
+	public void testSharedRouterMatchesNewRouter() {
+
+		final String[] paths        = { "/TestOne", "/TestOne/0123456789abcdef0123456789abcdef", "/TestOne/public", "/maintenance/importGist", "/_schema" };
+		final ResourceRouter shared = new ResourceRouter(new DefaultResourceProvider().getResources());
+		final int count             = 100;
+
+		try (final Tx tx = app.tx()) {
+
+			for (final String path : paths) {
+				resolve(shared, path);
+			}
+
+			final long hits = shared.getStatistics().get("hits");
+
+			for (int i=0; i<count; i++) {
+
+				final String path           = paths[i % paths.length];
+				final List<Resource> cached = resolve(shared, path);
+				final List<Resource> fresh  = resolve(new ResourceRouter(new DefaultResourceProvider().getResources()), path);
+
+				assertEquals("Invalid resource chain length for " + path, fresh.size(), cached.size());
+
+				for (int j=0; j<fresh.size(); j++) {
+
+					assertEquals("Invalid resource for " + path, fresh.get(j).getClass(), cached.get(j).getClass());
+				}
+			}
+
+			assertEquals("Invalid router statistics", hits + count, (long)shared.getStatistics().get("hits"));
+
+			tx.success();
+
+		} catch (FrameworkException fex) {
+
+			fex.printStackTrace();
+			fail("Unexpected exception.");
+		}
+	}
+
+	@Test
+	public void testUuidPathsShareTemplate() {
+
+		final ResourceRouter router = new ResourceRouter(new DefaultResourceProvider().getResources());
+
+		try (final Tx tx = app.tx()) {
+
+			assertChain(router, "/TestOne/0123456789abcdef0123456789abcdef", TypeResource.class, UuidResource.class);
+
+			final long templates = router.getStatistics().get("templates");
+			final long segments  = router.getStatistics().get("segments");
+			final long hits      = router.getStatistics().get("hits");
+
+			for (int i=0; i<100; i++) {
+
+				final String uuid = UUID.randomUUID().toString().replaceAll("[\\-]+", "");
+
+				assertChain(router, "/TestOne/" + uuid, TypeResource.class, UuidResource.class);
+				assertChain(router, "/" + uuid,         UuidResource.class);
+			}
+
+			// UUIDs that start with a letter also match the type pattern
+			assertChain(router, "/abcdef0123456789abcdef0123456789", UuidResource.class);
+			assertChain(router, "/TestOne/abcdef0123456789abcdef0123456789/in", TypeResource.class, UuidResource.class, RelationshipResource.class);
+
+			assertEquals("UUID paths should share a template", templates + 2, (long)router.getStatistics().get("templates"));
+			assertEquals("UUID segments should not be cached", segments + 1,  (long)router.getStatistics().get("segments"));
+			assertEquals("UUID paths should hit the template cache", hits + 200, (long)router.getStatistics().get("hits"));
+
+			tx.success();
+
+		} catch (FrameworkException fex) {
+
+			fex.printStackTrace();
+			fail("Unexpected exception.");
+		}
+	}
+
+	// ----- private methods -----
+	private void assertChain(final ResourceRouter router, final String path, final Class... types) throws FrameworkException {
+
+		final List<Resource> chain = resolve(router, path);
+
+		assertEquals("Invalid resource chain length for " + path, types.length, chain.size());
+
+		for (int i=0; i<types.length; i++) {
+
+			assertEquals("Invalid resource for " + path, types[i], chain.get(i).getClass());
+		}
+	}
+
+	private List<Resource> resolve(final ResourceRouter router, final String path) throws FrameworkException {
+
+		final HttpServletRequest request = (HttpServletRequest)Proxy.newProxyInstance(getClass().getClassLoader(), new Class[] { HttpServletRequest.class }, (proxy, method, args) -> {
+			return "getPathInfo".equals(method.getName()) ? path : null;
+		});
+
+		return router.resolve(securityContext, request, new StaticValue<>(PropertyView.Public));
+	}
+}
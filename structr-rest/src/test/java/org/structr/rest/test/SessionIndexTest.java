@@ -0,0 +1,109 @@
+/**
+ * Copyright (C) 2010-2018 Structr GmbH
+ *
+ * This file is part of Structr <http://structr.org>.
+ *
+ * Structr is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Structr is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.structr.rest.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+import org.junit.Test;
+import org.structr.common.error.FrameworkException;
+import org.structr.core.auth.SessionIndex;
+import org.structr.core.entity.Principal;
+import org.structr.core.graph.Tx;
+import org.structr.rest.auth.AuthHelper;
+import org.structr.rest.auth.SessionHelper;
+import org.structr.rest.common.StructrRestTest;
+
+/**
+ * Test for the in-memory index of session IDs.
+ */
+public class SessionIndexTest extends StructrRestTest {
+
+	@Test
+	public void testSessionIndex() {
+
+		final Class userType = createTestUserType();
+		String userId        = null;
+
+		try (final Tx tx = app.tx()) {
+
+			final Principal user = (Principal)app.create(userType);
+
+			user.addSessionId("session1");
+			userId = user.getUuid();
+
+			tx.success();
+
+		} catch (FrameworkException fex) {
+
+			fex.printStackTrace();
+			fail("Unexpected exception.");
+		}
+
+		SessionIndex.clear();
+
+		try (final Tx tx = app.tx()) {
+
+			final long hits          = SessionIndex.getStatistics().get("hits");
+			final long invalidations = SessionIndex.getStatistics().get("invalidations");
+
+			// first lookup queries the database, second lookup is answered by the index
+			assertEquals("Invalid principal for session", userId, AuthHelper.getPrincipalForSessionId("session1").getUuid());
+			assertEquals("Invalid principal for session", userId, AuthHelper.getPrincipalForSessionId("session1").getUuid());
+			assertEquals("Invalid session index statistics", hits + 1, (long)SessionIndex.getStatistics().get("hits"));
+
+			// an entry that does not match the session IDs of the principal must be ignored
+			SessionIndex.add("session2", userId);
+
+			assertNull("Outdated session index entry was used", AuthHelper.getPrincipalForSessionId("session2"));
+			assertEquals("Invalid session index statistics", invalidations + 1, (long)SessionIndex.getStatistics().get("invalidations"));
+
+			tx.success();
+
+		} catch (FrameworkException fex) {
+
+			fex.printStackTrace();
+			fail("Unexpected exception.");
+		}
+
+		try (final Tx tx = app.tx()) {
+
+			SessionHelper.clearSession("session1");
+
+			tx.success();
+
+		} catch (FrameworkException fex) {
+
+			fex.printStackTrace();
+			fail("Unexpected exception.");
+		}
+
+		try (final Tx tx = app.tx()) {
+
+			assertNull("Cleared session still resolves to a principal", AuthHelper.getPrincipalForSessionId("session1"));
+
+			tx.success();
+
+		} catch (FrameworkException fex) {
+
+			fex.printStackTrace();
+			fail("Unexpected exception.");
+		}
+	}
+}
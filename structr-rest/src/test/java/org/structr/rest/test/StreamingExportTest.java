@@ -0,0 +1,235 @@
+/**
+ * Copyright (C) 2010-2018 Structr GmbH
+ *
+ * This file is part of Structr <http://structr.org>.
+ *
+ * Structr is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Structr is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.structr.rest.test;
+
+import com.jayway.restassured.RestAssured;
+import com.jayway.restassured.filter.log.ResponseLoggingFilter;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.Collection;
+import java.util.Iterator;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.hasSize;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import org.junit.Test;
+import org.structr.api.QueryResult;
+import org.structr.api.config.Settings;
+import org.structr.api.util.Iterables;
+import org.structr.common.AccessMode;
+import org.structr.common.PropertyView;
+import org.structr.common.SecurityContext;
+import org.structr.common.error.FrameworkException;
+import org.structr.core.app.App;
+import org.structr.core.app.Query;
+import org.structr.core.app.StructrApp;
+import org.structr.core.entity.AbstractNode;
+import org.structr.core.entity.Principal;
+import org.structr.core.graph.NodeAttribute;
+import org.structr.core.graph.Tx;
+import org.structr.rest.common.StructrRestTest;
+import org.structr.rest.entity.TestOne;
+import org.structr.rest.servlet.CsvServlet;
+
+/**
+ * Test for the streaming JSON and CSV export of collection resources.
+ */
+public class StreamingExportTest extends StructrRestTest {
+
+	@Test
+	public void testStreamingJsonExport() {
+
+		createNodes(2500);
+
+		RestAssured
+
+			.given()
+				.contentType("application/json; charset=UTF-8")
+				.filter(ResponseLoggingFilter.logResponseIfStatusCodeIs(500))
+			.expect()
+				.statusCode(200)
+				.body("result",            hasSize(2500))
+				.body("result[0].name",    equalTo("node0000"))
+				.body("result[999].name",  equalTo("node0999"))
+				.body("result[1000].name", equalTo("node1000"))
+				.body("result[2499].name", equalTo("node2499"))
+			.when()
+				.get("/test_one?stream=1&sort=name");
+
+		// search attributes are applied to the streamed result
+		RestAssured
+
+			.given()
+				.contentType("application/json; charset=UTF-8")
+				.filter(ResponseLoggingFilter.logResponseIfStatusCodeIs(500))
+			.expect()
+				.statusCode(200)
+				.body("result",         hasSize(1))
+				.body("result[0].name", equalTo("node1234"))
+			.when()
+				.get("/test_one?stream=1&name=node1234");
+
+		// descending order
+		RestAssured
+
+			.given()
+				.contentType("application/json; charset=UTF-8")
+				.filter(ResponseLoggingFilter.logResponseIfStatusCodeIs(500))
+			.expect()
+				.statusCode(200)
+				.body("result",         hasSize(2500))
+				.body("result[0].name", equalTo("node2499"))
+			.when()
+				.get("/test_one?stream=1&sort=name&order=desc");
+	}
+
+	@Test
+	public void testStreamingCsvExport() {
+
+		createNodes(1500);
+
+		try (final Tx tx = app.tx()) {
+
+			final StringWriter streamed = new StringWriter();
+			final StringWriter listed   = new StringWriter();
+
+			CsvServlet.writeCsv(app.nodeQuery(TestOne.class).sort(AbstractNode.name).getResultStream(), streamed, PropertyView.Public);
+			CsvServlet.writeCsv(app.nodeQuery(TestOne.class).sort(AbstractNode.name).getResult(), listed, PropertyView.Public);
+
+			final String[] lines = streamed.toString().split("\r\n");
+
+			assertEquals("Streamed CSV output differs from paged output", listed.toString(), streamed.toString());
+			assertEquals("Invalid number of CSV lines", 1501, lines.length);
+
+			tx.success();
+
+		} catch (FrameworkException | IOException ex) {
+
+			ex.printStackTrace();
+			fail("Unexpected exception.");
+		}
+	}
+
+	@Test
+	public void testResultStreamCanBeRepeated() {
+
+		createNodes(100);
+
+		try (final Tx tx = app.tx()) {
+
+			final Query<TestOne> query = app.nodeQuery(TestOne.class).sort(AbstractNode.name);
+
+			assertEquals("Invalid number of streamed results", 100, Iterables.count(query.getResultStream()));
+			assertEquals("Invalid number of streamed results", 100, Iterables.count(query.getResultStream()));
+			assertEquals("Invalid number of results",          100, query.getAsList().size());
+
+			tx.success();
+
+		} catch (FrameworkException ex) {
+
+			ex.printStackTrace();
+			fail("Unexpected exception.");
+		}
+	}
+
+	@Test
+	public void testResultStreamIsLazyWithDefaultSettings() {
+
+		Principal tester = null;
+
+		createNodes(50);
+
+		try (final Tx tx = app.tx()) {
+
+			tester = app.create(Principal.class, "tester");
+
+			tx.success();
+
+		} catch (FrameworkException fex) {
+
+			fex.printStackTrace();
+			fail("Unexpected exception.");
+		}
+
+		final App userApp = StructrApp.getInstance(SecurityContext.getInstance(tester, AccessMode.Backend));
+
+		try (final Tx tx = userApp.tx()) {
+
+			for (int i=0; i<10; i++) {
+				userApp.create(TestOne.class, String.format("owned%02d", i));
+			}
+
+			tx.success();
+
+		} catch (FrameworkException fex) {
+
+			fex.printStackTrace();
+			fail("Unexpected exception.");
+		}
+
+		assertFalse("Permission filter should be disabled by default", Settings.PermissionFilter.getValue());
+
+		try (final Tx tx = userApp.tx()) {
+
+			final Iterable<TestOne> stream = userApp.nodeQuery(TestOne.class).sort(AbstractNode.name).getResultStream();
+
+			// results are instantiated while the stream is consumed, not collected in a list
+			assertTrue("Result stream should be lazy", stream instanceof QueryResult);
+			assertFalse("Result stream should be lazy", stream instanceof Collection);
+
+			// visibility is checked for each result
+			final Iterator<TestOne> iterator = stream.iterator();
+
+			assertEquals("Invalid first streamed result", "owned00", iterator.next().getName());
+
+			((QueryResult)stream).close();
+
+			assertFalse("Closed stream should not produce more results", iterator.hasNext());
+			assertEquals("Invalid number of visible streamed results", 10, Iterables.count(userApp.nodeQuery(TestOne.class).getResultStream()));
+
+			tx.success();
+
+		} catch (FrameworkException fex) {
+
+			fex.printStackTrace();
+			fail("Unexpected exception.");
+		}
+	}
+
+	// ----- private methods -----
+	private void createNodes(final int count) {
+
+		try (final Tx tx = app.tx()) {
+
+			for (int i=0; i<count; i++) {
+
+				app.create(TestOne.class, new NodeAttribute<>(AbstractNode.name, String.format("node%04d", i)));
+			}
+
+			tx.success();
+
+		} catch (FrameworkException fex) {
+
+			fex.printStackTrace();
+			fail("Unexpected exception.");
+		}
+	}
+}
@@ -0,0 +1,288 @@
+/**
+ * Copyright (C) 2010-2018 Structr GmbH
+ *
+ * This file is part of Structr <http://structr.org>.
+ *
+ * Structr is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Structr is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.structr.web.common;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.zip.CRC32;
+import org.apache.commons.codec.binary.Hex;
+import org.apache.commons.lang3.StringUtils;
+import org.structr.core.app.StructrApp;
+import org.structr.core.property.PropertyMap;
+import org.structr.web.entity.File;
+
+/**
+ * Computes the xxHash checksum and all enabled additional checksums of a
+ * file in a single pass over its content.
+ *
+ * The content is passed in chunks via {@link #update}, so the memory usage
+ * does not depend on the size of the file. The xxHash value is identical
+ * to the value of LongHashFunction.xx() for the complete content.
+ */
+public class ChecksumCalculator {
+
+	private final XXHash64 xxHash = new XXHash64();
+	private MessageDigest md5     = null;
+	private MessageDigest sha1    = null;
+	private MessageDigest sha512  = null;
+	private CRC32 crc32           = null;
+
+	/**
+	 * Creates a new calculator for the given list of enabled checksums,
+	 * e.g. "crc32,md5". The xxHash checksum is always calculated.
+	 *
+	 * @param enabledChecksums
+	 */
+	public ChecksumCalculator(final String enabledChecksums) {
+
+		if (StringUtils.contains(enabledChecksums, "crc32")) {
+			crc32 = new CRC32();
+		}
+
+		if (StringUtils.contains(enabledChecksums, "md5")) {
+			md5 = getDigest("MD5");
+		}
+
+		if (StringUtils.contains(enabledChecksums, "sha1")) {
+			sha1 = getDigest("SHA-1");
+		}
+
+		if (StringUtils.contains(enabledChecksums, "sha512")) {
+			sha512 = getDigest("SHA-512");
+		}
+	}
+
+	public void update(final byte[] data) {
+		update(data, 0, data.length);
+	}
+
+	public void update(final byte[] data, final int offset, final int length) {
+
+		xxHash.update(data, offset, length);
+
+		if (crc32 != null) {
+			crc32.update(data, offset, length);
+		}
+
+		if (md5 != null) {
+			md5.update(data, offset, length);
+		}
+
+		if (sha1 != null) {
+			sha1.update(data, offset, length);
+		}
+
+		if (sha512 != null) {
+			sha512.update(data, offset, length);
+		}
+	}
+
+	public Long getChecksum() {
+		return xxHash.getValue();
+	}
+
+	/**
+	 * Returns the calculated checksums, mapped to the corresponding
+	 * properties of {@link File}.
+	 *
+	 * @return the checksum properties
+	 */
+	public PropertyMap getChecksums() {
+
+		final PropertyMap checksums = new PropertyMap();
+
+		checksums.put(StructrApp.key(File.class, "checksum"), getChecksum());
+
+		if (crc32 != null) {
+			checksums.put(StructrApp.key(File.class, "crc32"), crc32.getValue());
+		}
+
+		if (md5 != null) {
+			checksums.put(StructrApp.key(File.class, "md5"), Hex.encodeHexString(md5.digest()));
+		}
+
+		if (sha1 != null) {
+			checksums.put(StructrApp.key(File.class, "sha1"), Hex.encodeHexString(sha1.digest()));
+		}
+
+		if (sha512 != null) {
+			checksums.put(StructrApp.key(File.class, "sha512"), Hex.encodeHexString(sha512.digest()));
+		}
+
+		return checksums;
+	}
+
+	// ----- private methods -----
+	private MessageDigest getDigest(final String algorithm) {
+
+		try {
+			return MessageDigest.getInstance(algorithm);
+
+		} catch (NoSuchAlgorithmException nsaex) {
+			throw new IllegalArgumentException(nsaex);
+		}
+	}
+
+	// ----- nested classes -----
+	/**
+	 * Streaming implementation of the 64-bit xxHash algorithm with seed 0.
+	 */
+	private static class XXHash64 {
+
+		private static final long PRIME1 = 0x9E3779B185EBCA87L;
+		private static final long PRIME2 = 0xC2B2AE3D27D4EB4FL;
+		private static final long PRIME3 = 0x165667B19E3779F9L;
+		private static final long PRIME4 = 0x85EBCA77C2B2AE63L;
+		private static final long PRIME5 = 0x27D4EB2F165667C5L;
+
+		private final byte[] buffer = new byte[32];
+		private int bufferSize      = 0;
+		private long length         = 0L;
+		private long v1             = PRIME1 + PRIME2;
+		private long v2             = PRIME2;
+		private long v3             = 0L;
+		private long v4             = -PRIME1;
+
+		public void update(final byte[] data, final int offset, final int count) {
+
+			final int end = offset + count;
+			int position  = offset;
+
+			length += count;
+
+			// fill up the remainder of the last update first
+			if (bufferSize > 0) {
+
+				final int fill = Math.min(32 - bufferSize, count);
+
+				System.arraycopy(data, position, buffer, bufferSize, fill);
+
+				bufferSize += fill;
+				position   += fill;
+
+				if (bufferSize < 32) {
+					return;
+				}
+
+				processStripe(buffer, 0);
+				bufferSize = 0;
+			}
+
+			while (position + 32 <= end) {
+
+				processStripe(data, position);
+				position += 32;
+			}
+
+			if (position < end) {
+
+				bufferSize = end - position;
+				System.arraycopy(data, position, buffer, 0, bufferSize);
+			}
+		}
+
+		public long getValue() {
+
+			long hash = 0L;
+
+			if (length >= 32) {
+
+				hash = Long.rotateLeft(v1, 1) + Long.rotateLeft(v2, 7) + Long.rotateLeft(v3, 12) + Long.rotateLeft(v4, 18);
+				hash = mergeRound(hash, v1);
+				hash = mergeRound(hash, v2);
+				hash = mergeRound(hash, v3);
+				hash = mergeRound(hash, v4);
+
+			} else {
+
+				hash = PRIME5;
+			}
+
+			hash += length;
+
+			int position = 0;
+
+			while (position + 8 <= bufferSize) {
+
+				hash ^= round(0L, getLong(buffer, position));
+				hash  = Long.rotateLeft(hash, 27) * PRIME1 + PRIME4;
+				position += 8;
+			}
+
+			if (position + 4 <= bufferSize) {
+
+				hash ^= (getInt(buffer, position) & 0xFFFFFFFFL) * PRIME1;
+				hash  = Long.rotateLeft(hash, 23) * PRIME2 + PRIME3;
+				position += 4;
+			}
+
+			while (position < bufferSize) {
+
+				hash ^= (buffer[position] & 0xFFL) * PRIME5;
+				hash  = Long.rotateLeft(hash, 11) * PRIME1;
+				position++;
+			}
+
+			hash ^= hash >>> 33;
+			hash *= PRIME2;
+			hash ^= hash >>> 29;
+			hash *= PRIME3;
+			hash ^= hash >>> 32;
+
+			return hash;
+		}
+
+		// ----- private methods -----
+		private void processStripe(final byte[] data, final int offset) {
+
+			v1 = round(v1, getLong(data, offset));
+			v2 = round(v2, getLong(data, offset + 8));
+			v3 = round(v3, getLong(data, offset + 16));
+			v4 = round(v4, getLong(data, offset + 24));
+		}
+
+		private static long round(final long acc, final long input) {
+			return Long.rotateLeft(acc + input * PRIME2, 31) * PRIME1;
+		}
+
+		private static long mergeRound(final long acc, final long value) {
+			return (acc ^ round(0L, value)) * PRIME1 + PRIME4;
+		}
+
+		private static long getLong(final byte[] data, final int offset) {
+
+			return   (data[offset]     & 0xFFL)
+			      | ((data[offset + 1] & 0xFFL) << 8)
+			      | ((data[offset + 2] & 0xFFL) << 16)
+			      | ((data[offset + 3] & 0xFFL) << 24)
+			      | ((data[offset + 4] & 0xFFL) << 32)
+			      | ((data[offset + 5] & 0xFFL) << 40)
+			      | ((data[offset + 6] & 0xFFL) << 48)
+			      | ((data[offset + 7] & 0xFFL) << 56);
+		}
+
+		private static int getInt(final byte[] data, final int offset) {
+
+			return   (data[offset]     & 0xFF)
+			      | ((data[offset + 1] & 0xFF) << 8)
+			      | ((data[offset + 2] & 0xFF) << 16)
+			      | ((data[offset + 3] & 0xFF) << 24);
+		}
+	}
+}
@@ -37,6 +37,7 @@ public class ClosingFileOutputStream extends FileOutputStream {
 	private static final Logger logger = LoggerFactory.getLogger(ClosingFileOutputStream.class);
 
 	private boolean notifyIndexerAfterClosing = false;
+	private ChecksumCalculator calculator     = null;
 	private boolean closed                    = false;
 	private File thisFile                     = null;
 	private java.io.File file                 = null;
@@ -48,6 +49,36 @@ public class ClosingFileOutputStream extends FileOutputStream {
 		this.notifyIndexerAfterClosing = notifyIndexerAfterClosing;
 		this.thisFile                  = thisFile;
 		this.file                      = thisFile.getFileOnDisk();
+
+		// the checksum of a new file can be calculated while it is written
+		if (!append) {
+			this.calculator = new ChecksumCalculator(null);
+		}
+	}
+
+	@Override
+	public void write(final int b) throws IOException {
+
+		super.write(b);
+
+		if (calculator != null) {
+			calculator.update(new byte[] { (byte)b });
+		}
+	}
+
+	@Override
+	public void write(final byte[] b) throws IOException {
+		write(b, 0, b.length);
+	}
+
+	@Override
+	public void write(final byte[] b, final int off, final int len) throws IOException {
+
+		super.write(b, off, len);
+
+		if (calculator != null) {
+			calculator.update(b, off, len);
+		}
 	}
 
 	@Override
@@ -64,7 +95,7 @@ public class ClosingFileOutputStream extends FileOutputStream {
 			final String _contentType           = FileHelper.getContentMimeType(thisFile);
 			final PropertyMap changedProperties = new PropertyMap();
 
-			changedProperties.put(StructrApp.key(File.class, "checksum"),     FileHelper.getChecksum(file));
+			changedProperties.put(StructrApp.key(File.class, "checksum"),     calculator != null ? calculator.getChecksum() : FileHelper.getChecksum(file));
 			changedProperties.put(StructrApp.key(File.class, "size"),         file.length());
 			changedProperties.put(StructrApp.key(File.class, "contentType"), _contentType);
 
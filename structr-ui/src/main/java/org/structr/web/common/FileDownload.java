@@ -0,0 +1,239 @@
+/**
+ * Copyright (C) 2010-2018 Structr GmbH
+ *
+ * This file is part of Structr <http://structr.org>.
+ *
+ * Structr is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Structr is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.structr.web.common;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.UUID;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import org.eclipse.jetty.server.HttpOutput;
+import org.eclipse.jetty.server.InclusiveByteRange;
+
+/**
+ * The content of a file that is sent to an HTTP client, with support for
+ * single and multiple byte ranges.
+ *
+ * The response headers are set in {@link #prepare}, which can be called
+ * in a transaction. The content is written in {@link #send} after the
+ * transaction has been closed, by reading from the file channel at the
+ * requested positions into a direct buffer that is handed to Jetty
+ * without copying it to the heap.
+ */
+public class FileDownload {
+
+	private static final int BUFFER_SIZE = 65536;
+
+	private List<InclusiveByteRange> ranges = null;
+	private FileChannel channel             = null;
+	private String contentType              = null;
+	private String boundary                 = null;
+	private byte[] data                     = null;
+	private long size                       = 0L;
+
+	public FileDownload(final FileChannel channel, final String contentType) throws IOException {
+
+		this.channel     = channel;
+		this.contentType = contentType;
+		this.size        = channel.size();
+	}
+
+	public FileDownload(final byte[] data, final String contentType) {
+
+		this.data        = data;
+		this.contentType = contentType;
+		this.size        = data.length;
+	}
+
+	/**
+	 * Examines the Range headers of the given request and sets status code
+	 * and headers of the response accordingly.
+	 *
+	 * @param request
+	 * @param response
+	 *
+	 * @return the HTTP status code
+	 */
+	public int prepare(final HttpServletRequest request, final HttpServletResponse response) {
+
+		// Tell the client that we support byte ranges
+		response.setHeader("Accept-Ranges", "bytes");
+
+		if (request.getHeader("Range") == null) {
+
+			response.setContentType(contentType);
+			response.setHeader("Content-Length", Long.toString(size));
+			response.setStatus(HttpServletResponse.SC_OK);
+
+			return HttpServletResponse.SC_OK;
+		}
+
+		ranges = InclusiveByteRange.satisfiableRanges(request.getHeaders("Range"), size);
+
+		if (ranges == null || ranges.isEmpty()) {
+
+			response.setHeader("Content-Range", InclusiveByteRange.to416HeaderRangeString(size));
+			response.setStatus(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+
+			return HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE;
+		}
+
+		if (ranges.size() == 1) {
+
+			final InclusiveByteRange range = ranges.get(0);
+
+			response.setContentType(contentType);
+			response.setHeader("Content-Range", range.toHeaderRangeString(size));
+			response.setHeader("Content-Length", Long.toString(range.getSize(size)));
+
+		} else {
+
+			boundary = UUID.randomUUID().toString().replaceAll("-", "");
+
+			response.setContentType("multipart/byteranges; boundary=" + boundary);
+			response.setHeader("Content-Length", Long.toString(getMultipartLength()));
+		}
+
+		response.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+
+		return HttpServletResponse.SC_PARTIAL_CONTENT;
+	}
+
+	/**
+	 * Writes the requested content to the given output stream and releases
+	 * the file channel.
+	 *
+	 * @param out
+	 *
+	 * @throws IOException
+	 */
+	public void send(final ServletOutputStream out) throws IOException {
+
+		try {
+
+			if (ranges == null) {
+
+				write(out, 0L, size);
+
+			} else if (ranges.size() == 1) {
+
+				final InclusiveByteRange range = ranges.get(0);
+
+				write(out, range.getFirst(size), range.getSize(size));
+
+			} else if (!ranges.isEmpty()) {
+
+				for (final InclusiveByteRange range : ranges) {
+
+					out.write(getPartHeader(range));
+					write(out, range.getFirst(size), range.getSize(size));
+				}
+
+				out.write(getTrailer());
+			}
+
+			out.flush();
+
+		} finally {
+
+			close();
+		}
+	}
+
+	public void close() {
+
+		if (channel != null) {
+
+			try { channel.close(); } catch (IOException ignore) {}
+		}
+	}
+
+	// ----- private methods -----
+	private void write(final ServletOutputStream out, final long start, final long length) throws IOException {
+
+		if (data != null) {
+
+			out.write(data, (int)start, (int)length);
+			return;
+		}
+
+		final boolean direct    = out instanceof HttpOutput;
+		final ByteBuffer buffer = direct ? ByteBuffer.allocateDirect(BUFFER_SIZE) : ByteBuffer.allocate(BUFFER_SIZE);
+		final long end          = start + length;
+		long position           = start;
+
+		while (position < end) {
+
+			buffer.clear();
+			buffer.limit((int)Math.min(BUFFER_SIZE, end - position));
+
+			final int count = channel.read(buffer, position);
+			if (count < 0) {
+
+				throw new IOException("Unexpected end of file at position " + position);
+			}
+
+			position += count;
+
+			buffer.flip();
+
+			if (direct) {
+
+				((HttpOutput)out).write(buffer);
+
+			} else {
+
+				out.write(buffer.array(), 0, buffer.limit());
+			}
+		}
+	}
+
+	private long getMultipartLength() {
+
+		long length = 0L;
+
+		for (final InclusiveByteRange range : ranges) {
+
+			length += getPartHeader(range).length;
+			length += range.getSize(size);
+		}
+
+		return length + getTrailer().length;
+	}
+
+	private byte[] getPartHeader(final InclusiveByteRange range) {
+
+		final StringBuilder buf = new StringBuilder();
+
+		buf.append("\r\n--").append(boundary).append("\r\n");
+		buf.append("Content-Type: ").append(contentType).append("\r\n");
+		buf.append("Content-Range: ").append(range.toHeaderRangeString(size)).append("\r\n");
+		buf.append("\r\n");
+
+		return buf.toString().getBytes(StandardCharsets.ISO_8859_1);
+	}
+
+	private byte[] getTrailer() {
+		return ("\r\n--" + boundary + "--\r\n").getBytes(StandardCharsets.ISO_8859_1);
+	}
+}
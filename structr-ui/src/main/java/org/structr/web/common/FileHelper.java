@@ -28,7 +28,6 @@ import java.util.Date;
 import java.util.List;
 import java.util.UUID;
 import javax.activation.MimetypesFileTypeMap;
-import net.openhft.hashing.LongHashFunction;
 import org.apache.commons.codec.digest.DigestUtils;
 import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.IOUtils;
@@ -60,6 +59,7 @@ import org.structr.web.entity.Image;
 public class FileHelper {
 
 	private static final String UNKNOWN_MIME_TYPE         = "application/octet-stream";
+	private static final int BUFFER_SIZE                  = 65536;
 	private static final Logger logger                    = LoggerFactory.getLogger(FileHelper.class.getName());
 	private static final MimetypesFileTypeMap mimeTypeMap = new MimetypesFileTypeMap(FileHelper.class.getResourceAsStream("/mime.types"));
 
@@ -247,8 +247,12 @@ public class FileHelper {
 	 */
 	public static void setFileData(final File file, final byte[] fileData, final String contentType) throws FrameworkException, IOException {
 
+		final ChecksumCalculator calculator = new ChecksumCalculator(getEnabledChecksums(file));
+
 		FileHelper.writeToFile(file, fileData);
-		setFileProperties(file, contentType);
+		calculator.update(fileData);
+
+		setFileProperties(file, contentType, calculator.getChecksums());
 	}
 
 	/**
@@ -262,8 +266,24 @@ public class FileHelper {
 	 */
 	public static void setFileData(final File file, final InputStream fileStream, final String contentType) throws FrameworkException, IOException {
 
-		FileHelper.writeToFile(file, fileStream);
-		setFileProperties(file, contentType);
+		final ChecksumCalculator calculator = new ChecksumCalculator(getEnabledChecksums(file));
+
+		setFileProperties(file);
+
+		// calculate the checksums while the data is written
+		try (final FileOutputStream out = new FileOutputStream(file.getFileOnDisk())) {
+
+			final byte[] buffer = new byte[BUFFER_SIZE];
+			int count           = 0;
+
+			while ((count = fileStream.read(buffer)) != -1) {
+
+				out.write(buffer, 0, count);
+				calculator.update(buffer, 0, count);
+			}
+		}
+
+		setFileProperties(file, contentType, calculator.getChecksums());
 	}
 
 	/**
@@ -275,17 +295,7 @@ public class FileHelper {
 	 * @throws IOException
 	 */
 	public static void setFileProperties (final File file, final String contentType) throws IOException, FrameworkException {
-
-		final java.io.File fileOnDisk = file.getFileOnDisk(false);
-		final PropertyMap map         = new PropertyMap();
-
-		map.put(StructrApp.key(File.class, "contentType"), contentType != null ? contentType : FileHelper.getContentMimeType(fileOnDisk, file.getProperty(File.name)));
-		map.put(StructrApp.key(File.class, "size"),        FileHelper.getSize(fileOnDisk));
-		map.put(StructrApp.key(File.class, "version"),     1);
-
-		map.putAll(getChecksums(file, fileOnDisk));
-
-		file.setProperties(file.getSecurityContext(), map);
+		setFileProperties(file, contentType, getChecksums(file, file.getFileOnDisk(false)));
 	}
 
 	/**
@@ -314,7 +324,32 @@ public class FileHelper {
 	}
 
 	/**
-	 * Calculate checksums that are configured in settings of parent folder.
+	 * Set the contentType, size, version and the given checksum properties
+	 * of the given fileNode
+	 *
+	 * @param file
+	 * @param contentType if null, try to auto-detect content type
+	 * @param checksums
+	 * @throws FrameworkException
+	 * @throws IOException
+	 */
+	private static void setFileProperties (final File file, final String contentType, final PropertyMap checksums) throws IOException, FrameworkException {
+
+		final java.io.File fileOnDisk = file.getFileOnDisk(false);
+		final PropertyMap map         = new PropertyMap();
+
+		map.put(StructrApp.key(File.class, "contentType"), contentType != null ? contentType : FileHelper.getContentMimeType(fileOnDisk, file.getProperty(File.name)));
+		map.put(StructrApp.key(File.class, "size"),        FileHelper.getSize(fileOnDisk));
+		map.put(StructrApp.key(File.class, "version"),     1);
+
+		map.putAll(checksums);
+
+		file.setProperties(file.getSecurityContext(), map);
+	}
+
+	/**
+	 * Calculate checksums that are configured in settings of parent folder,
+	 * reading the file only once.
 	 *
 	 * @param file
 	 * @param fileOnDisk
@@ -322,8 +357,17 @@ public class FileHelper {
 	 * @throws IOException
 	 */
 	private static PropertyMap getChecksums(final File file, final java.io.File fileOnDisk) throws IOException {
+		return calculateChecksums(fileOnDisk, getEnabledChecksums(file)).getChecksums();
+	}
 
-		final PropertyMap propertiesWithChecksums = new PropertyMap();
+	/**
+	 * Returns the checksums that are enabled in the nearest parent folder
+	 * or in the default settings. The xxHash checksum is always enabled.
+	 *
+	 * @param file
+	 * @return
+	 */
+	private static String getEnabledChecksums(final File file) {
 
 		Folder parentFolder = file.getParent();
 		String checksums = null;
@@ -338,26 +382,24 @@ public class FileHelper {
 			checksums = Settings.DefaultChecksums.getValue();
 		}
 
-		// New, very fast xxHash default checksum, will always be calculated
-		propertiesWithChecksums.put(StructrApp.key(File.class, "checksum"), FileHelper.getChecksum(fileOnDisk));
+		return checksums;
+	}
 
-		if (StringUtils.contains(checksums, "crc32"))	{
-			propertiesWithChecksums.put(StructrApp.key(File.class, "crc32"), FileHelper.getChecksum(fileOnDisk));
-		}
+	private static ChecksumCalculator calculateChecksums(final java.io.File fileOnDisk, final String enabledChecksums) throws IOException {
 
-		if (StringUtils.contains(checksums, "md5"))	{
-			propertiesWithChecksums.put(StructrApp.key(File.class, "md5"), FileHelper.getMD5Checksum(file));
-		}
+		final ChecksumCalculator calculator = new ChecksumCalculator(enabledChecksums);
 
-		if (StringUtils.contains(checksums, "sha1"))	{
-			propertiesWithChecksums.put(StructrApp.key(File.class, "sha1"), FileHelper.getSHA1Checksum(file));
-		}
+		try (final InputStream is = new FileInputStream(fileOnDisk)) {
+
+			final byte[] buffer = new byte[BUFFER_SIZE];
+			int count           = 0;
 
-		if (StringUtils.contains(checksums, "sha512"))	{
-			propertiesWithChecksums.put(StructrApp.key(File.class, "sha512"), FileHelper.getSHA512Checksum(file));
+			while ((count = is.read(buffer)) != -1) {
+				calculator.update(buffer, 0, count);
+			}
 		}
 
-		return propertiesWithChecksums;
+		return calculator;
 	}
 	/**
 	 * Update checksums, content type, size and additional properties of the given file
@@ -738,7 +780,7 @@ public class FileHelper {
 	}
 
 	public static Long getChecksum(final java.io.File fileOnDisk) throws IOException {
-		return LongHashFunction.xx().hashBytes(FileUtils.readFileToByteArray(fileOnDisk));
+		return calculateChecksums(fileOnDisk, null).getChecksum();
 	}
 
 	public static Long getCRC32Checksum(final java.io.File fileOnDisk) throws IOException {
@@ -0,0 +1,92 @@
+/**
+ * Copyright (C) 2010-2018 Structr GmbH
+ *
+ * This file is part of Structr <http://structr.org>.
+ *
+ * Structr is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Structr is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.structr.web.common;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Queue;
+
+/**
+ * Render buffer that encodes the rendered output and writes it through to
+ * an output stream in chunks, so that the output of a page is never held
+ * in memory completely.
+ *
+ * If writing fails (e.g. because the client closed the connection), all
+ * further output is discarded and the error is reported by {@link #flush()}.
+ *
+ * The response is committed as soon as the first chunk is written, so
+ * response headers set by scripts after that point are lost, and errors
+ * during rendering cannot change the status code any more. This buffer
+ * is therefore only used if HttpService.streaming is enabled.
+ */
+public class OutputStreamRenderBuffer extends AsyncBuffer {
+
+	private IOException error = null;
+	private Writer writer     = null;
+
+	public OutputStreamRenderBuffer(final OutputStream out) {
+		this.writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+	}
+
+	@Override
+	public AsyncBuffer append(final String s) {
+
+		if (s != null && error == null) {
+
+			try {
+
+				writer.write(s);
+
+			} catch (IOException ioex) {
+				error = ioex;
+			}
+		}
+
+		return this;
+	}
+
+	/**
+	 * The output of this buffer is not available after it was written.
+	 *
+	 * @return an empty queue
+	 */
+	@Override
+	public Queue<String> getQueue() {
+		return new ArrayDeque<>();
+	}
+
+	/**
+	 * Writes all remaining output to the underlying output stream.
+	 *
+	 * @throws IOException if writing failed at any time
+	 */
+	public void flush() throws IOException {
+
+		if (error != null) {
+			throw error;
+		}
+
+		writer.flush();
+	}
+}
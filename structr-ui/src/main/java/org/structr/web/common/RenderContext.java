@@ -30,6 +30,7 @@ import org.structr.common.error.FrameworkException;
 import org.structr.core.GraphObject;
 import org.structr.core.Result;
 import org.structr.core.entity.Principal;
+import org.structr.core.graph.NodeInterface;
 import org.structr.core.property.PropertyKey;
 import org.structr.rest.ResourceProvider;
 import org.structr.schema.action.ActionContext;
@@ -65,6 +66,8 @@ public class RenderContext extends ActionContext {
 	private Result result                              = null;
 	private boolean anyChildNodeCreatesNewLine         = false;
 	private boolean indentHtml                         = true;
+	private RenderedOutputCache.Recorder recorder      = null;
+	private DOMNode fragmentNode                       = null;
 
 	public enum EditMode {
 
@@ -104,6 +107,8 @@ public class RenderContext extends ActionContext {
 		this.anyChildNodeCreatesNewLine = other.anyChildNodeCreatesNewLine;
 		this.locale = other.locale;
 		this.indentHtml = other.indentHtml;
+		this.recorder = other.recorder;
+		this.fragmentNode = other.fragmentNode;
 
 	}
 
@@ -298,6 +303,95 @@ public class RenderContext extends ActionContext {
 		return buffer;
 	}
 
+	public void setOutputCacheRecorder(final RenderedOutputCache.Recorder recorder) {
+		this.recorder = recorder;
+	}
+
+	public void recordRenderedNode(final NodeInterface node) {
+
+		if (recorder != null) {
+			recorder.addNode(node);
+		}
+	}
+
+	public void recordDataAccess() {
+
+		if (recorder != null) {
+			recorder.setDynamic();
+		}
+	}
+
+	/**
+	 * Renders the given cacheable node from the output cache, or renders
+	 * it and stores its output if that doesn't depend on data. This is
+	 * only possible while the whole page is recorded for the output cache,
+	 * i.e. for anonymous requests, and outside of repeaters.
+	 *
+	 * @param node
+	 * @param depth
+	 *
+	 * @return whether the node has been rendered
+	 *
+	 * @throws FrameworkException
+	 */
+	public boolean renderCachedFragment(final DOMNode node, final int depth) throws FrameworkException {
+
+		// the node is rendered into the fragment cache right now
+		if (recorder == null || node.equals(fragmentNode)) {
+			return false;
+		}
+
+		if (!EditMode.NONE.equals(editMode) || currentDataObject != null || detailsDataObject != null || !dataObjects.isEmpty()) {
+			return false;
+		}
+
+		final String key = RenderedOutputCache.getFragmentKey(node, getLocale(), depth);
+		String output    = RenderedOutputCache.getFragment(key, recorder);
+
+		if (output == null) {
+
+			final RenderedOutputCache.Recorder pageRecorder = recorder;
+			final RenderedOutputCache.Recorder fragmentRecorder = RenderedOutputCache.begin();
+			final StringRenderBuffer fragmentBuffer = new StringRenderBuffer();
+			final AsyncBuffer pageBuffer = buffer;
+			final DOMNode parentFragment = fragmentNode;
+
+			this.recorder     = fragmentRecorder;
+			this.buffer       = fragmentBuffer;
+			this.fragmentNode = node;
+
+			try {
+
+				node.render(this, depth);
+
+			} finally {
+
+				this.recorder     = pageRecorder;
+				this.buffer       = pageBuffer;
+				this.fragmentNode = parentFragment;
+			}
+
+			output = fragmentBuffer.getBuffer().toString();
+
+			pageRecorder.addAll(fragmentRecorder);
+			RenderedOutputCache.storeFragment(key, fragmentRecorder, output);
+		}
+
+		buffer.append(output);
+
+		return true;
+	}
+
+	@Override
+	public void setJavaScriptContext(final boolean javaScriptContext) {
+
+		super.setJavaScriptContext(javaScriptContext);
+
+		// this method is called for every script that is evaluated,
+		// the output may then depend on arbitrary data
+		recordDataAccess();
+	}
+
 	public void setInBody(final boolean inBody) {
 		this.inBody = inBody;
 	}
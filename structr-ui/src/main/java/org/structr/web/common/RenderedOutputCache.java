@@ -0,0 +1,424 @@
+/**
+ * Copyright (C) 2010-2018 Structr GmbH
+ *
+ * This file is part of Structr <http://structr.org>.
+ *
+ * Structr is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Structr is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.structr.web.common;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.nio.charset.StandardCharsets;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.servlet.http.HttpServletRequest;
+import org.apache.commons.lang3.StringUtils;
+import org.structr.api.config.Settings;
+import org.structr.common.SecurityContext;
+import org.structr.common.error.FrameworkException;
+import org.structr.core.GraphObject;
+import org.structr.core.StructrTransactionListener;
+import org.structr.core.TransactionSource;
+import org.structr.core.graph.ModificationEvent;
+import org.structr.core.graph.NodeInterface;
+import org.structr.core.graph.RelationshipInterface;
+import org.structr.core.graph.TransactionCommand;
+import org.structr.web.entity.dom.DOMNode;
+
+/**
+ * Memory-bounded cache for the rendered output of pages and page fragments
+ * requested by anonymous users.
+ *
+ * Each entry remembers the UUIDs of the DOM nodes that were rendered into
+ * it, a modification of one of those nodes removes only the entries that
+ * contain it. Output that depends on data or on the request (i.e. scripts
+ * were evaluated or repeaters were rendered) is never stored. Invalidation
+ * is driven by the modification events of committed transactions.
+ */
+public class RenderedOutputCache {
+
+	private static final Map<String, CacheEntry> cache        = new ConcurrentHashMap<>();
+	private static final Map<String, Set<String>> dependents  = new HashMap<>();
+	private static final Set<String> insertionOrder           = new LinkedHashSet<>();
+	private static final Invalidator invalidator              = new Invalidator();
+	private static final Object lock                          = new Object();
+	private static final AtomicLong sequence                  = new AtomicLong();
+	private static final AtomicLong size                      = new AtomicLong();
+	private static final AtomicLong hits                      = new AtomicLong();
+	private static final AtomicLong misses                    = new AtomicLong();
+	private static final AtomicLong evictions                 = new AtomicLong();
+	private static final AtomicLong invalidations             = new AtomicLong();
+
+	/**
+	 * Registers the transaction listener that removes outdated entries.
+	 * Can be called more than once.
+	 */
+	public static void register() {
+		TransactionCommand.registerTransactionListener(invalidator);
+	}
+
+	/**
+	 * Creates the cache key for the given root element and request. The
+	 * key consists of the UUID of the rendered page or fragment, the
+	 * request path, the sorted request parameters and the locale.
+	 *
+	 * @param rootElement
+	 * @param request
+	 * @param locale
+	 *
+	 * @return the cache key
+	 */
+	public static String getKey(final NodeInterface rootElement, final HttpServletRequest request, final Locale locale) {
+
+		final Map<String, String[]> parameters = new TreeMap<>(request.getParameterMap());
+		final StringBuilder buf                = new StringBuilder();
+
+		buf.append(rootElement.getUuid());
+		buf.append("\n");
+		buf.append(StringUtils.defaultString(request.getPathInfo(), "/"));
+		buf.append("\n");
+
+		for (final Entry<String, String[]> entry : parameters.entrySet()) {
+
+			for (final String value : entry.getValue()) {
+
+				buf.append(entry.getKey());
+				buf.append("=");
+				buf.append(value);
+				buf.append("&");
+			}
+		}
+
+		buf.append("\n");
+		buf.append(locale);
+
+		return buf.toString();
+	}
+
+	/**
+	 * Creates the cache key for a cacheable fragment of a page. The output
+	 * of a static fragment only depends on the fragment itself, the locale
+	 * and the indentation depth.
+	 *
+	 * @param node
+	 * @param locale
+	 * @param depth
+	 *
+	 * @return the cache key
+	 */
+	public static String getFragmentKey(final DOMNode node, final Locale locale, final int depth) {
+		return "fragment\n" + node.getUuid() + "\n" + locale + "\n" + depth;
+	}
+
+	public static byte[] get(final String key) {
+
+		final CacheEntry entry = cache.get(key);
+		if (entry != null) {
+
+			hits.incrementAndGet();
+
+			return entry.data;
+		}
+
+		misses.incrementAndGet();
+
+		return null;
+	}
+
+	/**
+	 * Returns the cached output of a fragment and adds the dependencies of
+	 * the fragment to the given recorder, so the output of the enclosing
+	 * page is invalidated along with the fragment.
+	 *
+	 * @param key
+	 * @param recorder the recorder of the enclosing rendering pass
+	 *
+	 * @return the cached output or null
+	 */
+	public static String getFragment(final String key, final Recorder recorder) {
+
+		final CacheEntry entry = cache.get(key);
+		if (entry != null) {
+
+			hits.incrementAndGet();
+
+			recorder.nodeIds.addAll(entry.dependencies);
+
+			return new String(entry.data, StandardCharsets.UTF_8);
+		}
+
+		misses.incrementAndGet();
+
+		return null;
+	}
+
+	/**
+	 * Starts recording the dependencies of a new rendering pass.
+	 *
+	 * @return the recorder to pass to the render context
+	 */
+	public static Recorder begin() {
+		return new Recorder(sequence.get());
+	}
+
+	public static void storeFragment(final String key, final Recorder recorder, final String output) {
+		store(key, recorder, output.getBytes(StandardCharsets.UTF_8));
+	}
+
+	public static void store(final String key, final Recorder recorder, final byte[] data) {
+
+		// output that depends on data or on the request can't be reused
+		if (recorder.dynamic) {
+			return;
+		}
+
+		final long maxSize = Settings.OutputCacheSize.getValue() * 1024L * 1024L;
+		final long length  = data.length + key.length();
+
+		// large outputs would displace too many other entries
+		if (length > maxSize / 4) {
+			return;
+		}
+
+		final CacheEntry entry = new CacheEntry(key, data, recorder.nodeIds);
+
+		synchronized (lock) {
+
+			// a modification was committed while the output was rendered
+			if (recorder.startSequence != sequence.get()) {
+				return;
+			}
+
+			remove(key, false);
+
+			for (final String uuid : entry.dependencies) {
+				dependents.computeIfAbsent(uuid, k -> new HashSet<>()).add(key);
+			}
+
+			cache.put(key, entry);
+			insertionOrder.add(key);
+			size.addAndGet(entry.size);
+
+			// evict the oldest entries until the cache fits into its memory limit
+			while (size.get() > maxSize) {
+
+				final Iterator<String> iterator = insertionOrder.iterator();
+				final String oldest             = iterator.next();
+
+				if (oldest.equals(key)) {
+					break;
+				}
+
+				if (remove(oldest, false)) {
+					evictions.incrementAndGet();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Removes all entries that contain the DOM node with the given UUID.
+	 *
+	 * @param uuid
+	 */
+	public static void invalidate(final String uuid) {
+
+		synchronized (lock) {
+
+			sequence.incrementAndGet();
+
+			final Set<String> keys = dependents.get(uuid);
+			if (keys != null) {
+
+				for (final String key : keys.toArray(new String[0])) {
+					remove(key, true);
+				}
+			}
+		}
+	}
+
+	public static void clear() {
+
+		synchronized (lock) {
+
+			sequence.incrementAndGet();
+
+			cache.clear();
+			dependents.clear();
+			insertionOrder.clear();
+			size.set(0L);
+		}
+	}
+
+	public static Map<String, Long> getStatistics() {
+
+		final Map<String, Long> statistics = new LinkedHashMap<>();
+
+		statistics.put("size",          Long.valueOf(cache.size()));
+		statistics.put("bytes",         size.get());
+		statistics.put("hits",          hits.get());
+		statistics.put("misses",        misses.get());
+		statistics.put("evictions",     evictions.get());
+		statistics.put("invalidations", invalidations.get());
+
+		return statistics;
+	}
+
+	// ----- private methods -----
+	private static boolean remove(final String key, final boolean invalidation) {
+
+		final CacheEntry entry = cache.remove(key);
+
+		insertionOrder.remove(key);
+
+		if (entry != null) {
+
+			for (final String uuid : entry.dependencies) {
+
+				final Set<String> keys = dependents.get(uuid);
+				if (keys != null) {
+
+					keys.remove(key);
+
+					if (keys.isEmpty()) {
+						dependents.remove(uuid);
+					}
+				}
+			}
+
+			size.addAndGet(-entry.size);
+
+			if (invalidation) {
+				invalidations.incrementAndGet();
+			}
+
+			return true;
+		}
+
+		return false;
+	}
+
+	// ----- nested classes -----
+	/**
+	 * Collects the dependencies of a single rendering pass, shared between
+	 * the render context of a page and all nested render contexts.
+	 */
+	public static class Recorder {
+
+		private final Set<String> nodeIds = ConcurrentHashMap.newKeySet();
+		private volatile boolean dynamic  = false;
+		private long startSequence        = 0L;
+
+		private Recorder(final long startSequence) {
+			this.startSequence = startSequence;
+		}
+
+		public void addNode(final NodeInterface node) {
+			nodeIds.add(node.getUuid());
+		}
+
+		public void setDynamic() {
+			this.dynamic = true;
+		}
+
+		public void addAll(final Recorder other) {
+
+			nodeIds.addAll(other.nodeIds);
+
+			if (other.dynamic) {
+				setDynamic();
+			}
+		}
+	}
+
+	private static class CacheEntry {
+
+		private Set<String> dependencies = null;
+		private byte[] data              = null;
+		private long size                = 0L;
+
+		public CacheEntry(final String key, final byte[] data, final Set<String> dependencies) {
+
+			this.dependencies = new HashSet<>(dependencies);
+			this.data         = data;
+			this.size         = data.length + key.length();
+		}
+	}
+
+	private static class Invalidator implements StructrTransactionListener {
+
+		@Override
+		public void beforeCommit(final SecurityContext securityContext, final Collection<ModificationEvent> modificationEvents, final TransactionSource source) throws FrameworkException {
+		}
+
+		@Override
+		public void afterCommit(final SecurityContext securityContext, final Collection<ModificationEvent> modificationEvents, final TransactionSource source) {
+
+			if (cache.isEmpty()) {
+
+				// nothing to invalidate, but renderings that are in progress
+				// must not store their (possibly outdated) output
+				sequence.incrementAndGet();
+				return;
+			}
+
+			for (final ModificationEvent event : modificationEvents) {
+
+				final GraphObject obj = event.getGraphObject();
+
+				if (obj instanceof DOMNode) {
+
+					invalidate(event.getUuid());
+
+				} else if (obj instanceof RelationshipInterface) {
+
+					final RelationshipInterface rel = (RelationshipInterface)obj;
+
+					try {
+
+						final NodeInterface sourceNode = rel.getSourceNodeAsSuperUser();
+						final NodeInterface targetNode = rel.getTargetNodeAsSuperUser();
+
+						if (sourceNode instanceof DOMNode) {
+
+							invalidate(sourceNode.getUuid());
+						}
+
+						if (targetNode instanceof DOMNode) {
+
+							invalidate(targetNode.getUuid());
+						}
+
+					} catch (Throwable t) {
+
+						// nodes of deleted relationships may not be available
+						// anymore, so we don't know what was affected
+						clear();
+						return;
+					}
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,262 @@
+/**
+ * Copyright (C) 2010-2018 Structr GmbH
+ *
+ * This file is part of Structr <http://structr.org>.
+ *
+ * Structr is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Structr is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.structr.web.common;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.LinkedList;
+import java.util.Queue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import javax.servlet.ServletOutputStream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Bounded buffer for asynchronous streaming of rendered output.
+ *
+ * The rendering thread appends chunks to this buffer, the output is written
+ * to the client by {@link #writeTo(ServletOutputStream)} whenever the output
+ * stream is ready. When the buffer is full, the rendering thread is paused
+ * until the client has received enough data. When the buffer runs empty, the
+ * writer registers itself and is called again as soon as new data arrives,
+ * so there is no need to poll.
+ */
+public class StreamingRenderBuffer extends AsyncBuffer {
+
+	private static final Logger logger = LoggerFactory.getLogger(StreamingRenderBuffer.class.getName());
+
+	private final ReentrantLock lock    = new ReentrantLock();
+	private final Condition notFull     = lock.newCondition();
+	private final Queue<String> chunks  = new ArrayDeque<>();
+	private Runnable listener           = null;
+	private boolean waitingForData      = false;
+	private boolean finished            = false;
+	private boolean cancelled           = false;
+	private boolean completed           = false;
+	private long timeout                = 0L;
+	private int capacity                = 0;
+	private int size                    = 0;
+
+	/**
+	 * Creates a new buffer.
+	 *
+	 * @param capacity the number of characters after which the rendering thread is paused
+	 * @param timeout the maximum time in milliseconds to wait for the client
+	 */
+	public StreamingRenderBuffer(final int capacity, final long timeout) {
+
+		this.capacity = Math.max(1, capacity);
+		this.timeout  = timeout;
+	}
+
+	/**
+	 * Sets the listener that is notified when new data arrives after
+	 * the writer ran out of data.
+	 *
+	 * @param listener
+	 */
+	public void setListener(final Runnable listener) {
+		this.listener = listener;
+	}
+
+	@Override
+	public AsyncBuffer append(final String s) {
+
+		if (s == null || s.isEmpty()) {
+			return this;
+		}
+
+		boolean notify = false;
+
+		lock.lock();
+		try {
+
+			long nanos = TimeUnit.MILLISECONDS.toNanos(timeout);
+
+			// back-pressure: wait for the client to receive data
+			while (size >= capacity && !cancelled) {
+
+				if (nanos <= 0L) {
+
+					logger.warn("Client did not receive any data for {} ms, cancelling output.", timeout);
+					cancel();
+					break;
+				}
+
+				nanos = notFull.awaitNanos(nanos);
+			}
+
+			if (!cancelled) {
+
+				chunks.add(s);
+				size += s.length();
+
+				notify = checkWaitingForData();
+			}
+
+		} catch (InterruptedException iex) {
+
+			Thread.currentThread().interrupt();
+			cancel();
+
+		} finally {
+
+			lock.unlock();
+		}
+
+		if (notify) {
+			notifyListener();
+		}
+
+		return this;
+	}
+
+	@Override
+	public Queue<String> getQueue() {
+
+		lock.lock();
+		try {
+
+			return new LinkedList<>(chunks);
+
+		} finally {
+
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Signals that no more data will be appended.
+	 */
+	public void finish() {
+
+		boolean notify = false;
+
+		lock.lock();
+		try {
+
+			finished = true;
+			notify   = checkWaitingForData();
+
+		} finally {
+
+			lock.unlock();
+		}
+
+		if (notify) {
+			notifyListener();
+		}
+	}
+
+	/**
+	 * Discards all buffered data and all data that is appended afterwards,
+	 * e.g. because the client closed the connection.
+	 */
+	public void cancel() {
+
+		lock.lock();
+		try {
+
+			cancelled = true;
+			size      = 0;
+
+			chunks.clear();
+			notFull.signalAll();
+
+		} finally {
+
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Writes buffered data to the given output stream as long as it is ready.
+	 *
+	 * @param out the output stream
+	 * @return true if all data was written and no more data will be appended,
+	 *         which happens exactly once
+	 *
+	 * @throws IOException
+	 */
+	public boolean writeTo(final ServletOutputStream out) throws IOException {
+
+		while (out.isReady()) {
+
+			String chunk = null;
+
+			lock.lock();
+			try {
+
+				chunk = chunks.poll();
+				if (chunk != null) {
+
+					size -= chunk.length();
+					notFull.signalAll();
+
+				} else if (finished || cancelled) {
+
+					if (!completed) {
+
+						completed = true;
+						return true;
+					}
+
+					return false;
+
+				} else {
+
+					// call the listener when the next chunk arrives
+					waitingForData = true;
+					return false;
+				}
+
+			} finally {
+
+				lock.unlock();
+			}
+
+			out.write(chunk.getBytes(StandardCharsets.UTF_8));
+		}
+
+		// the container calls the write listener again when the stream is ready
+		return false;
+	}
+
+	// ----- private methods -----
+	private boolean checkWaitingForData() {
+
+		if (waitingForData) {
+
+			waitingForData = false;
+			return true;
+		}
+
+		return false;
+	}
+
+	private void notifyListener() {
+
+		if (listener != null) {
+			listener.run();
+		}
+	}
+}
@@ -0,0 +1,264 @@
+/**
+ * Copyright (C) 2010-2018 Structr GmbH
+ *
+ * This file is part of Structr <http://structr.org>.
+ *
+ * Structr is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Structr is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.structr.web.common;
+
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.structr.api.config.Settings;
+import org.structr.common.SecurityContext;
+import org.structr.common.error.FrameworkException;
+import org.structr.core.GraphObject;
+import org.structr.core.StructrTransactionListener;
+import org.structr.core.TransactionSource;
+import org.structr.core.app.App;
+import org.structr.core.app.StructrApp;
+import org.structr.core.graph.ModificationEvent;
+import org.structr.core.graph.TransactionCommand;
+import org.structr.core.graph.Tx;
+import org.structr.core.property.PropertyKey;
+import org.structr.web.entity.File;
+import org.structr.web.entity.Image;
+import org.structr.web.property.ThumbnailProperty;
+
+/**
+ * Creates thumbnails of images in a bounded pool of worker threads.
+ *
+ * Concurrent requests for the same thumbnail (i.e. the same image, size
+ * and crop mode) are merged into a single job. Callers don't wait for the
+ * result, they use a placeholder (the outdated thumbnail, if any) until
+ * the thumbnail has been created. The thumbnails of the
+ * tnSmall and tnMid properties are created in advance when the content of
+ * an image is modified.
+ */
+public class ThumbnailGenerator {
+
+	private static final Logger logger                                 = LoggerFactory.getLogger(ThumbnailGenerator.class.getName());
+	private static final Map<String, CompletableFuture<String>> pending = new ConcurrentHashMap<>();
+	private static final Pregenerator pregenerator                     = new Pregenerator();
+	private static final AtomicLong submitted                          = new AtomicLong();
+	private static final AtomicLong deduplicated                       = new AtomicLong();
+	private static final AtomicLong rejected                           = new AtomicLong();
+	private static final AtomicLong completed                          = new AtomicLong();
+	private static final AtomicLong failed                             = new AtomicLong();
+	private static final AtomicLong decodeCount                        = new AtomicLong();
+	private static final AtomicLong decodeTime                         = new AtomicLong();
+	private static final AtomicLong maxDecodeTime                      = new AtomicLong();
+	private static ThreadPoolExecutor executor                         = null;
+
+	/**
+	 * Registers the transaction listener that creates the thumbnails of
+	 * new or modified images. Can be called more than once.
+	 */
+	public static void register() {
+		TransactionCommand.registerTransactionListener(pregenerator);
+	}
+
+	/**
+	 * Schedules the creation of a thumbnail of the given image, or returns
+	 * the pending job if the same thumbnail is already being created.
+	 *
+	 * @param image
+	 * @param maxWidth
+	 * @param maxHeight
+	 * @param cropToFit
+	 *
+	 * @return a future that provides the UUID of the thumbnail, or null if the job was rejected
+	 */
+	public static CompletableFuture<String> submit(final Image image, final int maxWidth, final int maxHeight, final boolean cropToFit) {
+
+		final String uuid                        = image.getUuid();
+		final String key                         = uuid + "/" + maxWidth + "x" + maxHeight + "/" + cropToFit;
+		final CompletableFuture<String> future   = new CompletableFuture<>();
+		final CompletableFuture<String> existing = pending.putIfAbsent(key, future);
+
+		if (existing != null) {
+
+			deduplicated.incrementAndGet();
+			return existing;
+		}
+
+		try {
+
+			getExecutor().execute(() -> {
+
+				try {
+
+					future.complete(createThumbnail(uuid, maxWidth, maxHeight, cropToFit));
+					completed.incrementAndGet();
+
+				} catch (Throwable t) {
+
+					logger.warn("Unable to create thumbnail for {}: {}", uuid, t.getMessage());
+
+					future.completeExceptionally(t);
+					failed.incrementAndGet();
+
+				} finally {
+
+					pending.remove(key, future);
+				}
+			});
+
+			submitted.incrementAndGet();
+
+			return future;
+
+		} catch (RejectedExecutionException rex) {
+
+			pending.remove(key, future);
+			rejected.incrementAndGet();
+
+			logger.debug("Thumbnail queue is full, not creating thumbnail for {}", uuid);
+
+			return null;
+		}
+	}
+
+	/**
+	 * Records the time it took to decode and scale an image.
+	 *
+	 * @param millis
+	 */
+	public static void recordDecodeTime(final long millis) {
+
+		decodeCount.incrementAndGet();
+		decodeTime.addAndGet(millis);
+		maxDecodeTime.accumulateAndGet(millis, Math::max);
+	}
+
+	public static Map<String, Long> getStatistics() {
+
+		final Map<String, Long> statistics = new LinkedHashMap<>();
+		final ThreadPoolExecutor _executor = executor;
+		final long count                   = decodeCount.get();
+
+		statistics.put("queued",          _executor != null ? Long.valueOf(_executor.getQueue().size()) : 0L);
+		statistics.put("active",          _executor != null ? Long.valueOf(_executor.getActiveCount()) : 0L);
+		statistics.put("pending",         Long.valueOf(pending.size()));
+		statistics.put("submitted",       submitted.get());
+		statistics.put("deduplicated",    deduplicated.get());
+		statistics.put("rejected",        rejected.get());
+		statistics.put("completed",       completed.get());
+		statistics.put("failed",          failed.get());
+		statistics.put("decoded",         count);
+		statistics.put("averageDecodeMs", count > 0 ? decodeTime.get() / count : 0L);
+		statistics.put("maxDecodeMs",     maxDecodeTime.get());
+
+		return statistics;
+	}
+
+	// ----- private methods -----
+	private static synchronized ThreadPoolExecutor getExecutor() {
+
+		if (executor == null) {
+
+			final int threads            = Math.max(1, Settings.ThumbnailThreads.getValue());
+			final AtomicInteger threadId = new AtomicInteger();
+
+			executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<>(Math.max(1, Settings.ThumbnailQueueSize.getValue())), r -> {
+
+				final Thread thread = new Thread(r, "ThumbnailGenerator-" + threadId.incrementAndGet());
+				thread.setDaemon(true);
+
+				return thread;
+			});
+
+			executor.allowCoreThreadTimeOut(true);
+		}
+
+		return executor;
+	}
+
+	private static String createThumbnail(final String uuid, final int maxWidth, final int maxHeight, final boolean cropToFit) throws FrameworkException {
+
+		final App app = StructrApp.getInstance();
+		String result = null;
+
+		try (final Tx tx = app.tx()) {
+
+			final Image image = app.get(Image.class, uuid);
+			if (image != null) {
+
+				final Image thumbnail = Image.getScaledImage(image, maxWidth, maxHeight, cropToFit, false);
+				if (thumbnail != null) {
+
+					result = thumbnail.getUuid();
+				}
+			}
+
+			tx.success();
+		}
+
+		return result;
+	}
+
+	// ----- nested classes -----
+	private static class Pregenerator implements StructrTransactionListener {
+
+		@Override
+		public void beforeCommit(final SecurityContext securityContext, final Collection<ModificationEvent> modificationEvents, final TransactionSource source) throws FrameworkException {
+		}
+
+		@Override
+		public void afterCommit(final SecurityContext securityContext, final Collection<ModificationEvent> modificationEvents, final TransactionSource source) {
+
+			if (!Settings.ThumbnailPregenerate.getValue() || Settings.ThumbnailThreads.getValue() <= 0) {
+				return;
+			}
+
+			final PropertyKey<Long> checksumKey = StructrApp.key(File.class, "checksum");
+
+			for (final ModificationEvent event : modificationEvents) {
+
+				final GraphObject obj = event.getGraphObject();
+
+				// the checksum is set whenever new content has been written
+				if (obj instanceof Image && !event.isDeleted() && (event.getModifiedProperties().containsKey(checksumKey) || event.getNewProperties().containsKey(checksumKey))) {
+
+					final Image image = (Image)obj;
+
+					if (!image.isThumbnail()) {
+
+						for (final String name : new String[] { "tnSmall", "tnMid" }) {
+
+							final PropertyKey key = StructrApp.key(image.getClass(), name);
+							if (key instanceof ThumbnailProperty) {
+
+								final ThumbnailProperty tnProperty = (ThumbnailProperty)key;
+
+								submit(image, tnProperty.getWidth(), tnProperty.getHeight(), tnProperty.getCrop());
+							}
+						}
+					}
+				}
+			}
+		}
+	}
+}
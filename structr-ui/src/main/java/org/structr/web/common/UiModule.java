@@ -104,6 +104,9 @@ public class UiModule implements StructrModule {
 		Functions.put(enterpriseEdition, LicenseManager.Enterprise, "parse",                    new ParseFunction());
 		Functions.put(enterpriseEdition, LicenseManager.Enterprise, "createArchive", 		new CreateArchiveFunction());
 		Functions.put(enterpriseEdition, LicenseManager.Enterprise, "schedule",                 new ScheduleFunction());
+
+		// create thumbnails of new images in the background
+		ThumbnailGenerator.register();
 	}
 
 	@Override
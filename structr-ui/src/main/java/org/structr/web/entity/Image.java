@@ -23,6 +23,7 @@ import java.net.URI;
 import java.util.LinkedList;
 import java.util.List;
 import org.apache.commons.lang3.StringUtils;
+import org.structr.api.config.Settings;
 import org.structr.common.ConstantBooleanTrue;
 import org.structr.common.PropertyView;
 import org.structr.common.SecurityContext;
@@ -34,6 +35,7 @@ import org.structr.core.entity.AbstractNode;
 import org.structr.core.entity.Relation;
 import org.structr.core.entity.Relation.Cardinality;
 import org.structr.core.graph.ModificationQueue;
+import org.structr.core.graph.TransactionCommand;
 import org.structr.core.property.PropertyKey;
 import org.structr.core.property.PropertyMap;
 import org.structr.schema.SchemaService;
@@ -44,6 +46,7 @@ import org.structr.schema.json.JsonSchema.Cascade;
 import org.structr.web.common.FileHelper;
 import org.structr.web.common.ImageHelper;
 import org.structr.web.common.ImageHelper.Thumbnail;
+import org.structr.web.common.ThumbnailGenerator;
 import org.structr.web.entity.relation.Thumbnails;
 import org.structr.web.property.ImageDataProperty;
 import org.structr.web.property.ThumbnailProperty;
@@ -307,6 +310,24 @@ public interface Image extends File {
 	 * @return scaled image
 	 * */
 	public static Image getScaledImage(final Image thisImage, final int maxWidth, final int maxHeight, final boolean cropToFit) {
+		return getScaledImage(thisImage, maxWidth, maxHeight, cropToFit, true);
+	}
+
+	/**
+	 * Get (down-)scaled image of this image
+	 *
+	 * If async is true, a missing scaled image is created by the thumbnail
+	 * workers, and the outdated scaled image (if any) is returned until the
+	 * new one is available.
+	 *
+	 * @param maxWidth
+	 * @param maxHeight
+	 * @param cropToFit if true, scale down until the shorter edge fits inside the rectangle, and then crop
+	 * @param async
+	 *
+	 * @return scaled image
+	 * */
+	public static Image getScaledImage(final Image thisImage, final int maxWidth, final int maxHeight, final boolean cropToFit, final boolean async) {
 
 		final Iterable<Relation> thumbnailRelationships = thisImage.getOutgoingRelationships(StructrApp.getConfiguration().getRelationshipEntityClass("ImageTHUMBNAILImage"));
 		final SecurityContext securityContext           = thisImage.getSecurityContext();
@@ -382,91 +403,106 @@ public interface Image extends File {
 
 		}
 
+		// images that were created in the current transaction are not visible to
+		// the thumbnail workers, so their thumbnails are created synchronously
+		if (async && Settings.ThumbnailThreads.getValue() > 0 && !TransactionCommand.isCreated(originalImage.getNode())) {
+
+			ThumbnailGenerator.submit(originalImage, maxWidth, maxHeight, cropToFit);
+
+			return thumbnail;
+		}
+
 		if (originalImage.getIsCreatingThumb()) {
 
 			logger.debug("Another thumbnail is being created - waiting....");
 
-		} else {
+			return thumbnail;
+		}
 
-			try {
+		try {
 
-				// No thumbnail exists, or thumbnail was too old, so let's create a new one
-				logger.debug("Creating thumbnail for {} (w={} h={} crop={})", new Object[] { getName(), maxWidth, maxHeight, cropToFit });
+			// No thumbnail exists, or thumbnail was too old, so let's create a new one
+			logger.debug("Creating thumbnail for {} (w={} h={} crop={})", new Object[] { originalImage.getName(), maxWidth, maxHeight, cropToFit });
 
-				originalImage.unlockSystemPropertiesOnce();
-				originalImage.setIsCreatingThumb(true);
+			originalImage.unlockSystemPropertiesOnce();
+			originalImage.setIsCreatingThumb(true);
 
-				final App app = StructrApp.getInstance();
+			final App app = StructrApp.getInstance();
+
+			if (!newChecksum.equals(currentChecksum)) {
 
 				originalImage.unlockSystemPropertiesOnce();
 				originalImage.setProperty(StructrApp.key(File.class, "checksum"), newChecksum);
+			}
 
-				final Thumbnail thumbnailData = ImageHelper.createThumbnail(originalImage, maxWidth, maxHeight, cropToFit);
-				if (thumbnailData != null) {
+			final long t0                 = System.currentTimeMillis();
+			final Thumbnail thumbnailData = ImageHelper.createThumbnail(originalImage, maxWidth, maxHeight, cropToFit);
 
-					final Integer tnWidth  = thumbnailData.getWidth();
-					final Integer tnHeight = thumbnailData.getHeight();
-					byte[] data            = null;
+			ThumbnailGenerator.recordDecodeTime(System.currentTimeMillis() - t0);
 
-					try {
+			if (thumbnailData != null) {
 
-						data = thumbnailData.getBytes();
-						final String thumbnailName = ImageHelper.getThumbnailName(originalImage.getName(), tnWidth, tnHeight);
+				final Integer tnWidth  = thumbnailData.getWidth();
+				final Integer tnHeight = thumbnailData.getHeight();
+				byte[] data            = null;
 
-						// create thumbnail node
-						thumbnail = ImageHelper.createImageNode(securityContext, data, "image/" + Thumbnail.defaultFormat, Image.class, thumbnailName, true);
+				try {
 
-					} catch (IOException ex) {
+					data = thumbnailData.getBytes();
+					final String thumbnailName = ImageHelper.getThumbnailName(originalImage.getName(), tnWidth, tnHeight);
 
-						logger.warn("Could not create thumbnail image for " + getUuid(), ex);
+					// create thumbnail node
+					thumbnail = ImageHelper.createImageNode(securityContext, data, "image/" + Thumbnail.defaultFormat, Image.class, thumbnailName, true);
 
-					}
+				} catch (IOException ex) {
 
-					if (thumbnail != null && data != null) {
-
-						// Create a thumbnail relationship
-						final PropertyMap relProperties = new PropertyMap();
-						relProperties.put(StructrApp.key(Image.class, "width"),                  tnWidth);
-						relProperties.put(StructrApp.key(Image.class, "height"),                 tnHeight);
-						relProperties.put(StructrApp.key(Image.class, "checksum"),               newChecksum);
-
-						app.create(originalImage, thumbnail, Thumbnails.class, relProperties);
-
-						final PropertyMap properties = new PropertyMap();
-						properties.put(StructrApp.key(Image.class, "width"),                              tnWidth);
-						properties.put(StructrApp.key(Image.class, "height"),                             tnHeight);
-						properties.put(StructrApp.key(AbstractNode.class, "hidden"),                      originalImage.getProperty(AbstractNode.hidden));
-						properties.put(StructrApp.key(AbstractNode.class, "visibleToAuthenticatedUsers"), originalImage.getProperty(AbstractNode.visibleToAuthenticatedUsers));
-						properties.put(StructrApp.key(AbstractNode.class, "visibleToPublicUsers"),        originalImage.getProperty(AbstractNode.visibleToPublicUsers));
-						properties.put(StructrApp.key(File.class, "size"),                                Long.valueOf(data.length));
-						properties.put(StructrApp.key(AbstractNode.class, "owner"),                       originalImage.getProperty(AbstractNode.owner));
-						properties.put(StructrApp.key(File.class, "parent"),                              originalImage.getParent());
-						properties.put(StructrApp.key(File.class, "hasParent"),                           originalImage.getProperty(StructrApp.key(Image.class, "hasParent")));
-
-						thumbnail.unlockSystemPropertiesOnce();
-						thumbnail.setProperties(securityContext, properties);
-
-						// Delete outdated thumbnails
-						for (final Image tn : oldThumbnails) {
-							app.delete(tn);
-						}
+					logger.warn("Could not create thumbnail image for " + getUuid(), ex);
 
+				}
+
+				if (thumbnail != null && data != null) {
+
+					// Create a thumbnail relationship
+					final PropertyMap relProperties = new PropertyMap();
+					relProperties.put(StructrApp.key(Image.class, "width"),                  tnWidth);
+					relProperties.put(StructrApp.key(Image.class, "height"),                 tnHeight);
+					relProperties.put(StructrApp.key(Image.class, "checksum"),               newChecksum);
+
+					app.create(originalImage, thumbnail, Thumbnails.class, relProperties);
+
+					final PropertyMap properties = new PropertyMap();
+					properties.put(StructrApp.key(Image.class, "width"),                              tnWidth);
+					properties.put(StructrApp.key(Image.class, "height"),                             tnHeight);
+					properties.put(StructrApp.key(AbstractNode.class, "hidden"),                      originalImage.getProperty(AbstractNode.hidden));
+					properties.put(StructrApp.key(AbstractNode.class, "visibleToAuthenticatedUsers"), originalImage.getProperty(AbstractNode.visibleToAuthenticatedUsers));
+					properties.put(StructrApp.key(AbstractNode.class, "visibleToPublicUsers"),        originalImage.getProperty(AbstractNode.visibleToPublicUsers));
+					properties.put(StructrApp.key(File.class, "size"),                                Long.valueOf(data.length));
+					properties.put(StructrApp.key(AbstractNode.class, "owner"),                       originalImage.getProperty(AbstractNode.owner));
+					properties.put(StructrApp.key(File.class, "parent"),                              originalImage.getParent());
+					properties.put(StructrApp.key(File.class, "hasParent"),                           originalImage.getProperty(StructrApp.key(Image.class, "hasParent")));
+
+					thumbnail.unlockSystemPropertiesOnce();
+					thumbnail.setProperties(securityContext, properties);
+
+					// Delete outdated thumbnails
+					for (final Image tn : oldThumbnails) {
+						app.delete(tn);
 					}
 
-				} else {
+				}
 
-					logger.debug("Could not create thumbnail for image {} ({})", getName(), getUuid());
+			} else {
 
-				}
+				logger.debug("Could not create thumbnail for image {} ({})", getName(), getUuid());
 
-				originalImage.unlockSystemPropertiesOnce();
-				originalImage.setIsCreatingThumb(false);
+			}
 
-			} catch (FrameworkException fex) {
+			originalImage.unlockSystemPropertiesOnce();
+			originalImage.setIsCreatingThumb(false);
 
-				logger.warn("Unable to create thumbnail for " + getUuid(), fex);
+		} catch (FrameworkException fex) {
 
-			}
+			logger.warn("Unable to create thumbnail for " + getUuid(), fex);
 
 		}
 
@@ -45,6 +45,8 @@ public interface Comment extends Content, org.w3c.dom.Comment, NonIndexed {
 
 	static void render(final Comment comment, final RenderContext renderContext, final int depth) throws FrameworkException {
 
+		renderContext.recordRenderedNode(comment);
+
 		final String _content = comment.getContent();
 
 		// Avoid rendering existing @structr comments since those comments are
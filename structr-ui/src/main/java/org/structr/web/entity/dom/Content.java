@@ -132,6 +132,7 @@ public interface Content extends DOMNode, Text, NonIndexed, Favoritable {
 
 		type.addViewProperty(PropertyView.Ui, "hideOnDetail");
 		type.addViewProperty(PropertyView.Ui, "hideOnIndex");
+		type.addViewProperty(PropertyView.Ui, "cacheable");
 		type.addViewProperty(PropertyView.Ui, "sharedComponentConfiguration");
 		type.addViewProperty(PropertyView.Ui, "isDOMNode");
 		type.addViewProperty(PropertyView.Ui, "pageId");
@@ -252,6 +252,7 @@ public interface DOMElement extends DOMNode, Element, NamedNodeMap, NonIndexed {
 		type.addViewProperty(PropertyView.Ui, "syncedNodes");
 		type.addViewProperty(PropertyView.Ui, "data-structr-id");
 		type.addViewProperty(PropertyView.Ui, "renderDetails");
+		type.addViewProperty(PropertyView.Ui, "cacheable");
 		type.addViewProperty(PropertyView.Ui, "children");
 		type.addViewProperty(PropertyView.Ui, "childrenIds");
 		type.addViewProperty(PropertyView.Ui, "showForLocales");
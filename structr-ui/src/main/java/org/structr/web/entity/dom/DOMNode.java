@@ -115,6 +115,7 @@ public interface DOMNode extends NodeInterface, Node, Renderable, DOMAdoptable,
 		type.addBooleanProperty("hideOnIndex");
 		type.addBooleanProperty("hideOnDetail");
 		type.addBooleanProperty("dontCache").setDefaultValue("false");
+		type.addBooleanProperty("cacheable").setDefaultValue("false");
 		type.addBooleanProperty("isDOMNode").setReadOnly(true).addTransformer(ConstantBooleanTrue.class.getName());
 
 		type.addIntegerProperty("domSortPosition");
@@ -163,6 +164,7 @@ public interface DOMNode extends NodeInterface, Node, Renderable, DOMAdoptable,
 
 		type.overrideMethod("inTrash",                     false, "return getParent() == null && getOwnerDocumentAsSuperUser() == null;");
 		type.overrideMethod("dontCache",                   false, "return getProperty(dontCacheProperty);");
+		type.overrideMethod("isCacheable",                 false, "return getProperty(cacheableProperty);");
 		type.overrideMethod("renderDetails",               false, "return getProperty(renderDetailsProperty);");
 		type.overrideMethod("hideOnIndex",                 false, "return getProperty(hideOnIndexProperty);");
 		type.overrideMethod("hideOnDetail",                false, "return getProperty(hideOnDetailProperty);");
@@ -295,6 +297,7 @@ public interface DOMNode extends NodeInterface, Node, Renderable, DOMAdoptable,
 	boolean avoidWhitespace();
 	boolean inTrash();
 	boolean dontCache();
+	boolean isCacheable();
 	boolean hideOnIndex();
 	boolean hideOnDetail();
 	boolean renderDetails();
@@ -1382,6 +1385,10 @@ public interface DOMNode extends NodeInterface, Node, Renderable, DOMAdoptable,
 
 	static void render(final DOMNode thisNode, final RenderContext renderContext, final int depth) throws FrameworkException {
 
+		// record node before visibility checks, cached output must be
+		// invalidated when the node becomes visible as well
+		renderContext.recordRenderedNode(thisNode);
+
 		final SecurityContext securityContext = renderContext.getSecurityContext();
 		if (!securityContext.isVisible(thisNode)) {
 			return;
@@ -1400,6 +1407,11 @@ public interface DOMNode extends NodeInterface, Node, Renderable, DOMAdoptable,
 
 		final EditMode editMode = renderContext.getEditMode(securityContext.getUser(false));
 
+		// static subtrees marked as cacheable are taken from the output cache
+		if (thisNode.isCacheable() && renderContext.renderCachedFragment(thisNode, depth)) {
+			return;
+		}
+
 		if (EditMode.RAW.equals(editMode) || EditMode.WIDGET.equals(editMode) || EditMode.DEPLOYMENT.equals(editMode)) {
 
 			thisNode.renderContent(renderContext, depth);
@@ -1410,6 +1422,8 @@ public interface DOMNode extends NodeInterface, Node, Renderable, DOMAdoptable,
 
 			if (StringUtils.isNotBlank(subKey)) {
 
+				renderContext.recordDataAccess();
+
 				final GraphObject currentDataNode = renderContext.getDataObject();
 
 				// fetch (optional) list of external data elements
@@ -447,6 +447,7 @@ public interface Page extends DOMNode, Linkable, Document, DOMImplementation {
 	public static void render(final Page thisPage, final RenderContext renderContext, final int depth) throws FrameworkException {
 
 		renderContext.setPage(thisPage);
+		renderContext.recordRenderedNode(thisPage);
 
 		// Skip DOCTYPE node
 		DOMNode subNode = (DOMNode) thisPage.getFirstChild().getNextSibling();
@@ -22,16 +22,27 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.text.SimpleDateFormat;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Deque;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.structr.api.config.Settings;
 import org.structr.common.AccessMode;
 import org.structr.common.ResultTransformer;
 import org.structr.common.SecurityContext;
 import org.structr.common.error.FrameworkException;
+import org.structr.core.GraphObject;
 import org.structr.core.JsonInput;
 import org.structr.core.app.App;
 import org.structr.core.app.StructrApp;
@@ -76,6 +87,21 @@ public class CSVFileImportJob extends FileImportJob {
 		return true;
 	}
 
+	/**
+	 * The import runs in a pipeline: this thread parses the CSV file and
+	 * collects the records in chunks of <code>commitInterval</code>, the
+	 * chunks are mapped, converted and written in separate transactions
+	 * by a number of writer threads (configuration entry "writers", default
+	 * is the setting <code>application.import.csv.writers</code>). Finished
+	 * chunks are reported in order, and the number of chunks in memory is
+	 * limited to twice the number of writers.
+	 *
+	 * Concurrent writer transactions can't see each other's uncommitted
+	 * nodes, so uniqueness constraints and the lookup of related nodes in
+	 * the mapping can create duplicates if more than one writer is used.
+	 * This is why the default is a single writer, more writers should only
+	 * be configured for imports that don't rely on either.
+	 */
 	@Override
 	public Runnable getRunnable() {
 
@@ -88,6 +114,7 @@ public class CSVFileImportJob extends FileImportJob {
 			final String quoteChar                   = getOrDefault(configuration.get("quoteChar"), "\"");
 			final String range                       = getOrDefault(configuration.get("range"), "");
 			final Integer commitInterval             = parseInt(configuration.get("commitInterval"), 1000);
+			final Integer writers                    = Math.max(1, parseInt(configuration.get("writers"), Settings.CsvImportWriters.getValue()));
 
 			logger.info("Importing CSV from {} ({}) to {} using {}", filePath, fileUuid, targetType, configuration);
 
@@ -95,14 +122,10 @@ public class CSVFileImportJob extends FileImportJob {
 			final SimpleDateFormat df      = new SimpleDateFormat("yyyyMMddHHMM");
 			final String importTypeName    = "ImportFromCsv" + df.format(System.currentTimeMillis());
 
-			final SecurityContext threadContext = SecurityContext.getInstance(user, AccessMode.Backend);
+			final SecurityContext threadContext = createSecurityContext();
 			final App app                       = StructrApp.getInstance(threadContext);
-
-			// disable transaction notifications
-			threadContext.disableModificationOfAccessTime();
-			threadContext.ignoreResultCount(true);
-			threadContext.setDoTransactionNotifications(false);
-			threadContext.disableEnsureCardinality();
+			final ExecutorService executor      = Executors.newFixedThreadPool(writers);
+			final Deque<Future<Chunk>> chunks   = new ArrayDeque<>();
 
 			try (final InputStream is = getFileInputStream(threadContext)) {
 
@@ -115,50 +138,62 @@ public class CSVFileImportJob extends FileImportJob {
 				reportBegin();
 
 				final ResultTransformer mapper     = builder.createMapping(app, targetType, importTypeName, importMappings, transforms);
+				final String mapperId              = ((GraphObject)mapper).getUuid();
 				final Class targetEntityType       = StructrApp.getConfiguration().getNodeEntityClass(targetType);
 				final Character fieldSeparator     = delimiter.charAt(0);
 				final Character quoteCharacter     = StringUtils.isNotEmpty(quoteChar) ? quoteChar.charAt(0) : null;
 				final Iterable<JsonInput> iterable = CsvHelper.cleanAndParseCSV(threadContext, new InputStreamReader(is, "utf-8"), targetEntityType, fieldSeparator, quoteCharacter, range, reverse(importMappings));
 				final Iterator<JsonInput> iterator = iterable.iterator();
-				int chunks                         = 0;
+				int chunkCount                     = 0;
 				int overallCount                   = 0;
+				boolean aborted                    = false;
 
-				while (iterator.hasNext()) {
+				while (iterator.hasNext() && !aborted) {
 
-					int count = 0;
+					final List<JsonInput> records = new ArrayList<>(commitInterval);
 
-					try (final Tx tx = app.tx()) {
+					while (iterator.hasNext() && records.size() < commitInterval) {
+						records.add(iterator.next());
+					}
 
-						final long chunkStartTime = System.currentTimeMillis();
+					chunks.add(executor.submit(() -> importChunk(mapperId, targetEntityType, records)));
 
-						while (iterator.hasNext() && count++ < commitInterval) {
+					// wait for the oldest chunk if the pipeline is full,
+					// report all chunks that are finished in order
+					while (!chunks.isEmpty() && (chunks.size() >= writers * 2 || chunks.peek().isDone())) {
 
-							final JsonInput input = iterator.next();
+						final Chunk chunk = getResult(chunks.poll());
 
-							mapper.transformInput(threadContext, targetEntityType, input);
+						overallCount += chunk.count;
+						chunkCount++;
 
-							app.create(targetEntityType, PropertyMap.inputTypeToJavaType(threadContext, targetEntityType, input));
+						chunkFinished(chunk.startTime, chunkCount, chunk.count, overallCount);
 
-							overallCount++;
-						}
+						// do this outside of the transaction!
+						shouldPause();
+						if (shouldAbort()) {
 
-						tx.success();
+							aborted = true;
+							break;
+						}
+					}
+				}
 
-						chunks++;
+				while (!chunks.isEmpty()) {
 
-						chunkFinished(chunkStartTime, chunks, commitInterval, overallCount);
+					final Chunk chunk = getResult(chunks.poll());
 
-					}
+					overallCount += chunk.count;
+					chunkCount++;
 
-					// do this outside of the transaction!
-					shouldPause();
-					if (shouldAbort()) {
-						return;
+					if (!aborted) {
+						chunkFinished(chunk.startTime, chunkCount, chunk.count, overallCount);
 					}
-
 				}
 
-				importFinished(startTime, overallCount);
+				if (!aborted) {
+					importFinished(startTime, overallCount);
+				}
 
 			} catch (IOException | FrameworkException fex) {
 
@@ -166,6 +201,16 @@ public class CSVFileImportJob extends FileImportJob {
 
 			} finally {
 
+				// skip chunks that were not started yet (e.g. after an error)
+				// and let running chunks finish before the mapping is removed
+				for (final Future<Chunk> chunk : chunks) {
+					chunk.cancel(false);
+				}
+
+				executor.shutdown();
+
+				try { executor.awaitTermination(1, TimeUnit.MINUTES); } catch (InterruptedException ignore) {}
+
 				try {
 					builder.removeMapping(app, targetType, importTypeName);
 				} catch (FrameworkException ex) {
@@ -192,4 +237,81 @@ public class CSVFileImportJob extends FileImportJob {
 	public String getJobExceptionMessageType() {
 		return "FILE_IMPORT_EXCEPTION";
 	}
+
+	// ----- private methods -----
+	private SecurityContext createSecurityContext() {
+
+		final SecurityContext securityContext = SecurityContext.getInstance(user, AccessMode.Backend);
+
+		// disable transaction notifications
+		securityContext.disableModificationOfAccessTime();
+		securityContext.ignoreResultCount(true);
+		securityContext.setDoTransactionNotifications(false);
+		securityContext.disableEnsureCardinality();
+
+		return securityContext;
+	}
+
+	/**
+	 * Maps, converts and creates the given records in a single transaction.
+	 * Each writer thread uses its own security context and loads its own
+	 * instance of the mapping.
+	 */
+	private Chunk importChunk(final String mapperId, final Class targetEntityType, final List<JsonInput> records) throws FrameworkException {
+
+		final SecurityContext securityContext = createSecurityContext();
+		final App app                         = StructrApp.getInstance(securityContext);
+		final long startTime                  = System.currentTimeMillis();
+
+		try (final Tx tx = app.tx()) {
+
+			final ResultTransformer mapper = (ResultTransformer)app.getNodeById(mapperId);
+
+			for (final JsonInput input : records) {
+
+				mapper.transformInput(securityContext, targetEntityType, input);
+
+				app.create(targetEntityType, PropertyMap.inputTypeToJavaType(securityContext, targetEntityType, input));
+			}
+
+			tx.success();
+		}
+
+		return new Chunk(startTime, records.size());
+	}
+
+	private Chunk getResult(final Future<Chunk> chunk) throws FrameworkException {
+
+		try {
+
+			return chunk.get();
+
+		} catch (ExecutionException eex) {
+
+			final Throwable cause = eex.getCause();
+
+			if (cause instanceof FrameworkException) {
+				throw (FrameworkException)cause;
+			}
+
+			throw new FrameworkException(500, cause.getMessage());
+
+		} catch (InterruptedException iex) {
+
+			throw new FrameworkException(500, "Import was interrupted");
+		}
+	}
+
+	// ----- nested classes -----
+	private static class Chunk {
+
+		private long startTime = 0L;
+		private int count      = 0;
+
+		public Chunk(final long startTime, final int count) {
+
+			this.startTime = startTime;
+			this.count     = count;
+		}
+	}
 }
@@ -76,6 +76,11 @@ abstract class FileImportJob extends ScheduledJob {
 		return processedChunks;
 	}
 
+	@Override
+	public boolean isWriteHeavy () {
+		return true;
+	}
+
 	@Override
 	public Map<String, Object> getStatusData (final JobStatusMessageSubtype subtype) {
 
@@ -82,6 +82,7 @@ import org.structr.schema.export.StructrSchema;
 import org.structr.schema.json.JsonSchema;
 import org.structr.web.common.FileHelper;
 import org.structr.web.common.RenderContext;
+import org.structr.web.common.RenderedOutputCache;
 import org.structr.web.entity.AbstractFile;
 import org.structr.web.entity.AbstractMinifiedFile;
 import org.structr.web.entity.Folder;
@@ -428,6 +429,7 @@ public class DeployCommand extends NodeServiceCommand implements MaintenanceComm
 
 				app.cypher("MATCH (n:DOMNode) DETACH DELETE n", null);
 				FlushCachesCommand.flushAll();
+				RenderedOutputCache.clear();
 
 				tx.success();
 			}
@@ -0,0 +1,124 @@
+/**
+ * Copyright (C) 2010-2018 Structr GmbH
+ *
+ * This file is part of Structr <http://structr.org>.
+ *
+ * Structr is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Structr is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.structr.web.maintenance;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.structr.common.SecurityContext;
+import org.structr.common.error.FrameworkException;
+import org.structr.core.app.App;
+import org.structr.core.app.StructrApp;
+import org.structr.core.graph.BulkGraphOperation;
+import org.structr.core.graph.MaintenanceCommand;
+import org.structr.core.graph.NodeServiceCommand;
+import org.structr.core.graph.Tx;
+import org.structr.core.property.PropertyKey;
+import org.structr.rest.resource.MaintenanceParameterResource;
+import org.structr.web.common.FileHelper;
+import org.structr.web.entity.File;
+
+/**
+ * Recalculates the crc32 property of files that still contain a copy of
+ * the xxHash checksum instead of the actual CRC32 value, which earlier
+ * versions stored.
+ *
+ * Set "force" to true to recalculate the crc32 property of all files
+ * that have one.
+ */
+public class RepairChecksumsCommand extends NodeServiceCommand implements MaintenanceCommand {
+
+	private static final Logger logger = LoggerFactory.getLogger(RepairChecksumsCommand.class.getName());
+
+	static {
+
+		MaintenanceParameterResource.registerMaintenanceCommand("repairChecksums", RepairChecksumsCommand.class);
+	}
+
+	@Override
+	public void execute(final Map<String, Object> attributes) throws FrameworkException {
+
+		final PropertyKey<Long> crc32Key = StructrApp.key(File.class, "crc32");
+		final App app                    = StructrApp.getInstance(securityContext);
+		final boolean force              = Boolean.TRUE.equals(attributes.get("force")) || "true".equals(attributes.get("force"));
+		List<File> files                 = null;
+
+		try (final Tx tx = app.tx()) {
+
+			files = app.nodeQuery(File.class).getAsList();
+
+			tx.success();
+		}
+
+		final long count = bulkGraphOperation(securityContext, files.iterator(), 1000, "RepairChecksums", new BulkGraphOperation<File>() {
+
+			@Override
+			public void handleGraphObject(final SecurityContext securityContext, final File file) throws FrameworkException {
+
+				final Long crc32 = file.getProperty(crc32Key);
+
+				if (crc32 != null && (force || crc32.equals(file.getChecksum()))) {
+
+					final java.io.File fileOnDisk = file.getFileOnDisk(false);
+
+					try {
+
+						if (fileOnDisk != null && fileOnDisk.exists()) {
+
+							file.setProperty(crc32Key, FileHelper.getCRC32Checksum(fileOnDisk));
+
+						} else {
+
+							// the value can't be recalculated, but it's known to be wrong
+							file.setProperty(crc32Key, null);
+						}
+
+					} catch (IOException ioex) {
+
+						logger.warn("Unable to calculate CRC32 checksum of file {}: {}", file.getUuid(), ioex.getMessage());
+					}
+				}
+			}
+
+			@Override
+			public void handleThrowable(final SecurityContext securityContext, final Throwable t, final File file) {
+				logger.warn("Unable to repair checksums of file {}: {}", file.getUuid(), t.getMessage());
+			}
+
+			@Override
+			public void handleTransactionFailure(final SecurityContext securityContext, final Throwable t) {
+				logger.warn("Unable to repair checksums: {}", t.getMessage());
+			}
+		});
+
+		logger.info("Checked checksums of {} files", count);
+	}
+
+	@Override
+	public boolean requiresEnclosingTransaction() {
+		return false;
+	}
+
+	@Override
+	public boolean requiresFlushingOfCaches() {
+		return false;
+	}
+}
@@ -21,7 +21,9 @@ package org.structr.web.servlet;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.URI;
+import java.nio.channels.FileChannel;
 import java.nio.charset.Charset;
+import java.nio.file.StandardOpenOption;
 import java.text.DateFormat;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
@@ -36,12 +38,12 @@ import java.util.LinkedList;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
-import java.util.Queue;
 import java.util.Set;
 import java.util.TimeZone;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import javax.servlet.AsyncContext;
@@ -84,9 +86,13 @@ import org.structr.rest.service.StructrHttpServiceConfig;
 import org.structr.schema.ConfigurationProvider;
 import org.structr.util.Base64;
 import org.structr.web.auth.UiAuthenticator;
+import org.structr.web.common.FileDownload;
 import org.structr.web.common.FileHelper;
 import org.structr.web.common.RenderContext;
 import org.structr.web.common.RenderContext.EditMode;
+import org.structr.web.common.OutputStreamRenderBuffer;
+import org.structr.web.common.RenderedOutputCache;
+import org.structr.web.common.StreamingRenderBuffer;
 import org.structr.web.common.StringRenderBuffer;
 import org.structr.web.entity.AbstractFile;
 import org.structr.web.entity.Linkable;
@@ -118,7 +124,7 @@ public class HtmlServlet extends HttpServlet implements HttpServiceServlet {
 
 	private static final List<String> customResponseHeaders        = new LinkedList<>();
 	private static final ThreadLocalMatcher threadLocalUUIDMatcher = new ThreadLocalMatcher("[a-fA-F0-9]{32}");
-	private static final ExecutorService threadPool                = Executors.newCachedThreadPool();
+	private static final ThreadPoolExecutor threadPool             = createRenderThreadPool();
 
 	private final Pattern FilenameCleanerPattern                      = Pattern.compile("[\n\r]", Pattern.CASE_INSENSITIVE | Pattern.MULTILINE | Pattern.DOTALL);
 	private final StructrHttpServiceConfig config                     = new StructrHttpServiceConfig();
@@ -146,6 +152,9 @@ public class HtmlServlet extends HttpServlet implements HttpServiceServlet {
 		}
 
 		this.isAsync = Settings.Async.getValue();
+
+		// remove cached output when pages or data are modified
+		RenderedOutputCache.register();
 	}
 
 	@Override
@@ -204,6 +213,9 @@ public class HtmlServlet extends HttpServlet implements HttpServiceServlet {
 
 			app = StructrApp.getInstance(securityContext);
 
+			// file content is sent after the transaction is closed
+			FileDownload download = null;
+
 			try (final Tx tx = app.tx()) {
 
 				// Ensure access mode is frontend
@@ -277,7 +289,7 @@ public class HtmlServlet extends HttpServlet implements HttpServiceServlet {
 
 					if (file != null) {
 
-						streamFile(securityContext, file, request, response, edit);
+						download = streamFile(securityContext, file, request, response, edit);
 						tx.success();
 						return;
 
@@ -351,7 +363,7 @@ public class HtmlServlet extends HttpServlet implements HttpServiceServlet {
 
 							} else if (result instanceof File) {
 
-								streamFile(authResult.getSecurityContext(), (File)result, request, response, EditMode.NONE);
+								download = streamFile(authResult.getSecurityContext(), (File)result, request, response, EditMode.NONE);
 								tx.success();
 								return;
 
@@ -449,107 +461,158 @@ public class HtmlServlet extends HttpServlet implements HttpServiceServlet {
 
 						final boolean createsRawData = rootElement.getProperty(StructrApp.key(Page.class, "pageCreatesRawData"));
 
-						// async or not?
-						if (isAsync && !createsRawData) {
+						// anonymous requests can be answered from the output cache
+						if (Settings.OutputCache.getValue() && !dontCache && securityContext.getUser(false) == null && EditMode.NONE.equals(edit) && response.getStatus() == HttpServletResponse.SC_OK) {
 
-							final AsyncContext async = request.startAsync();
-							final ServletOutputStream out = async.getResponse().getOutputStream();
-							final AtomicBoolean finished = new AtomicBoolean(false);
-							final DOMNode rootNode = rootElement;
+							final String cacheKey = RenderedOutputCache.getKey(rootElement, request, renderContext.getLocale());
+							byte[] data           = RenderedOutputCache.get(cacheKey);
 
-							threadPool.submit(new Runnable() {
+							if (data == null) {
 
-								@Override
-								public void run() {
+								final RenderedOutputCache.Recorder recorder = RenderedOutputCache.begin();
+								final StringRenderBuffer buffer             = new StringRenderBuffer();
+								final Map<String, List<String>> headers     = getResponseHeaders(response);
+
+								renderContext.setOutputCacheRecorder(recorder);
+								renderContext.setBuffer(buffer);
 
-									try (final Tx tx = app.tx()) {
+								// render
+								rootElement.render(renderContext, 0);
 
-										// render
-										rootNode.render(renderContext, 0);
-										finished.set(true);
+								data = buffer.getBuffer().toString().getBytes("utf-8");
 
-										tx.success();
+								// don't store redirects, error responses or responses with headers
+								// or cookies set during rendering, a cache hit only replays the body
+								if (response.getStatus() == HttpServletResponse.SC_OK && headers.equals(getResponseHeaders(response))) {
+									RenderedOutputCache.store(cacheKey, recorder, data);
+								}
+							}
 
-									} catch (Throwable t) {
+							writeOutput(response, data);
 
-										t.printStackTrace();
-										logger.warn("Error while rendering page {}: {}", rootNode.getName(), t.getMessage());
+						// async or not? (render synchronously if all render threads are busy)
+						} else if (isAsync && !createsRawData && threadPool.getQueue().remainingCapacity() > 0) {
 
-										try {
+							final AsyncContext async           = request.startAsync();
+							final ServletOutputStream out      = async.getResponse().getOutputStream();
+							final StreamingRenderBuffer buffer = new StreamingRenderBuffer(Settings.AsyncBufferSize.getValue(), Settings.AsyncWriteTimeout.getValue());
+							final DOMNode rootNode             = rootElement;
 
-											response.sendError(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
-											finished.set(true);
+							renderContext.setBuffer(buffer);
 
-										} catch (IOException ex) {
-											logger.warn("", ex);
-										}
+							final WriteListener writeListener = new WriteListener() {
+
+								@Override
+								public void onWritePossible() throws IOException {
+
+									if (buffer.writeTo(out)) {
+										async.complete();
 									}
 								}
 
-							});
+								@Override
+								public void onError(Throwable t) {
 
-							// start output write listener
-							out.setWriteListener(new WriteListener() {
+									logger.warn("Error while writing page {}: {}", rootNode.getName(), t.getMessage());
 
-								@Override
-								public void onWritePossible() throws IOException {
+									// stop buffering output for this client
+									buffer.cancel();
+								}
+							};
 
-									try {
+							// continue writing in the rendering thread when new data arrives
+							buffer.setListener(() -> {
 
-										final Queue<String> queue = renderContext.getBuffer().getQueue();
-										while (out.isReady()) {
+								try {
 
-											String buffer = null;
+									writeListener.onWritePossible();
 
-											synchronized (queue) {
-												buffer = queue.poll();
-											}
+								} catch (Throwable t) {
+
+									writeListener.onError(t);
+								}
+							});
 
-											if (buffer != null) {
+							// start output write listener before rendering starts
+							out.setWriteListener(writeListener);
 
-												out.print(buffer);
+							try {
+
+								threadPool.submit(new Runnable() {
+
+									@Override
+									public void run() {
+
+										try (final Tx tx = app.tx()) {
 
-											} else {
+											// render
+											rootNode.render(renderContext, 0);
 
-												if (finished.get()) {
+											tx.success();
 
-													async.complete();
+										} catch (Throwable t) {
 
-													// prevent this block from being called again
-													break;
-												}
+											t.printStackTrace();
+											logger.warn("Error while rendering page {}: {}", rootNode.getName(), t.getMessage());
 
-												Thread.sleep(1);
+											try {
+
+												response.sendError(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+
+											} catch (Throwable ex) {
+												logger.warn("", ex);
 											}
-										}
 
-									} catch (Throwable t) {
-										logger.warn("", t);
+										} finally {
+
+											buffer.finish();
+										}
 									}
-								}
 
-								@Override
-								public void onError(Throwable t) {
-									logger.warn("", t);
-								}
-							});
+								});
+
+							} catch (RejectedExecutionException rex) {
+
+								// the queue was filled after the check above
+								logger.warn("Unable to render page {}, all render threads are busy", rootNode.getName());
+
+								buffer.cancel();
+
+								((HttpServletResponse)async.getResponse()).sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+								async.complete();
+							}
 
 						} else {
 
-							final StringRenderBuffer buffer = new StringRenderBuffer();
-							renderContext.setBuffer(buffer);
+							if (Settings.StreamingOutput.getValue()) {
 
-							// render
-							rootElement.render(renderContext, 0);
+								// write output to the client while rendering, the response is sent
+								// with chunked transfer encoding (and compressed by the gzip handler)
+								final OutputStreamRenderBuffer buffer = new OutputStreamRenderBuffer(response.getOutputStream());
+								renderContext.setBuffer(buffer);
 
-							try {
+								// render
+								rootElement.render(renderContext, 0);
+
+								try {
 
-								response.getOutputStream().write(buffer.getBuffer().toString().getBytes("utf-8"));
-								response.getOutputStream().flush();
-								response.getOutputStream().close();
+									buffer.flush();
+									response.getOutputStream().flush();
+									response.getOutputStream().close();
 
-							} catch (IOException ioex) {
-								logger.warn("", ioex);
+								} catch (IOException ioex) {
+									logger.warn("", ioex);
+								}
+
+							} else {
+
+								final StringRenderBuffer buffer = new StringRenderBuffer();
+								renderContext.setBuffer(buffer);
+
+								// render
+								rootElement.render(renderContext, 0);
+
+								writeOutput(response, buffer.getBuffer().toString().getBytes("utf-8"));
 							}
 						}
 					}
@@ -558,7 +621,20 @@ public class HtmlServlet extends HttpServlet implements HttpServiceServlet {
 				tx.success();
 
 			} catch (FrameworkException fex) {
+
 				logger.error("Exception while processing request: {}", fex.getMessage());
+
+				if (download != null) {
+
+					download.close();
+					download = null;
+				}
+
+			} finally {
+
+				if (download != null) {
+					sendDownload(download, request, response);
+				}
 			}
 
 		} catch (FrameworkException fex) {
@@ -1339,6 +1415,17 @@ public class HtmlServlet extends HttpServlet implements HttpServiceServlet {
 		}
 	}
 
+	private static Map<String, List<String>> getResponseHeaders(final HttpServletResponse response) {
+
+		final Map<String, List<String>> headers = new LinkedHashMap<>();
+
+		for (final String name : response.getHeaderNames()) {
+			headers.put(name, new LinkedList<>(response.getHeaders(name)));
+		}
+
+		return headers;
+	}
+
 	private static boolean notModifiedSince(final HttpServletRequest request, HttpServletResponse response, final NodeInterface node, final boolean dontCache) {
 
 		boolean notModified = false;
@@ -1402,17 +1489,25 @@ public class HtmlServlet extends HttpServlet implements HttpServiceServlet {
 		return notModified;
 	}
 
-	private void streamFile(SecurityContext securityContext, final File file, HttpServletRequest request, HttpServletResponse response, final EditMode edit) throws IOException {
+	/**
+	 * Prepares the download of the given file: checks visibility, sets the
+	 * response headers and invokes the onDownload callback. The content
+	 * of the file is not sent here, the returned download must be sent
+	 * after the enclosing transaction has been closed.
+	 *
+	 * @return the download, or null if nothing needs to be sent
+	 */
+	private FileDownload streamFile(SecurityContext securityContext, final File file, HttpServletRequest request, HttpServletResponse response, final EditMode edit) throws IOException {
 
 		if (!securityContext.isVisible(file)) {
 
 			response.sendError(HttpServletResponse.SC_NOT_FOUND);
-			return;
+			return null;
 		}
 
-		final ServletOutputStream out         = response.getOutputStream();
 		final String downloadAsFilename       = request.getParameter(DOWNLOAD_AS_FILENAME_KEY);
 		final Map<String, Object> callbackMap = new LinkedHashMap<>();
+		FileDownload download                 = null;
 
 		// make edit mode available in callback method
 		callbackMap.put("editMode", edit);
@@ -1434,6 +1529,8 @@ public class HtmlServlet extends HttpServlet implements HttpServiceServlet {
 
 		if (!EditMode.WIDGET.equals(edit) && notModifiedSince(request, response, file, false)) {
 
+			final ServletOutputStream out = response.getOutputStream();
+
 			out.flush();
 			out.close();
 
@@ -1444,6 +1541,8 @@ public class HtmlServlet extends HttpServlet implements HttpServiceServlet {
 			final String downloadAsDataUrl = request.getParameter(DOWNLOAD_AS_DATA_URL_KEY);
 			if (downloadAsDataUrl != null) {
 
+				final ServletOutputStream out = response.getOutputStream();
+
 				IOUtils.write(FileHelper.getBase64String(file), out, "utf-8");
 				response.setContentType("text/plain");
 				response.setStatus(HttpServletResponse.SC_OK);
@@ -1455,82 +1554,50 @@ public class HtmlServlet extends HttpServlet implements HttpServiceServlet {
 
 			} else {
 
-				// 2b: stream file to response
-				final InputStream in = file.getInputStream();
-				final String contentType = file.getContentType();
-
-				if (contentType != null) {
-
-					response.setContentType(contentType);
-
-				} else {
+				String contentType = file.getContentType();
+				if (contentType == null) {
 
 					// Default
-					response.setContentType("application/octet-stream");
+					contentType = "application/octet-stream";
 				}
 
-				final String range = request.getHeader("Range");
+				if (file.isTemplate()) {
 
-				try {
+					// template content depends on the current transaction and is small
+					try (final InputStream in = file.getInputStream()) {
 
-					if (StringUtils.isNotEmpty(range)) {
-
-						final long len = file.getSize();
-						long start     = 0;
-						long end       = len - 1;
-
-						final Matcher matcher = Pattern.compile("bytes=(?<start>\\d*)-(?<end>\\d*)").matcher(range);
-
-						if (matcher.matches()) {
-							String startGroup = matcher.group("start");
-							start = startGroup.isEmpty() ? start : Long.valueOf(startGroup);
-							start = Math.max(0, start);
-
-							String endGroup = matcher.group("end");
-							end = endGroup.isEmpty() ? end : Long.valueOf(endGroup);
-							end = end > len - 1 ? len - 1 : end;
+						if (in != null) {
+							download = new FileDownload(IOUtils.toByteArray(in), contentType);
 						}
+					}
 
-						long contentLength = end - start + 1;
-
-						// Tell the client that we support byte ranges
-						response.setHeader("Accept-Ranges", "bytes");
-						response.setHeader("Content-Range", String.format("bytes %s-%s/%s", start, end, len));
-						response.setHeader("Content-Length", String.format("%s", contentLength));
-
-						response.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
-						callbackMap.put("statusCode", HttpServletResponse.SC_PARTIAL_CONTENT);
-
-						IOUtils.copyLarge(in, out, start, contentLength);
-
-					} else {
+				} else {
 
-						response.setStatus(HttpServletResponse.SC_OK);
-						callbackMap.put("statusCode", HttpServletResponse.SC_OK);
+					final java.io.File fileOnDisk = file.getFileOnDisk();
+					if (fileOnDisk != null && fileOnDisk.exists()) {
 
-						IOUtils.copyLarge(in, out);
+						download = new FileDownload(FileChannel.open(fileOnDisk.toPath(), StandardOpenOption.READ), contentType);
 					}
+				}
 
-				} catch (Throwable t) {
+				if (download != null) {
 
-				} finally {
+					final int statusCode = download.prepare(request, response);
 
-					if (out != null) {
+					callbackMap.put("statusCode", statusCode);
 
-						try {
-							// 3: output content
-							out.flush();
-							out.close();
+					if (statusCode == HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE) {
 
-						} catch (Throwable t) {
-						}
+						download.close();
+						download = null;
 					}
 
-					if (in != null) {
-						in.close();
-					}
+				} else {
 
-					response.setStatus(HttpServletResponse.SC_OK);
+					logger.warn("Unable to read content of file {}", file.getUuid());
+					response.sendError(HttpServletResponse.SC_NOT_FOUND);
+
+					callbackMap.put("statusCode", HttpServletResponse.SC_NOT_FOUND);
 				}
 			}
 		}
@@ -1548,6 +1615,24 @@ public class HtmlServlet extends HttpServlet implements HttpServiceServlet {
 				logger.warn("", fex);
 			}
 		}
+
+		return download;
+	}
+
+	private void sendDownload(final FileDownload download, final HttpServletRequest request, final HttpServletResponse response) {
+
+		try {
+
+			final ServletOutputStream out = response.getOutputStream();
+
+			download.send(out);
+			out.close();
+
+		} catch (IOException ioex) {
+
+			// clients abort downloads regularly, e.g. when seeking in a video
+			logger.debug("Unable to send file {}: {}", request.getPathInfo(), ioex.getMessage());
+		}
 	}
 
 	/**
@@ -1784,6 +1869,33 @@ public class HtmlServlet extends HttpServlet implements HttpServiceServlet {
 
 		return null;
 	}
+	private void writeOutput(final HttpServletResponse response, final byte[] data) {
+
+		try {
+
+			response.setContentLength(data.length);
+			response.getOutputStream().write(data);
+			response.getOutputStream().flush();
+			response.getOutputStream().close();
+
+		} catch (IOException ioex) {
+			logger.warn("", ioex);
+		}
+	}
+
+	private static ThreadPoolExecutor createRenderThreadPool() {
+
+		final int threads = Math.max(1, Settings.AsyncRenderThreads.getValue());
+
+		// rejects tasks when the queue is full, the request is then rendered synchronously
+		// (the request thread cannot render into the async buffer, see doGet)
+		final ThreadPoolExecutor threadPool = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<>(threads * 10), new ThreadPoolExecutor.AbortPolicy());
+
+		threadPool.allowCoreThreadTimeOut(true);
+
+		return threadPool;
+	}
+
 	// ----- nested classes -----
 	private enum AuthState {
 		NoBasicAuth, MustAuthenticate, Authenticated
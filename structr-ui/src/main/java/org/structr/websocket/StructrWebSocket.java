@@ -23,10 +23,15 @@ import java.io.IOException;
 import java.lang.reflect.Method;
 import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpSession;
 import org.eclipse.jetty.websocket.api.Session;
 import org.eclipse.jetty.websocket.api.WebSocketListener;
+import org.eclipse.jetty.websocket.api.WriteCallback;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.structr.api.config.Settings;
@@ -63,6 +68,7 @@ public class StructrWebSocket implements WebSocketListener {
 
 	private static final Logger logger = LoggerFactory.getLogger(StructrWebSocket.class.getName());
 	private static final Map<String, Class> commandSet = new LinkedHashMap<>();
+	private static final ThreadLocal<Boolean> inWrite = ThreadLocal.withInitial(() -> false);
 
 	//~--- fields ---------------------------------------------------------
 	private Session session = null;
@@ -75,6 +81,10 @@ public class StructrWebSocket implements WebSocketListener {
 	private String pagePath = null;
 	private Console console = null;
 	private Boolean timedOut = false;
+	private final Queue<String> outbound = new ConcurrentLinkedQueue<>();
+	private final AtomicInteger outboundSize = new AtomicInteger();
+	private final AtomicBoolean sending = new AtomicBoolean();
+	private final WriteCallback sendCallback = new SendCallback();
 
 	//~--- constructors ---------------------------------------------------
 	public StructrWebSocket() {}
@@ -355,10 +365,14 @@ public class StructrWebSocket implements WebSocketListener {
 				securityContext.clearCustomView();
 			}
 
-			session.getRemote().sendString(msg);
-
 			tx.success();
 
+			// queued behind the pending broadcast messages and sent asynchronously
+			outboundSize.incrementAndGet();
+			outbound.add(msg);
+
+			sendBuffered();
+
 		} catch (Throwable t) {
 			// ignore
 			logger.debug("Unable to send websocket message to remote client");
@@ -366,6 +380,102 @@ public class StructrWebSocket implements WebSocketListener {
 
 	}
 
+	// ----- broadcast buffering -----
+	/**
+	 * Adds a serialized broadcast message to the outgoing buffer of this
+	 * client.
+	 *
+	 * @param message the serialized message
+	 * @param limit the maximum number of buffered messages
+	 *
+	 * @return false if the buffer of this client is full
+	 */
+	public boolean offerBroadcast(final String message, final int limit) {
+
+		if (outboundSize.incrementAndGet() > limit) {
+
+			outboundSize.decrementAndGet();
+			return false;
+		}
+
+		outbound.add(message);
+
+		return true;
+	}
+
+	/**
+	 * Sends the buffered private and broadcast messages asynchronously.
+	 * Only one message per client is in flight at a time, the next one is
+	 * sent when the previous write has completed, so slow clients don't
+	 * block any thread and the order of the messages is kept.
+	 */
+	public void sendBuffered() {
+
+		while (!outbound.isEmpty() && sending.compareAndSet(false, true)) {
+
+			final String message = outbound.poll();
+			if (message == null) {
+
+				sending.set(false);
+				continue;
+			}
+
+			outboundSize.decrementAndGet();
+
+			final Session _session = session;
+			if (_session == null) {
+
+				outbound.clear();
+				outboundSize.set(0);
+				sending.set(false);
+				return;
+			}
+
+			try {
+
+				inWrite.set(true);
+
+				_session.getRemote().sendString(message, sendCallback);
+
+			} catch (Throwable t) {
+
+				onSendFailed(t);
+
+			} finally {
+
+				inWrite.set(false);
+			}
+		}
+	}
+
+	public void close(final int statusCode, final String reason) {
+
+		outbound.clear();
+		outboundSize.set(0);
+
+		final Session _session = session;
+		if (_session != null) {
+
+			_session.close(statusCode, reason);
+		}
+	}
+
+	// ----- private methods -----
+	private void onSendFailed(final Throwable t) {
+
+		logger.debug("Unable to send websocket message to remote client", t);
+
+		if (session == null || !session.isOpen()) {
+
+			outbound.clear();
+			outboundSize.set(0);
+
+			syncController.unregisterClient(this);
+		}
+
+		sending.set(false);
+	}
+
 	// ----- file handling -----
 	public void createFileUploadHandler(File file) {
 
@@ -580,4 +690,24 @@ public class StructrWebSocket implements WebSocketListener {
 		logger.debug("Error in StructrWebSocket occured", t);
 	}
 
+
+	// ----- nested classes -----
+	private class SendCallback implements WriteCallback {
+
+		@Override
+		public void writeFailed(final Throwable t) {
+			onSendFailed(t);
+		}
+
+		@Override
+		public void writeSuccess() {
+
+			sending.set(false);
+
+			// a write that completes immediately is continued by the sending loop
+			if (!inWrite.get()) {
+				sendBuffered();
+			}
+		}
+	}
 }
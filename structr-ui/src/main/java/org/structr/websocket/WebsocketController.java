@@ -19,31 +19,42 @@
 package org.structr.websocket;
 
 import com.google.gson.Gson;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Set;
+import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 import org.eclipse.jetty.util.URIUtil;
 import org.eclipse.jetty.websocket.api.Session;
-import org.eclipse.jetty.websocket.api.WebSocketException;
+import org.eclipse.jetty.websocket.api.StatusCode;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.structr.api.config.Settings;
 import org.structr.api.graph.RelationshipType;
 import org.structr.common.SecurityContext;
 import org.structr.common.error.FrameworkException;
 import org.structr.core.GraphObject;
 import org.structr.core.StructrTransactionListener;
 import org.structr.core.TransactionSource;
+import org.structr.core.app.StructrApp;
 import org.structr.core.entity.AbstractNode;
 import org.structr.core.graph.ModificationEvent;
 import org.structr.core.graph.NodeInterface;
 import org.structr.core.graph.RelationshipInterface;
+import org.structr.core.graph.Tx;
 import org.structr.core.property.PropertyKey;
 import org.structr.core.property.PropertyMap;
 import org.structr.web.entity.AbstractFile;
@@ -60,13 +71,24 @@ public class WebsocketController implements StructrTransactionListener {
 
 	private static final Logger logger                 = LoggerFactory.getLogger(WebsocketController.class.getName());
 	private static final Set<String> BroadcastCommands = new HashSet<>(Arrays.asList(new String[] { "UPDATE", "ADD", "CREATE" } ));
+	private static final int MAX_BATCH_SIZE            = 1000;
 
 	private final Set<StructrWebSocket> clients = ConcurrentHashMap.newKeySet();
-	private Gson gson                           = null;
+	private final BlockingQueue<Broadcast> queue = new LinkedBlockingQueue<>(Settings.WsBroadcastQueueSize.getValue());
+	private final AtomicLong enqueued            = new AtomicLong();
+	private final AtomicLong coalesced           = new AtomicLong();
+	private final AtomicLong dropped             = new AtomicLong();
+	private final AtomicLong disconnected        = new AtomicLong();
+	private Thread dispatcher                    = null;
+	private volatile boolean running             = true;
+	private Gson gson                            = null;
 
 	public WebsocketController(final Gson gson) {
 
-		this.gson = gson;
+		this.gson       = gson;
+		this.dispatcher = new Thread(this::dispatch, "WebSocketBroadcaster");
+		this.dispatcher.setDaemon(true);
+		this.dispatcher.start();
 	}
 
 	public void registerClient(final StructrWebSocket client) {
@@ -79,9 +101,153 @@ public class WebsocketController implements StructrTransactionListener {
 		clients.remove(client);
 	}
 
-	private void broadcast(final WebSocketMessage webSocketData) {
+	public void shutdown() {
 
-		broadcast(webSocketData, null);
+		running = false;
+
+		dispatcher.interrupt();
+	}
+
+	public Map<String, Long> getBroadcastStatistics() {
+
+		final Map<String, Long> statistics = new LinkedHashMap<>();
+
+		statistics.put("queued",       Long.valueOf(queue.size()));
+		statistics.put("enqueued",     enqueued.get());
+		statistics.put("coalesced",    coalesced.get());
+		statistics.put("dropped",      dropped.get());
+		statistics.put("disconnected", disconnected.get());
+
+		return statistics;
+	}
+
+	/**
+	 * Called when a client has more outgoing messages than the configured
+	 * per-client buffer size.
+	 *
+	 * @param client
+	 */
+	void onClientOverflow(final StructrWebSocket client) {
+
+		if (Settings.WsDisconnectSlow.getValue()) {
+
+			logger.warn("Client {} does not receive messages fast enough, closing connection.", client);
+
+			unregisterClient(client);
+			client.close(StatusCode.POLICY_VIOLATION, "Client too slow");
+
+			disconnected.incrementAndGet();
+
+		} else {
+
+			dropped.incrementAndGet();
+		}
+	}
+
+	// ----- private methods -----
+	private void enqueue(final WebSocketMessage message, final String exemptedSessionId) {
+
+		if (queue.offer(new Broadcast(message, exemptedSessionId))) {
+
+			enqueued.incrementAndGet();
+
+		} else {
+
+			dropped.incrementAndGet();
+			logger.warn("Websocket broadcast queue is full, dropping {} message.", message.getCommand());
+		}
+	}
+
+	private void dispatch() {
+
+		while (running) {
+
+			try {
+
+				final Broadcast first = queue.poll(1, TimeUnit.SECONDS);
+				if (first != null) {
+
+					final List<Broadcast> batch = new ArrayList<>();
+					final long deadline         = System.currentTimeMillis() + Settings.WsCoalesceWindow.getValue();
+
+					add(batch, first);
+
+					// collect messages that arrive within the coalescing window
+					while (batch.size() < MAX_BATCH_SIZE) {
+
+						final long remaining = deadline - System.currentTimeMillis();
+						final Broadcast next = remaining > 0 ? queue.poll(remaining, TimeUnit.MILLISECONDS) : queue.poll();
+
+						if (next == null) {
+							break;
+						}
+
+						if (add(batch, next)) {
+							coalesced.incrementAndGet();
+						}
+					}
+
+					// no need to examine messages if nobody is listening
+					if (!clients.isEmpty()) {
+
+						try (final Tx tx = StructrApp.getInstance().tx(false, false, false)) {
+
+							for (final Broadcast broadcast : batch) {
+
+								broadcast(broadcast.message, broadcast.exemptedSessionId);
+							}
+
+							tx.success();
+						}
+					}
+				}
+
+			} catch (InterruptedException iex) {
+
+				// shutdown
+
+			} catch (Throwable t) {
+
+				logger.warn("Unable to broadcast websocket messages: {}", t.getMessage());
+			}
+		}
+	}
+
+	/**
+	 * Adds the given broadcast to the batch. An UPDATE message for the same
+	 * object as the directly preceding UPDATE message is merged into that
+	 * message, so the order of the messages doesn't change.
+	 *
+	 * @param batch
+	 * @param broadcast
+	 *
+	 * @return whether the broadcast was merged into the previous message
+	 */
+	static boolean add(final List<Broadcast> batch, final Broadcast broadcast) {
+
+		final WebSocketMessage message = broadcast.message;
+		final Broadcast previous       = batch.isEmpty() ? null : batch.get(batch.size() - 1);
+
+		if (previous != null && isMergeable(previous) && isMergeable(broadcast) && message.getId().equals(previous.message.getId()) && Objects.equals(message.getCallback(), previous.message.getCallback())) {
+
+			final WebSocketMessage merged = previous.message;
+
+			merged.getModifiedProperties().addAll(message.getModifiedProperties());
+			merged.getRemovedProperties().addAll(message.getRemovedProperties());
+			merged.setNodeData(message.getNodeData());
+			merged.setRelData(message.getRelData());
+			merged.setResult(message.getResult());
+
+			return true;
+		}
+
+		batch.add(broadcast);
+
+		return false;
+	}
+
+	private static boolean isMergeable(final Broadcast broadcast) {
+		return "UPDATE".equals(broadcast.message.getCommand()) && broadcast.message.getId() != null && broadcast.exemptedSessionId == null;
 	}
 
 	private void broadcast(final WebSocketMessage webSocketData, final String exemptedSessionId) {
@@ -89,16 +255,15 @@ public class WebsocketController implements StructrTransactionListener {
 		// session must be valid to be received by the client
 		webSocketData.setSessionValid(true);
 
-		final String pagePath                        = (String) webSocketData.getNodeData().get("pagePath");
-		final String encodedPath                     = URIUtil.encodePath(pagePath);
-		final List<StructrWebSocket> clientsToRemove = new LinkedList<>();
-		final List<? extends GraphObject> result     = webSocketData.getResult();
-		final String command                         = webSocketData.getCommand();
-		final GraphObject obj                        = webSocketData.getGraphObject();
-
-		String message;
+		final String pagePath                    = (String) webSocketData.getNodeData().get("pagePath");
+		final String encodedPath                 = URIUtil.encodePath(pagePath);
+		final List<? extends GraphObject> result = webSocketData.getResult();
+		final String command                     = webSocketData.getCommand();
+		final GraphObject obj                    = webSocketData.getGraphObject();
+		final boolean filterResult               = result != null && !result.isEmpty() && BroadcastCommands.contains(command);
+		final Map<List<String>, String> messages = new HashMap<>();
+		final int bufferSize                     = Settings.WsClientBufferSize.getValue();
 
-		// create message
 		for (StructrWebSocket socket : clients) {
 
 			String clientPagePath = socket.getPagePath();
@@ -135,45 +300,58 @@ public class WebsocketController implements StructrTransactionListener {
 					}
 				}
 
-				if (result != null && !result.isEmpty() && BroadcastCommands.contains(command)) {
+				try {
 
-					final WebSocketMessage clientData = webSocketData.copy();
+					// clients that can see the same result objects receive the same
+					// message, so we serialize only once for each of those groups
+					final List<? extends GraphObject> filtered = filterResult ? filter(securityContext, result) : null;
+					final List<String> visibilityClass         = filtered != null ? ids(filtered) : null;
 
-					clientData.setResult(filter(securityContext, result));
+					String message = messages.get(visibilityClass);
+					if (message == null) {
 
-					message = gson.toJson(clientData, WebSocketMessage.class);
+						if (filtered != null) {
 
-				} else {
+							final WebSocketMessage clientData = webSocketData.copy();
 
-					message = gson.toJson(webSocketData, WebSocketMessage.class);
-				}
+							clientData.setResult(filtered);
 
-				try {
+							message = gson.toJson(clientData, WebSocketMessage.class);
 
-					session.getRemote().sendString(message);
+						} else {
 
-				} catch (Throwable t) {
+							message = gson.toJson(webSocketData, WebSocketMessage.class);
+						}
 
-					if (t instanceof WebSocketException) {
+						messages.put(visibilityClass, message);
+					}
 
-						WebSocketException wse = (WebSocketException) t;
+					if (socket.offerBroadcast(message, bufferSize)) {
 
-						if ("RemoteEndpoint unavailable, current state [CLOSED], expecting [OPEN or CONNECTED]".equals(wse.getMessage())) {
-							clientsToRemove.add(socket);
-						}
+						socket.sendBuffered();
+
+					} else {
+
+						onClientOverflow(socket);
 					}
 
+				} catch (Throwable t) {
+
 					logger.debug("Error sending message to client.", t);
 				}
 			}
 		}
+	}
 
-		for (StructrWebSocket s : clientsToRemove) {
+	private List<String> ids(final List<? extends GraphObject> objects) {
 
-			unregisterClient(s);
+		final List<String> ids = new ArrayList<>(objects.size());
 
-			logger.warn("Client removed from broadcast list: {}", s);
+		for (final GraphObject obj : objects) {
+			ids.add(obj.getUuid());
 		}
+
+		return ids;
 	}
 
 	private <T extends GraphObject> List<T> filter(final SecurityContext securityContext, final List<T> all) {
@@ -199,13 +377,16 @@ public class WebsocketController implements StructrTransactionListener {
 	@Override
 	public void afterCommit(final SecurityContext securityContext, final Collection<ModificationEvent> modificationEvents, final TransactionSource source) {
 
+		// messages are created here because the modification events are only
+		// valid in this thread, sending is done asynchronously so that slow
+		// clients don't block the committing thread
 		for (final ModificationEvent event : modificationEvents) {
 
 			try {
 				final WebSocketMessage message = getMessageForEvent(securityContext, event);
 				if (message != null) {
 
-					broadcast(message);
+					enqueue(message, null);
 				}
 
 			} catch (FrameworkException ignore) {
@@ -216,7 +397,7 @@ public class WebsocketController implements StructrTransactionListener {
 	@Override
 	public void simpleBroadcast(final String commandName, final Map<String, Object> data, final String exemptedSessionId) {
 
-		broadcast(MessageBuilder.forName(commandName).data(data).build(), exemptedSessionId);
+		enqueue(MessageBuilder.forName(commandName).data(data).build(), exemptedSessionId);
 
 	}
 
@@ -408,4 +589,21 @@ public class WebsocketController implements StructrTransactionListener {
 
 		return newMessage;
 	}
+
+	// ----- nested classes -----
+	static class Broadcast {
+
+		private WebSocketMessage message = null;
+		private String exemptedSessionId = null;
+
+		public Broadcast(final WebSocketMessage message, final String exemptedSessionId) {
+
+			this.message           = message;
+			this.exemptedSessionId = exemptedSessionId;
+		}
+
+		public WebSocketMessage getMessage() {
+			return message;
+		}
+	}
 }
@@ -18,8 +18,16 @@
  */
 package org.structr.web.advanced;
 
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.Collections;
 import java.util.List;
+import java.util.Random;
+import java.util.zip.CRC32;
+import net.openhft.hashing.LongHashFunction;
+import org.apache.commons.codec.digest.DigestUtils;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.fail;
 import org.junit.Test;
 import org.slf4j.Logger;
@@ -28,8 +36,13 @@ import org.structr.common.error.FrameworkException;
 import org.structr.core.app.StructrApp;
 import org.structr.core.graph.NodeAttribute;
 import org.structr.core.graph.Tx;
+import org.structr.core.property.PropertyKey;
 import org.structr.web.StructrUiTest;
+import org.structr.web.common.FileHelper;
+import org.structr.web.entity.File;
+import org.structr.web.entity.Folder;
 import org.structr.web.entity.Image;
+import org.structr.web.maintenance.RepairChecksumsCommand;
 
 public class FilesystemTest extends StructrUiTest {
 
@@ -111,4 +124,110 @@ public class FilesystemTest extends StructrUiTest {
 			fail("Unexpected exception.");
 		}
 	}
+
+	@Test
+	public void test03FileChecksums() {
+
+		// odd size so that the xxHash tail is not aligned
+		final byte[] data = new byte[200013];
+
+		new Random(42).nextBytes(data);
+
+		String streamFileId = null;
+		String arrayFileId  = null;
+
+		try (final Tx tx = app.tx()) {
+
+			final Folder folder = app.create(Folder.class,
+				new NodeAttribute<>(Folder.name, "checksums"),
+				new NodeAttribute<>(StructrApp.key(Folder.class, "enabledChecksums"), "crc32,md5,sha1,sha512")
+			);
+
+			streamFileId = FileHelper.createFile(securityContext, new ByteArrayInputStream(data), "application/octet-stream", File.class, "stream.bin", folder).getUuid();
+			arrayFileId  = FileHelper.createFile(securityContext, data, "application/octet-stream", File.class, "array.bin").getUuid();
+
+			tx.success();
+
+		} catch (FrameworkException | IOException ex) {
+			ex.printStackTrace();
+			fail("Unexpected exception.");
+		}
+
+		try (final Tx tx = app.tx()) {
+
+			final File streamFile = app.get(File.class, streamFileId);
+			final File arrayFile  = app.get(File.class, arrayFileId);
+			final CRC32 crc32     = new CRC32();
+
+			crc32.update(data);
+
+			assertEquals("Invalid xxHash checksum", Long.valueOf(LongHashFunction.xx().hashBytes(data)), streamFile.getChecksum());
+			assertEquals("Invalid xxHash checksum", Long.valueOf(LongHashFunction.xx().hashBytes(data)), arrayFile.getChecksum());
+			assertEquals("Invalid xxHash checksum", streamFile.getChecksum(),                            FileHelper.getChecksum(streamFile.getFileOnDisk()));
+
+			assertEquals("Invalid CRC32 checksum",   Long.valueOf(crc32.getValue()), streamFile.getProperty(StructrApp.key(File.class, "crc32")));
+			assertEquals("Invalid MD5 checksum",     DigestUtils.md5Hex(data),       streamFile.getProperty(StructrApp.key(File.class, "md5")));
+			assertEquals("Invalid SHA-1 checksum",   DigestUtils.sha1Hex(data),      streamFile.getProperty(StructrApp.key(File.class, "sha1")));
+			assertEquals("Invalid SHA-512 checksum", DigestUtils.sha512Hex(data),    streamFile.getProperty(StructrApp.key(File.class, "sha512")));
+
+			// additional checksums are only calculated when they are enabled
+			assertNull("Checksum should not be calculated", arrayFile.getProperty(StructrApp.key(File.class, "sha512")));
+
+			tx.success();
+
+		} catch (FrameworkException | IOException ex) {
+			ex.printStackTrace();
+			fail("Unexpected exception.");
+		}
+	}
+
+	@Test
+	public void test04RepairChecksums() {
+
+		final PropertyKey<Long> crc32Key = StructrApp.key(File.class, "crc32");
+		final byte[] data                = new byte[10007];
+		String fileId                    = null;
+
+		new Random(42).nextBytes(data);
+
+		try (final Tx tx = app.tx()) {
+
+			final File file = FileHelper.createFile(securityContext, data, "application/octet-stream", File.class, "old.bin");
+
+			// earlier versions stored a copy of the xxHash checksum
+			file.setProperty(crc32Key, file.getChecksum());
+
+			fileId = file.getUuid();
+
+			tx.success();
+
+		} catch (FrameworkException | IOException ex) {
+			ex.printStackTrace();
+			fail("Unexpected exception.");
+		}
+
+		try {
+
+			app.command(RepairChecksumsCommand.class).execute(Collections.emptyMap());
+
+		} catch (FrameworkException fex) {
+			fex.printStackTrace();
+			fail("Unexpected exception.");
+		}
+
+		try (final Tx tx = app.tx()) {
+
+			final CRC32 crc32 = new CRC32();
+
+			crc32.update(data);
+
+			assertEquals("Invalid CRC32 checksum", Long.valueOf(crc32.getValue()), app.get(File.class, fileId).getProperty(crc32Key));
+
+			tx.success();
+
+		} catch (FrameworkException fex) {
+			fex.printStackTrace();
+			fail("Unexpected exception.");
+		}
+	}
 }
@@ -0,0 +1,114 @@
+/**
+ * Copyright (C) 2010-2018 Structr GmbH
+ *
+ * This file is part of Structr <http://structr.org>.
+ *
+ * Structr is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Structr is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.structr.web.basic;
+
+import com.jayway.restassured.RestAssured;
+import com.jayway.restassured.filter.log.ResponseLoggingFilter;
+import java.io.IOException;
+import org.hamcrest.Matchers;
+import static org.junit.Assert.fail;
+import org.junit.Test;
+import org.structr.common.error.FrameworkException;
+import org.structr.core.GraphObject;
+import org.structr.core.graph.Tx;
+import org.structr.web.StructrUiTest;
+import org.structr.web.common.FileHelper;
+import org.structr.web.entity.File;
+
+/**
+ * Test for file downloads with and without byte ranges.
+ */
+public class FileDownloadTest extends StructrUiTest {
+
+	@Test
+	public void testFileDownloadWithRanges() {
+
+		try (final Tx tx = app.tx()) {
+
+			final File file = FileHelper.createFile(securityContext, "0123456789abcdef".getBytes("utf-8"), "text/plain", File.class, "test.txt");
+
+			file.setProperty(GraphObject.visibleToPublicUsers, true);
+
+			tx.success();
+
+		} catch (FrameworkException | IOException ex) {
+
+			ex.printStackTrace();
+			fail("Unexpected exception.");
+		}
+
+		RestAssured.basePath = "/";
+
+		// full content
+		RestAssured
+			.given()
+				.filter(ResponseLoggingFilter.logResponseIfStatusCodeIs(404))
+				.filter(ResponseLoggingFilter.logResponseIfStatusCodeIs(500))
+			.expect()
+				.statusCode(200)
+				.header("Accept-Ranges", "bytes")
+				.body(Matchers.equalTo("0123456789abcdef"))
+			.when()
+			.get("/test.txt");
+
+		// single range
+		RestAssured
+			.given()
+				.header("Range", "bytes=2-5")
+			.expect()
+				.statusCode(206)
+				.header("Content-Range", "bytes 2-5/16")
+				.body(Matchers.equalTo("2345"))
+			.when()
+			.get("/test.txt");
+
+		// suffix range
+		RestAssured
+			.given()
+				.header("Range", "bytes=-3")
+			.expect()
+				.statusCode(206)
+				.header("Content-Range", "bytes 13-15/16")
+				.body(Matchers.equalTo("def"))
+			.when()
+			.get("/test.txt");
+
+		// multiple ranges
+		RestAssured
+			.given()
+				.header("Range", "bytes=0-1,8-9")
+			.expect()
+				.statusCode(206)
+				.header("Content-Type", Matchers.startsWith("multipart/byteranges; boundary="))
+				.body(Matchers.containsString("Content-Range: bytes 0-1/16\r\n\r\n01\r\n"))
+				.body(Matchers.containsString("Content-Range: bytes 8-9/16\r\n\r\n89\r\n"))
+			.when()
+			.get("/test.txt");
+
+		// unsatisfiable range
+		RestAssured
+			.given()
+				.header("Range", "bytes=100-200")
+			.expect()
+				.statusCode(416)
+				.header("Content-Range", "bytes */16")
+			.when()
+			.get("/test.txt");
+	}
+}
@@ -0,0 +1,296 @@
+/**
+ * Copyright (C) 2010-2018 Structr GmbH
+ *
+ * This file is part of Structr <http://structr.org>.
+ *
+ * Structr is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Structr is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.structr.web.basic;
+
+import com.jayway.restassured.RestAssured;
+import com.jayway.restassured.filter.log.ResponseLoggingFilter;
+import org.hamcrest.Matchers;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+import org.junit.Test;
+import org.structr.api.config.Settings;
+import org.structr.common.error.FrameworkException;
+import org.structr.core.GraphObject;
+import org.structr.core.app.StructrApp;
+import org.structr.core.entity.AbstractNode;
+import org.structr.core.graph.NodeAttribute;
+import org.structr.core.graph.Tx;
+import org.structr.web.StructrUiTest;
+import org.structr.web.common.RenderedOutputCache;
+import org.structr.web.entity.Folder;
+import org.structr.web.entity.dom.Content;
+import org.structr.web.entity.dom.DOMNode;
+import org.structr.web.entity.dom.Page;
+
+/**
+ * Test for the output cache for anonymous requests.
+ */
+public class RenderedOutputCacheTest extends StructrUiTest {
+
+	@Test
+	public void testOutputCacheInvalidation() {
+
+		String contentId = null;
+
+		try (final Tx tx = app.tx()) {
+
+			final Page page = Page.createSimplePage(securityContext, "test");
+
+			makePublic(page);
+
+			for (final DOMNode node : page.getAllChildNodes()) {
+
+				makePublic(node);
+
+				// replace the scripts of the simple page with static content
+				if (node instanceof Content) {
+
+					final Content content = (Content)node;
+					final String text     = content.getProperty(StructrApp.key(Content.class, "content"));
+
+					if (text.startsWith("${")) {
+
+						content.setProperty(StructrApp.key(Content.class, "content"), "Test");
+
+					} else {
+
+						contentId = content.getUuid();
+					}
+				}
+			}
+
+			tx.success();
+
+		} catch (FrameworkException fex) {
+
+			fex.printStackTrace();
+			fail("Unexpected exception.");
+		}
+
+		Settings.OutputCache.setValue(true);
+		RenderedOutputCache.clear();
+
+		try {
+
+			final long hits          = RenderedOutputCache.getStatistics().get("hits");
+			final long invalidations = RenderedOutputCache.getStatistics().get("invalidations");
+
+			// first request renders the page, second request is a cache hit
+			assertPageContains("Initial body text");
+			assertPageContains("Initial body text");
+
+			assertEquals("Invalid output cache statistics", hits + 1, (long)RenderedOutputCache.getStatistics().get("hits"));
+			assertEquals("Invalid output cache statistics", 1L,       (long)RenderedOutputCache.getStatistics().get("size"));
+
+			// modification of data must not affect static output
+			try (final Tx tx = app.tx()) {
+
+				createTestNode(Folder.class, new NodeAttribute<>(AbstractNode.name, "folder"), new NodeAttribute<>(GraphObject.visibleToPublicUsers, true));
+				tx.success();
+			}
+
+			assertPageContains("Initial body text");
+			assertEquals("Invalid output cache statistics", hits + 2, (long)RenderedOutputCache.getStatistics().get("hits"));
+
+			// modification of a rendered node must invalidate the output
+			try (final Tx tx = app.tx()) {
+
+				final Content content = app.get(Content.class, contentId);
+				content.setProperty(StructrApp.key(Content.class, "content"), "Changed body text");
+
+				tx.success();
+			}
+
+			assertPageContains("Changed body text");
+			assertPageContains("Changed body text");
+			assertEquals("Invalid output cache statistics", invalidations + 1, (long)RenderedOutputCache.getStatistics().get("invalidations"));
+			assertEquals("Invalid output cache statistics", hits + 3,          (long)RenderedOutputCache.getStatistics().get("hits"));
+
+			// output that contains scripts must not be stored at all
+			try (final Tx tx = app.tx()) {
+
+				final Content content = app.get(Content.class, contentId);
+				content.setProperty(StructrApp.key(Content.class, "content"), "${size(find('Folder'))} folders");
+
+				tx.success();
+			}
+
+			assertPageContains("1 folders");
+			assertEquals("Invalid output cache statistics", 0L, (long)RenderedOutputCache.getStatistics().get("size"));
+
+			try (final Tx tx = app.tx()) {
+
+				createTestNode(Folder.class, new NodeAttribute<>(AbstractNode.name, "folder"), new NodeAttribute<>(GraphObject.visibleToPublicUsers, true));
+				tx.success();
+			}
+
+			assertPageContains("2 folders");
+			assertEquals("Invalid output cache statistics", 0L, (long)RenderedOutputCache.getStatistics().get("size"));
+
+		} catch (FrameworkException fex) {
+
+			fex.printStackTrace();
+			fail("Unexpected exception.");
+
+		} finally {
+
+			Settings.OutputCache.setValue(false);
+		}
+	}
+
+	@Test
+	public void testOutputCacheIsKeyedByParameters() {
+
+		try (final Tx tx = app.tx()) {
+
+			final Page page = Page.createSimplePage(securityContext, "test");
+
+			makePublic(page);
+
+			for (final DOMNode node : page.getAllChildNodes()) {
+
+				makePublic(node);
+
+				if (node instanceof Content && "Initial body text".equals(node.getProperty(StructrApp.key(Content.class, "content")))) {
+
+					node.setProperty(StructrApp.key(Content.class, "content"), "Static value");
+				}
+
+				// replace the scripts of the simple page with static content
+				if (node instanceof Content && node.getProperty(StructrApp.key(Content.class, "content")).toString().startsWith("${")) {
+
+					node.setProperty(StructrApp.key(Content.class, "content"), "Test");
+				}
+			}
+
+			tx.success();
+
+		} catch (FrameworkException fex) {
+
+			fex.printStackTrace();
+			fail("Unexpected exception.");
+		}
+
+		Settings.OutputCache.setValue(true);
+		RenderedOutputCache.clear();
+
+		try {
+
+			assertPageContains("Static value", "?param=one");
+			assertPageContains("Static value", "?param=two");
+			assertPageContains("Static value", "?param=one");
+
+			assertEquals("Invalid output cache statistics", 2L, (long)RenderedOutputCache.getStatistics().get("size"));
+
+		} finally {
+
+			Settings.OutputCache.setValue(false);
+		}
+	}
+
+	@Test
+	public void testCacheableFragmentOfDynamicPage() {
+
+		String contentId = null;
+
+		try (final Tx tx = app.tx()) {
+
+			final Page page = Page.createSimplePage(securityContext, "test");
+
+			makePublic(page);
+
+			for (final DOMNode node : page.getAllChildNodes()) {
+
+				makePublic(node);
+
+				// the scripts of the simple page make the page itself dynamic
+				if (node instanceof Content && "Initial body text".equals(node.getProperty(StructrApp.key(Content.class, "content")))) {
+
+					node.getParent().setProperty(StructrApp.key(DOMNode.class, "cacheable"), true);
+					contentId = node.getUuid();
+				}
+			}
+
+			tx.success();
+
+		} catch (FrameworkException fex) {
+
+			fex.printStackTrace();
+			fail("Unexpected exception.");
+		}
+
+		Settings.OutputCache.setValue(true);
+		RenderedOutputCache.clear();
+
+		try {
+
+			final long hits          = RenderedOutputCache.getStatistics().get("hits");
+			final long invalidations = RenderedOutputCache.getStatistics().get("invalidations");
+
+			// only the static fragment is stored, the second request takes it from the cache
+			assertPageContains("Initial body text");
+			assertPageContains("Initial body text");
+
+			assertEquals("Invalid output cache statistics", 1L,       (long)RenderedOutputCache.getStatistics().get("size"));
+			assertEquals("Invalid output cache statistics", hits + 1, (long)RenderedOutputCache.getStatistics().get("hits"));
+
+			// modification of a node in the fragment must invalidate it
+			try (final Tx tx = app.tx()) {
+
+				final Content content = app.get(Content.class, contentId);
+				content.setProperty(StructrApp.key(Content.class, "content"), "Changed body text");
+
+				tx.success();
+			}
+
+			assertPageContains("Changed body text");
+			assertEquals("Invalid output cache statistics", invalidations + 1, (long)RenderedOutputCache.getStatistics().get("invalidations"));
+
+		} catch (FrameworkException fex) {
+
+			fex.printStackTrace();
+			fail("Unexpected exception.");
+
+		} finally {
+
+			Settings.OutputCache.setValue(false);
+		}
+	}
+
+	// ----- private methods -----
+	private void assertPageContains(final String text) {
+		assertPageContains(text, "");
+	}
+
+	private void assertPageContains(final String text, final String queryString) {
+
+		RestAssured.basePath = "/";
+
+		RestAssured
+			.given()
+				.filter(ResponseLoggingFilter.logResponseIfStatusCodeIs(401))
+				.filter(ResponseLoggingFilter.logResponseIfStatusCodeIs(404))
+				.filter(ResponseLoggingFilter.logResponseIfStatusCodeIs(500))
+			.expect()
+				.statusCode(200)
+				.body(Matchers.containsString(text))
+			.when()
+			.get("/html/test" + queryString);
+	}
+}
@@ -0,0 +1,142 @@
+/**
+ * Copyright (C) 2010-2018 Structr GmbH
+ *
+ * This file is part of Structr <http://structr.org>.
+ *
+ * Structr is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Structr is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.structr.web.basic;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+import org.structr.web.common.StreamingRenderBuffer;
+
+/**
+ *
+ */
+public class StreamingRenderBufferTest {
+
+	@Test
+	public void testListenerIsCalledWhenDataArrives() throws IOException {
+
+		final StreamingRenderBuffer buffer = new StreamingRenderBuffer(1000, 1000);
+		final TestOutputStream out         = new TestOutputStream();
+		final AtomicInteger notifications  = new AtomicInteger();
+
+		buffer.setListener(() -> notifications.incrementAndGet());
+
+		// no data yet, writer waits for data
+		assertFalse(buffer.writeTo(out));
+
+		buffer.append("<html>");
+		buffer.append("äöü");
+
+		assertEquals("Listener should be called once when data arrives", 1, notifications.get());
+		assertFalse(buffer.writeTo(out));
+		assertEquals("<html>äöü", out.toString());
+
+		buffer.finish();
+
+		assertEquals("Listener should be called when the buffer is finished", 2, notifications.get());
+		assertTrue("Writer should complete exactly once", buffer.writeTo(out));
+		assertFalse("Writer should complete exactly once", buffer.writeTo(out));
+	}
+
+	@Test
+	public void testBackPressure() throws Exception {
+
+		final StreamingRenderBuffer buffer = new StreamingRenderBuffer(10, 10000);
+		final TestOutputStream out         = new TestOutputStream();
+		final AtomicBoolean done           = new AtomicBoolean(false);
+
+		final Thread renderer = new Thread(() -> {
+
+			for (int i=0; i<10; i++) {
+				buffer.append("0123456789");
+			}
+
+			buffer.finish();
+			done.set(true);
+		});
+
+		renderer.start();
+
+		// renderer must be blocked by the full buffer
+		Thread.sleep(200);
+		assertFalse("Renderer should be paused when the buffer is full", done.get());
+
+		boolean completed = false;
+
+		while (!completed) {
+
+			completed = buffer.writeTo(out);
+			Thread.sleep(1);
+		}
+
+		renderer.join(1000);
+
+		assertTrue("Renderer should continue when the client receives data", done.get());
+		assertEquals("Invalid output size", 100, out.toString().length());
+	}
+
+	@Test
+	public void testCancel() throws Exception {
+
+		final StreamingRenderBuffer buffer = new StreamingRenderBuffer(10, 10000);
+		final TestOutputStream out         = new TestOutputStream();
+
+		buffer.append("0123456789");
+		buffer.cancel();
+
+		// must not block after the client is gone
+		buffer.append("0123456789");
+
+		assertTrue(buffer.writeTo(out));
+		assertEquals("", out.toString());
+	}
+
+	// ----- nested classes -----
+	private static class TestOutputStream extends ServletOutputStream {
+
+		private final ByteArrayOutputStream data = new ByteArrayOutputStream();
+
+		@Override
+		public boolean isReady() {
+			return true;
+		}
+
+		@Override
+		public void setWriteListener(final WriteListener writeListener) {
+		}
+
+		@Override
+		public void write(final int b) throws IOException {
+			data.write(b);
+		}
+
+		@Override
+		public String toString() {
+			return new String(data.toByteArray(), StandardCharsets.UTF_8);
+		}
+	}
+}
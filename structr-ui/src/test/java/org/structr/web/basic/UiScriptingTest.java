@@ -59,6 +59,7 @@ import static org.junit.Assert.fail;
 import org.junit.Test;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.structr.api.config.Settings;
 import org.structr.common.error.FrameworkException;
 import org.structr.core.app.StructrApp;
 import org.structr.core.entity.AbstractNode;
@@ -390,6 +391,67 @@ public class UiScriptingTest extends StructrUiTest {
 			.get("/html/test");
 	}
 
+	@Test
+	public void testStreamingOutputOfRawDataPage() {
+
+		try (final Tx tx = app.tx()) {
+
+			final Page page       = Page.createSimplePage(securityContext, "test");
+			final Div div         = (Div)page.getElementsByTagName("div").item(0);
+			final Content content = (Content)div.getFirstChild();
+
+			// raw data pages are always rendered synchronously
+			page.setProperty(StructrApp.key(Page.class, "pageCreatesRawData"), true);
+
+			// setup repeater that creates a large output with multi-byte characters
+			content.setProperty(StructrApp.key(DOMNode.class, "functionQuery"), "{ var arr = []; for (var i=0; i<10000; i++) { arr.push({ name: 'äöü' + i + ',' }); }; return arr; }");
+			content.setProperty(StructrApp.key(DOMNode.class, "dataKey"), "test");
+			content.setProperty(StructrApp.key(Content.class, "content"), "${test.name}");
+
+			// create admin user
+			createTestNode(User.class,
+				new NodeAttribute<>(StructrApp.key(User.class, "name"),     "admin"),
+				new NodeAttribute<>(StructrApp.key(User.class, "password"), "admin"),
+				new NodeAttribute<>(StructrApp.key(User.class, "isAdmin"),  true)
+			);
+
+			tx.success();
+
+		} catch (FrameworkException fex) {
+
+			fex.printStackTrace();
+			fail("Unexpected exception.");
+		}
+
+		RestAssured.basePath = "/";
+
+		// streaming output is disabled by default
+		Settings.StreamingOutput.setValue(true);
+
+		try {
+
+			RestAssured
+				.given()
+					.headers("X-User", "admin" , "X-Password", "admin")
+					.filter(ResponseLoggingFilter.logResponseIfStatusCodeIs(400))
+					.filter(ResponseLoggingFilter.logResponseIfStatusCodeIs(401))
+					.filter(ResponseLoggingFilter.logResponseIfStatusCodeIs(403))
+					.filter(ResponseLoggingFilter.logResponseIfStatusCodeIs(404))
+					.filter(ResponseLoggingFilter.logResponseIfStatusCodeIs(422))
+					.filter(ResponseLoggingFilter.logResponseIfStatusCodeIs(500))
+				.expect()
+					.statusCode(200)
+					.body(Matchers.containsString("äöü0,äöü1,äöü2,"))
+					.body(Matchers.containsString("äöü9998,äöü9999,"))
+				.when()
+				.get("/html/test");
+
+		} finally {
+
+			Settings.StreamingOutput.setValue(false);
+		}
+	}
+
 	@Test
 	public void testIncludeWithRepeaterInJavaScript() {
 
@@ -27,6 +27,7 @@ import org.apache.tika.io.IOUtils;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 import org.junit.Test;
@@ -48,6 +49,7 @@ import org.structr.web.StructrUiTest;
 import org.structr.web.common.FileHelper;
 import org.structr.web.common.ImageHelper;
 import org.structr.web.common.ImageHelper.Thumbnail;
+import org.structr.web.common.ThumbnailGenerator;
 import org.structr.web.entity.AbstractFile;
 import org.structr.web.entity.File;
 import org.structr.web.entity.Folder;
@@ -213,6 +215,142 @@ public class UiTest extends StructrUiTest {
 
 	}
 
+	@Test
+	public void test01CreateThumbnailsInBackground() {
+
+		String imageId = null;
+
+		try (final Tx tx = app.tx()) {
+
+			final Image image = (Image) ImageHelper.createFileBase64(securityContext, base64Image, Image.class);
+
+			image.setProperties(image.getSecurityContext(), new PropertyMap(Image.name, "background.png"));
+
+			imageId = image.getUuid();
+
+			tx.success();
+
+		} catch (Exception ex) {
+			ex.printStackTrace();
+			fail("Unexpected exception");
+		}
+
+		try {
+
+			// tnSmall and tnMid are created after the upload without being requested
+			for (int i=0; i<300; i++) {
+
+				try (final Tx tx = app.tx()) {
+
+					if (app.get(Image.class, imageId).getThumbnails().size() >= 2) {
+						break;
+					}
+
+					tx.success();
+				}
+
+				Thread.sleep(100);
+			}
+
+			try (final Tx tx = app.tx()) {
+
+				final Image image = app.get(Image.class, imageId);
+
+				assertEquals("Thumbnails were not created in the background", 2, image.getThumbnails().size());
+
+				// a new size is created by the thumbnail workers, the caller doesn't wait for it
+				assertNull("Thumbnail should not be available immediately", image.getScaledImage(50, 50));
+
+				tx.success();
+			}
+
+			for (int i=0; i<300; i++) {
+
+				try (final Tx tx = app.tx()) {
+
+					if (app.get(Image.class, imageId).getThumbnails().size() >= 3) {
+						break;
+					}
+
+					tx.success();
+				}
+
+				Thread.sleep(100);
+			}
+
+			try (final Tx tx = app.tx()) {
+
+				final Image image     = app.get(Image.class, imageId);
+				final Image thumbnail = image.getScaledImage(50, 50);
+
+				assertNotNull("Thumbnail was not created in the background", thumbnail);
+				assertEquals(new Integer(50), thumbnail.getWidth());
+				assertEquals(new Integer(12), thumbnail.getHeight());
+
+				// existing thumbnails are reused
+				assertEquals(thumbnail.getUuid(), image.getScaledImage(50, 50).getUuid());
+				assertEquals(3, image.getThumbnails().size());
+
+				tx.success();
+			}
+
+			assertTrue("Invalid thumbnail statistics", ThumbnailGenerator.getStatistics().get("completed") >= 3L);
+
+		} catch (FrameworkException | InterruptedException ex) {
+			ex.printStackTrace();
+			fail("Unexpected exception");
+		}
+	}
+
+	@Test
+	public void test01CreateThumbnailsSynchronously() {
+
+		String imageId = null;
+
+		// no thumbnail workers
+		Settings.ThumbnailThreads.setValue(0);
+
+		try {
+
+			try (final Tx tx = app.tx()) {
+
+				final Image image = (Image) ImageHelper.createFileBase64(securityContext, base64Image, Image.class);
+
+				image.setProperties(image.getSecurityContext(), new PropertyMap(Image.name, "synchronous.png"));
+
+				imageId = image.getUuid();
+
+				tx.success();
+			}
+
+			try (final Tx tx = app.tx()) {
+
+				final Image image     = app.get(Image.class, imageId);
+				final Image thumbnail = image.getScaledImage(50, 50);
+
+				assertNotNull("Thumbnail was not created synchronously", thumbnail);
+				assertEquals(new Integer(50), thumbnail.getWidth());
+				assertEquals(new Integer(12), thumbnail.getHeight());
+
+				// no thumbnail is created while another one is being created
+				image.unlockSystemPropertiesOnce();
+				image.setIsCreatingThumb(true);
+
+				assertNull("Thumbnail should not be created while another one is being created", image.getScaledImage(60, 60));
+
+				tx.success();
+			}
+
+		} catch (FrameworkException | IOException ex) {
+			ex.printStackTrace();
+			fail("Unexpected exception");
+
+		} finally {
+
+			Settings.ThumbnailThreads.setValue(2);
+		}
+	}
+
 	@Test
 	public void testFolderPath() {
 
@@ -0,0 +1,201 @@
+/**
+ * Copyright (C) 2010-2018 Structr GmbH
+ *
+ * This file is part of Structr <http://structr.org>.
+ *
+ * Structr is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Structr is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.structr.websocket;
+
+import com.google.gson.Gson;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Queue;
+import javax.servlet.http.HttpServletRequest;
+import org.eclipse.jetty.websocket.api.RemoteEndpoint;
+import org.eclipse.jetty.websocket.api.Session;
+import org.eclipse.jetty.websocket.api.WriteCallback;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+import org.structr.core.property.PropertyKey;
+import org.structr.core.property.StringProperty;
+import org.structr.websocket.WebsocketController.Broadcast;
+import org.structr.websocket.message.WebSocketMessage;
+
+/**
+ * Test for the coalescing and sending of websocket broadcasts.
+ */
+public class WebsocketControllerTest {
+
+	private static final PropertyKey<String> name = new StringProperty("name");
+	private static final PropertyKey<String> type = new StringProperty("type");
+
+	@Test
+	public void testAdjacentUpdatesAreCoalesced() {
+
+		final List<Broadcast> batch = new ArrayList<>();
+
+		assertFalse(WebsocketController.add(batch, update("a", name)));
+		assertTrue(WebsocketController.add(batch, update("a", type)));
+
+		assertEquals("Adjacent UPDATE messages for the same object should be merged", 1, batch.size());
+		assertTrue(batch.get(0).getMessage().getModifiedProperties().contains(name));
+		assertTrue(batch.get(0).getMessage().getModifiedProperties().contains(type));
+	}
+
+	@Test
+	public void testCoalescingKeepsOrder() {
+
+		final List<Broadcast> batch = new ArrayList<>();
+
+		WebsocketController.add(batch, update("a", name));
+		WebsocketController.add(batch, message("REMOVE", "a"));
+		WebsocketController.add(batch, update("a", type));
+		WebsocketController.add(batch, update("b", name));
+		WebsocketController.add(batch, message("ADD", "b"));
+		WebsocketController.add(batch, update("b", type));
+
+		assertEquals("Non-adjacent UPDATE messages must not be merged", 6, batch.size());
+		assertEquals("UPDATE",  batch.get(0).getMessage().getCommand());
+		assertEquals("REMOVE",  batch.get(1).getMessage().getCommand());
+		assertEquals("UPDATE",  batch.get(2).getMessage().getCommand());
+		assertEquals("UPDATE",  batch.get(3).getMessage().getCommand());
+		assertEquals("ADD",     batch.get(4).getMessage().getCommand());
+		assertEquals("UPDATE",  batch.get(5).getMessage().getCommand());
+		assertEquals("b",       batch.get(3).getMessage().getId());
+	}
+
+	@Test
+	public void testExemptedUpdatesAreNotCoalesced() {
+
+		final List<Broadcast> batch = new ArrayList<>();
+
+		WebsocketController.add(batch, update("a", name));
+		WebsocketController.add(batch, new Broadcast(update("a", type).getMessage(), "session"));
+
+		assertEquals("UPDATE messages with an exempted session must not be merged", 2, batch.size());
+	}
+
+	@Test
+	public void testBroadcastsAreSentAsynchronouslyInOrder() {
+
+		final WebsocketController controller = new WebsocketController(new Gson());
+		final StructrWebSocket socket        = new StructrWebSocket(controller, new Gson(), null);
+		final List<String> sent              = new LinkedList<>();
+		final Queue<WriteCallback> pending   = new LinkedList<>();
+
+		try {
+
+			socket.setRequest(proxy(HttpServletRequest.class, (method, args) -> null));
+			socket.onWebSocketConnect(session(sent, pending));
+
+			assertTrue(socket.offerBroadcast("one",   10));
+			assertTrue(socket.offerBroadcast("two",   10));
+			assertTrue(socket.offerBroadcast("three", 10));
+
+			socket.sendBuffered();
+
+			assertEquals("Only one message per client should be in flight", 1, sent.size());
+
+			// a second call must not send while a write is in flight
+			socket.sendBuffered();
+			assertEquals("Only one message per client should be in flight", 1, sent.size());
+
+			pending.poll().writeSuccess();
+			assertEquals(2, sent.size());
+
+			pending.poll().writeSuccess();
+			assertEquals(3, sent.size());
+
+			pending.poll().writeSuccess();
+			assertTrue(pending.isEmpty());
+
+			assertEquals("one",   sent.get(0));
+			assertEquals("two",   sent.get(1));
+			assertEquals("three", sent.get(2));
+
+			// buffer limit
+			assertTrue(socket.offerBroadcast("four", 1));
+			assertFalse(socket.offerBroadcast("five", 1));
+
+		} finally {
+
+			controller.shutdown();
+		}
+	}
+
+	// ----- private methods -----
+	private Broadcast update(final String id, final PropertyKey key) {
+
+		final Broadcast broadcast = message("UPDATE", id);
+
+		broadcast.getMessage().getModifiedProperties().add(key);
+
+		return broadcast;
+	}
+
+	private Broadcast message(final String command, final String id) {
+
+		final WebSocketMessage message = new WebSocketMessage();
+
+		message.setCommand(command);
+		message.setId(id);
+
+		return new Broadcast(message, null);
+	}
+
+	private Session session(final List<String> sent, final Queue<WriteCallback> pending) {
+
+		final RemoteEndpoint remote = proxy(RemoteEndpoint.class, (method, args) -> {
+
+			if ("sendString".equals(method) && args.length == 2) {
+
+				sent.add((String)args[0]);
+				pending.add((WriteCallback)args[1]);
+			}
+
+			return null;
+		});
+
+		return proxy(Session.class, (method, args) -> {
+
+			switch (method) {
+
+				case "getRemote":
+					return remote;
+
+				case "isOpen":
+					return true;
+
+				case "getProtocolVersion":
+					return "13";
+			}
+
+			return null;
+		});
+	}
+
+	private <T> T proxy(final Class<T> type, final Handler handler) {
+		return (T)Proxy.newProxyInstance(type.getClassLoader(), new Class[] { type }, (proxy, method, args) -> handler.invoke(method.getName(), args));
+	}
+
+	private interface Handler {
+
+		Object invoke(final String method, final Object[] args);
+	}
+}